@@ -0,0 +1,121 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.metric;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histogram of non negative int values counted in log-linear buckets (in the style of
+ * HdrHistogram): values below {@link #SUB_BUCKETS} are counted exactly, and each power of two above
+ * is split in {@link #HALF_SUB_BUCKETS} linear buckets, so a value is known within a relative
+ * error below 2%. Counters are allocated per segment (the exact values, or a power of two) on its
+ * first value, so a histogram only takes memory for the magnitudes actually recorded. Recording is
+ * lock free, and allocation free once its segment exists.
+ */
+class LogLinearHistogram {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final AtomicReferenceArray<AtomicIntegerArray> segments;
+    private final AtomicLong                               sum;
+
+    //~ Constructors .................................................................................................................................
+
+    LogLinearHistogram() {
+        segments = new AtomicReferenceArray<>(SEGMENTS);
+        sum      = new AtomicLong();
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Count given value (negative values are counted as 0). */
+    void record(int value) {
+        final int v     = Math.max(0, value);
+        final int index = index(v);
+        final int s     = segment(index);
+        counters(s).incrementAndGet(index - segmentStart(s));
+        sum.addAndGet(v);
+    }
+
+    /** Add the counts of given segment to the target (holding the counts of a whole segment). */
+    void addTo(int segment, int[] target) {
+        final AtomicIntegerArray counts = segments.get(segment);
+        if (counts == null) return;
+        for (int i = 0; i < counts.length(); i++)
+            target[i] += counts.get(i);
+    }
+
+    /** Returns the sum of the values. */
+    long getSum() {
+        return sum.get();
+    }
+
+    /** Returns the counters of given segment, allocating them if not yet used. */
+    private AtomicIntegerArray counters(int segment) {
+        final AtomicIntegerArray counts = segments.get(segment);
+        if (counts != null) return counts;
+        segments.compareAndSet(segment, null, new AtomicIntegerArray(segmentLength(segment)));
+        return segments.get(segment);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Returns the index of the bucket counting the given (non negative) value. */
+    static int index(int value) {
+        if (value < SUB_BUCKETS) return value;
+        final int shift = Integer.SIZE - Integer.numberOfLeadingZeros(value) - PRECISION_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    /** Returns the lowest value counted by the bucket at given index. */
+    static int lowestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        final int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        return (HALF_SUB_BUCKETS + (index - SUB_BUCKETS) % HALF_SUB_BUCKETS) << shift;
+    }
+
+    /** Returns the segment of the bucket at given index. */
+    static int segment(int index) {
+        return index < SUB_BUCKETS ? 0 : 1 + (index - SUB_BUCKETS) / HALF_SUB_BUCKETS;
+    }
+
+    /** Returns the amount of buckets of given segment. */
+    static int segmentLength(int segment) {
+        return segment == 0 ? SUB_BUCKETS : HALF_SUB_BUCKETS;
+    }
+
+    /** Returns the index of the first bucket of given segment. */
+    static int segmentStart(int segment) {
+        return segment == 0 ? 0 : SUB_BUCKETS + (segment - 1) * HALF_SUB_BUCKETS;
+    }
+
+    /** Returns the value representing the bucket at given index (the middle of its range). */
+    static int medianValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        final int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        return lowestValue(index) + (1 << (shift - 1));
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    /** Bits of precision of the counted values. */
+    static final int PRECISION_BITS   = 6;
+    static final int SUB_BUCKETS      = 1 << PRECISION_BITS;
+    static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+
+    /** Amount of buckets required to count any int value. */
+    static final int LENGTH = index(Integer.MAX_VALUE) + 1;
+
+    /** Amount of segments of buckets (allocated on demand). */
+    static final int SEGMENTS = segment(LENGTH - 1) + 1;
+}  // end class LogLinearHistogram
@@ -0,0 +1,237 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.metric;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.core.DateTime;
+
+import static tekgenesis.common.metric.RollingNumber.MILLISECONDS_BY_BUCKETS;
+
+/**
+ * Add values to a rolling window and retrieve percentiles, as {@link RollingPercentile} does, but
+ * counting values in a {@link LogLinearHistogram log-linear histogram} per bucket instead of
+ * sampling them: every value is accounted for regardless of the volume, recording is lock free,
+ * and percentiles are within a 2% relative error. The snapshot of the window is built merging
+ * bucket counts when a new bucket is created, without sorting, and keeps only non empty buckets.
+ */
+public class RollingHistogram {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    final BucketCircularArray<Bucket> buckets;
+
+    private final boolean enabled;
+
+    private final ReentrantLock newBucketLock = new ReentrantLock();
+    private final int           numberOfBuckets;
+
+    /* This will get flipped each time a new bucket is created. */
+    private volatile HistogramSnapshot snapshot = new HistogramSnapshot();
+    private final LongSupplier         time;
+    private final int                  timeInMilliseconds;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Rolling histogram constructor. */
+    public RollingHistogram(int timeInMilliseconds, int numberOfBuckets) {
+        this(DateTime::currentTimeMillis, timeInMilliseconds, numberOfBuckets, true);
+    }
+
+    RollingHistogram(LongSupplier time, int timeInMilliseconds, int numberOfBuckets, boolean enabled) {
+        this.time               = time;
+        this.timeInMilliseconds = timeInMilliseconds;
+        this.numberOfBuckets    = numberOfBuckets;
+        this.enabled            = enabled;
+
+        if (timeInMilliseconds % numberOfBuckets != 0) throw new IllegalArgumentException(MILLISECONDS_BY_BUCKETS);
+
+        buckets = new BucketCircularArray<>(numberOfBuckets, Bucket[]::new);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Add value (or values) to current bucket. */
+    public void addValue(int... value) {
+        if (!enabled) return;  // no-op
+
+        final Bucket current = getCurrentBucket();
+        if (current == null) return;
+        for (final int v : value)
+            current.histogram.record(v);
+    }
+
+    /** Returns the amount of values in the current snapshot. */
+    public long getCount() {
+        if (!enabled) return -1;  // no-op
+
+        getCurrentBucket();
+        return snapshot.count;
+    }
+
+    /** This returns the mean (average) of all values in the current snapshot. */
+    public int getMean() {
+        if (!enabled) return -1;  // no-op
+
+        // force logic to move buckets forward in case other requests aren't making it happen
+        getCurrentBucket();
+        return snapshot.getMean();
+    }
+
+    /** Compute a percentile from the underlying rolling buckets of values. */
+    public int getPercentile(double percentile) {
+        if (!enabled) return -1;  // no-op
+
+        // force logic to move buckets forward in case other requests aren't making it happen
+        getCurrentBucket();
+        return snapshot.getPercentile(percentile);
+    }
+
+    /** Force a reset so that percentiles start being gathered from scratch. */
+    void reset() {
+        if (!enabled) return;  // no-op
+
+        buckets.clear();
+    }
+
+    private int getBucketSizeInMilliseconds() {
+        return timeInMilliseconds / numberOfBuckets;
+    }
+
+    @Nullable private Bucket getCurrentBucket() {
+        final long currentTime = time.getAsLong();
+
+        // Most common case, the latest bucket is still current
+        final Bucket current = buckets.peekLast();
+        if (current != null && currentTime < current.windowStart + getBucketSizeInMilliseconds()) return current;
+
+        // Otherwise one thread creates the missing buckets while others keep using the latest one (or wait for the first)
+        if (current == null) newBucketLock.lock();
+        else if (!newBucketLock.tryLock()) return current;
+        try {
+            final Bucket last = buckets.peekLast();
+            if (last == null) {
+                final Bucket b = new Bucket(currentTime);
+                buckets.addLast(b);
+                return b;
+            }
+            if (currentTime - (last.windowStart + getBucketSizeInMilliseconds()) > timeInMilliseconds) {
+                // Whole window passed without values
+                reset();
+                snapshot = new HistogramSnapshot();
+                final Bucket b = new Bucket(currentTime);
+                buckets.addLast(b);
+                return b;
+            }
+            // Create as many buckets as needed to catch up to the current time
+            Bucket lastBucket = last;
+            while (currentTime >= lastBucket.windowStart + getBucketSizeInMilliseconds()) {
+                final Bucket[] allBuckets = buckets.getArray();
+                lastBucket = new Bucket(lastBucket.windowStart + getBucketSizeInMilliseconds());
+                buckets.addLast(lastBucket);
+                snapshot = new HistogramSnapshot(allBuckets);
+            }
+            return lastBucket;
+        }
+        finally {
+            newBucketLock.unlock();
+        }
+    }
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Histogram for a given 'bucket' of time.
+     */
+    static class Bucket {
+        final LogLinearHistogram histogram;
+        final long               windowStart;
+
+        Bucket(long startTime) {
+            windowStart = startTime;
+            histogram   = new LogLinearHistogram();
+        }
+    }
+
+    /**
+     * Merged counts of the buckets of a window.
+     */
+    static class HistogramSnapshot {
+        private final long  count;
+        private final int[] counts;
+        private final int[] indexes;
+        private final long  sum;
+
+        HistogramSnapshot() {
+            indexes = new int[0];
+            counts  = new int[0];
+            count   = 0;
+            sum     = 0;
+        }
+
+        /** Merge the buckets segment by segment, keeping only the non empty buckets of the histogram. */
+        HistogramSnapshot(Bucket[] buckets) {
+            final int[] segment = new int[LogLinearHistogram.SUB_BUCKETS];
+            int[]       is      = new int[INITIAL_SIZE];
+            int[]       cs      = new int[INITIAL_SIZE];
+            int         size    = 0;
+            long        c       = 0;
+            for (int s = 0; s < LogLinearHistogram.SEGMENTS; s++) {
+                final int length = LogLinearHistogram.segmentLength(s);
+                Arrays.fill(segment, 0, length, 0);
+                for (final Bucket bucket : buckets)
+                    bucket.histogram.addTo(s, segment);
+                for (int i = 0; i < length; i++) {
+                    if (segment[i] == 0) continue;
+                    if (size == is.length) {
+                        is = Arrays.copyOf(is, size * 2);
+                        cs = Arrays.copyOf(cs, size * 2);
+                    }
+                    is[size] = LogLinearHistogram.segmentStart(s) + i;
+                    cs[size] = segment[i];
+                    size++;
+                    c += segment[i];
+                }
+            }
+            long sm = 0;
+            for (final Bucket bucket : buckets)
+                sm += bucket.histogram.getSum();
+            indexes = Arrays.copyOf(is, size);
+            counts  = Arrays.copyOf(cs, size);
+            count   = c;
+            sum     = sm;
+        }
+
+        /** Returns the mean of the values (0 if none). */
+        int getMean() {
+            return count == 0 ? 0 : (int) (sum / count);
+        }
+
+        /** Returns the value at the given percentile (0 if none). */
+        int getPercentile(double percentile) {
+            if (count == 0) return 0;
+            final long rank = Math.max(1, Math.min(count, (long) Math.ceil(percentile / PERCENT * count)));
+            long       seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return LogLinearHistogram.medianValue(indexes[i]);
+            }
+            return 0;
+        }
+
+        private static final double PERCENT      = 100.0;
+        private static final int    INITIAL_SIZE = 16;
+    }  // end class HistogramSnapshot
+}  // end class RollingHistogram
@@ -10,13 +10,8 @@
 
 package tekgenesis.common.metric;
 
-import java.util.Arrays;
-import java.util.EnumMap;
-import java.util.Map;
 import java.util.concurrent.atomic.LongAccumulator;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Function;
 import java.util.function.LongSupplier;
 
 import org.jetbrains.annotations.NonNls;
@@ -40,22 +35,20 @@ import static tekgenesis.common.Predefined.cast;
  * few per second). For example, on each read to getSum/getCount it will iterate buckets to sum the
  * data so that on writes we don't need to maintain the overall sum and pay the synchronization cost
  * at each write to ensure the sum is up-to-date when the read can easily iterate each bucket to get
- * the sum when it needs it.
+ * the sum when it needs it. Counters are striped ({@link LongAdder}) and indexed by the event
+ * ordinal, and buckets are rolled by compare and set (threads racing to roll them retry instead of
+ * blocking), so neither writes nor reads lock or allocate (other than on bucket rolls).
  */
 public class RollingNumber<E extends Enum<E> & RollingNumberEventType> {
 
     //~ Instance Fields ..............................................................................................................................
 
-    final BucketCircularArray<Bucket<E>>    buckets;
-    final int                               numberOfBuckets;
-    final int                               timeInMilliseconds;
-    private final Function<Long, Bucket<E>> bucketCreator;
-    private final CumulativeSum<E>          cumulativeSum;
-    private final Class<E>                  enumClass;
-
-    private final ReentrantLock lock = new ReentrantLock();  // Used for new bucket creation
-
-    private final LongSupplier time;
+    final BucketCircularArray<Bucket<E>> buckets;
+    final int                            numberOfBuckets;
+    final int                            timeInMilliseconds;
+    private final E[]                    constants;
+    private final CumulativeSum<E>       cumulativeSum;
+    private final LongSupplier           time;
 
     //~ Constructors .................................................................................................................................
 
@@ -65,22 +58,26 @@ public class RollingNumber<E extends Enum<E> & RollingNumberEventType> {
     }
 
     RollingNumber(@NotNull Class<E> enumClass, @NotNull LongSupplier time, int timeInMilliseconds, int numberOfBuckets) {
-        this.enumClass          = enumClass;
         this.time               = time;
         this.timeInMilliseconds = timeInMilliseconds;
         this.numberOfBuckets    = numberOfBuckets;
 
         if (timeInMilliseconds % numberOfBuckets != 0) throw new IllegalArgumentException(MILLISECONDS_BY_BUCKETS);
 
-        cumulativeSum = new CumulativeSum<>(this.enumClass);
-
-        bucketCreator = value -> new Bucket<>(this.enumClass, value);
+        constants     = enumClass.getEnumConstants();
+        cumulativeSum = new CumulativeSum<>(constants);
 
         buckets = new BucketCircularArray<>(numberOfBuckets, size -> cast(new Bucket<?>[size]));
     }
 
     //~ Methods ......................................................................................................................................
 
+    /** Add to the counter in the current bucket for the given {@link E} type. */
+    public void add(@NotNull E type, long value) {
+        final Bucket<E> b = getCurrentBucket();
+        if (b != null) b.getAdder(type).add(value);
+    }
+
     /** Increment the counter in the current bucket by one for the given {@link E} type. */
     public void increment(@NotNull E type) {
         final Bucket<E> b = getCurrentBucket();
@@ -108,13 +105,14 @@ public class RollingNumber<E extends Enum<E> & RollingNumberEventType> {
 
     /** Get the max value of values in all buckets for the given {@link E} type. */
     public long getRollingMaxValue(@NotNull E type) {
-        final long[] values = getValues(type);
-        if (values.length == 0) return 0;
-        else {
-            Arrays.sort(values);
-            return values[values.length - 1];
-        }
-    }  // end method getRollingMaxValue
+        final Bucket<E> last = getCurrentBucket();
+        if (last == null) return 0;
+
+        long max = 0;
+        for (final Bucket<E> b : buckets.getArray())
+            max = Math.max(max, b.get(type));
+        return max;
+    }
 
     /** Get the sum of all buckets in the rolling counter for the given {@link E} type. */
     public long getRollingSum(@NotNull E type) {
@@ -122,17 +120,11 @@ public class RollingNumber<E extends Enum<E> & RollingNumberEventType> {
         if (last == null) return 0;
 
         long sum = 0;
-        for (final Bucket<E> b : buckets)
+        for (final Bucket<E> b : buckets.getArray())
             sum += b.getAdder(type).sum();
         return sum;
     }
 
-    /** Add to the counter in the current bucket for the given {@link E} type. */
-    void add(@NotNull E type, long value) {
-        final Bucket<E> b = getCurrentBucket();
-        if (b != null) b.getAdder(type).add(value);
-    }
-
     int getBucketSizeInMilliseconds() {
         return timeInMilliseconds / numberOfBuckets;
     }
@@ -147,44 +139,26 @@ public class RollingNumber<E extends Enum<E> & RollingNumberEventType> {
 
     @Nullable Bucket<E> getCurrentBucket() {
         final long currentTime = time.getAsLong();
-
-        /* Retrieve the latest bucket if the given time is BEFORE the end of the bucket window. */
-        final Bucket<E> current = buckets.peekLast();
-        if (current != null && currentTime < current.windowStart + getBucketSizeInMilliseconds()) return current;
-
-        /* If we didn't find the current bucket above, then we have to create one */
-        if (!lock.tryLock()) return createBucket();
-
-        try {
-            if (buckets.peekLast() == null) {
-                // The list is empty so create the first bucket
-                final Bucket<E> b = bucketCreator.apply(currentTime);
-                buckets.addLast(b);
-                return b;
-            }
-
-            for (int i = 0; i < numberOfBuckets; i++) {
-                // We have at least 1 bucket so retrieve it
-                final Bucket<E> lastBucket = buckets.peekLast();
-                if (lastBucket == null) return null;
-                if (currentTime < lastBucket.windowStart + getBucketSizeInMilliseconds()) return lastBucket;
-
-                if (currentTime - (lastBucket.windowStart + getBucketSizeInMilliseconds()) > timeInMilliseconds) {
-                    reset();
-                    return getCurrentBucket();
+        final int  bucketSize  = getBucketSizeInMilliseconds();
+
+        while (true) {
+            /* Retrieve the latest bucket if the given time is BEFORE the end of the bucket window. */
+            final Bucket<E> last = buckets.peekLast();
+            if (last != null && currentTime < last.windowStart + bucketSize) return last;
+
+            if (last == null || currentTime - (last.windowStart + bucketSize) > timeInMilliseconds) {
+                // Empty, or no data for the whole window, so start over from a new bucket
+                final Bucket<E> b = new Bucket<>(constants, currentTime);
+                if (buckets.restart(last, b)) {
+                    if (last != null) cumulativeSum.addBucket(last);
+                    return b;
                 }
-
-                final Bucket<E> b = bucketCreator.apply(lastBucket.windowStart + getBucketSizeInMilliseconds());
-                buckets.addLast(b);
-                cumulativeSum.addBucket(lastBucket);
             }
-            // We have finished the for-loop and created all of the buckets, so return the lastBucket now
-            return buckets.peekLast();
+            // Create next bucket (as many as needed to catch up to the current time, as we want the buckets complete even if
+            // we don't have transactions during a period of time). If another thread rolled first, just retry with its bucket.
+            else if (buckets.addLast(last, new Bucket<>(constants, last.windowStart + bucketSize))) cumulativeSum.addBucket(last);
         }
-        finally {
-            lock.unlock();
-        }
-    }  // end method getCurrentBucket
+    }
 
     /**
      * Get the value of the latest (current) bucket in the rolling counter for the given {@link E}
@@ -217,18 +191,6 @@ public class RollingNumber<E extends Enum<E> & RollingNumberEventType> {
         return values;
     }
 
-    @Nullable private Bucket<E> createBucket() {
-        final Bucket<E> bucket = buckets.peekLast();
-        // We didn't get the lock so just return the latest bucket while another thread creates the next one
-        if (bucket != null) return bucket;
-
-        try {
-            Thread.sleep(5);
-        }
-        catch (final Exception ignored) {}
-        return getCurrentBucket();
-    }
-
     //~ Static Fields ................................................................................................................................
 
     static final String MILLISECONDS_BY_BUCKETS = "The time in milliseconds must divide equally into the number of buckets. " +
@@ -245,36 +207,35 @@ public class RollingNumber<E extends Enum<E> & RollingNumberEventType> {
      * Counters for a given 'bucket' of time.
      */
     static class Bucket<E extends Enum<E> & RollingNumberEventType> {
-        final long                            windowStart;
-        private final Map<E, LongAdder>       adderForCounterType;
-        private final Map<E, LongAccumulator> updaterForCounterType;
+        final long                      windowStart;
+        private final LongAdder[]       adders;
+        private final LongAccumulator[] maxima;
 
-        Bucket(@NotNull Class<E> enumClass, long startTime) {
+        Bucket(@NotNull E[] constants, long startTime) {
             windowStart = startTime;
+            adders      = new LongAdder[constants.length];
+            maxima      = new LongAccumulator[constants.length];
 
-            adderForCounterType   = new EnumMap<>(enumClass);
-            updaterForCounterType = new EnumMap<>(enumClass);
-
-            for (final E event : enumClass.getEnumConstants()) {
-                if (event.isCounter()) adderForCounterType.put(event, new LongAdder());
-                if (event.isMaximum()) updaterForCounterType.put(event, new LongAccumulator(Long::max, 0));
+            for (final E event : constants) {
+                if (event.isCounter()) adders[event.ordinal()] = new LongAdder();
+                if (event.isMaximum()) maxima[event.ordinal()] = new LongAccumulator(Long::max, 0);
             }
         }
 
         long get(@NotNull E type) {
-            if (type.isCounter()) return adderForCounterType.get(type).sum();
-            if (type.isMaximum()) return updaterForCounterType.get(type).get();
+            if (type.isCounter()) return adders[type.ordinal()].sum();
+            if (type.isMaximum()) return maxima[type.ordinal()].get();
             throw new IllegalStateException(UNKNOWN_TYPE_OF_EVENT + type.name());
         }
 
         LongAdder getAdder(@NotNull E type) {
             if (!type.isCounter()) throw new IllegalStateException(TYPE_IS_NOT_A_COUNTER + type.name());
-            return adderForCounterType.get(type);
+            return adders[type.ordinal()];
         }
 
         LongAccumulator getMaxUpdater(E type) {
             if (!type.isMaximum()) throw new IllegalStateException(TYPE_IS_NOT_A_MAXIMUM_UPDATER + type.name());
-            return updaterForCounterType.get(type);
+            return maxima[type.ordinal()];
         }
     }
 
@@ -282,42 +243,23 @@ public class RollingNumber<E extends Enum<E> & RollingNumberEventType> {
      * Cumulative counters (from start of JVM) from each Type.
      */
     private static class CumulativeSum<E extends Enum<E> & RollingNumberEventType> {
-        final Map<E, LongAdder>       adderForCounterType;
-        final Map<E, LongAccumulator> updaterForCounterType;
-        private final E[]             constants;
+        private final Bucket<E> sum;
+        private final E[]       constants;
 
-        private CumulativeSum(@NotNull Class<E> enumClass) {
-            constants             = enumClass.getEnumConstants();
-            adderForCounterType   = new EnumMap<>(enumClass);
-            updaterForCounterType = new EnumMap<>(enumClass);
-
-            for (final E event : constants) {
-                if (event.isCounter()) adderForCounterType.put(event, new LongAdder());
-                if (event.isMaximum()) updaterForCounterType.put(event, new LongAccumulator(Long::max, 0));
-            }
+        private CumulativeSum(@NotNull E[] constants) {
+            this.constants = constants;
+            sum            = new Bucket<>(constants, 0);
         }
 
         private void addBucket(@NotNull Bucket<E> lastBucket) {
             for (final E event : constants) {
-                if (event.isCounter()) getAdder(event).add(lastBucket.getAdder(event).sum());
-                if (event.isMaximum()) getMaxUpdater(event).accumulate(lastBucket.getMaxUpdater(event).get());
+                if (event.isCounter()) sum.getAdder(event).add(lastBucket.getAdder(event).sum());
+                if (event.isMaximum()) sum.getMaxUpdater(event).accumulate(lastBucket.getMaxUpdater(event).get());
             }
         }
 
         private long get(E type) {
-            if (type.isCounter()) return adderForCounterType.get(type).sum();
-            if (type.isMaximum()) return updaterForCounterType.get(type).get();
-            throw new IllegalStateException(UNKNOWN_TYPE_OF_EVENT + type.name());
-        }
-
-        private LongAdder getAdder(E type) {
-            if (!type.isCounter()) throw new IllegalStateException(TYPE_IS_NOT_A_COUNTER + type.name());
-            return adderForCounterType.get(type);
-        }
-
-        private LongAccumulator getMaxUpdater(E type) {
-            if (!type.isMaximum()) throw new IllegalStateException(TYPE_IS_NOT_A_MAXIMUM_UPDATER + type.name());
-            return updaterForCounterType.get(type);
+            return sum.get(type);
         }
     }
 }
@@ -0,0 +1,99 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.annotation.GwtIncompatible;
+
+/**
+ * A {@link StreamReader} of the bytes between the position and the limit of a {@link ByteBuffer}
+ * (heap, direct or mapped), as written by a {@link ByteBufferStreamWriter}.
+ */
+@GwtIncompatible public class ByteBufferStreamReader extends StreamReader.Default {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final ByteBuffer buffer;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a reader of the given buffer (its position is advanced while reading). */
+    public ByteBufferStreamReader(@NotNull ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    @Override public byte readByte() {
+        return buffer.get();
+    }
+
+    @Override public char readChar() {
+        return buffer.getChar();
+    }
+
+    @Override public double readDouble() {
+        return buffer.getDouble();
+    }
+
+    @Override public float readFloat() {
+        return buffer.getFloat();
+    }
+
+    @Override public int readInt() {
+        return buffer.getInt();
+    }
+
+    @Override public long readLong() {
+        return buffer.getLong();
+    }
+
+    @Override public Object readObject() {
+        final byte[] bytes = readBytes(readInt());
+        try(final ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return stream.readObject();
+        }
+        catch (final IOException | ClassNotFoundException e) {
+            throw new SerializerException(e);
+        }
+    }
+
+    @Override public short readShort() {
+        return buffer.getShort();
+    }
+
+    @Override public String readString() {
+        final int length = readInt();
+        return length < 0 ? null : new String(readBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the amount of bytes left to read. */
+    public int getRemaining() {
+        return buffer.remaining();
+    }
+
+    private byte[] readBytes(int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}  // end class ByteBufferStreamReader
@@ -0,0 +1,130 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.annotation.GwtIncompatible;
+
+/**
+ * A binary {@link StreamWriter} into a growable heap {@link ByteBuffer}, to be read back with a
+ * {@link ByteBufferStreamReader}. Strings are written as their UTF-8 bytes prefixed by their
+ * length (-1 for null).
+ */
+@GwtIncompatible public class ByteBufferStreamWriter extends StreamWriter.Default {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private ByteBuffer buffer;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a writer with the default initial capacity. */
+    public ByteBufferStreamWriter() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /** Create a writer with the given initial capacity. */
+    public ByteBufferStreamWriter(int initialCapacity) {
+        buffer = ByteBuffer.allocate(Math.max(initialCapacity, 1));
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Discard the bytes written, to reuse the writer. */
+    public ByteBufferStreamWriter reset() {
+        buffer.clear();
+        return this;
+    }
+
+    /** Returns the bytes written (a read only view, valid until the writer is written again). */
+    @NotNull public ByteBuffer toByteBuffer() {
+        final ByteBuffer result = buffer.duplicate();
+        result.flip();
+        return result.asReadOnlyBuffer();
+    }
+
+    @Override public StreamWriter writeBoolean(boolean value) {
+        return writeByte((byte) (value ? 1 : 0));
+    }
+
+    @Override public StreamWriter writeByte(byte value) {
+        ensure(1).put(value);
+        return this;
+    }
+
+    @Override public StreamWriter writeChar(char value) {
+        ensure(Character.BYTES).putChar(value);
+        return this;
+    }
+
+    @Override public StreamWriter writeDouble(double value) {
+        ensure(Double.BYTES).putDouble(value);
+        return this;
+    }
+
+    @Override public StreamWriter writeFloat(float value) {
+        ensure(Float.BYTES).putFloat(value);
+        return this;
+    }
+
+    @Override public StreamWriter writeInt(int value) {
+        ensure(Integer.BYTES).putInt(value);
+        return this;
+    }
+
+    @Override public StreamWriter writeLong(long value) {
+        ensure(Long.BYTES).putLong(value);
+        return this;
+    }
+
+    @Override public StreamWriter writeShort(short value) {
+        ensure(Short.BYTES).putShort(value);
+        return this;
+    }
+
+    @Override public StreamWriter writeString(@Nullable String value) {
+        if (value == null) return writeInt(-1);
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        writeBytes(bytes);
+        return this;
+    }
+
+    /** Returns the amount of bytes written. */
+    public int getSize() {
+        return buffer.position();
+    }
+
+    @Override protected void writeBytes(byte[] bytes) {
+        ensure(bytes.length).put(bytes);
+    }
+
+    /** Grow buffer (doubling it) to fit the given bytes. */
+    private ByteBuffer ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            final int        capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+            final ByteBuffer grown    = ByteBuffer.allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        return buffer;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int INITIAL_CAPACITY = 256;
+}  // end class ByteBufferStreamWriter
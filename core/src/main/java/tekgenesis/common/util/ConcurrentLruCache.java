@@ -0,0 +1,674 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.core.DateTime;
+
+/**
+ * A concurrent alternative to {@link LruCache}, built with the same {@link Builder} options. Reads
+ * take no lock: hits are recorded on striped lossy buffers and writes on a queue, both replayed in
+ * batches under a single eviction lock. Eviction follows W-TinyLFU: new entries land on a small
+ * LRU admission window and, once evicted from it, only replace the victim of the main segmented
+ * LRU (probation and protected segments) if a {@link FrequencySketch frequency sketch} estimates
+ * they are more popular. Expired entries are removed by a {@link TimerWheel timer wheel} instead
+ * of scanning the cache.
+ */
+public class ConcurrentLruCache<K, V> {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    //J-
+    // Stat Fields
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder loadedCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+    // Functions
+    private final LongSupplier ticker;
+    private final ToIntFunction<V> weigher;
+    @Nullable private final ToLongFunction<V> expiration;
+    //J+
+
+    private final ReentrantLock                     evictionLock;
+    private final ConcurrentHashMap<K, Node<K, V>>  map;
+    private final int                               maxWeight;
+    private final AccessOrderQueue<K, V>            probation;
+    private final AccessOrderQueue<K, V>            protectedQueue;
+    private final long                              protectedMax;
+    private long                                    protectedWeight;
+    private final ReadBuffer<Node<K, V>>            readBuffer;
+    private final FrequencySketch                   sketch;
+    @Nullable private final TimerWheel<K, V>        timerWheel;
+    private volatile long                           weight;
+    private final AccessOrderQueue<K, V>            window;
+    private final long                              windowMax;
+    private long                                    windowWeight;
+    private final ConcurrentLinkedQueue<Runnable>   writeBuffer;
+
+    //~ Constructors .................................................................................................................................
+
+    private ConcurrentLruCache(int maxWeight, ToIntFunction<V> weigher, @Nullable ToLongFunction<V> expiration, LongSupplier ticker) {
+        this.maxWeight  = maxWeight;
+        this.weigher    = weigher;
+        this.expiration = expiration;
+        this.ticker     = ticker;
+        map             = new ConcurrentHashMap<>();
+        evictionLock    = new ReentrantLock();
+        readBuffer      = new ReadBuffer<>();
+        writeBuffer     = new ConcurrentLinkedQueue<>();
+        sketch          = new FrequencySketch();
+        timerWheel      = expiration == null ? null : new TimerWheel<>(ticker.getAsLong());
+        window          = new AccessOrderQueue<>();
+        probation       = new AccessOrderQueue<>();
+        protectedQueue  = new AccessOrderQueue<>();
+        windowMax       = Math.max(1, maxWeight / WINDOW_RATIO);
+        protectedMax    = (maxWeight - windowMax) * PROTECTED_PERCENT / PERCENT;
+        windowWeight    = 0;
+        protectedWeight = 0;
+        weight          = 0;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Run pending maintenance: replay buffered reads and writes, expire and evict entries. */
+    public final void cleanUp() {
+        drain(true);
+    }
+
+    /** Clear the cache, counting removed entries as evicted. */
+    public final void evictAll() {
+        evictionLock.lock();
+        try {
+            maintenance();
+            for (Node<K, V> node = window.peekFirst(); node != null; node = window.peekFirst())
+                evict(node);
+            for (Node<K, V> node = probation.peekFirst(); node != null; node = probation.peekFirst())
+                evict(node);
+            for (Node<K, V> node = protectedQueue.peekFirst(); node != null; node = protectedQueue.peekFirst())
+                evict(node);
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /** Returns the number of values that have been evicted (or expired). */
+    public final int evictionCount() {
+        return (int) evictionCount.sum();
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache or can be loaded by {@code #load}.
+     */
+    @Nullable public final V find(@NotNull K key, @NotNull Function<K, V> load) {
+        final V mapValue = get(key);
+        if (mapValue != null) return mapValue;
+
+        final V value = load.apply(key);
+        if (value == null) return null;
+        loadedCount.increment();
+
+        final Node<K, V> node = new Node<>(key, value, weigher.applyAsInt(value), expiresAt(value));
+        for (;;) {
+            final Node<K, V> prior = map.putIfAbsent(key, node);
+            if (prior == null) {
+                afterWrite(() -> onAdd(node));
+                return value;
+            }
+            // There was a conflict, keep the prior value unless it is expired
+            final V priorValue = prior.value;
+            if (!isExpired(prior)) {
+                afterRead(prior);
+                return priorValue;
+            }
+            expire(prior);
+        }
+    }
+
+    /** Returns the value for {@code key} if it exists in the cache. */
+    @Nullable public final V get(@NotNull K key) {
+        final Node<K, V> node = map.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        final V value = node.value;
+        if (isExpired(node)) {
+            missCount.increment();
+            expire(node);
+            return null;
+        }
+        hitCount.increment();
+        afterRead(node);
+        return value;
+    }
+
+    /** Returns the number of times {@link #find} returned a value. */
+    public final int hitCount() {
+        return (int) hitCount.sum();
+    }
+
+    /** Returns the number of times load is invoked and return a value. */
+    public final int loadedCount() {
+        return (int) loadedCount.sum();
+    }
+
+    /**
+     * Returns the number of times {@link #find} returned null or required a new value to be loaded.
+     */
+    public final int missCount() {
+        return (int) missCount.sum();
+    }
+
+    /**
+     * Caches {@code value} for {@code key}.
+     *
+     * @return  the previous value mapped by {@code key}.
+     */
+    @Nullable public final V put(@NotNull K key, @NotNull V value) {
+        putCount.increment();
+        final int  valueWeight = weigher.applyAsInt(value);
+        final long expiresAt   = expiresAt(value);
+        for (;;) {
+            Node<K, V> prior = map.get(key);
+            if (prior == null) {
+                final Node<K, V> node = new Node<>(key, value, valueWeight, expiresAt);
+                prior = map.putIfAbsent(key, node);
+                if (prior == null) {
+                    afterWrite(() -> onAdd(node));
+                    return null;
+                }
+            }
+
+            final V previous;
+            synchronized (prior) {
+                // Retired concurrently, retry on the new mapping
+                if (!prior.alive) continue;
+                previous        = prior.value;
+                prior.value     = value;
+                prior.weight    = valueWeight;
+                prior.expiresAt = expiresAt;
+            }
+            final Node<K, V> updated = prior;
+            afterWrite(() -> onUpdate(updated));
+            return previous;
+        }
+    }
+
+    /** Returns the number of times {@link #put} was called. */
+    public final int putCount() {
+        return (int) putCount.sum();
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return  the previous value mapped by {@code key}.
+     */
+    @Nullable public final V remove(@NotNull K key) {
+        for (;;) {
+            final Node<K, V> node = map.get(key);
+            if (node == null) return null;
+            if (retire(node)) {
+                afterWrite(() -> onRemove(node));
+                return node.value;
+            }
+        }
+    }
+
+    /** The number of entries (including expired entries not yet removed). */
+    public final int size() {
+        return map.size();
+    }
+
+    /** return an string with cache stats. */
+    public String stats() {
+        final int hits       = hitCount();
+        final int accesses   = hits + missCount();
+        final int hitPercent = accesses != 0 ? (100 * hits / accesses) : 0;
+        return String.format("maxSize=%d,hits=%d,misses=%d,hitRate=%d%%", maxWeight, hits, accesses - hits, hitPercent);
+    }
+
+    @Override public final String toString() {
+        return "ConcurrentLruCache[" + stats() + "]";
+    }
+
+    /** Returns the maximum weight of the cache. */
+    public final int getMaxWeight() {
+        return maxWeight;
+    }
+
+    /** Returns the current cache weight (as of the last maintenance). */
+    public final int getWeight() {
+        return (int) weight;
+    }
+
+    /** Record a hit, draining buffers if its stripe is full. */
+    private void afterRead(@NotNull Node<K, V> node) {
+        if (!readBuffer.offer(node)) drain(false);
+    }
+
+    /** Queue a write task and drain buffers. */
+    private void afterWrite(@NotNull Runnable task) {
+        writeBuffer.add(task);
+        drain(false);
+    }
+
+    /**
+     * Run maintenance under the eviction lock (skipped if the lock is held by another thread, that
+     * will drain the tasks queued meanwhile before leaving).
+     */
+    private void drain(boolean wait) {
+        boolean force = wait;
+        do {
+            if (force) evictionLock.lock();
+            else if (!evictionLock.tryLock()) return;
+            try {
+                maintenance();
+            }
+            finally {
+                evictionLock.unlock();
+            }
+            force = false;
+        }
+        while (!writeBuffer.isEmpty());
+    }
+
+    /** Evict the given entry, removing it from the map (if still mapped) and the policy. */
+    private boolean evict(@NotNull Node<K, V> node) {
+        if (retire(node)) evictionCount.increment();
+        unlink(node);
+        return true;
+    }
+
+    /** Evict the entries exceeding the maximum weight, admitting window candidates by frequency. */
+    private void evictEntries() {
+        // Entries overflowing the window become candidates at the back of probation
+        Node<K, V> candidate = null;
+        while (windowWeight > windowMax) {
+            final Node<K, V> node = window.peekFirst();
+            if (node == null) break;
+            window.remove(node);
+            windowWeight -= node.policyWeight;
+            node.queue   =  PROBATION;
+            probation.addLast(node);
+            if (candidate == null) candidate = node;
+        }
+
+        while (weight > maxWeight) {
+            final Node<K, V> first  = probation.peekFirst();
+            final Node<K, V> victim = first != null && first != candidate ? first : protectedQueue.peekFirst();
+
+            if (candidate == null) {
+                // No candidates, evict the least recently used entry
+                final Node<K, V> lru = first != null ? first : victim != null ? victim : window.peekFirst();
+                if (lru == null) break;
+                evict(lru);
+            }
+            else if (victim == null || candidate.policyWeight > maxWeight || !admit(candidate.key, victim.key, sketch)) {
+                final Node<K, V> next = probation.next(candidate);
+                evict(candidate);
+                candidate = next;
+            }
+            else evict(victim);
+        }
+    }
+
+    /** Remove an expired entry found by a reader. */
+    private void expire(@NotNull Node<K, V> node) {
+        if (retire(node)) {
+            evictionCount.increment();
+            afterWrite(() -> onRemove(node));
+        }
+    }
+
+    private long expiresAt(@NotNull V value) {
+        return expiration == null ? Long.MAX_VALUE : expiration.applyAsLong(value);
+    }
+
+    /** Replay buffered reads and writes, then expire and evict entries. */
+    private void maintenance() {
+        sketch.ensureCapacity(Math.min(maxWeight, map.size()));
+        readBuffer.drain(this::onAccess);
+        for (Runnable task = writeBuffer.poll(); task != null; task = writeBuffer.poll())
+            task.run();
+        if (timerWheel != null) timerWheel.advance(ticker.getAsLong(), this::evict);
+        evictEntries();
+    }
+
+    /** Move protected entries exceeding the segment maximum back to probation. */
+    private void demoteFromProtected() {
+        while (protectedWeight > protectedMax) {
+            final Node<K, V> node = protectedQueue.peekFirst();
+            if (node == null) return;
+            protectedQueue.remove(node);
+            protectedWeight -= node.policyWeight;
+            node.queue      =  PROBATION;
+            probation.addLast(node);
+        }
+    }
+
+    private void onAccess(@NotNull Node<K, V> node) {
+        sketch.increment(node.key);
+        switch (node.queue) {
+        case WINDOW:
+            window.moveToBack(node);
+            break;
+        case PROBATION:
+            // Promote to protected segment
+            probation.remove(node);
+            node.queue      =  PROTECTED;
+            protectedWeight += node.policyWeight;
+            protectedQueue.addLast(node);
+            demoteFromProtected();
+            break;
+        case PROTECTED:
+            protectedQueue.moveToBack(node);
+            break;
+        default:
+            // Not (or no longer) linked
+        }
+    }
+
+    private void onAdd(@NotNull Node<K, V> node) {
+        // Skip entries removed before their addition was replayed
+        if (!node.alive || node.queue != NONE) return;
+        node.policyWeight =  node.weight;
+        node.queue        =  WINDOW;
+        weight            += node.policyWeight;
+        windowWeight      += node.policyWeight;
+        window.addLast(node);
+        sketch.increment(node.key);
+        if (timerWheel != null) timerWheel.schedule(node);
+    }
+
+    private void onRemove(@NotNull Node<K, V> node) {
+        unlink(node);
+    }
+
+    private void onUpdate(@NotNull Node<K, V> node) {
+        // Entries not linked yet take their current weight once added
+        if (node.queue == NONE) return;
+        final int delta = node.weight - node.policyWeight;
+        node.policyWeight =  node.weight;
+        weight            += delta;
+        if (node.queue == WINDOW) windowWeight += delta;
+        else if (node.queue == PROTECTED) protectedWeight += delta;
+        onAccess(node);
+        if (timerWheel != null) timerWheel.reschedule(node);
+    }
+
+    /** Atomically remove the given entry from the map (if still mapped to it), marking it dead. */
+    private boolean retire(@NotNull Node<K, V> node) {
+        final boolean[] removed = { false };
+        map.computeIfPresent(node.key, (k, current) -> {
+            if (current != node) return current;
+            synchronized (current) {
+                current.alive = false;
+            }
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /** Unlink the given entry from the policy (if linked). */
+    private void unlink(@NotNull Node<K, V> node) {
+        switch (node.queue) {
+        case WINDOW:
+            window.remove(node);
+            windowWeight -= node.policyWeight;
+            break;
+        case PROBATION:
+            probation.remove(node);
+            break;
+        case PROTECTED:
+            protectedQueue.remove(node);
+            protectedWeight -= node.policyWeight;
+            break;
+        default:
+            return;
+        }
+        weight     -= node.policyWeight;
+        node.queue =  NONE;
+        if (timerWheel != null) timerWheel.deschedule(node);
+    }
+
+    private boolean isExpired(@NotNull Node<K, V> node) {
+        return expiration != null && node.expiresAt <= ticker.getAsLong();
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Create a concurrent LRU cache. */
+    public static <K, V> ConcurrentLruCache<K, V> createConcurrentLruCache(int maxSize) {
+        return new Builder<K, V>().maxWeight(maxSize).build();
+    }
+
+    /**
+     * TinyLFU admission: the candidate replaces the victim if estimated more popular. Warm
+     * candidates are also randomly admitted, so an attacker cannot pin a victim by raising its
+     * frequency.
+     */
+    private static boolean admit(@NotNull Object candidate, @NotNull Object victim, @NotNull FrequencySketch sketch) {
+        final int candidateFrequency = sketch.frequency(candidate);
+        if (candidateFrequency > sketch.frequency(victim)) return true;
+        return candidateFrequency > WARM_FREQUENCY && (ThreadLocalRandom.current().nextInt() & ADMIT_RANDOM_MASK) == 0;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int ADMIT_RANDOM_MASK = 127;
+    private static final int PERCENT           = 100;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final int WARM_FREQUENCY    = 5;
+    private static final int WINDOW_RATIO      = 100;
+
+    private static final int NONE      = 0;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+    private static final int WINDOW    = 1;
+
+    //~ Inner Classes ................................................................................................................................
+
+    public static class Builder<K, V> {
+        private ToLongFunction<V> expiration = null;
+
+        private int              maxWeight = Integer.MAX_VALUE;
+        private LongSupplier     ticker    = DateTime::currentTimeMillis;
+        private ToIntFunction<V> weigher   = (v) -> 1;
+
+        /** Build the cache. */
+        public ConcurrentLruCache<K, V> build() {
+            return new ConcurrentLruCache<>(maxWeight, weigher, expiration, ticker);
+        }
+
+        /**
+         * Specifies the maximum weight of entries the cache may contain. either using the function
+         * specified with {@link #weigher}, or 1 per entry
+         */
+        public Builder<K, V> maxWeight(final int max) {
+            maxWeight = max;
+            return this;
+        }
+
+        /**
+         * Specifies the ticker used to calculate time (in milliseconds, as expiration is scheduled
+         * on wheels spanning seconds to days). By default it will use
+         * {@link System#currentTimeMillis()}
+         */
+        public Builder<K, V> ticker(LongSupplier tickerSupplier) {
+            ticker = tickerSupplier;
+            return this;
+        }
+
+        /** Specifies how to weight each entry. */
+        public Builder<K, V> weigher(ToIntFunction<V> weigherFunction) {
+            weigher = weigherFunction;
+            return this;
+        }
+
+        /** Specifies how to calculate the expiration for a given entry. */
+        public Builder<K, V> withExpiration(ToLongFunction<V> expirationFunction) {
+            expiration = expirationFunction;
+            return this;
+        }
+    }  // end class Builder
+
+    /** Doubly linked queue of entries in access order, least recently used first. */
+    private static final class AccessOrderQueue<K, V> {
+        private final Node<K, V> head = Node.sentinel();
+
+        private void addLast(@NotNull Node<K, V> node) {
+            node.prev      = head.prev;
+            node.next      = head;
+            head.prev.next = node;
+            head.prev      = node;
+        }
+
+        private void moveToBack(@NotNull Node<K, V> node) {
+            remove(node);
+            addLast(node);
+        }
+
+        /** Returns the entry following the given one, or null if it is the last. */
+        @Nullable private Node<K, V> next(@NotNull Node<K, V> node) {
+            return node.next == head ? null : node.next;
+        }
+
+        @Nullable private Node<K, V> peekFirst() {
+            return head.next == head ? null : head.next;
+        }
+
+        private void remove(@NotNull Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev      = null;
+            node.next      = null;
+        }
+    }
+
+    /**
+     * A cache entry. Value, weight and expiration are updated under the entry monitor, while the
+     * policy fields are guarded by the eviction lock.
+     */
+    static final class Node<K, V> {
+        volatile boolean alive;
+        volatile long    expiresAt;
+        final K          key;
+        Node<K, V>       next;
+        Node<K, V>       nextInTimer;
+        int              policyWeight;
+        Node<K, V>       prev;
+        Node<K, V>       prevInTimer;
+        int              queue;
+        volatile V       value;
+        volatile int     weight;
+
+        private Node(K key, V value, int weight, long expiresAt) {
+            this.key       = key;
+            this.value     = value;
+            this.weight    = weight;
+            this.expiresAt = expiresAt;
+            alive          = true;
+            queue          = NONE;
+            policyWeight   = 0;
+        }
+
+        /** Create a sentinel (self linked) node for queues and timer buckets. */
+        static <K, V> Node<K, V> sentinel() {
+            final Node<K, V> sentinel = new Node<>(null, null, 0, Long.MAX_VALUE);
+            sentinel.prev        = sentinel;
+            sentinel.next        = sentinel;
+            sentinel.prevInTimer = sentinel;
+            sentinel.nextInTimer = sentinel;
+            return sentinel;
+        }
+    }  // end class Node
+
+    /**
+     * Striped lossy ring buffers of reads: each thread offers on the stripe of its id, and reads
+     * are dropped while a stripe is full (the reader then drains all stripes).
+     */
+    private static final class ReadBuffer<E> {
+        private final AtomicReferenceArray<E> buffer;
+        private final AtomicLong[]            heads;
+        private final int                     mask;
+        private final AtomicLong[]            tails;
+
+        private ReadBuffer() {
+            final int stripes = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1, MAX_STRIPES);
+            mask   = stripes - 1;
+            buffer = new AtomicReferenceArray<>(stripes * STRIPE_SIZE);
+            heads  = new AtomicLong[stripes];
+            tails  = new AtomicLong[stripes];
+            for (int i = 0; i < stripes; i++) {
+                heads[i] = new AtomicLong();
+                tails[i] = new AtomicLong();
+            }
+        }
+
+        /** Consume all published reads (under the eviction lock). */
+        private void drain(@NotNull Consumer<E> consumer) {
+            for (int stripe = 0; stripe < heads.length; stripe++) {
+                final long tail = tails[stripe].get();
+                long       head = heads[stripe].get();
+                for (; head < tail; head++) {
+                    final int index = stripe * STRIPE_SIZE + (int) (head & STRIPE_MASK);
+                    final E   e     = buffer.get(index);
+                    // Slot claimed but not published yet
+                    if (e == null) break;
+                    buffer.lazySet(index, null);
+                    consumer.accept(e);
+                }
+                heads[stripe].lazySet(head);
+            }
+        }
+
+        /** Record a read, returns false if the stripe was full (read dropped). */
+        private boolean offer(@NotNull E e) {
+            final int  stripe = stripe();
+            final long tail   = tails[stripe].get();
+            if (tail - heads[stripe].get() >= STRIPE_SIZE) return false;
+            // Contended reads are dropped
+            if (tails[stripe].compareAndSet(tail, tail + 1)) buffer.lazySet(stripe * STRIPE_SIZE + (int) (tail & STRIPE_MASK), e);
+            return true;
+        }
+
+        private int stripe() {
+            final long id = Thread.currentThread().getId();
+            return (int) (id ^ (id >>> STRIPE_SHIFT)) * STRIPE_HASH & mask;
+        }
+
+        private static final int MAX_STRIPES  = 64;
+        private static final int STRIPE_HASH  = 0x9E3779B9;
+        private static final int STRIPE_MASK  = 15;
+        private static final int STRIPE_SHIFT = 16;
+        private static final int STRIPE_SIZE  = 16;
+    }  // end class ReadBuffer
+}  // end class ConcurrentLruCache
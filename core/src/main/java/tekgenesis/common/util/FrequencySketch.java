@@ -0,0 +1,118 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Count-Min sketch estimating the popularity of keys within a time window, as used by TinyLFU
+ * admission. Four 4 bit counters (a long holds sixteen) are incremented per key, and all of them
+ * are halved once the amount of increments reaches ten times the capacity, so old popularity
+ * fades. Not thread safe.
+ */
+final class FrequencySketch {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private int    sampleSize;
+    private int    size;
+    private long[] table;
+    private int    tableMask;
+
+    //~ Constructors .................................................................................................................................
+
+    FrequencySketch() {
+        table      = new long[1];
+        tableMask  = 0;
+        sampleSize = SAMPLE_FACTOR;
+        size       = 0;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Grow the sketch (forgetting all frequencies) if it is smaller than the given capacity. */
+    void ensureCapacity(long capacity) {
+        final int maximum = (int) Math.min(Math.max(capacity, 1), MAX_CAPACITY);
+        if (table.length >= maximum) return;
+        table      = new long[Integer.highestOneBit(maximum - 1) << 1];
+        tableMask  = table.length - 1;
+        sampleSize = SAMPLE_FACTOR * maximum;
+        size       = 0;
+    }
+
+    /** Returns the estimated frequency of the given key (up to 15). */
+    int frequency(@NotNull Object key) {
+        final int hash  = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        int       freq  = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int count = (int) ((table[indexOf(hash, i)] >>> ((start + i) << 2)) & COUNTER_MASK);
+            freq = Math.min(freq, count);
+        }
+        return freq;
+    }
+
+    /** Increment the popularity of the given key, aging all keys once the sample size is reached. */
+    void increment(@NotNull Object key) {
+        final int hash  = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        boolean   added = false;
+        for (int i = 0; i < SEEDS.length; i++)
+            added |= incrementAt(indexOf(hash, i), start + i);
+        if (added && ++size >= sampleSize) reset();
+    }
+
+    /** Increment the counter at given table index and counter offset, unless saturated. */
+    private boolean incrementAt(int index, int counter) {
+        final int  offset = counter << 2;
+        final long mask   = COUNTER_MASK << offset;
+        if ((table[index] & mask) == mask) return false;
+        table[index] += 1L << offset;
+        return true;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    /** Halve all counters, adjusting size for the truncated odd counters. */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd      += Long.bitCount(table[i] & ONE_MASK);
+            table[i] =  (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Apply a supplemental hash function to defend against poor quality hash codes. */
+    private static int spread(int hash) {
+        int x = ((hash >>> 16) ^ hash) * HASH_MULTIPLIER;
+        x = ((x >>> 16) ^ x) * HASH_MULTIPLIER;
+        return (x >>> 16) ^ x;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final long COUNTER_MASK    = 0xfL;
+    private static final int  HASH_MULTIPLIER = 0x45d9f3b;
+    private static final int  MAX_CAPACITY    = 1 << 26;
+    private static final int  MAX_FREQUENCY   = 15;
+    private static final long ONE_MASK        = 0x1111111111111111L;
+    private static final long RESET_MASK      = 0x7777777777777777L;
+    private static final int  SAMPLE_FACTOR   = 10;
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+}  // end class FrequencySketch
@@ -10,8 +10,12 @@
 
 package tekgenesis.common.util;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.*;
 import java.util.function.Function;
 import java.util.function.LongSupplier;
@@ -22,7 +26,10 @@ import org.jetbrains.annotations.Nullable;
 import tekgenesis.common.core.*;
 
 /**
- * A Simple LruCache.
+ * A Simple LruCache. Concurrent misses of a key share a single in flight load, and entries may be
+ * refreshed asynchronously once older than {@link Builder#refreshAfterWrite a given time}. Entries
+ * evicted by weight may be moved to an {@link Builder#offHeap off heap tier}, and moved back on
+ * hits.
  */
 public class LruCache<K, V> {
 
@@ -35,31 +42,55 @@ public class LruCache<K, V> {
     private transient int putCount;
     private transient int evictionCount;
     private transient int hitCount;
+    private transient int loadFailureCount;
+    private transient long totalLoadTime;
     // Functions
     private final LongSupplier ticker;
     private final ToIntFunction<V> weigher;
     private final ToLongFunction<V> expiration;
     //J+
 
-    private final LinkedHashMap<K, V> map;
-    private final int                 maxWeight;
-    private int                       weight;  // Weight of this cache in units. Not necessarily the number of elements.
+    private final ConcurrentHashMap<K, Load<V>> loading;
+    private final LinkedHashMap<K, V>           map;
+    private final int                           maxWeight;
+    @Nullable private final OffHeapStore<K, V>  offHeap;
+    private final long                          refreshAfterWrite;
+    @NotNull private final Executor             refreshExecutor;
+    private final Map<K, V>                     spilling;  // Entries evicted from heap, being moved off heap
+    private int                                 weight;  // Weight of this cache in units. Not necessarily the number of elements.
+    @Nullable private final Map<K, Long>        writes;  // Write time of entries, only kept if refreshed
 
     //~ Constructors .................................................................................................................................
 
-    private LruCache(int maxWeight, ToIntFunction<V> weigher, @Nullable ToLongFunction<V> expiration, final LongSupplier ticker) {
-        this.maxWeight  = maxWeight;
-        map             = new LinkedHashMap<>(0, LOAD_FACTOR, true);
-        this.weigher    = weigher;
-        this.expiration = expiration;
-        this.ticker     = ticker;
+    private LruCache(int maxWeight, ToIntFunction<V> weigher, @Nullable ToLongFunction<V> expiration, final LongSupplier ticker,
+                     long refreshAfterWrite, @NotNull Executor refreshExecutor, @Nullable OffHeapStore<K, V> offHeap) {
+        this.maxWeight         = maxWeight;
+        map                    = new LinkedHashMap<>(0, LOAD_FACTOR, true);
+        this.weigher           = weigher;
+        this.expiration        = expiration;
+        this.ticker            = ticker;
+        this.refreshAfterWrite = refreshAfterWrite;
+        this.refreshExecutor   = refreshExecutor;
+        this.offHeap           = offHeap;
+        loading                = new ConcurrentHashMap<>();
+        spilling               = new HashMap<>();
+        writes                 = refreshAfterWrite > 0 ? new HashMap<>() : null;
     }
 
     //~ Methods ......................................................................................................................................
 
     /** Clear the cache, calling {@link #entryRemoved} on each removed entry. */
     public final void evictAll() {
+        synchronized (this) {
+            // In flight loads won't be cached
+            for (final Load<V> load : loading.values())
+                load.invalidated = true;
+            for (final K key : spilling.keySet())
+                discarded(key);
+            spilling.clear();
+        }
         trimToWeight(-1);  // -1 will evict 0-sized elements
+        if (offHeap != null) offHeap.clear();
     }
 
     /** Returns the number of values that have been evicted. */
@@ -69,47 +100,121 @@ public class LruCache<K, V> {
 
     /**
      * Returns the value for {@code key} if it exists in the cache or can be loaded by {@code #load}.
+     * Concurrent misses of the same key wait for a single load. Hits on entries older than the
+     * refresh time trigger an asynchronous reload, returning the current value meanwhile. Values
+     * removed (or evicted) while loading are returned but not cached.
+     *
+     * @throws  IllegalStateException  if called by the loader of the same key
      */
     @Nullable public final V find(@NotNull K key, @NotNull Function<K, V> load) {
-        V mapValue = get(key);
-        if (mapValue != null) return mapValue;
+        final V mapValue = get(key);
+        if (mapValue != null) {
+            refreshIfStale(key, mapValue, load);
+            return mapValue;
+        }
 
-        /*
-         * Attempt to load a value.
-         */
-        final V value = load.apply(key);
-        if (value == null) return null;
+        final Load<V> future   = new Load<>(Thread.currentThread());
+        final Load<V> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) return join(key, inFlight);
+
+        try {
+            // Loaded by another thread since the miss
+            final V cached = peek(key);
+            final V value  = cached != null ? cached : loadValue(key, load);
+            final V result = value == null || cached != null ? value : insert(key, value, future);
+            future.complete(result);
+            return result;
+        }
+        catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            loading.remove(key, future);
+        }
+    }
 
+    /** Returns the value for {@code key} if it exists in the cache (moving it on heap if off heap). */
+    @Nullable public V get(@NotNull final K key) {
+        final V       value;
+        final boolean promoted;
+        final boolean hit;
+        final boolean offHeapHit;
         synchronized (this) {
-            loadedCount++;
-            mapValue = map.put(key, value);
-
-            if (mapValue == null) weight += weigher.applyAsInt(value);
-            else map.put(key, mapValue);  // There was a conflict so undo that last put
+            final V mapValue = map.get(key);
+            value      = mapValue != null ? mapValue : promote(key);
+            promoted   = mapValue == null && value != null;
+            hit        = isLive(value);
+            offHeapHit = value == null && offHeap != null && offHeap.containsKey(key);
+            if (hit) hitCount++;
+            else if (!offHeapHit) missCount++;
         }
+        if (offHeapHit) return promoteOffHeap(key);
+        // Spill the entries evicted by the promotion out of the lock
+        if (promoted) trimToWeight(maxWeight);
+        return hit ? value : null;
+    }
 
-        if (mapValue != null) return mapValue;
+    /**
+     * Returns the values for the given keys, loading all the missing ones with a single call to
+     * the bulk loader (keys being loaded by other threads are awaited instead). Keys without a
+     * value are not included in the result.
+     */
+    @NotNull public final Map<K, V> getAll(@NotNull Iterable<K> keys, @NotNull Function<Set<K>, Map<K, V>> bulkLoad) {
+        final Map<K, V>       result  = new LinkedHashMap<>();
+        final Map<K, Load<V>> owned   = new LinkedHashMap<>();
+        final Map<K, Load<V>> awaited = new LinkedHashMap<>();
+
+        for (final K key : keys) {
+            if (result.containsKey(key) || owned.containsKey(key) || awaited.containsKey(key)) continue;
+            final V value = get(key);
+            if (value != null) result.put(key, value);
+            else {
+                final Load<V> future   = new Load<>(Thread.currentThread());
+                final Load<V> inFlight = loading.putIfAbsent(key, future);
+                if (inFlight != null) awaited.put(key, inFlight);
+                else owned.put(key, future);
+            }
+        }
 
-        trimToWeight(maxWeight);
-        return value;
-    }
+        if (!owned.isEmpty()) {
+            try {
+                final Map<K, V> loaded = loadAll(owned.keySet(), bulkLoad);
+                for (final Map.Entry<K, Load<V>> entry : owned.entrySet()) {
+                    final V value = loaded.get(entry.getKey());
+                    final V kept  = value == null ? null : insert(entry.getKey(), value, entry.getValue());
+                    if (kept != null) result.put(entry.getKey(), kept);
+                    entry.getValue().complete(kept);
+                }
+            }
+            catch (RuntimeException | Error e) {
+                for (final Load<V> future : owned.values())
+                    future.completeExceptionally(e);
+                throw e;
+            }
+            finally {
+                for (final Map.Entry<K, Load<V>> entry : owned.entrySet())
+                    loading.remove(entry.getKey(), entry.getValue());
+            }
+        }
 
-    /** Returns the value for {@code key} if it exists in the cache. */
-    @Nullable public synchronized V get(@NotNull final K key) {
-        final V mapValue = map.get(key);
-        if (mapValue != null && (expiration == null || expiration.applyAsLong(mapValue) > ticker.getAsLong())) {
-            hitCount++;
-            return mapValue;
+        for (final Map.Entry<K, Load<V>> entry : awaited.entrySet()) {
+            final V value = join(entry.getKey(), entry.getValue());
+            if (value != null) result.put(entry.getKey(), value);
         }
-        missCount++;
-        return null;
-    }
+        return result;
+    }  // end method getAll
 
     /** Returns the number of times {@link #find} returned a value. */
     public final synchronized int hitCount() {
         return hitCount;
     }
 
+    /** Returns the number of times a load (or refresh) failed with an exception. */
+    public final synchronized int loadFailureCount() {
+        return loadFailureCount;
+    }
+
     /** Returns the number of times load is invoked and return a value. */
     public final synchronized int loadedCount() {
         return loadedCount;
@@ -128,15 +233,19 @@ public class LruCache<K, V> {
      * @return  the previous value mapped by {@code key}.
      */
     @Nullable public final V put(@NotNull K key, @NotNull V value) {
-        final V previous;
+        final V      previous;
+        final byte[] spilled;
         synchronized (this) {
             putCount++;
-            weight   += weigher.applyAsInt(value);
-            previous = map.put(key, value);
-            if (previous != null) weight -= weigher.applyAsInt(previous);
+            weight += weigher.applyAsInt(value);
+            final V mapValue = map.put(key, value);
+            if (mapValue != null) weight -= weigher.applyAsInt(mapValue);
+            previous = mapValue != null ? mapValue : removeSpilling(key);
+            spilled  = previous != null ? null : takeOffHeap(key);
+            written(key);
         }
         trimToWeight(maxWeight);
-        return previous;
+        return previous != null ? previous : decode(spilled);
     }
 
     /** Returns the number of times {@link #put} was called. */
@@ -145,27 +254,34 @@ public class LruCache<K, V> {
     }
 
     /**
-     * Removes the entry for {@code key} if it exists.
+     * Removes the entry for {@code key} if it exists. A value being loaded for the key won't be
+     * cached.
      *
      * @return  the previous value mapped by {@code key}.
      */
     @Nullable public final V remove(@NotNull K key) {
-        final V previous;
+        final V      previous;
+        final byte[] spilled;
         synchronized (this) {
-            previous = map.remove(key);
-            if (previous != null) weight -= weigher.applyAsInt(previous);
+            final V mapValue = map.remove(key);
+            if (mapValue != null) weight -= weigher.applyAsInt(mapValue);
+            previous = mapValue != null ? mapValue : removeSpilling(key);
+            spilled  = previous != null ? null : takeOffHeap(key);
+            discarded(key);
+            final Load<V> load = loading.get(key);
+            if (load != null) load.invalidated = true;
         }
-        return previous;
+        return previous != null ? previous : decode(spilled);
     }
 
-    /** The number of entries. */
+    /** The number of entries (on heap and off heap). */
     public final synchronized int size() {
-        return map.size();
+        return offHeap == null ? map.size() : map.size() + spilling.size() + offHeap.size();
     }
 
     /**
-     * Returns a copy of the current contents of the cache, ordered from least recently accessed to
-     * most recently accessed.
+     * Returns a copy of the current (on heap) contents of the cache, ordered from least recently
+     * accessed to most recently accessed.
      */
     public final synchronized Map<K, V> snapshot() {
         return new LinkedHashMap<>(map);
@@ -178,41 +294,288 @@ public class LruCache<K, V> {
         return String.format("maxSize=%d,hits=%d,misses=%d,hitRate=%d%%", maxWeight, hitCount, missCount, hitPercent);
     }
 
+    /** Returns the total time (in nanoseconds) spent loading and refreshing values. */
+    public final synchronized long totalLoadTime() {
+        return totalLoadTime;
+    }
+
     @Override public final synchronized String toString() {
         return "LruCache[" + stats() + "]";
     }
 
     /**
      * Remove the eldest entries until the total of remaining entries is at or below the requested
-     * size.
+     * size. Removed entries are moved to the off heap tier (if any), unless expired or evicting
+     * all. Entries are serialized out of the cache lock, hits meanwhile move them back on heap.
      *
      * @param  max  the maximum size of the cache before returning. May be -1 to evict even 0-sized
      *              elements.
      */
-    public synchronized void trimToWeight(int max) {
-        if (weight <= max) return;
+    public void trimToWeight(int max) {
+        final List<Map.Entry<K, V>> spills = evict(max);
+        if (offHeap == null || spills.isEmpty()) return;
+
+        for (final Map.Entry<K, V> entry : spills) {
+            final K                       key     = entry.getKey();
+            final OffHeapStore.Encoded<K> encoded = offHeap.encode(key, entry.getValue());
+            synchronized (this) {
+                // Promoted, removed or replaced while encoding
+                if (spilling.get(key) != entry.getValue()) continue;
+                spilling.remove(key);
+                if (!offHeap.put(encoded)) {
+                    discarded(key);
+                    evictionCount++;
+                }
+            }
+        }
+    }
+
+    /** Returns the maximum weight of the cache. */
+    public final int getMaxWeight() {
+        return maxWeight;
+    }
+
+    /** Returns the off heap tier of the cache (if any). */
+    @Nullable public final OffHeapStore<K, V> getOffHeap() {
+        return offHeap;
+    }
+
+    /** Returns the current (on heap) cache weight. */
+    public final synchronized int getWeight() {
+        return weight;
+    }
+
+    /** Deserialize a value taken out of the off heap tier (if any). */
+    @Nullable private V decode(@Nullable byte[] spilled) {
+        return spilled == null || offHeap == null ? null : offHeap.decode(spilled);
+    }
+
+    /** Forget write time of a removed entry. */
+    private void discarded(@NotNull K key) {
+        if (writes != null) writes.remove(key);
+    }
+
+    /**
+     * Remove the eldest entries down to the given weight. Returns the ones to be moved off heap,
+     * kept meanwhile as spilling entries (with their write time).
+     */
+    @NotNull private synchronized List<Map.Entry<K, V>> evict(int max) {
+        if (weight <= max) return Collections.emptyList();
         if (expiration != null) {
             final long current = ticker.getAsLong();
-            map.values().removeIf(v -> expiration.applyAsLong(v) <= current);
+            map.entrySet().removeIf(e -> {
+                final boolean expired = expiration.applyAsLong(e.getValue()) <= current;
+                if (expired) discarded(e.getKey());
+                return expired;
+            });
         }
+        final List<Map.Entry<K, V>> spills = new ArrayList<>();
         while (weight > max && !map.isEmpty()) {
             final Map.Entry<K, V> toEvict = map.entrySet().iterator().next();
             final K               key     = toEvict.getKey();
             final V               value   = toEvict.getValue();
             map.remove(key);
             weight -= weigher.applyAsInt(value);
-            evictionCount++;
+            if (offHeap == null || max < 0) {
+                discarded(key);
+                evictionCount++;
+            }
+            else {
+                spilling.put(key, value);
+                spills.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+            }
         }
+        // Forget write times of the entries evicted by the off heap tier
+        if (offHeap != null && writes != null && writes.size() > 2 * (map.size() + spilling.size() + offHeap.size()))
+            writes.keySet().removeIf(key -> !map.containsKey(key) && !spilling.containsKey(key) && !offHeap.containsKey(key));
+        return spills;
     }
 
-    /** Returns the maximum weight of the cache. */
-    public final int getMaxWeight() {
-        return maxWeight;
+    /** Insert a loaded value, unless there was a conflict (or it was invalidated). Returns the value kept. */
+    @NotNull private V insert(@NotNull K key, @NotNull V value, @NotNull Load<V> load) {
+        final V mapValue;
+        synchronized (this) {
+            if (load.invalidated) return value;
+            mapValue = map.put(key, value);
+
+            if (mapValue == null) {
+                weight += weigher.applyAsInt(value);
+                written(key);
+                if (offHeap != null) {
+                    spilling.remove(key);
+                    offHeap.delete(key);
+                }
+            }
+            else map.put(key, mapValue);  // There was a conflict so undo that last put
+        }
+
+        if (mapValue != null) return mapValue;
+
+        trimToWeight(maxWeight);
+        return value;
     }
 
-    /** Returns the current cache weight. */
-    public final synchronized int getWeight() {
-        return weight;
+    /** Returns true if the value is cached and not expired. */
+    private boolean isLive(@Nullable V value) {
+        return value != null && (expiration == null || expiration.applyAsLong(value) > ticker.getAsLong());
+    }
+
+    /** Call bulk loader recording load statistics. */
+    @NotNull private Map<K, V> loadAll(@NotNull Set<K> keys, @NotNull Function<Set<K>, Map<K, V>> bulkLoad) {
+        final long start = System.nanoTime();
+        try {
+            final Map<K, V> values = bulkLoad.apply(Collections.unmodifiableSet(keys));
+            int             loaded = 0;
+            for (final K key : keys)
+                if (values.get(key) != null) loaded++;
+            recordLoad(start, loaded, false);
+            return values;
+        }
+        catch (RuntimeException | Error e) {
+            recordLoad(start, 0, true);
+            throw e;
+        }
+    }
+
+    /** Call loader recording load statistics. */
+    @Nullable private V loadValue(@NotNull K key, @NotNull Function<K, V> load) {
+        final long start = System.nanoTime();
+        try {
+            final V value = load.apply(key);
+            recordLoad(start, value == null ? 0 : 1, false);
+            return value;
+        }
+        catch (RuntimeException | Error e) {
+            recordLoad(start, 0, true);
+            throw e;
+        }
+    }
+
+    /** Returns the cached value (if not expired) without recording stats. */
+    @Nullable private synchronized V peek(@NotNull K key) {
+        final V mapValue = map.get(key);
+        return isLive(mapValue) ? mapValue : null;
+    }
+
+    /**
+     * Move the entry on heap from the spilling entries (if there), keeping its write time. Callers
+     * must trim the cache afterwards.
+     */
+    @Nullable private V promote(@NotNull K key) {
+        final V value = removeSpilling(key);
+        if (value != null) {
+            map.put(key, value);
+            weight += weigher.applyAsInt(value);
+        }
+        return value;
+    }
+
+    /**
+     * Move the entry on heap from the off heap tier, deserializing it out of the lock. If the entry
+     * changed while deserializing, the lookup is retried. Records the hit or miss.
+     */
+    @Nullable private V promoteOffHeap(@NotNull K key) {
+        final OffHeapStore<K, V> store = offHeap;
+        if (store == null) return null;
+        byte[] spilled = store.read(key);
+        while (true) {
+            final V       decoded = spilled == null ? null : store.decode(spilled);
+            final V       value;
+            final boolean promoted;
+            final boolean hit;
+            synchronized (this) {
+                final V mapValue = map.get(key);
+                if (mapValue != null || spilled == null) {
+                    // Promoted or put while deserializing (or no longer off heap)
+                    value    = mapValue != null ? mapValue : promote(key);
+                    promoted = mapValue == null && value != null;
+                }
+                else if (store.delete(key, spilled)) {
+                    map.put(key, decoded);
+                    weight   += weigher.applyAsInt(decoded);
+                    value    = decoded;
+                    promoted = true;
+                }
+                else {
+                    // Replaced or removed off heap while deserializing
+                    spilled = store.read(key);
+                    continue;
+                }
+                hit = isLive(value);
+                if (hit) hitCount++;
+                else missCount++;
+            }
+            // Spill the entries evicted by the promotion out of the lock
+            if (promoted) trimToWeight(maxWeight);
+            return hit ? value : null;
+        }
+    }
+
+    private synchronized void recordLoad(long start, int loaded, boolean failed) {
+        totalLoadTime += System.nanoTime() - start;
+        loadedCount   += loaded;
+        if (failed) loadFailureCount++;
+    }
+
+    /** Reload the entry asynchronously if written before the refresh time (unless already loading). */
+    private void refreshIfStale(@NotNull K key, @NotNull V stale, @NotNull Function<K, V> load) {
+        if (writes == null) return;
+        synchronized (this) {
+            final Long written = writes.get(key);
+            if (written == null || ticker.getAsLong() - written < refreshAfterWrite) return;
+        }
+
+        final Load<V> future = new Load<>(null);
+        if (loading.putIfAbsent(key, future) != null) return;
+
+        try {
+            refreshExecutor.execute(() -> {
+                future.loader = Thread.currentThread();
+                try {
+                    final V value = loadValue(key, load);
+                    future.complete(value == null ? null : replace(key, stale, value, future));
+                }
+                catch (final Throwable e) {
+                    future.completeExceptionally(e);
+                }
+                finally {
+                    loading.remove(key, future);
+                }
+            });
+        }
+        catch (final RuntimeException e) {
+            // Rejected, try again on next hit
+            loading.remove(key, future);
+            future.complete(stale);
+        }
+    }
+
+    /** Remove the entry from the spilling entries (if there). */
+    @Nullable private V removeSpilling(@NotNull K key) {
+        return offHeap == null ? null : spilling.remove(key);
+    }
+
+    /** Replace a refreshed value, unless removed or replaced since. Returns the value kept. */
+    @Nullable private V replace(@NotNull K key, @NotNull V stale, @NotNull V value, @NotNull Load<V> load) {
+        synchronized (this) {
+            final V current = map.get(key);
+            if (current != stale || load.invalidated) return current;
+            map.put(key, value);
+            weight += weigher.applyAsInt(value) - weigher.applyAsInt(stale);
+            written(key);
+        }
+        trimToWeight(maxWeight);
+        return value;
+    }
+
+    /** Remove the entry from the off heap tier (if there), returning its serialized value. */
+    @Nullable private byte[] takeOffHeap(@NotNull K key) {
+        return offHeap == null ? null : offHeap.take(key);
+    }
+
+    /** Record write time of an entry (if refreshed). */
+    private void written(@NotNull K key) {
+        if (writes != null) writes.put(key, ticker.getAsLong());
     }
 
     //~ Methods ......................................................................................................................................
@@ -222,6 +585,21 @@ public class LruCache<K, V> {
         return new Builder<K, V>().maxWeight(maxSize).build();
     }
 
+    /** Wait for an in flight load, rethrowing its failure. */
+    @Nullable private static <V> V join(@NotNull Object key, @NotNull Load<V> future) {
+        // The load would wait for itself
+        if (future.loader == Thread.currentThread()) throw new IllegalStateException("Recursive load of key " + key);
+        try {
+            return future.join();
+        }
+        catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
     //~ Static Fields ................................................................................................................................
 
     private static final long serialVersionUID = 1118368051004454450L;
@@ -230,16 +608,30 @@ public class LruCache<K, V> {
 
     //~ Inner Classes ................................................................................................................................
 
+    /** In flight load of a key, by the given thread (once started). */
+    private static class Load<V> extends CompletableFuture<V> {
+        volatile boolean          invalidated;
+        @Nullable volatile Thread loader;
+
+        private Load(@Nullable Thread loader) {
+            this.loader = loader;
+            invalidated = false;
+        }
+    }
+
     public static class Builder<K, V> {
         private ToLongFunction<V> expiration = null;
 
-        private int              maxWeight = Integer.MAX_VALUE;
-        private LongSupplier     ticker    = DateTime::currentTimeMillis;
-        private ToIntFunction<V> weigher   = (v) -> 1;
+        private int                maxWeight         = Integer.MAX_VALUE;
+        private OffHeapStore<K, V> offHeap           = null;
+        private long               refreshAfterWrite = 0;
+        private Executor           refreshExecutor   = ForkJoinPool.commonPool();
+        private LongSupplier       ticker            = DateTime::currentTimeMillis;
+        private ToIntFunction<V>   weigher           = (v) -> 1;
 
         /** Build the cache. */
         public LruCache<K, V> build() {
-            return new LruCache<>(maxWeight, weigher, expiration, ticker);
+            return new LruCache<>(maxWeight, weigher, expiration, ticker, refreshAfterWrite, refreshExecutor, offHeap);
         }
 
         /**
@@ -251,6 +643,31 @@ public class LruCache<K, V> {
             return this;
         }
 
+        /**
+         * Specifies an off heap tier: entries evicted by weight are serialized into the store, and
+         * moved back on heap on hits. The store evicts by its own capacity in serialized bytes.
+         */
+        public Builder<K, V> offHeap(@NotNull OffHeapStore<K, V> store) {
+            offHeap = store;
+            return this;
+        }
+
+        /**
+         * Specifies the time (in ticker units) after an entry is written when hits on it reload it
+         * asynchronously with the {@link LruCache#find} loader, so hot entries are refreshed before they
+         * expire. Disabled by default.
+         */
+        public Builder<K, V> refreshAfterWrite(final long duration) {
+            refreshAfterWrite = duration;
+            return this;
+        }
+
+        /** Specifies the executor running refreshes. By default the common fork join pool. */
+        public Builder<K, V> refreshExecutor(@NotNull Executor executor) {
+            refreshExecutor = executor;
+            return this;
+        }
+
         /**
          * Specifies the ticker used to calculate time. By default it will use
          * {@link System#currentTimeMillis()}
@@ -0,0 +1,550 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.logging.Logger;
+import tekgenesis.common.serializer.ByteBufferStreamReader;
+import tekgenesis.common.serializer.ByteBufferStreamWriter;
+import tekgenesis.common.serializer.StreamReader;
+import tekgenesis.common.serializer.StreamWriter;
+
+import static tekgenesis.common.Predefined.checkArgument;
+
+/**
+ * Off heap LRU storage of serialized entries, usually the second tier of an {@link LruCache} (see
+ * {@link LruCache.Builder#offHeap}). Keys and values are encoded with {@link StreamWriter} and
+ * decoded with {@link StreamReader} functions, and stored in fixed size slabs of direct memory (or
+ * of a memory mapped file). Each slab is split into chunks of a size class (powers of two), and an
+ * entry takes a chunk of the smallest class fitting its serialized bytes (so the store weight is
+ * the sum of serialized bytes). When there is no free chunk of a class, the least recently used
+ * entry of the class is evicted, or if the class has no entries, a slab of the class with most
+ * slabs is reassigned. Entries bigger than a slab are not stored.
+ *
+ * <p>Entries of a file backed store are kept across restarts: entries found in the file are
+ * loaded on creation (keys are kept on heap, in arbitrary LRU order). Note that as the tier of an
+ * {@link LruCache} the store only holds the entries evicted from heap (hits move them back on
+ * heap), so the entries on heap when the vm stops are not kept. Thread safe.</p>
+ */
+public class OffHeapStore<K, V> implements Closeable {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final SizeClass[]                          classes;
+    @Nullable private final FileChannel                file;
+    private final Map<K, Integer>                      index;      // Size class of each key
+    @NotNull private final Function<StreamReader, K>   keyReader;
+    @NotNull private final BiConsumer<StreamWriter, K> keyWriter;
+    private final int[]                                slabClass;  // Size class of each slab (-1 if free)
+    private final ByteBuffer[]                         slabs;
+    private final int                                  slabSize;
+    @NotNull private final Function<StreamReader, V>   valueReader;
+    @NotNull private final BiConsumer<StreamWriter, V> valueWriter;
+
+    //J-
+    private final ThreadLocal<ByteBufferStreamWriter> scratch = ThreadLocal.withInitial(ByteBufferStreamWriter::new);
+    private int evictionCount;
+    private int rejectedCount;
+    private long weight;
+    //J+
+
+    //~ Constructors .................................................................................................................................
+
+    private OffHeapStore(@NotNull Builder<K, V> builder) {
+        checkArgument(builder.slabSize > SLAB_HEADER + ENTRY_HEADER + MIN_CHUNK, "Slab size too small");
+        checkArgument(builder.capacity >= builder.slabSize, "Capacity must hold at least one slab");
+        checkArgument(builder.capacity / builder.slabSize <= Integer.MAX_VALUE, "Too many slabs");
+
+        keyWriter   = builder.keyWriter;
+        keyReader   = builder.keyReader;
+        valueWriter = builder.valueWriter;
+        valueReader = builder.valueReader;
+        slabSize    = builder.slabSize;
+        slabs       = new ByteBuffer[(int) (builder.capacity / slabSize)];
+        slabClass   = new int[slabs.length];
+        Arrays.fill(slabClass, -1);
+        classes     = createClasses();
+        index       = new HashMap<>();
+        file        = builder.file == null ? null : open(builder.file);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Remove all entries (direct slabs are dropped, to be reclaimed by the garbage collector). */
+    public synchronized void clear() {
+        for (int slab = 0; slab < slabs.length; slab++)
+            if (slabClass[slab] != -1) releaseSlab(slab);
+        if (file == null) Arrays.fill(slabs, null);
+        for (final SizeClass c : classes) {
+            c.entries.clear();
+            c.free.clear();
+            c.slabs = 0;
+        }
+        index.clear();
+        weight = 0;
+    }
+
+    /** Flush (if file backed) the entries to the file and close it. */
+    @Override public synchronized void close()
+        throws IOException
+    {
+        flush();
+        if (file != null) file.close();
+    }
+
+    /** Returns true if there is an entry for the given key. */
+    public synchronized boolean containsKey(@NotNull K key) {
+        return index.containsKey(key);
+    }
+
+    /** Removes the entry for the given key (without decoding it). Returns true if there was one. */
+    public synchronized boolean delete(@NotNull K key) {
+        final Integer c = index.remove(key);
+        if (c == null) return false;
+        release(classes[c], classes[c].entries.remove(key));
+        return true;
+    }
+
+    /** Returns the number of entries evicted to make room for others. */
+    public synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    /** Write (if file backed) the entries to the storage device. */
+    public synchronized void flush() {
+        if (file == null) return;
+        for (final ByteBuffer slab : slabs)
+            if (slab instanceof MappedByteBuffer) ((MappedByteBuffer) slab).force();
+    }
+
+    /** Returns the value for the given key (marking it as recently used), or null if none. */
+    @Nullable public V get(@NotNull K key) {
+        final byte[] value = read(key);
+        return value == null ? null : decode(value);
+    }
+
+    /**
+     * Stores the value for the given key, replacing the previous one (if any). Returns false if the
+     * entry serialized is bigger than a slab (and then it is not stored).
+     */
+    public boolean put(@NotNull K key, @NotNull V value) {
+        return put(encode(key, value));
+    }
+
+    /** Returns the number of entries not stored because they were bigger than a slab. */
+    public synchronized int rejectedCount() {
+        return rejectedCount;
+    }
+
+    /** Removes the entry for the given key, returning its value (or null if none). */
+    @Nullable public V remove(@NotNull K key) {
+        final byte[] value = take(key);
+        return value == null ? null : decode(value);
+    }
+
+    /** Returns the number of entries. */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /** Returns the capacity in bytes. */
+    public long getCapacity() {
+        return (long) slabs.length * slabSize;
+    }
+
+    /** Returns the serialized bytes of the entries (headers included). */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Deserialize a value {@link #read} from (or {@link #take taken} out of) the store. The store is
+     * not locked, so callers may deserialize values out of their own locks.
+     */
+    @NotNull V decode(@NotNull byte[] value) {
+        return valueReader.apply(new ByteBufferStreamReader(ByteBuffer.wrap(value)));
+    }
+
+    /** Removes the entry for the given key if its serialized value is the given one. */
+    synchronized boolean delete(@NotNull K key, @NotNull byte[] value) {
+        final Integer c = index.get(key);
+        if (c == null || !valueOf(classes[c].entries.get(key)).equals(ByteBuffer.wrap(value))) return false;
+        index.remove(key);
+        release(classes[c], classes[c].entries.remove(key));
+        return true;
+    }
+
+    /**
+     * Serialize the given entry, to be {@link #put(Encoded) stored} later. The store is not locked,
+     * so callers may serialize entries out of their own locks.
+     */
+    @NotNull Encoded<K> encode(@NotNull K key, @NotNull V value) {
+        final ByteBufferStreamWriter w = scratch.get().reset();
+        keyWriter.accept(w, key);
+        final int keyLength = w.getSize();
+        valueWriter.accept(w, value);
+        return new Encoded<>(key, keyLength, bytes(w.toByteBuffer()));
+    }
+
+    /** Stores an encoded entry, as {@link #put(Object, Object)}. */
+    synchronized boolean put(@NotNull Encoded<K> entry) {
+        delete(entry.key);
+
+        final int length = ENTRY_HEADER + entry.bytes.length;
+        final int c      = sizeClass(length);
+        if (c == -1) {
+            rejectedCount++;
+            return false;
+        }
+
+        final long       address = allocate(c);
+        final ByteBuffer chunk   = chunk(address);
+        chunk.putInt(ENTRY_KEY_LENGTH, entry.keyLength);
+        chunk.position(ENTRY_HEADER);
+        chunk.put(entry.bytes);
+        // Length last, so a partially written entry is free on restart
+        chunk.putInt(ENTRY_LENGTH, length);
+
+        classes[c].entries.put(entry.key, address);
+        index.put(entry.key, c);
+        weight += length;
+        return true;
+    }
+
+    /**
+     * Returns the serialized value for the given key (marking it as recently used), or null if
+     * none, to be {@link #decode decoded} out of the store lock.
+     */
+    @Nullable synchronized byte[] read(@NotNull K key) {
+        final Integer c = index.get(key);
+        return c == null ? null : bytes(valueOf(classes[c].entries.get(key)));
+    }
+
+    /**
+     * Removes the entry for the given key, returning its serialized value (or null if none) to be
+     * {@link #decode decoded} out of the store lock.
+     */
+    @Nullable synchronized byte[] take(@NotNull K key) {
+        final Integer c = index.remove(key);
+        if (c == null) return null;
+        final Long   address = classes[c].entries.remove(key);
+        final byte[] value   = bytes(valueOf(address));
+        release(classes[c], address);
+        return value;
+    }
+
+    /** Take a free chunk of the given class, evicting if needed. */
+    private long allocate(int c) {
+        final SizeClass sizeClass = classes[c];
+        while (sizeClass.free.isEmpty()) {
+            final int slab = freeSlab();
+            if (slab != -1) assignSlab(slab, c);
+            else if (!sizeClass.entries.isEmpty()) evict(sizeClass, sizeClass.entries.keySet().iterator().next());
+            else reassignSlab(c);
+        }
+        return sizeClass.free.pop();
+    }
+
+    /** Assign a free slab to the given class, splitting it in free chunks. */
+    private void assignSlab(int slab, int c) {
+        final SizeClass  sizeClass = classes[c];
+        final ByteBuffer buffer    = slab(slab);
+        buffer.putInt(0, SLAB_MAGIC ^ slabSize);
+        buffer.putInt(Integer.BYTES, sizeClass.chunkSize);
+        for (int offset = SLAB_HEADER; offset + sizeClass.chunkSize <= slabSize; offset += sizeClass.chunkSize) {
+            buffer.putInt(offset + ENTRY_LENGTH, 0);
+            sizeClass.free.push(address(slab, offset));
+        }
+        slabClass[slab] = c;
+        sizeClass.slabs++;
+    }
+
+    /** Returns a buffer over the chunk at the given address (position 0, limit the chunk size). */
+    private ByteBuffer chunk(long address) {
+        final int        slab   = (int) (address >>> Integer.SIZE);
+        final int        offset = (int) address;
+        final ByteBuffer buffer = slab(slab).duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + classes[slabClass[slab]].chunkSize);
+        return buffer.slice();
+    }
+
+    /** Returns the class with the given chunk size (-1 if none). */
+    private int classOf(int chunkSize) {
+        for (int c = 0; c < classes.length; c++)
+            if (classes[c].chunkSize == chunkSize) return c;
+        return -1;
+    }
+
+    /** Chunk sizes: powers of two from the minimum, the last one being the whole slab. */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private SizeClass[] createClasses() {
+        final int             max    = slabSize - SLAB_HEADER;
+        final List<SizeClass> result = new ArrayList<>();
+        for (int size = MIN_CHUNK; size < max; size <<= 1)
+            result.add(new SizeClass(size));
+        result.add(new SizeClass(max));
+        return result.toArray(new OffHeapStore.SizeClass[result.size()]);
+    }
+
+    @NotNull private K decodeKey(@NotNull ByteBuffer chunk) {
+        final ByteBuffer key = chunk.duplicate();
+        key.position(ENTRY_HEADER);
+        key.limit(ENTRY_HEADER + chunk.getInt(ENTRY_KEY_LENGTH));
+        return keyReader.apply(new ByteBufferStreamReader(key));
+    }
+
+    /** Returns a buffer over the serialized value of the entry at the given address. */
+    private ByteBuffer valueOf(@NotNull Long address) {
+        final ByteBuffer value = chunk(address);
+        value.limit(value.getInt(ENTRY_LENGTH));
+        value.position(ENTRY_HEADER + value.getInt(ENTRY_KEY_LENGTH));
+        return value;
+    }
+
+    private void evict(@NotNull SizeClass sizeClass, @NotNull K key) {
+        index.remove(key);
+        release(sizeClass, sizeClass.entries.remove(key));
+        evictionCount++;
+    }
+
+    private int freeSlab() {
+        for (int slab = 0; slab < slabs.length; slab++)
+            if (slabClass[slab] == -1) return slab;
+        return -1;
+    }
+
+    /** Load the entries of the slabs of an existing file. */
+    private void load() {
+        for (int slab = 0; slab < slabs.length; slab++) {
+            final ByteBuffer buffer = slab(slab);
+            // Magic depends on the slab size, so a file written with another one is not loaded
+            if (buffer.getInt(0) != (SLAB_MAGIC ^ slabSize)) continue;
+            final int c = classOf(buffer.getInt(Integer.BYTES));
+            if (c == -1) continue;
+
+            final SizeClass sizeClass = classes[c];
+            slabClass[slab] = c;
+            sizeClass.slabs++;
+            for (int offset = SLAB_HEADER; offset + sizeClass.chunkSize <= slabSize; offset += sizeClass.chunkSize) {
+                final long address = address(slab, offset);
+                final int  length  = buffer.getInt(offset + ENTRY_LENGTH);
+                final int  keySize = buffer.getInt(offset + ENTRY_KEY_LENGTH);
+                K          key     = null;
+                if (length > ENTRY_HEADER && length <= sizeClass.chunkSize && keySize >= 0 && keySize <= length - ENTRY_HEADER) {
+                    try {
+                        key = decodeKey(chunk(address));
+                    }
+                    catch (final RuntimeException e) {
+                        logger.warning("Discarding unreadable off heap entry: " + e.getMessage());
+                    }
+                }
+                if (key == null || index.containsKey(key)) {
+                    buffer.putInt(offset + ENTRY_LENGTH, 0);
+                    sizeClass.free.push(address);
+                }
+                else {
+                    sizeClass.entries.put(key, address);
+                    index.put(key, c);
+                    weight += length;
+                }
+            }
+        }
+    }  // end method load
+
+    @NotNull private FileChannel open(@NotNull Path path) {
+        try {
+            final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            for (int slab = 0; slab < slabs.length; slab++)
+                slabs[slab] = channel.map(FileChannel.MapMode.READ_WRITE, (long) slab * slabSize, slabSize);
+            load();
+            return channel;
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Move the least recently used slab of the class with most slabs to the given class. */
+    private void reassignSlab(int c) {
+        SizeClass victim = null;
+        for (final SizeClass sizeClass : classes)
+            if (victim == null || sizeClass.slabs > victim.slabs) victim = sizeClass;
+        if (victim == null || victim.slabs == 0) throw new IllegalStateException("No slab to reassign");
+
+        final int slab = victim.entries.isEmpty() ? slabOf(victim.free.peek()) : slabOf(victim.entries.values().iterator().next());
+        for (final Iterator<Map.Entry<K, Long>> it = victim.entries.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<K, Long> entry = it.next();
+            if (slabOf(entry.getValue()) == slab) {
+                it.remove();
+                index.remove(entry.getKey());
+                weight -= chunk(entry.getValue()).getInt(ENTRY_LENGTH);
+                evictionCount++;
+            }
+        }
+        releaseSlab(slab);
+        victim.free.removeIf(address -> slabOf(address) == slab);
+        victim.slabs--;
+        assignSlab(slab, c);
+    }
+
+    /** Free the chunk at the given address. */
+    private void release(@NotNull SizeClass sizeClass, @NotNull Long address) {
+        final ByteBuffer chunk = chunk(address);
+        weight -= chunk.getInt(ENTRY_LENGTH);
+        chunk.putInt(ENTRY_LENGTH, 0);
+        sizeClass.free.push(address);
+    }
+
+    /** Mark slab as free (its buffer is kept, to be reused once assigned again). */
+    private void releaseSlab(int slab) {
+        slabs[slab].putInt(0, 0);
+        slabClass[slab] = -1;
+    }
+
+    /** Returns the smallest class fitting the given length (-1 if none). */
+    private int sizeClass(int length) {
+        for (int c = 0; c < classes.length; c++)
+            if (classes[c].chunkSize >= length) return c;
+        return -1;
+    }
+
+    /** Returns the slab, allocating it if direct. */
+    private ByteBuffer slab(int slab) {
+        if (slabs[slab] == null) slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+        return slabs[slab];
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Create a store builder with the given key and value serialization. */
+    public static <K, V> Builder<K, V> builder(@NotNull BiConsumer<StreamWriter, K> keyWriter, @NotNull Function<StreamReader, K> keyReader,
+                                               @NotNull BiConsumer<StreamWriter, V> valueWriter, @NotNull Function<StreamReader, V> valueReader) {
+        return new Builder<>(keyWriter, keyReader, valueWriter, valueReader);
+    }
+
+    private static long address(int slab, int offset) {
+        return (long) slab << Integer.SIZE | offset;
+    }
+
+    /** Copies the remaining bytes of the given buffer. */
+    private static byte[] bytes(@NotNull ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int slabOf(long address) {
+        return (int) (address >>> Integer.SIZE);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final int ENTRY_HEADER     = 8;
+    private static final int ENTRY_KEY_LENGTH = 4;
+    private static final int ENTRY_LENGTH     = 0;
+    private static final int MIN_CHUNK        = 64;
+    private static final int SLAB_HEADER      = 8;
+    private static final int SLAB_MAGIC       = 0x5347534c;
+
+    private static final Logger logger = Logger.getLogger(OffHeapStore.class);
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Builder of off heap stores. By default 64 megabytes of direct memory in slabs of one
+     * megabyte.
+     */
+    public static class Builder<K, V> {
+        private long                                       capacity = DEFAULT_CAPACITY;
+        @Nullable private Path                             file     = null;
+        @NotNull private final Function<StreamReader, K>   keyReader;
+        @NotNull private final BiConsumer<StreamWriter, K> keyWriter;
+        private int                                        slabSize = DEFAULT_SLAB_SIZE;
+        @NotNull private final Function<StreamReader, V>   valueReader;
+        @NotNull private final BiConsumer<StreamWriter, V> valueWriter;
+
+        private Builder(@NotNull BiConsumer<StreamWriter, K> keyWriter, @NotNull Function<StreamReader, K> keyReader,
+                        @NotNull BiConsumer<StreamWriter, V> valueWriter, @NotNull Function<StreamReader, V> valueReader) {
+            this.keyWriter   = keyWriter;
+            this.keyReader   = keyReader;
+            this.valueWriter = valueWriter;
+            this.valueReader = valueReader;
+        }
+
+        /** Build the store (loading the entries of the file, if it exists). */
+        public OffHeapStore<K, V> build() {
+            return new OffHeapStore<>(this);
+        }
+
+        /** Specifies the capacity in bytes (rounded down to whole slabs). */
+        public Builder<K, V> capacity(long bytes) {
+            capacity = bytes;
+            return this;
+        }
+
+        /** Specifies a file to memory map slabs on, so stored entries are kept across restarts. */
+        public Builder<K, V> file(@NotNull Path path) {
+            file = path;
+            return this;
+        }
+
+        /** Specifies the size in bytes of slabs (and so the maximum size of an entry). */
+        public Builder<K, V> slabSize(int bytes) {
+            slabSize = bytes;
+            return this;
+        }
+
+        private static final long DEFAULT_CAPACITY  = 64L << 20;
+        private static final int  DEFAULT_SLAB_SIZE = 1 << 20;
+    }  // end class Builder
+
+    /** Serialized entry, encoded out of the store lock. */
+    static class Encoded<K> {
+        private final byte[] bytes;
+        private final K      key;
+        private final int    keyLength;
+
+        private Encoded(@NotNull K key, int keyLength, @NotNull byte[] bytes) {
+            this.key       = key;
+            this.keyLength = keyLength;
+            this.bytes     = bytes;
+        }
+    }
+
+    /** Chunks of a size: free ones and used ones in LRU order. */
+    private class SizeClass {
+        private final int                    chunkSize;
+        private final LinkedHashMap<K, Long> entries = new LinkedHashMap<>(0, LOAD_FACTOR, true);
+        private final ArrayDeque<Long>       free    = new ArrayDeque<>();
+        private int                          slabs   = 0;
+
+        private SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+}  // end class OffHeapStore
@@ -0,0 +1,129 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.util.ConcurrentLruCache.Node;
+
+/**
+ * Hierarchical timer wheel scheduling {@link ConcurrentLruCache} entries by expiration time, so
+ * expired entries are found without scanning the cache. Times are in ticker units, assumed to be
+ * milliseconds: wheels have buckets spanning ~1 second, ~1 minute, ~1 hour and ~1.5 days, plus an
+ * overflow bucket. Entries are checked when the time advances past their bucket, and rescheduled
+ * if they did not expire yet. Not thread safe (guarded by the cache eviction lock).
+ */
+final class TimerWheel<K, V> {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private long                 time;
+    private final Node<K, V>[][] wheel;
+
+    //~ Constructors .................................................................................................................................
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    TimerWheel(long time) {
+        this.time = time;
+        wheel     = new Node[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++)
+                wheel[i][j] = Node.sentinel();
+        }
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Advance the wheel to the given time, calling the evictor for entries found expired (entries
+     * are rescheduled if not expired or not evicted).
+     */
+    void advance(long currentTime, @NotNull Predicate<Node<K, V>> evictor) {
+        final long previous = time;
+        time = currentTime;
+        for (int i = 0; i < SHIFT.length; i++) {
+            final long previousTicks = previous >>> SHIFT[i];
+            final long currentTicks  = currentTime >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0) break;
+            expire(i, previousTicks, currentTicks, evictor);
+        }
+    }
+
+    /** Remove the given entry from the wheel (if scheduled). */
+    void deschedule(@NotNull Node<K, V> node) {
+        if (node.nextInTimer == null) return;
+        node.nextInTimer.prevInTimer = node.prevInTimer;
+        node.prevInTimer.nextInTimer = node.nextInTimer;
+        node.nextInTimer             = null;
+        node.prevInTimer             = null;
+    }
+
+    /** Move the given entry to the bucket of its (updated) expiration time. */
+    void reschedule(@NotNull Node<K, V> node) {
+        deschedule(node);
+        schedule(node);
+    }
+
+    /** Add the given entry to the bucket of its expiration time. */
+    void schedule(@NotNull Node<K, V> node) {
+        final Node<K, V> sentinel = findBucket(node.expiresAt);
+        node.nextInTimer                 = sentinel;
+        node.prevInTimer                 = sentinel.prevInTimer;
+        sentinel.prevInTimer.nextInTimer = node;
+        sentinel.prevInTimer             = node;
+    }
+
+    /** Visit the buckets of the given wheel the time advanced through. */
+    private void expire(int index, long previousTicks, long currentTicks, @NotNull Predicate<Node<K, V>> evictor) {
+        final Node<K, V>[] buckets = wheel[index];
+        final int          mask    = buckets.length - 1;
+        final int          steps   = (int) Math.min(1 + currentTicks - previousTicks, buckets.length);
+        final int          start   = (int) (previousTicks & mask);
+
+        for (int i = start; i < start + steps; i++) {
+            // Detach the whole bucket, entries not expired are rescheduled (maybe on a lower wheel)
+            final Node<K, V> sentinel = buckets[i & mask];
+            Node<K, V>       node     = sentinel.nextInTimer;
+            sentinel.prevInTimer = sentinel;
+            sentinel.nextInTimer = sentinel;
+
+            while (node != sentinel) {
+                final Node<K, V> next = node.nextInTimer;
+                node.prevInTimer = null;
+                node.nextInTimer = null;
+                if (node.expiresAt - time > 0 || !evictor.test(node)) schedule(node);
+                node = next;
+            }
+        }
+    }
+
+    /** Returns the sentinel of the bucket for the given expiration time. */
+    private Node<K, V> findBucket(long expiresAt) {
+        final long duration = expiresAt - time;
+        final int  last     = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                final long ticks = expiresAt >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int[]  BUCKETS = { 64, 64, 32, 4, 1 };
+    private static final int[]  SHIFT   = { 10, 16, 22, 27, 29 };
+    private static final long[] SPANS   = { 1L << 10, 1L << 16, 1L << 22, 1L << 27, 1L << 29, 1L << 29 };
+}  // end class TimerWheel
@@ -16,6 +16,8 @@ import java.util.List;
 
 import org.junit.Test;
 
+import tekgenesis.common.serializer.ByteBufferStreamReader;
+import tekgenesis.common.serializer.ByteBufferStreamWriter;
 import tekgenesis.common.serializer.StreamReader;
 import tekgenesis.common.serializer.StreamWriter;
 
@@ -28,6 +30,31 @@ public class SerializerTest {
 
     //~ Methods ......................................................................................................................................
 
+    @Test public void byteBuffer() {
+        final ByteBufferStreamWriter writer = new ByteBufferStreamWriter(4);
+        writer.writeBoolean(true).writeByte((byte) 7).writeChar('z').writeShort((short) -3);
+        writer.writeInt(42).writeLong(Long.MIN_VALUE).writeFloat(1.5f).writeDouble(-2.25);
+        writer.writeString("Hëllo").writeString(null).writeStrings(asList("a", "b"));
+        writer.writeObject(asList(1, 2));
+
+        final ByteBufferStreamReader reader = new ByteBufferStreamReader(writer.toByteBuffer());
+        assertThat(reader.readBoolean()).isTrue();
+        assertThat(reader.readByte()).isEqualTo((byte) 7);
+        assertThat(reader.readChar()).isEqualTo('z');
+        assertThat(reader.readShort()).isEqualTo((short) -3);
+        assertThat(reader.readInt()).isEqualTo(42);
+        assertThat(reader.readLong()).isEqualTo(Long.MIN_VALUE);
+        assertThat(reader.readFloat()).isEqualTo(1.5f);
+        assertThat(reader.readDouble()).isEqualTo(-2.25);
+        assertThat(reader.readString()).isEqualTo("Hëllo");
+        assertThat(reader.readString()).isNull();
+        assertThat(reader.readStrings()).containsExactly("a", "b");
+        assertThat(reader.readObject()).isEqualTo(asList(1, 2));
+        assertThat(reader.getRemaining()).isZero();
+
+        assertThat(writer.reset().getSize()).isZero();
+    }
+
     @Test public void reader() {
         final List<String>     strings = asList("Hello", " ", "World");
         final Iterator<String> it      = strings.iterator();
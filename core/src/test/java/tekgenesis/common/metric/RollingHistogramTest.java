@@ -0,0 +1,139 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.metric;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings({ "MagicNumber", "JavaDoc", "DuplicateStringLiteralInspection" })
+public class RollingHistogramTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testBucketBoundaries() {
+        assertThat(LogLinearHistogram.LENGTH).isEqualTo(864);
+        int previous = -1;
+        for (int i = 0; i < LogLinearHistogram.LENGTH; i++) {
+            final int lowest = LogLinearHistogram.lowestValue(i);
+            assertThat(lowest).isGreaterThan(previous);
+            assertThat(LogLinearHistogram.index(lowest)).isEqualTo(i);
+            if (i > 0) assertThat(LogLinearHistogram.index(lowest - 1)).isEqualTo(i - 1);
+            final int segment = LogLinearHistogram.segment(i);
+            assertThat(i - LogLinearHistogram.segmentStart(segment)).isBetween(0, LogLinearHistogram.segmentLength(segment) - 1);
+            previous = lowest;
+        }
+        assertThat(LogLinearHistogram.index(Integer.MAX_VALUE)).isEqualTo(LogLinearHistogram.LENGTH - 1);
+        assertThat(LogLinearHistogram.segment(LogLinearHistogram.LENGTH - 1)).isEqualTo(LogLinearHistogram.SEGMENTS - 1);
+
+        // Small values are exact, the rest within the relative error
+        for (int v = 0; v < LogLinearHistogram.SUB_BUCKETS; v++)
+            assertThat(LogLinearHistogram.medianValue(LogLinearHistogram.index(v))).isEqualTo(v);
+        final Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            final int v = random.nextInt(Integer.MAX_VALUE);
+            assertThat(relativeError(v, LogLinearHistogram.medianValue(LogLinearHistogram.index(v)))).isLessThanOrEqualTo(MAX_ERROR);
+        }
+    }
+
+    @Test public void testConcurrentRecording()
+        throws InterruptedException
+    {
+        final MockedTime       time      = new MockedTime();
+        final RollingHistogram h         = new RollingHistogram(time, timeInMilliseconds, numberOfBuckets, true);
+        final int              threads   = 4;
+        final int              values    = 10000;
+        final ExecutorService  executor  = Executors.newFixedThreadPool(threads);
+        final CountDownLatch   done      = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++)
+            executor.execute(() -> {
+                for (int i = 1; i <= values; i++)
+                    h.addValue(i % 100);
+                done.countDown();
+            });
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+
+        // No value is lost, unlike sampled percentiles
+        time.increment(6000);
+        assertThat(h.getCount()).isEqualTo(threads * values);
+        assertThat(h.getPercentile(50)).isEqualTo(49);
+        assertThat(h.getMean()).isEqualTo(49);
+    }
+
+    @Test public void testPercentilesAccuracy() {
+        final MockedTime       time   = new MockedTime();
+        final RollingHistogram h      = new RollingHistogram(time, timeInMilliseconds, numberOfBuckets, true);
+        final Random           random = new Random(11);
+        final int[]            values = new int[100000];
+        for (int i = 0; i < values.length; i++) {
+            // Long tailed latencies
+            values[i] = (int) Math.min(Integer.MAX_VALUE, Math.exp(random.nextGaussian() * 2 + 5));
+            h.addValue(values[i]);
+            if (i % 10000 == 0) time.increment(1000);
+        }
+        time.increment(timeInMilliseconds / numberOfBuckets);
+
+        Arrays.sort(values);
+        for (final double p : new double[] { 1, 10, 50, 90, 99, 99.9, 100 }) {
+            final int expected = values[(int) Math.max(0, Math.ceil(p / 100 * values.length) - 1)];
+            assertThat(relativeError(expected, h.getPercentile(p))).as("percentile " + p).isLessThanOrEqualTo(MAX_ERROR);
+        }
+    }
+
+    @Test public void testRolling() {
+        final MockedTime       time = new MockedTime();
+        final RollingHistogram h    = new RollingHistogram(time, timeInMilliseconds, numberOfBuckets, true);
+        h.addValue(1000, 1000, 1000, 2000);
+        assertThat(h.buckets.size()).isEqualTo(1);
+
+        // No bucket turnover yet so percentile not yet generated
+        assertThat(h.getPercentile(50)).isZero();
+
+        time.increment(6000);
+        assertThat(h.getPercentile(50)).isEqualTo(1000);
+        assertThat(h.getPercentile(100)).isEqualTo(2000);
+        assertThat(h.getMean()).isEqualTo(1250);
+        assertThat(h.buckets.size()).isEqualTo(2);
+
+        h.addValue(100, 100, 100, 100, 100);
+        // The current bucket is not part of the snapshot until the next one is created
+        assertThat(h.getPercentile(50)).isEqualTo(1000);
+        time.increment(5000);
+        assertThat(h.getCount()).isEqualTo(9);
+        assertThat(h.getPercentile(50)).isEqualTo(101);
+        assertThat(h.buckets.size()).isEqualTo(3);
+
+        // Values roll out of the window, or are all discarded if no traffic for a whole window
+        time.increment(timeInMilliseconds - 5000);
+        assertThat(h.getCount()).isEqualTo(5);
+        time.increment(2 * timeInMilliseconds);
+        assertThat(h.getCount()).isZero();
+        assertThat(h.getPercentile(50)).isZero();
+    }
+
+    private static double relativeError(int expected, int actual) {
+        return expected == 0 ? actual : Math.abs(actual - expected) / (double) expected;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final double MAX_ERROR          = 0.02;
+    private static final int    numberOfBuckets    = 12;  // 12 buckets at 5000ms each
+    private static final int    timeInMilliseconds = 60000;
+}  // end class RollingHistogramTest
@@ -10,6 +10,13 @@
 
 package tekgenesis.common.metric;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
@@ -20,6 +27,40 @@ public class RollingNumberTest {
 
     //~ Methods ......................................................................................................................................
 
+    @Test public void testConcurrentRolling()
+        throws Exception
+    {
+        final MockedTime               time    = new MockedTime();
+        final RollingNumber<TestEvent> counter = new RollingNumber<>(TestEvent.class, time, 200, 10);
+
+        final int             threads    = 8;
+        final int             phases     = 5;
+        final int             increments = 1000;
+        final CyclicBarrier   barrier    = new CyclicBarrier(threads, () -> time.increment(counter.getBucketSizeInMilliseconds()));
+        final ExecutorService executor   = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> futures    = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+            futures.add(executor.submit(() -> {
+                    for (int phase = 0; phase < phases; phase++) {
+                        barrier.await();
+                        // All threads race to roll the bucket
+                        for (int i = 0; i < increments; i++) {
+                            counter.increment(TestEvent.SUCCESS);
+                            counter.updateRollingMax(TestEvent.THREAD_MAX_ACTIVE, i);
+                        }
+                    }
+                    return null;
+                }));
+        for (final Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        // Exactly one bucket per phase and no lost increments
+        assertThat(counter.buckets.size()).isEqualTo(phases);
+        assertThat(counter.getRollingSum(TestEvent.SUCCESS)).isEqualTo(threads * phases * increments);
+        assertThat(counter.getRollingMaxValue(TestEvent.THREAD_MAX_ACTIVE)).isEqualTo(increments - 1);
+    }
+
     @Test public void testCounterRetrievalRefreshesBuckets() {
         final MockedTime               time    = new MockedTime();
         final RollingNumber<TestEvent> counter = new RollingNumber<>(TestEvent.class, time, 200, 10);
@@ -0,0 +1,190 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import tekgenesis.common.core.Strings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class ConcurrentLruCacheTest {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    long tick;
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void cache() {
+        final ConcurrentLruCache<Integer, Integer> cache = ConcurrentLruCache.createConcurrentLruCache(5);
+        final Function<Integer, Integer>           load  = key -> key * 2;
+
+        for (int i = 1; i <= 10; i++)
+            assertThat(cache.find(i, load)).isEqualTo(i * 2);
+        assertThat(cache.hitCount()).isZero();
+        assertThat(cache.size()).isEqualTo(5);
+        assertThat(cache.getWeight()).isEqualTo(5);
+        assertThat(cache.evictionCount()).isEqualTo(5);
+
+        // Values are found either cached or loaded again
+        for (int i = 10; i >= 1; i--)
+            assertThat(cache.find(i, load)).isEqualTo(i * 2);
+        cache.cleanUp();
+
+        assertThat(cache.hitCount() + cache.missCount()).isEqualTo(20);
+        assertThat(cache.loadedCount()).isEqualTo(cache.missCount());
+        assertThat(cache.size()).isEqualTo(5);
+        assertThat(cache.putCount()).isEqualTo(0);
+        assertThat(cache.getMaxWeight()).isEqualTo(5);
+
+        assertThat(cache.put(100, 1)).isNull();
+        assertThat(cache.put(100, 2)).isEqualTo(1);
+        assertThat(cache.remove(100)).isEqualTo(2);
+        assertThat(cache.get(100)).isNull();
+        assertThat(cache.putCount()).isEqualTo(2);
+
+        cache.evictAll();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getWeight()).isZero();
+    }
+
+    @Test public void cacheConcurrent()
+        throws Exception
+    {
+        final ConcurrentLruCache<Integer, String> cache    = new ConcurrentLruCache.Builder<Integer, String>().weigher(String::length)
+                                                             .maxWeight(500)
+                                                             .build();
+        final ExecutorService                     executor = Executors.newFixedThreadPool(8);
+        try {
+            final Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                        final ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int i = 0; i < 20000; i++) {
+                            final int key = random.nextInt(200);
+                            if (random.nextInt(10) == 0) cache.put(key, Strings.spaces(key % 10 + 1));
+                            else if (random.nextInt(50) == 0) cache.remove(key);
+                            else {
+                                final String value = cache.find(key, k -> Strings.spaces(k % 10 + 1));
+                                assertThat(value).hasSize(key % 10 + 1);
+                            }
+                        }
+                    });
+            }
+            for (final Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        cache.cleanUp();
+        assertThat(cache.getWeight()).isLessThanOrEqualTo(500);
+
+        // Policy weight matches the mapped values
+        int weight = 0;
+        for (int key = 0; key < 200; key++) {
+            final String value = cache.get(key);
+            if (value != null) weight += value.length();
+        }
+        assertThat(cache.getWeight()).isEqualTo(weight);
+    }
+
+    @Test public void cacheExpiration() {
+        final ConcurrentLruCache<Integer, String> cache = new ConcurrentLruCache.Builder<Integer, String>().withExpiration(s -> s.length() * 1000L)
+                                                          .ticker(this::getTick)
+                                                          .maxWeight(100)
+                                                          .build();
+
+        for (int i = 1; i <= 10; i++)
+            findAndTest(cache, i);
+        for (int i = 1; i <= 10; i++)
+            findAndTest(cache, i);
+        assertThat(cache.hitCount()).isEqualTo(10);
+
+        // Expired entries are misses (and loaded again)
+        tick = 5000;
+        for (int i = 1; i <= 10; i++)
+            findAndTest(cache, i);
+        assertThat(cache.hitCount()).isEqualTo(15);
+        assertThat(cache.evictionCount()).isEqualTo(5);
+        assertThat(cache.size()).isEqualTo(10);
+
+        // Timer wheel removes expired entries not read
+        tick = 70000;
+        cache.cleanUp();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getWeight()).isZero();
+        assertThat(cache.evictionCount()).isEqualTo(15);
+    }
+
+    @Test public void cacheScanResistance() {
+        final ConcurrentLruCache<Integer, Integer> cache = ConcurrentLruCache.createConcurrentLruCache(100);
+        final Function<Integer, Integer>           load  = key -> key;
+
+        // Popular entries
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++)
+                cache.find(i, load);
+            cache.cleanUp();
+        }
+
+        // A scan of entries used once must not flush popular entries
+        for (int i = 1000; i < 3000; i++)
+            cache.find(i, load);
+        cache.cleanUp();
+
+        int popular = 0;
+        for (int i = 0; i < 50; i++)
+            if (cache.get(i) != null) popular++;
+        assertThat(popular).isGreaterThanOrEqualTo(45);
+        assertThat(cache.size()).isEqualTo(100);
+    }
+
+    @Test public void cacheWeighted() {
+        final ConcurrentLruCache<Integer, String> cache = new ConcurrentLruCache.Builder<Integer, String>().weigher(String::length)
+                                                          .maxWeight(50)
+                                                          .build();
+
+        for (int i = 1; i <= 10; i++)
+            findAndTest(cache, i);
+        assertThat(cache.getWeight()).isLessThanOrEqualTo(50);
+
+        // Values heavier than the cache are not retained
+        cache.put(100, Strings.spaces(60));
+        cache.cleanUp();
+        assertThat(cache.get(100)).isNull();
+        assertThat(cache.getWeight()).isLessThanOrEqualTo(50);
+
+        // Updates change the weight
+        cache.evictAll();
+        cache.put(1, Strings.spaces(10));
+        cache.put(1, Strings.spaces(20));
+        cache.cleanUp();
+        assertThat(cache.getWeight()).isEqualTo(20);
+    }
+
+    public void findAndTest(final ConcurrentLruCache<Integer, String> cache, final int i) {
+        assertThat(cache.find(i, Strings::spaces)).isEqualTo(Strings.spaces(i));
+    }
+
+    public long getTick() {
+        return tick;
+    }
+}  // end class ConcurrentLruCacheTest
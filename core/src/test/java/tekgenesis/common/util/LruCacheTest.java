@@ -10,12 +10,22 @@
 
 package tekgenesis.common.util;
 
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import org.junit.Test;
 
 import tekgenesis.common.core.Strings;
+import tekgenesis.common.serializer.StreamReader;
+import tekgenesis.common.serializer.StreamWriter;
 import tekgenesis.common.util.LruCache;
+import tekgenesis.common.util.OffHeapStore;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -98,6 +108,258 @@ public class LruCacheTest {
         assertThat(cache.getMaxWeight()).isEqualTo(50);
     }
 
+    @Test public void cacheGetAll() {
+        final LruCache<Integer, String> cache = LruCache.createLruCache(10);
+        cache.put(1, "1");
+        cache.put(2, "2");
+
+        final List<Set<Integer>>   requested = new ArrayList<>();
+        final Map<Integer, String> values    = cache.getAll(Arrays.asList(1, 2, 3, 4, 5, 3), keys -> {
+                    requested.add(new HashSet<>(keys));
+                    final Map<Integer, String> result = new HashMap<>();
+                    for (final Integer key : keys)
+                        if (key != 5) result.put(key, String.valueOf(key));
+                    return result;
+                });
+
+        // Misses are loaded in a single call
+        assertThat(requested).containsExactly(new HashSet<>(Arrays.asList(3, 4, 5)));
+        assertThat(values).containsOnlyKeys(1, 2, 3, 4).containsEntry(4, "4");
+        assertThat(cache.get(3)).isEqualTo("3");
+        assertThat(cache.loadedCount()).isEqualTo(2);
+        assertThat(cache.hitCount()).isEqualTo(3);
+    }
+
+    @Test public void cacheLoadFailure() {
+        final LruCache<Integer, String> cache = LruCache.createLruCache(10);
+        try {
+            cache.find(1, key -> { throw new IllegalStateException("Failed"); });
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        }
+        catch (final IllegalStateException e) {
+            assertThat(e).hasMessage("Failed");
+        }
+        assertThat(cache.loadFailureCount()).isEqualTo(1);
+
+        // Failed loads are not cached
+        assertThat(cache.find(1, String::valueOf)).isEqualTo("1");
+        assertThat(cache.loadedCount()).isEqualTo(1);
+        assertThat(cache.totalLoadTime()).isPositive();
+    }
+
+    @Test public void cacheOffHeapTier() {
+        final OffHeapStore<Integer, String> store = OffHeapStore.<Integer, String>builder(StreamWriter::writeInt,
+                                                                                            StreamReader::readInt,
+                                                                                            StreamWriter::writeString,
+                                                                                            StreamReader::readString)
+                                                                .slabSize(4096)
+                                                                .capacity(4 * 4096)
+                                                                .build();
+        final LruCache<Integer, String>     cache = new LruCache.Builder<Integer, String>().maxWeight(5).offHeap(store).build();
+
+        for (int i = 1; i <= 10; i++)
+            cache.put(i, "v" + i);
+        // Entries evicted from heap are moved off heap
+        assertThat(cache.size()).isEqualTo(10);
+        assertThat(cache.getWeight()).isEqualTo(5);
+        assertThat(store.size()).isEqualTo(5);
+        assertThat(cache.evictionCount()).isZero();
+
+        // Hits move entries back on heap
+        assertThat(cache.get(1)).isEqualTo("v1");
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(store.containsKey(1)).isFalse();
+        assertThat(store.containsKey(6)).isTrue();
+        assertThat(cache.find(2, key -> "loaded")).isEqualTo("v2");
+        assertThat(cache.loadedCount()).isZero();
+
+        assertThat(cache.remove(3)).isEqualTo("v3");
+        assertThat(cache.put(4, "w4")).isEqualTo("v4");
+        assertThat(cache.size()).isEqualTo(9);
+
+        cache.evictAll();
+        assertThat(cache.size()).isZero();
+        assertThat(store.size()).isZero();
+    }
+
+    @Test public void cacheOffHeapRefresh() {
+        final OffHeapStore<Integer, String> store = OffHeapStore.<Integer, String>builder(StreamWriter::writeInt,
+                                                                                            StreamReader::readInt,
+                                                                                            StreamWriter::writeString,
+                                                                                            StreamReader::readString)
+                                                                .slabSize(4096)
+                                                                .capacity(4 * 4096)
+                                                                .build();
+        final LruCache<Integer, String>     cache = new LruCache.Builder<Integer, String>().maxWeight(1)
+                                                    .offHeap(store)
+                                                    .refreshAfterWrite(10)
+                                                    .refreshExecutor(Runnable::run)
+                                                    .ticker(this::getTick)
+                                                    .build();
+
+        cache.put(1, "1");
+        cache.put(2, "2");
+        assertThat(store.containsKey(1)).isTrue();
+
+        // Moving an entry back on heap keeps its write time
+        tick = 10;
+        assertThat(cache.find(1, key -> key + "-refreshed")).isEqualTo("1");
+        assertThat(cache.find(1, key -> key + "-refreshed")).isEqualTo("1-refreshed");
+        assertThat(store.containsKey(2)).isTrue();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test public void cacheOffHeapDecodedOutOfLock() {
+        final List<LruCache<Integer, String>> holder  = new ArrayList<>();
+        final List<Boolean>                   locked  = new ArrayList<>();
+        final AtomicInteger                   replace = new AtomicInteger();
+        final OffHeapStore<Integer, String>   store   = OffHeapStore.<Integer, String>builder(StreamWriter::writeInt,
+                                                                                                StreamReader::readInt,
+                                                                                                StreamWriter::writeString,
+                                                                                                r -> {
+                    final LruCache<Integer, String> c = holder.get(0);
+                    locked.add(Thread.holdsLock(c));
+                    // Replace the entry while it is being decoded
+                    final int key = replace.getAndSet(0);
+                    if (key != 0) c.put(key, "w" + key);
+                    return r.readString();
+                }).slabSize(4096).capacity(4 * 4096).build();
+        final LruCache<Integer, String>       cache   = new LruCache.Builder<Integer, String>().maxWeight(1).offHeap(store).build();
+        holder.add(cache);
+
+        cache.put(1, "v1");
+        cache.put(2, "v2");
+        cache.put(3, "v3");
+        assertThat(store.size()).isEqualTo(2);
+
+        // Hits and removals decode off heap values out of the cache lock
+        assertThat(cache.get(1)).isEqualTo("v1");
+        assertThat(cache.remove(2)).isEqualTo("v2");
+        assertThat(locked).containsOnly(false);
+
+        // The value put while decoding wins
+        replace.set(3);
+        assertThat(store.containsKey(3)).isTrue();
+        assertThat(cache.get(3)).isEqualTo("w3");
+        assertThat(store.containsKey(3)).isFalse();
+        assertThat(locked).containsOnly(false);
+    }
+
+    @Test public void cacheRecursiveLoad() {
+        final LruCache<Integer, String> cache = LruCache.createLruCache(10);
+        try {
+            cache.find(1, key -> cache.find(key, String::valueOf));
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        }
+        catch (final IllegalStateException e) {
+            assertThat(e).hasMessageContaining("Recursive");
+        }
+        try {
+            cache.getAll(Arrays.asList(1, 2), keys -> Collections.singletonMap(1, cache.find(2, String::valueOf)));
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        }
+        catch (final IllegalStateException e) {
+            assertThat(e).hasMessageContaining("Recursive");
+        }
+
+        // Other keys may be loaded by a loader
+        assertThat(cache.find(1, key -> cache.find(key + 1, String::valueOf) + "!")).isEqualTo("2!");
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test public void cacheRemovedWhileLoading() {
+        final LruCache<Integer, String> cache = LruCache.createLruCache(10);
+
+        // Values invalidated while loading are returned, but not cached
+        assertThat(cache.find(1, key -> {
+                    cache.remove(key);
+                    return "one";
+                })).isEqualTo("one");
+        assertThat(cache.find(2, key -> {
+                    cache.evictAll();
+                    return "two";
+                })).isEqualTo("two");
+        final Map<Integer, String> all = cache.getAll(Arrays.asList(3, 4), keys -> {
+                    cache.remove(3);
+                    final Map<Integer, String> result = new HashMap<>();
+                    result.put(3, "three");
+                    result.put(4, "four");
+                    return result;
+                });
+        assertThat(all).containsEntry(3, "three").containsEntry(4, "four");
+        assertThat(cache.snapshot()).containsOnlyKeys(4);
+    }
+
+    @Test public void cacheRefreshAfterWrite() {
+        final AtomicInteger             loads = new AtomicInteger();
+        final LruCache<Integer, String> cache = new LruCache.Builder<Integer, String>().refreshAfterWrite(10)
+                                                .refreshExecutor(Runnable::run)
+                                                .ticker(this::getTick)
+                                                .build();
+        final Function<Integer, String> load  = key -> key + "-" + loads.incrementAndGet();
+
+        assertThat(cache.find(1, load)).isEqualTo("1-1");
+        tick = 5;
+        assertThat(cache.find(1, load)).isEqualTo("1-1");
+        assertThat(loads.get()).isEqualTo(1);
+
+        // Stale hits return the current value, while reloading it
+        tick = 10;
+        assertThat(cache.find(1, load)).isEqualTo("1-1");
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.find(1, load)).isEqualTo("1-2");
+        assertThat(cache.loadedCount()).isEqualTo(2);
+
+        // Put entries are refreshed too
+        tick = 20;
+        cache.put(2, "2");
+        tick = 30;
+        assertThat(cache.find(2, load)).isEqualTo("2");
+        assertThat(cache.find(2, load)).isEqualTo("2-3");
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test public void cacheSingleFlight()
+        throws Exception
+    {
+        final LruCache<Integer, String> cache   = LruCache.createLruCache(10);
+        final AtomicInteger             loads   = new AtomicInteger();
+        final CountDownLatch            started = new CountDownLatch(1);
+        final CountDownLatch            release = new CountDownLatch(1);
+        final ExecutorService           pool    = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                results.add(pool.submit(() ->
+                            cache.find(1, key -> {
+                                loads.incrementAndGet();
+                                started.countDown();
+                                try {
+                                    release.await();
+                                }
+                                catch (final InterruptedException e) {
+                                    throw new IllegalStateException(e);
+                                }
+                                return "one";
+                            })));
+
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            Thread.sleep(100);
+            release.countDown();
+
+            for (final Future<String> result : results)
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("one");
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        // Concurrent misses shared a single load
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.loadedCount()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
     public void findAndTest(final LruCache<Integer, String> cache, final int i) {
         assertThat(cache.find(i, Strings::spaces)).isEqualTo(Strings.spaces(i));
     }
@@ -0,0 +1,143 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tekgenesis.common.serializer.StreamReader;
+import tekgenesis.common.serializer.StreamWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class OffHeapStoreTest {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testEviction() {
+        // Two slabs of 7 chunks of 128 bytes
+        final OffHeapStore<Integer, String> store = createStore().build();
+        for (int i = 0; i < 14; i++)
+            store.put(i, value(80));
+        assertThat(store.size()).isEqualTo(14);
+        assertThat(store.evictionCount()).isZero();
+
+        // Least recently used entries are evicted
+        assertThat(store.get(0)).isEqualTo(value(80));
+        store.put(14, value(80));
+        store.put(15, value(80));
+        assertThat(store.size()).isEqualTo(14);
+        assertThat(store.evictionCount()).isEqualTo(2);
+        assertThat(store.containsKey(0)).isTrue();
+        assertThat(store.containsKey(1)).isFalse();
+        assertThat(store.containsKey(2)).isFalse();
+        assertThat(store.containsKey(3)).isTrue();
+    }
+
+    @Test public void testFileBacked()
+        throws IOException
+    {
+        final File file = new File(folder.getRoot(), "store.bin");
+
+        final OffHeapStore<Integer, String> store = createStore().file(file.toPath()).build();
+        for (int i = 0; i < 10; i++)
+            store.put(i, value(i * 10));
+        store.remove(3);
+        store.put(4, "replaced");
+        final long weight = store.getWeight();
+        store.close();
+        assertThat(file.length()).isEqualTo(store.getCapacity());
+
+        // Entries survive a restart
+        final OffHeapStore<Integer, String> reopened = createStore().file(file.toPath()).build();
+        assertThat(reopened.size()).isEqualTo(9);
+        assertThat(reopened.getWeight()).isEqualTo(weight);
+        assertThat(reopened.get(3)).isNull();
+        assertThat(reopened.get(4)).isEqualTo("replaced");
+        assertThat(reopened.get(9)).isEqualTo(value(90));
+
+        // Slabs written with another size are not loaded
+        reopened.close();
+        final OffHeapStore<Integer, String> other = createStore().slabSize(2048).file(file.toPath()).build();
+        assertThat(other.size()).isZero();
+        other.close();
+    }
+
+    @Test public void testPutGetRemove() {
+        final OffHeapStore<Integer, String> store = createStore().build();
+        assertThat(store.get(1)).isNull();
+
+        assertThat(store.put(1, "one")).isTrue();
+        assertThat(store.put(2, "two")).isTrue();
+        assertThat(store.get(1)).isEqualTo("one");
+        assertThat(store.size()).isEqualTo(2);
+        // Header, key and length prefixed string
+        assertThat(store.getWeight()).isEqualTo(2 * (8 + 4 + 4 + 3));
+
+        assertThat(store.put(1, "uno")).isTrue();
+        assertThat(store.get(1)).isEqualTo("uno");
+        assertThat(store.size()).isEqualTo(2);
+
+        assertThat(store.remove(1)).isEqualTo("uno");
+        assertThat(store.remove(1)).isNull();
+        assertThat(store.delete(2)).isTrue();
+        assertThat(store.size()).isZero();
+        assertThat(store.getWeight()).isZero();
+
+        // Entries bigger than a slab are not stored
+        assertThat(store.put(3, value(1100))).isFalse();
+        assertThat(store.rejectedCount()).isEqualTo(1);
+        assertThat(store.containsKey(3)).isFalse();
+    }
+
+    @Test public void testSlabReassignment() {
+        final OffHeapStore<Integer, String> store = createStore().build();
+        for (int i = 0; i < 14; i++)
+            store.put(i, value(80));
+
+        // No free slab for a big entry, so the slab of the least recently used entries is taken
+        assertThat(store.put(100, value(600))).isTrue();
+        assertThat(store.get(100)).isEqualTo(value(600));
+        assertThat(store.size()).isEqualTo(8);
+        assertThat(store.evictionCount()).isEqualTo(7);
+        assertThat(store.containsKey(0)).isFalse();
+        assertThat(store.containsKey(13)).isTrue();
+
+        store.clear();
+        assertThat(store.size()).isZero();
+        assertThat(store.put(0, value(600))).isTrue();
+        assertThat(store.put(1, value(600))).isTrue();
+    }
+
+    private OffHeapStore.Builder<Integer, String> createStore() {
+        return OffHeapStore.<Integer, String>builder(StreamWriter::writeInt, StreamReader::readInt, StreamWriter::writeString, StreamReader::readString)
+               .slabSize(1024)
+               .capacity(2048);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static String value(int length) {
+        final char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}  // end class OffHeapStoreTest
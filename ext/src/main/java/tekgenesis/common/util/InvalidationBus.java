@@ -0,0 +1,340 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.cluster.ClusterManager;
+import tekgenesis.cluster.MessageHandler;
+import tekgenesis.common.logging.Logger;
+
+import static tekgenesis.cluster.MessageHandler.CACHE_SCOPE;
+import static tekgenesis.cluster.MessageHandler.CLEAR_CACHE_SCOPE;
+import static tekgenesis.cluster.MessageHandler.REBUILD_CACHE_SCOPE;
+import static tekgenesis.common.Predefined.cast;
+
+/**
+ * Broadcasts invalidations of {@link Memo memos} and registered caches to all the members of a
+ * cluster. Invalidations are applied locally right away, and sent to the other members batched
+ * every few milliseconds, in the order published (bursts for the same name and key are sent
+ * once, and keyed invalidations are dropped if the whole name is invalidated on the same
+ * scope). Receivers only touch the keys invalidated, and recalculate rebuilt memos on an
+ * {@link #withExecutor executor} instead of the message delivery thread.
+ *
+ * <p>Each kind of invalidation is sent on a {@link MessageHandler} scope:</p>
+ *
+ * <ul>
+ *   <li>{@link MessageHandler#CACHE_SCOPE}: {@link #invalidate} forces the recalculation of the
+ *     memo (or key), and removes the cache entry (or all).</li>
+ *   <li>{@link MessageHandler#REBUILD_CACHE_SCOPE}: {@link #rebuild} same as invalidate, but the
+ *     singleton memo (or memo map key) is recalculated right away instead of on next read.</li>
+ *   <li>{@link MessageHandler#CLEAR_CACHE_SCOPE}: {@link #clear} clears the memo (or key) value,
+ *     and removes the cache entry (or all).</li>
+ * </ul>
+ */
+public class InvalidationBus {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final Map<String, Consumer<Object>> caches;
+    @NotNull private final ClusterManager<?>    cluster;
+    private final long                          delay;
+    @NotNull private Executor                   executor;
+    private final Object                        flushLock;
+    private final Deque<PendingBatch>           pending;
+    @Nullable private ScheduledFuture<?>        scheduled;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a bus over the given cluster, batching invalidations every 50 milliseconds. */
+    public InvalidationBus(@NotNull ClusterManager<?> cluster) {
+        this(cluster, DEFAULT_DELAY);
+    }
+
+    /** Create a bus over the given cluster, batching invalidations for the given milliseconds. */
+    public InvalidationBus(@NotNull ClusterManager<?> cluster, long delayInMilliseconds) {
+        this.cluster = cluster;
+        delay        = delayInMilliseconds;
+        caches       = new ConcurrentHashMap<>();
+        executor     = rebuilder;
+        flushLock    = new Object();
+        pending      = new ArrayDeque<>();
+        scheduled    = null;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Clear the value of the named memo or cache in all the members. */
+    public void clear(@NotNull String name) {
+        publish(CLEAR_CACHE_SCOPE, name, null);
+    }
+
+    /** Clear the value of the given key of the named memo or cache in all the members. */
+    public void clear(@NotNull String name, @NotNull Serializable key) {
+        publish(CLEAR_CACHE_SCOPE, name, key);
+    }
+
+    /** Send the pending invalidations now (a batch per change of scope, in publish order). */
+    public void flush() {
+        // Batches are taken and sent holding the flush lock, so concurrent flushes keep the order
+        synchronized (flushLock) {
+            final List<PendingBatch> batches;
+            synchronized (this) {
+                if (scheduled != null) scheduled.cancel(false);
+                scheduled = null;
+                batches   = new ArrayList<>(pending);
+                pending.clear();
+            }
+            for (final PendingBatch batch : batches)
+                send(batch.scope, new ArrayList<>(batch.invalidations));
+        }
+    }
+
+    /** Force the recalculation of the named memo or cache in all the members. */
+    public void invalidate(@NotNull String name) {
+        publish(CACHE_SCOPE, name, null);
+    }
+
+    /** Force the recalculation of the given key of the named memo or cache in all the members. */
+    public void invalidate(@NotNull String name, @NotNull Serializable key) {
+        publish(CACHE_SCOPE, name, key);
+    }
+
+    /** Rebuild the named memo or cache in all the members. */
+    public void rebuild(@NotNull String name) {
+        publish(REBUILD_CACHE_SCOPE, name, null);
+    }
+
+    /** Rebuild the given key of the named memo or cache in all the members. */
+    public void rebuild(@NotNull String name, @NotNull Serializable key) {
+        publish(REBUILD_CACHE_SCOPE, name, key);
+    }
+
+    /** Start receiving invalidations from the other members. */
+    public void start() {
+        for (final short scope : SCOPES)
+            cluster.registerMessageHandler(new Handler(scope));
+    }
+
+    /** Send pending invalidations and stop receiving them. */
+    public void stop() {
+        flush();
+        for (final short scope : SCOPES)
+            cluster.deRegisterMessageHandler(scope);
+    }
+
+    /** Invalidate the given cache by name. */
+    public <K> InvalidationBus withCache(@NotNull String name, @NotNull LruCache<K, ?> cache) {
+        caches.put(name, key -> {
+            if (key == null) cache.evictAll();
+            else cache.remove(cast(key));
+        });
+        return this;
+    }
+
+    /** Invalidate the given cache by name. */
+    public <K> InvalidationBus withCache(@NotNull String name, @NotNull ConcurrentLruCache<K, ?> cache) {
+        caches.put(name, key -> {
+            if (key == null) cache.evictAll();
+            else cache.remove(cast(key));
+        });
+        return this;
+    }
+
+    /**
+     * Recalculate the memos rebuilt by other members on the given executor (by default a shared
+     * daemon thread), not to block the delivery of cluster messages.
+     */
+    public InvalidationBus withExecutor(@NotNull Executor rebuildExecutor) {
+        executor = rebuildExecutor;
+        return this;
+    }
+
+    /** Stop invalidating the named cache. */
+    public InvalidationBus withoutCache(@NotNull String name) {
+        caches.remove(name);
+        return this;
+    }
+
+    /**
+     * Apply an invalidation received (or published) on the given scope, recalculating rebuilt
+     * memos on the given executor.
+     */
+    void apply(short scope, @NotNull Invalidation invalidation, @NotNull Executor recalculation) {
+        final String       name    = invalidation.name;
+        final Serializable key     = invalidation.key;
+        final boolean      clear   = scope == CLEAR_CACHE_SCOPE;
+        final boolean      rebuild = scope == REBUILD_CACHE_SCOPE;
+
+        final Consumer<Object> cache = caches.get(name);
+        if (cache != null) cache.accept(key);
+
+        Memo.getInstanceByName(name).ifPresent(memo -> {
+            if (key == null) {
+                if (clear) memo.clear();
+                else memo.force();
+                if (rebuild && memo instanceof SingletonMemo) recalculation.execute(((SingletonMemo<?, ?>) memo)::get);
+            }
+            else if (memo instanceof MemoMap) {
+                final MemoMap<Object, ?, ?> map = cast(memo);
+                if (clear) map.clear(key);
+                else map.force(key);
+                if (rebuild && map.containsKey(key)) recalculation.execute(() -> map.get(key));
+            }
+        });
+    }
+
+    private void publish(short scope, @NotNull String name, @Nullable Serializable key) {
+        final Invalidation invalidation = new Invalidation(name, key);
+        apply(scope, invalidation, Runnable::run);
+
+        synchronized (this) {
+            // A change of scope starts a new batch, so receivers apply them in publish order
+            PendingBatch batch = pending.peekLast();
+            if (batch == null || batch.scope != scope) {
+                batch = new PendingBatch(scope);
+                pending.addLast(batch);
+            }
+            final Set<Invalidation> invalidations = batch.invalidations;
+            if (invalidations.contains(new Invalidation(name, null))) return;
+            if (key == null) invalidations.removeIf(i -> i.name.equals(name));
+            invalidations.add(invalidation);
+            if (scheduled == null) scheduled = timer.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(short scope, @NotNull List<Invalidation> invalidations) {
+        final String origin = cluster.getCurrentMemberId();
+        for (int from = 0; from < invalidations.size(); from += MAX_BATCH) {
+            final int to = Math.min(from + MAX_BATCH, invalidations.size());
+            try {
+                cluster.sendMessage(scope, new Batch(origin, invalidations.subList(from, to)));
+            }
+            catch (final Exception e) {
+                logger.error(e);
+            }
+        }
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, daemon("InvalidationBus"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static ThreadFactory daemon(@NotNull String name) {
+        return r -> {
+                   final Thread thread = new Thread(r, name);
+                   thread.setDaemon(true);
+                   return thread;
+               };
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final long DEFAULT_DELAY = 50;
+    private static final int  MAX_BATCH     = 500;
+
+    private static final short[] SCOPES = { CACHE_SCOPE, REBUILD_CACHE_SCOPE, CLEAR_CACHE_SCOPE };
+
+    private static final Logger                      logger    = Logger.getLogger(InvalidationBus.class);
+    private static final ExecutorService             rebuilder = Executors.newSingleThreadExecutor(daemon("InvalidationBus-rebuild"));
+    private static final ScheduledThreadPoolExecutor timer     = createTimer();
+
+    //~ Inner Classes ................................................................................................................................
+
+    /** Invalidations sent by a member on a scope. */
+    static final class Batch implements Serializable {
+        private final ArrayList<Invalidation> invalidations;
+        private final String                  origin;
+
+        Batch(@NotNull String origin, @NotNull List<Invalidation> invalidations) {
+            this.origin        = origin;
+            this.invalidations = new ArrayList<>(invalidations);
+        }
+
+        /** Visible for testing. */
+        List<Invalidation> getInvalidations() {
+            return invalidations;
+        }
+
+        private static final long serialVersionUID = 4185403207417932187L;
+    }
+
+    /** Invalidation of a memo or cache by name, and optionally key. */
+    static final class Invalidation implements Serializable {
+        @Nullable private final Serializable key;
+        @NotNull private final String        name;
+
+        Invalidation(@NotNull String name, @Nullable Serializable key) {
+            this.name = name;
+            this.key  = key;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Invalidation)) return false;
+            final Invalidation that = (Invalidation) o;
+            return name.equals(that.name) && Objects.equals(key, that.key);
+        }
+
+        @Override public int hashCode() {
+            return 31 * name.hashCode() + Objects.hashCode(key);
+        }
+
+        private static final long serialVersionUID = -2367384915310274620L;
+    }
+
+    /** Invalidations published on a scope, pending to be sent. */
+    private static final class PendingBatch {
+        private final Set<Invalidation> invalidations;
+        private final short             scope;
+
+        private PendingBatch(short scope) {
+            this.scope    = scope;
+            invalidations = new LinkedHashSet<>();
+        }
+    }
+
+    /** Applies the invalidations sent by other members on a scope. */
+    private class Handler implements MessageHandler<Batch> {
+        private final short scope;
+
+        private Handler(short scope) {
+            this.scope = scope;
+        }
+
+        @Override public void handle(Batch batch) {
+            if (batch.origin.equals(cluster.getCurrentMemberId())) return;
+            for (final Invalidation invalidation : batch.invalidations)
+                apply(scope, invalidation, executor);
+        }
+
+        @Override public Short getScope() {
+            return scope;
+        }
+    }
+}  // end class InvalidationBus
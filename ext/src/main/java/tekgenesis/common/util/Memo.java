@@ -12,10 +12,13 @@ package tekgenesis.common.util;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+
+import org.jetbrains.annotations.NotNull;
 
 import tekgenesis.common.collections.ImmutableList;
 import tekgenesis.common.core.Option;
+import tekgenesis.common.env.jmx.JmxHelper;
 
 import static tekgenesis.common.Predefined.cast;
 import static tekgenesis.common.Predefined.option;
@@ -28,12 +31,16 @@ public abstract class Memo<V, M extends Memo<V, M>> {
 
     //~ Instance Fields ..............................................................................................................................
 
-    private long duration;  // Duration in milliseconds
+    private long                     duration;  // Duration in milliseconds
+    private volatile boolean         staleWhileRevalidate;
+    @NotNull private final MemoStats stats;
 
     //~ Constructors .................................................................................................................................
 
     Memo(long duration, TimeUnit unit) {
-        this.duration = unit.toMillis(duration);
+        this.duration        = unit.toMillis(duration);
+        staleWhileRevalidate = false;
+        stats                = new MemoStats(this);
     }
 
     //~ Methods ......................................................................................................................................
@@ -53,11 +60,41 @@ public abstract class Memo<V, M extends Memo<V, M>> {
         return cast(this);
     }
 
+    /**
+     * Once a value is calculated, return it without blocking even if expired, refreshing it in
+     * the background on a shared bounded executor (or the memo's own executor, if any). Refreshes
+     * skipped because the executor is saturated are retried by later reads.
+     */
+    public M withStaleWhileRevalidate(boolean enabled) {
+        staleWhileRevalidate = enabled;
+        return cast(this);
+    }
+
     /** Get the duration of the SingletonMemo in milliseconds. */
     public long getDuration() {
         return duration;
     }
 
+    /** Returns true if expired values are returned while refreshed in the background. */
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /** Get the recalculation statistics of this Memo. */
+    @NotNull public MemoMXBean getStats() {
+        return stats;
+    }
+
+    /** Time of the oldest calculated value (0 if there is none). */
+    abstract long oldestCalculation();
+
+    /** Amount of memoized values. */
+    abstract int size();
+
+    @NotNull MemoStats stats() {
+        return stats;
+    }
+
     //~ Methods ......................................................................................................................................
 
     /** Return all Memo Names. */
@@ -74,21 +111,89 @@ public abstract class Memo<V, M extends Memo<V, M>> {
         getInstanceByName(memoName).ifPresent(Memo::force);
     }
 
-    /** Register the specified Memo. */
-    public static <M extends Memo<T, M>, T> M register(String memoName, M memo) {
-        instances.put(memoName, memo);
+    /** Register the specified Memo, exporting its statistics through JMX. */
+    public static synchronized <M extends Memo<T, M>, T> M register(String memoName, M memo) {
+        final Memo<?, ?> previous = instances.put(memoName, memo);
+        if (previous != memo) {
+            if (previous != null) JmxHelper.unregisterMBean(memoName, JMX_DOMAIN, JMX_TYPE);
+            exportStats(memoName, memo);
+        }
         return memo;
     }
 
     /** Get Memo instance. */
     public static synchronized <M extends Memo<T, M>, T> M getInstance(Class<M> myMemoClass) {
-        return cast(instances.computeIfAbsent(myMemoClass.getCanonicalName(), k -> Reflection.construct(myMemoClass)));
+        return cast(instances.computeIfAbsent(myMemoClass.getCanonicalName(), k -> exportStats(k, Reflection.construct(myMemoClass))));
     }
     static Option<Memo<?, ?>> getInstanceByName(String memoName) {
         return option(instances.get(memoName));
     }
 
+    /** Shared executor refreshing stale values of memos without an executor of their own. */
+    static Executor refreshExecutor() {
+        return RefreshExecutor.executor;
+    }
+
+    private static <M extends Memo<?, ?>> M exportStats(String memoName, M memo) {
+        memo.stats().setName(memoName);
+        JmxHelper.registerMBean(memoName, JMX_DOMAIN, JMX_TYPE, memo.stats());
+        return memo;
+    }
+
     //~ Static Fields ................................................................................................................................
 
     private static final Map<String, Memo<?, ?>> instances = new HashMap<>();
+
+    private static final String JMX_DOMAIN = "tekgenesis.memo";
+    private static final String JMX_TYPE   = "Memo";
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Thread factory naming memo calculator threads after the memo. Threads of a memo executor are
+     * not daemon (as they always were), only the shared refresh executor ones are, so it never
+     * keeps the vm alive.
+     */
+    static class MemoCalculatorThreadFactory implements ThreadFactory {
+        private final boolean       daemon;
+        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        private final String        name;
+
+        MemoCalculatorThreadFactory(String name) {
+            this(name, false);
+        }
+
+        MemoCalculatorThreadFactory(String name, boolean daemon) {
+            this.name   = name;
+            this.daemon = daemon;
+        }
+
+        public Thread newThread(@NotNull Runnable r) {
+            final Thread t = defaultFactory.newThread(r);
+            t.setName(threadName + "-" + name);
+            t.setDaemon(daemon);
+            return t;
+        }
+
+        private static final String threadName = "MemoCalculator";
+    }
+
+    /** Lazy holder of the shared refresh executor. */
+    private static class RefreshExecutor {
+        private static final int QUEUE_SIZE = 256;
+
+        private static final Executor executor = create();
+
+        private static ThreadPoolExecutor create() {
+            final int                threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            final ThreadPoolExecutor e       = new ThreadPoolExecutor(threads,
+                    threads,
+                    1,
+                    TimeUnit.MINUTES,
+                    new ArrayBlockingQueue<>(QUEUE_SIZE),
+                    new MemoCalculatorThreadFactory("refresh", true));
+            e.allowCoreThreadTimeOut(true);
+            return e;
+        }
+    }
 }  // end class Memo
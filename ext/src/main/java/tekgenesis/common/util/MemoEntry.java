@@ -12,8 +12,10 @@ package tekgenesis.common.util;
 
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import tekgenesis.common.logging.Logger;
@@ -27,14 +29,31 @@ public class MemoEntry<V> {
 
     //~ Instance Fields ..............................................................................................................................
 
-    private final AtomicLong lastTime = new AtomicLong(0);
-    private V                value    = null;
+    private volatile long                               accessed        = 0;
+    private volatile long                               calculationTime = 0;
+    private final AtomicLong                            lastTime        = new AtomicLong(0);
+    private final AtomicReference<CompletableFuture<V>> loading         = new AtomicReference<>();
+    @Nullable private final MemoStats                   stats;
+    private volatile V                                  value           = null;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create an entry. */
+    public MemoEntry() {
+        this(null);
+    }
+
+    /** Create an entry recording its recalculations on the given stats. */
+    MemoEntry(@Nullable MemoStats stats) {
+        this.stats = stats;
+    }
 
     //~ Methods ......................................................................................................................................
 
     /** Clear value and force calculation on next get(). */
     public void clear() {
-        value = null;
+        value           = null;
+        calculationTime = 0;
         force();
     }
 
@@ -52,6 +71,7 @@ public class MemoEntry<V> {
     public V get(long duration, BiFunction<Long, V, V> calculation, @Nullable ExecutorService executor) {
         final long now = currentTimeMillis();
         final long lt  = lastTime.get();
+        access(now);
 
         // If no value calculate synchronizing
         if (value == null) {
@@ -63,13 +83,59 @@ public class MemoEntry<V> {
             }
         }
         // The AtomicLong manages the concurrency. So if 2 threads try to recalculate the value. Only the first one will do it
-        else if ((lt == 0L || duration < 0 || now - lt >= duration) && lastTime.compareAndSet(lt, now)) {
+        else if (isExpired(duration, now, lt) && lastTime.compareAndSet(lt, now)) {
             if (executor != null) calculateAsync(executor, lt, calculation);
             else tryToCalculate(lt, calculation);
         }
         return value;
     }
 
+    /**
+     * Get the value without blocking once it was calculated. Expired values are returned while a
+     * single recalculation runs on the given executor. The first calculation runs on the calling
+     * thread, while concurrent readers wait for its result.
+     */
+    public V getStaleWhileRevalidate(long duration, BiFunction<Long, V, V> calculation, @NotNull Executor executor) {
+        final long now = currentTimeMillis();
+        final long lt  = lastTime.get();
+        access(now);
+
+        final V current = value;
+        if (current == null) return load(now, lt, calculation);
+
+        if (isExpired(duration, now, lt) && lastTime.compareAndSet(lt, now)) {
+            try {
+                executor.execute(() -> tryToCalculate(lt, calculation));
+            }
+            catch (final RejectedExecutionException e) {
+                // Saturated, let a later read retry
+                lastTime.compareAndSet(now, lt);
+                if (stats != null) stats.rejected();
+            }
+        }
+        return current;
+    }
+
+    /** Time the entry was last read (0 if never). */
+    long getAccessTime() {
+        return accessed;
+    }
+
+    /** Time the current value was calculated (0 if there is none). */
+    long getCalculationTime() {
+        return calculationTime;
+    }
+
+    /** Returns true if a value was calculated. */
+    boolean hasValue() {
+        return value != null;
+    }
+
+    private void access(long now) {
+        // Avoid contended writes for reads within the same millisecond
+        if (accessed != now) accessed = now;
+    }
+
     private void calculateAsync(ExecutorService executor, long lt, BiFunction<Long, V, V> calculation) {
         try {
             executor.submit(() -> tryToCalculate(lt, calculation)).get(1, TimeUnit.SECONDS);
@@ -81,16 +147,50 @@ public class MemoEntry<V> {
         }
     }
 
+    /** Single flight first calculation: one reader calculates while the others wait for it. */
+    private V load(long now, long lt, BiFunction<Long, V, V> calculation) {
+        while (value == null) {
+            final CompletableFuture<V> running = loading.get();
+            if (running != null) return running.join();
+
+            final CompletableFuture<V> future = new CompletableFuture<>();
+            if (loading.compareAndSet(null, future)) {
+                try {
+                    if (value == null) {
+                        lastTime.set(now);
+                        tryToCalculate(lt, calculation);
+                    }
+                }
+                finally {
+                    loading.set(null);
+                    future.complete(value);
+                }
+                return future.join();
+            }
+        }
+        return value;
+    }
+
     private void tryToCalculate(long lt, BiFunction<Long, V, V> calculation) {
+        final long start = System.nanoTime();
         try {
-            value = calculation.apply(lt, value);
+            value           = calculation.apply(lt, value);
+            calculationTime = currentTimeMillis();
+            if (stats != null) stats.recalculated(System.nanoTime() - start);
         }
         catch (final Exception e) {
             logger.error(e);
             lastTime.set(lt);
+            if (stats != null) stats.failed(System.nanoTime() - start);
         }
     }
 
+    //~ Methods ......................................................................................................................................
+
+    private static boolean isExpired(long duration, long now, long lastTime) {
+        return lastTime == 0L || duration < 0 || now - lastTime >= duration;
+    }
+
     //~ Static Fields ................................................................................................................................
 
     private static final Logger logger = Logger.getLogger(MemoEntry.class);
@@ -0,0 +1,59 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+/**
+ * Management interface of a {@link Memo}, exported through JMX once the memo is registered.
+ * Times are in milliseconds.
+ */
+public interface MemoMXBean {
+
+    //~ Methods ......................................................................................................................................
+
+    /** Clear the values of the memo. */
+    void clear();
+
+    /** Force the recalculation of the memo. */
+    void force();
+
+    /** Average time spent recalculating values. */
+    double getAverageRecalculationTime();
+
+    /** Time to live of memoized values. */
+    long getDuration();
+
+    /** Entries evicted by size or idle time. */
+    long getEvictionCount();
+
+    /** Recalculations that failed (the previous value was kept). */
+    long getFailureCount();
+
+    /** Time spent by the last recalculation. */
+    long getLastRecalculationTime();
+
+    /** Longest time spent by a recalculation. */
+    long getMaxRecalculationTime();
+
+    /** Name the memo was registered with. */
+    String getName();
+
+    /** Successful recalculations. */
+    long getRecalculationCount();
+
+    /** Background refreshes skipped because the refresh executor was saturated. */
+    long getRejectedCount();
+
+    /** Memoized values. */
+    int getSize();
+
+    /** Age of the oldest memoized value. */
+    long getStaleness();
+}  // end interface MemoMXBean
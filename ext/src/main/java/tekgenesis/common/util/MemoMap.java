@@ -10,29 +10,44 @@
 
 package tekgenesis.common.util;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import static tekgenesis.common.Predefined.cast;
+import static tekgenesis.common.core.DateTime.currentTimeMillis;
 
 /**
- * MemoMap.
+ * MemoMap. Unbounded unless a {@link #withMaxSize maximum size} or an {@link #withIdleTimeout idle
+ * timeout} is set.
  */
 public abstract class MemoMap<K, V, M extends MemoMap<K, V, M>> extends Memo<V, M> {
 
     //~ Instance Fields ..............................................................................................................................
 
+    private final ReentrantLock                      evicting;
+    private volatile long                            idleTimeout;
+    private volatile long                            lastSweep;
     private final ConcurrentHashMap<K, MemoEntry<V>> map;
+    private volatile int                             maxSize;
 
     //~ Constructors .................................................................................................................................
 
     /** MemoMap constructor. */
     protected MemoMap(long duration, TimeUnit unit) {
         super(duration, unit);
-        map = new ConcurrentHashMap<>();
+        map         = new ConcurrentHashMap<>();
+        evicting    = new ReentrantLock();
+        idleTimeout = 0;
+        lastSweep   = 0;
+        maxSize     = 0;
     }
 
     //~ Methods ......................................................................................................................................
@@ -57,15 +72,96 @@ public abstract class MemoMap<K, V, M extends MemoMap<K, V, M>> extends Memo<V,
     }
 
     /** Get the memoized value. */
-    public V get(K key) {                                        //
-        return map.computeIfAbsent(key, k -> createMemoEntry())  //
-               .get(getDuration(), (lt, old) -> calculate(key, lt, old), null);
+    public V get(K key) {
+        final MemoEntry<V> entry = map.computeIfAbsent(key, k -> createMemoEntry());
+        final V            value = isStaleWhileRevalidate()
+                                   ? entry.getStaleWhileRevalidate(getDuration(), (lt, old) -> calculate(key, lt, old), refreshExecutor())
+                                   : entry.get(getDuration(), (lt, old) -> calculate(key, lt, old), null);
+        evictIfNeeded();
+        return value;
+    }
+
+    /** Amount of memoized keys. */
+    @Override public int size() {
+        return map.size();
+    }
+
+    /**
+     * Evict keys not read for the given time. Idle keys are swept by reads, at most once per
+     * timeout. A non positive timeout disables idle eviction.
+     */
+    public M withIdleTimeout(long timeout, TimeUnit unit) {
+        idleTimeout = unit.toMillis(timeout);
+        return cast(this);
+    }
+
+    /**
+     * Bound the amount of memoized keys, evicting the least recently read ones once exceeded (in
+     * batches, down to a tenth below the maximum). A non positive size disables size eviction.
+     */
+    public M withMaxSize(int size) {
+        maxSize = size;
+        return cast(this);
+    }
+
+    /** Returns true if the given key is memoized. */
+    boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    @Override long oldestCalculation() {
+        long oldest = 0;
+        for (final MemoEntry<V> entry : map.values()) {
+            final long time = entry.getCalculationTime();
+            if (time != 0 && (oldest == 0 || time < oldest)) oldest = time;
+        }
+        return oldest;
     }
 
     protected abstract V calculate(K key, long lastRefreshTime, @Nullable V oldValue);
 
     @NotNull protected MemoEntry<V> createMemoEntry() {
-        return new MemoEntry<>();
+        return new MemoEntry<>(stats());
+    }
+
+    /** Evict idle keys and, if still above the maximum size, the least recently read ones. */
+    private void evict(long now, long idle, int max) {
+        int evicted = 0;
+        if (idle > 0) {
+            lastSweep = now;
+            for (final Map.Entry<K, MemoEntry<V>> e : map.entrySet()) {
+                final long accessed = e.getValue().getAccessTime();
+                if (accessed != 0 && now - accessed >= idle && map.remove(e.getKey(), e.getValue())) evicted++;
+            }
+        }
+        if (max > 0 && map.size() > max) {
+            // Access times keep changing while sorting, so sort a copy of them
+            final List<Candidate<K, V>> candidates = new ArrayList<>(map.size());
+            for (final Map.Entry<K, MemoEntry<V>> e : map.entrySet())
+                candidates.add(new Candidate<>(e.getKey(), e.getValue()));
+            candidates.sort(Comparator.comparingLong(c -> c.accessTime));
+            final int excess = candidates.size() - (max - max / EVICTION_BATCH);
+            for (int i = 0; i < excess; i++) {
+                final Candidate<K, V> c = candidates.get(i);
+                if (map.remove(c.key, c.entry)) evicted++;
+            }
+        }
+        if (evicted > 0) stats().evicted(evicted);
+    }
+
+    /** Evict keys if above the maximum size or due to sweep idle ones, unless another reader is already evicting. */
+    private void evictIfNeeded() {
+        final long idle = idleTimeout;
+        final int  max  = maxSize;
+        final long now  = idle > 0 ? currentTimeMillis() : 0;
+        if ((max > 0 && map.size() > max || idle > 0 && now - lastSweep >= idle) && evicting.tryLock()) {
+            try {
+                evict(now, idle, max);
+            }
+            finally {
+                evicting.unlock();
+            }
+        }
     }
 
     //~ Methods ......................................................................................................................................
@@ -77,4 +173,23 @@ public abstract class MemoMap<K, V, M extends MemoMap<K, V, M>> extends Memo<V,
             mm.force(key);
         });
     }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int EVICTION_BATCH = 10;
+
+    //~ Inner Classes ................................................................................................................................
+
+    /** Eviction candidate, with the access time of its entry when the eviction started. */
+    private static class Candidate<K, V> {
+        private final long         accessTime;
+        private final MemoEntry<V> entry;
+        private final K            key;
+
+        private Candidate(K key, MemoEntry<V> entry) {
+            this.key   = key;
+            this.entry = entry;
+            accessTime = entry.getAccessTime();
+        }
+    }
 }  // end class MemoMap
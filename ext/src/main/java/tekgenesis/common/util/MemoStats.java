@@ -0,0 +1,136 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import static tekgenesis.common.core.DateTime.currentTimeMillis;
+
+/**
+ * Recalculation statistics of a {@link Memo}. Thread safe.
+ */
+final class MemoStats implements MemoMXBean {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final LongAdder           evictions      = new LongAdder();
+    private final LongAdder           failures       = new LongAdder();
+    private volatile long             lastTime       = 0;
+    private final AtomicLong          maxTime        = new AtomicLong();
+    @NotNull private final Memo<?, ?> memo;
+    private volatile String           name           = "";
+    private final LongAdder           recalculations = new LongAdder();
+    private final LongAdder           rejections     = new LongAdder();
+    private final LongAdder           totalTime      = new LongAdder();
+
+    //~ Constructors .................................................................................................................................
+
+    MemoStats(@NotNull Memo<?, ?> memo) {
+        this.memo = memo;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public void clear() {
+        memo.clear();
+    }
+
+    @Override public void force() {
+        memo.force();
+    }
+
+    @Override public double getAverageRecalculationTime() {
+        final long count = recalculations.sum() + failures.sum();
+        return count == 0 ? 0 : totalTime.sum() / (double) count / NANOS_PER_MILLI;
+    }
+
+    @Override public long getDuration() {
+        return memo.getDuration();
+    }
+
+    @Override public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override public long getFailureCount() {
+        return failures.sum();
+    }
+
+    @Override public long getLastRecalculationTime() {
+        return NANOSECONDS.toMillis(lastTime);
+    }
+
+    @Override public long getMaxRecalculationTime() {
+        return NANOSECONDS.toMillis(maxTime.get());
+    }
+
+    @Override public String getName() {
+        return name;
+    }
+
+    @Override public long getRecalculationCount() {
+        return recalculations.sum();
+    }
+
+    @Override public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    @Override public int getSize() {
+        return memo.size();
+    }
+
+    @Override public long getStaleness() {
+        final long oldest = memo.oldestCalculation();
+        return oldest == 0 ? 0 : Math.max(0, currentTimeMillis() - oldest);
+    }
+
+    /** Record entries evicted. */
+    void evicted(int count) {
+        evictions.add(count);
+    }
+
+    /** Record a failed recalculation that took the given nanoseconds. */
+    void failed(long nanos) {
+        failures.increment();
+        time(nanos);
+    }
+
+    /** Record a successful recalculation that took the given nanoseconds. */
+    void recalculated(long nanos) {
+        recalculations.increment();
+        time(nanos);
+    }
+
+    /** Record a refresh rejected by a saturated executor. */
+    void rejected() {
+        rejections.increment();
+    }
+
+    void setName(@NotNull String name) {
+        this.name = name;
+    }
+
+    private void time(long nanos) {
+        lastTime = nanos;
+        totalTime.add(nanos);
+        maxTime.accumulateAndGet(nanos, Math::max);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+}  // end class MemoStats
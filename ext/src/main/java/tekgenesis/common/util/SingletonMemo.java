@@ -39,7 +39,7 @@ public abstract class SingletonMemo<T, M extends SingletonMemo<T, M>> extends Me
     protected SingletonMemo(long duration, TimeUnit unit, boolean async) {
         super(duration, unit);
         executor = async ? createExecutor(getClass().getName()) : null;
-        entry    = new MemoEntry<T>();
+        entry    = new MemoEntry<>(stats());
     }
 
     //~ Methods ......................................................................................................................................
@@ -55,7 +55,8 @@ public abstract class SingletonMemo<T, M extends SingletonMemo<T, M>> extends Me
 
     /** Get the memoized value. */
     public T get() {
-        return entry.get(getDuration(), this::calculate, executor);
+        if (!isStaleWhileRevalidate()) return entry.get(getDuration(), this::calculate, executor);
+        return entry.getStaleWhileRevalidate(getDuration(), this::calculate, executor != null ? executor : refreshExecutor());
     }
 
     /** Define the Executor Service for the Memo (null will force synchronous execution). */
@@ -64,6 +65,14 @@ public abstract class SingletonMemo<T, M extends SingletonMemo<T, M>> extends Me
         return cast(this);
     }
 
+    @Override long oldestCalculation() {
+        return entry.getCalculationTime();
+    }
+
+    @Override int size() {
+        return entry.hasValue() ? 1 : 0;
+    }
+
     protected abstract T calculate(long lastRefreshTime, @Nullable T oldValue);
 
     //~ Methods ......................................................................................................................................
@@ -78,23 +87,4 @@ public abstract class SingletonMemo<T, M extends SingletonMemo<T, M>> extends Me
         e.allowCoreThreadTimeOut(true);
         return e;
     }
-
-    //~ Inner Classes ................................................................................................................................
-
-    private static class MemoCalculatorThreadFactory implements ThreadFactory {
-        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
-        private final String        name;
-
-        MemoCalculatorThreadFactory(String name) {
-            this.name = name;
-        }
-
-        public Thread newThread(@NotNull Runnable r) {
-            final Thread t = defaultFactory.newThread(r);
-            t.setName(threadName + "-" + name);
-            return t;
-        }
-
-        private static final String threadName = "MemoCalculator";
-    }
 }  // end class SingletonMemo
@@ -10,11 +10,15 @@
 
 package tekgenesis.common;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.function.BiFunction;
 import java.util.function.LongSupplier;
 
+import javax.management.ObjectName;
+
 import org.assertj.core.api.Condition;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Rule;
@@ -26,6 +30,7 @@ import tekgenesis.common.logging.Logger;
 import tekgenesis.common.tools.test.TimeProviderRule;
 import tekgenesis.common.util.Memo;
 import tekgenesis.common.util.MemoEntry;
+import tekgenesis.common.util.MemoMXBean;
 import tekgenesis.common.util.MemoMap;
 import tekgenesis.common.util.SingletonMemo;
 
@@ -154,6 +159,128 @@ public class MemoTest {
         assertThat(myMemo1.getCount(2)).isEqualTo(16);
     }
 
+    @Test public void memoMapIdleEviction() {
+        final MyBoundedMemoMap memo = MyBoundedMemoMap.getInstance().withMaxSize(0).withIdleTimeout(5, MINUTES);
+        memo.reset();
+
+        assertThat(memo.getCount(1)).isEqualTo(0);
+        assertThat(memo.getCount(2)).isEqualTo(2);
+        timer.increment(MINUTES.toMillis(3));
+        assertThat(memo.getCount(2)).isEqualTo(2);
+        assertThat(memo.size()).isEqualTo(2);
+
+        // Key 1 idle for 6 minutes is evicted, key 2 read 3 minutes ago is kept
+        timer.increment(MINUTES.toMillis(3));
+        assertThat(memo.getCount(3)).isEqualTo(6);
+        assertThat(memo.size()).isEqualTo(2);
+        assertThat(memo.getCount(2)).isEqualTo(2);
+        assertThat(memo.getCount(1)).isEqualTo(3);
+
+        memo.withIdleTimeout(0, MINUTES);
+    }
+
+    @Test public void memoMapSizeEviction() {
+        final MyBoundedMemoMap memo = MyBoundedMemoMap.getInstance().withIdleTimeout(0, MINUTES).withMaxSize(20);
+        memo.reset();
+        final long evicted = memo.getStats().getEvictionCount();
+
+        for (int i = 1; i <= 20; i++) {
+            memo.getCount(i);
+            timer.increment(1);
+        }
+        assertThat(memo.size()).isEqualTo(20);
+
+        // Exceeding the maximum evicts the least recently read keys down to a tenth below it
+        memo.getCount(1);
+        timer.increment(1);
+        memo.getCount(21);
+        assertThat(memo.size()).isEqualTo(18);
+        assertThat(memo.getStats().getEvictionCount() - evicted).isEqualTo(3);
+        assertThat(memo.getCount(1)).isEqualTo(0);
+        assertThat(memo.getCount(21)).isEqualTo(20 * 21);
+        assertThat(memo.getCount(2)).isEqualTo(21 * 2);
+
+        memo.withMaxSize(0);
+    }
+
+    @Test public void memoStats()
+        throws Exception
+    {
+        final MyBoundedMemoMap memo = MyBoundedMemoMap.getInstance().withIdleTimeout(0, MINUTES).withMaxSize(0);
+        memo.reset();
+        final MemoMXBean stats        = memo.getStats();
+        final long       calculations = stats.getRecalculationCount();
+        final long       failures     = stats.getFailureCount();
+
+        memo.getCount(1);
+        memo.getCount(2);
+        assertThat(memo.getCount(-1)).isNull();
+        assertThat(stats.getRecalculationCount() - calculations).isEqualTo(2);
+        assertThat(stats.getFailureCount() - failures).isEqualTo(1);
+        assertThat(stats.getSize()).isEqualTo(3);
+
+        timer.increment(MINUTES.toMillis(2));
+        assertThat(stats.getStaleness()).isEqualTo(MINUTES.toMillis(2));
+
+        final String     name   = MyBoundedMemoMap.class.getCanonicalName();
+        final ObjectName object = new ObjectName("tekgenesis.memo:Name=" + name + ",type=Memo");
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(object, "Name")).isEqualTo(name);
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(object, "FailureCount")).isEqualTo(stats.getFailureCount());
+
+        ManagementFactory.getPlatformMBeanServer().invoke(object, "force", new Object[0], new String[0]);
+        assertThat(stats.getSize()).isZero();
+        assertThat(stats.getStaleness()).isZero();
+    }
+
+    @Test public void staleWhileRevalidate() {
+        final MemoEntry<Integer>                 memo        = new MemoEntry<>();
+        final List<Runnable>                     refreshes   = new ArrayList<>();
+        final Executor                           executor    = refreshes::add;
+        final BiFunction<Long, Integer, Integer> calculation = (l, v) -> v == null ? 0 : v + 1;
+        final long                               minutes     = MINUTES.toMillis(1);
+
+        assertThat(memo.getStaleWhileRevalidate(minutes, calculation, executor)).isEqualTo(0);
+        assertThat(refreshes).isEmpty();
+
+        // Stale value is returned while a single refresh is pending
+        timer.increment(2 * minutes);
+        assertThat(memo.getStaleWhileRevalidate(minutes, calculation, executor)).isEqualTo(0);
+        assertThat(memo.getStaleWhileRevalidate(minutes, calculation, executor)).isEqualTo(0);
+        assertThat(refreshes).hasSize(1);
+
+        refreshes.remove(0).run();
+        assertThat(memo.getStaleWhileRevalidate(minutes, calculation, executor)).isEqualTo(1);
+        assertThat(refreshes).isEmpty();
+
+        // Rejected refreshes are retried by the next read
+        timer.increment(2 * minutes);
+        final Executor saturated = r -> { throw new RejectedExecutionException(); };
+        assertThat(memo.getStaleWhileRevalidate(minutes, calculation, saturated)).isEqualTo(1);
+        assertThat(memo.getStaleWhileRevalidate(minutes, calculation, executor)).isEqualTo(1);
+        assertThat(refreshes).hasSize(1);
+    }
+
+    @Test public void staleWhileRevalidateSingleton()
+        throws Exception
+    {
+        final SlowMemo memo = SlowMemo.getInstance();
+        memo.reset();
+        memo.withStaleWhileRevalidate(true);
+        try {
+            assertThat(memo.getCount()).isEqualTo(0);
+            // Slow refresh runs in the background, readers get the stale value without waiting
+            memo.force();
+            final long start = System.currentTimeMillis();
+            for (int i = 0; i < 100; i++)
+                assertThat(memo.getCount()).isEqualTo(0);
+            assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+        }
+        finally {
+            memo.withStaleWhileRevalidate(false);
+            memo.cancel();
+        }
+    }
+
     @Test public void testConcurrency()
         throws InterruptedException
     {
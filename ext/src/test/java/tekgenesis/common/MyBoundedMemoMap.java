@@ -0,0 +1,53 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common;
+
+import java.util.concurrent.TimeUnit;
+
+import tekgenesis.common.util.MemoMap;
+
+/**
+ * Bounded MemoMap test class, failing to calculate negative keys.
+ */
+public class MyBoundedMemoMap extends MemoMap<Integer, Integer, MyBoundedMemoMap> {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    int count = -1;
+
+    //~ Constructors .................................................................................................................................
+
+    MyBoundedMemoMap() {
+        super(30, TimeUnit.MINUTES);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    public void reset() {
+        count = -1;
+        force();
+    }
+
+    public Integer getCount(int key) {
+        return get(key);
+    }
+
+    @Override protected Integer calculate(Integer key, long lastRefreshTime, Integer oldValue) {
+        if (key < 0) throw new IllegalArgumentException("Negative key " + key);
+        return ++count * key;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    public static MyBoundedMemoMap getInstance() {
+        return getInstance(MyBoundedMemoMap.class);
+    }
+}
@@ -33,7 +33,7 @@ public class SlowMemo extends SingletonMemo<Integer, SlowMemo> {
     //~ Methods ......................................................................................................................................
 
     public void cancel() {
-        thread.interrupt();
+        if (thread != null) thread.interrupt();
         count = -1;
     }
 
@@ -0,0 +1,178 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import tekgenesis.cluster.MessageHandler;
+import tekgenesis.common.MyMemoMap;
+import tekgenesis.common.tools.test.InProcessClusterManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static tekgenesis.cluster.MessageHandler.CACHE_SCOPE;
+import static tekgenesis.cluster.MessageHandler.CLEAR_CACHE_SCOPE;
+import static tekgenesis.cluster.MessageHandler.REBUILD_CACHE_SCOPE;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class InvalidationBusTest {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private InvalidationBus          busA    = null;
+    private InvalidationBus          busB    = null;
+    private LruCache<String, String> cacheA  = null;
+    private LruCache<String, String> cacheB  = null;
+    private InProcessClusterManager  memberA = null;
+    private InProcessClusterManager  memberB = null;
+
+    //~ Methods ......................................................................................................................................
+
+    @Before public void setUp() {
+        memberA = new InProcessClusterManager("InvalidationBusTest", "a");
+        memberB = new InProcessClusterManager("InvalidationBusTest", "b");
+        memberA.start();
+        memberB.start();
+
+        cacheA = createCache();
+        cacheB = createCache();
+        // Long delay, so batches are only sent when flushed
+        busA = new InvalidationBus(memberA, 60000).withCache(CACHE, cacheA);
+        busB = new InvalidationBus(memberB, 60000).withCache(CACHE, cacheB);
+        busA.start();
+        busB.start();
+    }
+
+    @After public void tearDown() {
+        busA.stop();
+        busB.stop();
+        memberA.stop();
+        memberB.stop();
+    }
+
+    @Test public void testCacheInvalidation() {
+        busA.invalidate(CACHE, "k1");
+        assertThat(cacheA.get("k1")).isNull();
+        assertThat(cacheB.get("k1")).isEqualTo("v1");
+
+        busA.flush();
+        assertThat(cacheB.get("k1")).isNull();
+        assertThat(cacheB.get("k2")).isEqualTo("v2");
+        assertThat(memberA.getMessages(CACHE_SCOPE)).hasSize(1);
+
+        busB.clear(CACHE);
+        busB.flush();
+        assertThat(cacheA.size()).isZero();
+        assertThat(cacheB.size()).isZero();
+        assertThat(memberB.getMessages(CLEAR_CACHE_SCOPE)).hasSize(1);
+    }
+
+    @Test public void testCoalescing() {
+        for (int i = 0; i < 10; i++)
+            busA.invalidate(CACHE, "k1");
+        busA.invalidate(CACHE, "k2");
+        busA.flush();
+        assertThat(invalidations(memberA.getMessages(CACHE_SCOPE).get(0))).containsExactly(new InvalidationBus.Invalidation(CACHE, "k1"),
+            new InvalidationBus.Invalidation(CACHE, "k2"));
+
+        // Invalidating the whole cache drops the keyed invalidations
+        busA.invalidate(CACHE, "k3");
+        busA.invalidate(CACHE);
+        busA.invalidate(CACHE, "k4");
+        busA.flush();
+        assertThat(memberA.getMessages(CACHE_SCOPE)).hasSize(2);
+        assertThat(invalidations(memberA.getMessages(CACHE_SCOPE).get(1))).containsExactly(new InvalidationBus.Invalidation(CACHE, null));
+
+        // Nothing pending, nothing sent
+        busA.flush();
+        assertThat(memberA.getMessages(CACHE_SCOPE)).hasSize(2);
+    }
+
+    @Test public void testMemoInvalidation() {
+        final MyMemoMap memo = MyMemoMap.getInstance();
+        memo.reset();
+        final String         name          = MyMemoMap.class.getCanonicalName();
+        final List<Runnable> recalculation = new ArrayList<>();
+        busB.withExecutor(recalculation::add);
+
+        assertThat(memo.getCount(1)).isEqualTo(0);
+        assertThat(memo.getCount(2)).isEqualTo(2);
+
+        // Only the invalidated key is recalculated
+        busA.invalidate(name, 1);
+        busA.flush();
+        assertThat(memo.getCount(1)).isEqualTo(2);
+        assertThat(memo.getCount(2)).isEqualTo(2);
+
+        // Rebuilt eagerly by each member (both sharing the memo in process)
+        busA.rebuild(name, 2);
+        busA.flush();
+        // The receiver recalculates on its executor, not on the delivery thread
+        assertThat(recalculation).hasSize(1);
+        recalculation.forEach(Runnable::run);
+        assertThat(memo.size()).isEqualTo(2);
+        assertThat(memo.getCount(2)).isEqualTo(8);
+    }
+
+    @Test public void testPublishOrder() {
+        final InProcessClusterManager memberC = new InProcessClusterManager("InvalidationBusTest", "c");
+        final List<Short>             scopes  = new ArrayList<>();
+        for (final short scope : new short[] { CACHE_SCOPE, REBUILD_CACHE_SCOPE, CLEAR_CACHE_SCOPE })
+            memberC.registerMessageHandler(new MessageHandler<InvalidationBus.Batch>() {
+                    @Override public void handle(InvalidationBus.Batch message) {
+                        scopes.add(scope);
+                    }
+
+                    @Override public Short getScope() {
+                        return scope;
+                    }
+                });
+        memberC.start();
+        try {
+            busA.clear(CACHE);
+            busA.invalidate(CACHE, "k1");
+            busA.invalidate(CACHE, "k2");
+            busA.clear(CACHE, "k1");
+            busA.rebuild(CACHE, "k2");
+            busA.flush();
+            // A batch per change of scope, received in the order published
+            assertThat(scopes).containsExactly(CLEAR_CACHE_SCOPE, CACHE_SCOPE, CLEAR_CACHE_SCOPE, REBUILD_CACHE_SCOPE);
+            assertThat(invalidations(memberA.getMessages(CACHE_SCOPE).get(0))).containsExactly(new InvalidationBus.Invalidation(CACHE, "k1"),
+                new InvalidationBus.Invalidation(CACHE, "k2"));
+        }
+        finally {
+            memberC.stop();
+        }
+    }
+
+    private LruCache<String, String> createCache() {
+        final LruCache<String, String> cache = LruCache.createLruCache(10);
+        cache.put("k1", "v1");
+        cache.put("k2", "v2");
+        return cache;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static List<InvalidationBus.Invalidation> invalidations(Serializable message) {
+        return ((InvalidationBus.Batch) message).getInvalidations();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String CACHE = "cache";
+}  // end class InvalidationBusTest
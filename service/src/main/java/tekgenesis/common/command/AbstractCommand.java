@@ -12,6 +12,7 @@ package tekgenesis.common.command;
 
 import java.lang.ref.Reference;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -19,16 +20,22 @@ import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
 
 import rx.Observable;
+import rx.Scheduler;
 import rx.Subscriber;
 import rx.subjects.ReplaySubject;
 import rx.subscriptions.CompositeSubscription;
+import rx.subscriptions.Subscriptions;
 
 import tekgenesis.common.command.CommandThreadPool.Factory;
 import tekgenesis.common.command.CommandTimer.TimerListener;
 import tekgenesis.common.command.exception.CommandInvocationException;
+import tekgenesis.common.command.exception.CommandShortCircuitException;
 import tekgenesis.common.command.exception.CommandStackCauseException;
 import tekgenesis.common.command.exception.CommandTimeoutException;
 import tekgenesis.common.core.Option;
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.invoker.metric.InvocationEvent;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
 import tekgenesis.common.logging.Logger;
 import tekgenesis.common.service.exception.MessageConversionException;
 
@@ -129,29 +136,118 @@ public abstract class AbstractCommand<T> implements Command<T> {
      */
     protected abstract T run();
 
+    /**
+     * Observable executing the command, only used for {@link #isNonBlocking() non-blocking}
+     * commands. Defaults to one calling {@link #run()}.
+     */
+    protected Observable<T> construct() {
+        return getExecutionObservable();
+    }
+
+    /**
+     * Recover from a failed, short-circuited or rejected execution (eg: retrying it). Defaults to
+     * the fallback, if any.
+     */
+    protected Observable<T> recover(@NotNull Throwable t) {
+        return getFallbackOrThrowException(t);
+    }
+
     protected void withFallback(@NotNull Function<Throwable, T> f) {
         fallback = some(f);
     }
 
     /**
-     * Decorate functionality around the run() Observable with error handling, thread pool, and
-     * timeout.
+     * Decorate functionality around the run() Observable with error handling, isolation (thread
+     * pool or semaphore), and timeout.
      */
     protected Observable<T> getDecoratedObservable() {
+        final CommandCircuitBreaker breaker = CommandCircuitBreaker.Factory.getInstance(getCommandKey(), getThreadPoolKey());
+
+        // Circuit is open, go straight to fallback without scheduling the execution
+        if (!breaker.allowRequest()) return recover(new CommandShortCircuitException(getCommandKey()));
+
+        final CommandSemaphore semaphore = CommandSemaphore.Factory.getInstance(getCommandKey());
+        final boolean          isolated  = semaphore.isEnabled();
+
+        // Semaphore isolation and no permits available, go straight to fallback (releasing a half-open trial)
+        if (isolated && !semaphore.tryAcquire()) {
+            breaker.markCancelled();
+            InvocationMetrics.getOrCreateInstance(getCommandKey(), getThreadPoolKey()).markSemaphoreRejection();
+            return recover(new RejectedExecutionException("Semaphore rejected execution of command '" + getCommandKey() + "'"));
+        }
+
+        final boolean nonBlocking = isNonBlocking();
+
         Observable<T> run = Observable.create(s -> {
                 if (timeout.get() == TIMED_OUT) s.onError(new RuntimeException("Timed out before executing run()"));
-                else getExecutionObservable().unsafeSubscribe(s);
+                else (nonBlocking ? construct() : getExecutionObservable()).unsafeSubscribe(s);
             });
 
-        run = run.subscribeOn(pool.getScheduler());
+        final CommandConcurrencyLimiter limiter = pool.getLimiter();
+        final boolean                   limited = !isolated && limiter.isEnabled();
+
+        // Adaptive concurrency limit reached, reject as the pool would do (releasing a half-open trial)
+        if (limited && !limiter.tryAcquire()) {
+            breaker.markCancelled();
+            InvocationMetrics.getOrCreateInstance(getCommandKey(), getThreadPoolKey()).markThreadPoolRejection();
+            return recover(new RejectedExecutionException("Concurrency limit reached for command '" + getCommandKey() + "'"));
+        }
+
+        // Non-blocking executions are not scheduled on the pool, and hold permits until they terminate
+        if (isolated) run = nonBlocking ? releaseOnTerminate(run, semaphore) : releaseOnReturn(run, semaphore);
+        else if (!nonBlocking) run = run.subscribeOn(pool.getScheduler());
 
         if (getTimeoutIntervalTimeInMilliseconds().isPresent()) run = run.lift(new ObservableTimeoutOperator<>(this));
 
-        run = run.onErrorResumeNext(this::getFallbackOrThrowException);
+        if (limited) run = releaseOnTerminate(run, limiter);
+
+        // Executions unsubscribed before terminating (eg: losing a hedge) are reported as cancelled, even if they complete later
+        final AtomicBoolean reported = new AtomicBoolean();
+        run = run.doOnCompleted(() -> {
+                     if (reported.compareAndSet(false, true)) breaker.markSuccess();
+                 })
+              .doOnError(t -> {
+                     if (reported.compareAndSet(false, true)) breaker.markFailure(getFailureEvent(t));
+                 })
+              .doOnUnsubscribe(() -> {
+                     if (reported.compareAndSet(false, true)) breaker.markCancelled();
+                 });
+
+        run = run.onErrorResumeNext(this::recover);
 
         return run;
     }
 
+    /**
+     * Key used to share executions of identical commands (de-duplicating in-flight executions, or
+     * all of them within a {@link CommandRequestContext}). Defaults to none, so executions are never
+     * shared.
+     */
+    protected Option<String> getCacheKey() {
+        return empty();
+    }
+
+    /**
+     * Key used to identify the command circuit breaker and health metrics. Defaults to the thread
+     * pool key.
+     */
+    protected String getCommandKey() {
+        return getThreadPoolKey();
+    }
+
+    /**
+     * Returns true if the given execution failure is caused by the request itself (and not by the
+     * service health), so it won't count to trip the circuit breaker.
+     */
+    protected boolean isBadRequest(@NotNull Throwable t) {
+        return false;
+    }
+
+    /** Scheduler of the command thread pool, to run additional work in parallel to the command. */
+    protected Scheduler getScheduler() {
+        return pool.getScheduler();
+    }
+
     protected String getThreadPoolKey() {
         final String key = getClass().getCanonicalName();
         if (isEmpty(key))
@@ -165,6 +261,22 @@ public abstract class AbstractCommand<T> implements Command<T> {
         return empty();
     }
 
+    /**
+     * Returns true if the command is executed by {@link #construct()} without blocking, so it is
+     * not scheduled on the thread pool. Defaults to false.
+     */
+    protected boolean isNonBlocking() {
+        return false;
+    }
+
+    /**
+     * Mark the execution as completed, so it can no longer time out. Returns false if it already
+     * timed out (so its result will be discarded).
+     */
+    protected boolean completeInTime() {
+        return timeout.get() == TimedOutStatus.COMPLETED || timeout.compareAndSet(NOT_EXECUTED, TimedOutStatus.COMPLETED);
+    }
+
     /** Use command stack exception as cause on given exception root cause. */
     private RuntimeException causify(@NotNull RuntimeException exception, @NotNull CommandStackCauseException stack) {
         Throwable cause = exception;
@@ -176,7 +288,52 @@ public abstract class AbstractCommand<T> implements Command<T> {
 
     private boolean decomposes(Throwable cause) {
         return cause instanceof IllegalStateException || cause instanceof CommandInvocationException || cause instanceof CommandTimeoutException ||
-               cause instanceof MessageConversionException;
+               cause instanceof CommandShortCircuitException || cause instanceof MessageConversionException;
+    }
+
+    /**
+     * Subscribe to given observable on the calling thread, releasing the semaphore permit once it
+     * returns (note that a timeout cannot interrupt the calling thread, it only notifies early).
+     */
+    private Observable<T> releaseOnReturn(@NotNull final Observable<T> observable, @NotNull final CommandSemaphore semaphore) {
+        return Observable.create(s -> {
+            try {
+                observable.unsafeSubscribe(s);
+            }
+            finally {
+                semaphore.release();
+            }
+        });
+    }
+
+    /** Release the semaphore permit once given observable terminates (or is unsubscribed). */
+    private Observable<T> releaseOnTerminate(@NotNull final Observable<T> observable, @NotNull final CommandSemaphore semaphore) {
+        final AtomicBoolean released = new AtomicBoolean();
+        return observable.doOnTerminate(() -> {
+                             if (released.compareAndSet(false, true)) semaphore.release();
+                         })
+                         .doOnUnsubscribe(() -> {
+                             if (released.compareAndSet(false, true)) semaphore.release();
+                         });
+    }
+
+    /**
+     * Release the limiter permit once given observable terminates (or is unsubscribed), with the
+     * execution latency. Timeouts and rejections are reported as dropped executions.
+     */
+    private Observable<T> releaseOnTerminate(@NotNull final Observable<T> observable, @NotNull final CommandConcurrencyLimiter limiter) {
+        final long          start    = System.currentTimeMillis();
+        final AtomicBoolean released = new AtomicBoolean();
+        return observable.doOnCompleted(() -> {
+                             if (released.compareAndSet(false, true)) limiter.release(System.currentTimeMillis() - start, false);
+                         })
+                         .doOnError(t -> {
+                             final boolean dropped = t instanceof CommandTimeoutException || t instanceof RejectedExecutionException;
+                             if (released.compareAndSet(false, true)) limiter.release(System.currentTimeMillis() - start, dropped);
+                         })
+                         .doOnUnsubscribe(() -> {
+                             if (released.compareAndSet(false, true)) limiter.release(System.currentTimeMillis() - start, false);
+                         });
     }
 
     /**
@@ -212,6 +369,13 @@ public abstract class AbstractCommand<T> implements Command<T> {
                 if (listener != null) listener.clear();
             });
 
+        // Share executions with the same cache key
+        final Option<String> cacheKey = getCacheKey();
+        if (cacheKey.isPresent() && isRequestCacheEnabled())
+            observable = CommandRequestCache.cached(getCommandKey() + "/" + cacheKey.get(),
+                    observable,
+                    () -> InvocationMetrics.getOrCreateInstance(getCommandKey(), getThreadPoolKey()).markResponseFromCache());
+
         return observable;
     }
 
@@ -240,11 +404,23 @@ public abstract class AbstractCommand<T> implements Command<T> {
         });
     }
 
+    private InvocationEvent getFailureEvent(@NotNull Throwable t) {
+        if (isBadRequest(t)) return InvocationEvent.BAD_REQUEST;
+        if (t instanceof CommandTimeoutException) return InvocationEvent.TIMEOUT;
+        if (t instanceof RejectedExecutionException) return InvocationEvent.THREAD_POOL_REJECTED;
+        return InvocationEvent.FAILURE;
+    }
+
     private Observable<T> getFallbackOrThrowException(@NotNull Throwable t) {
         if (fallback.isPresent()) return getErrorFallbackObservable(fallback.get(), t);
         return Observable.error(t);
     }
 
+    /** Returns true if the request cache is enabled for the command key. */
+    private boolean isRequestCacheEnabled() {
+        return Context.getEnvironment().get(getCommandKey(), CommandProps.class).requestCacheEnabled;
+    }
+
     //~ Static Fields ................................................................................................................................
 
     private static final Logger logger = Logger.getLogger(AbstractCommand.class);
@@ -309,6 +485,9 @@ public abstract class AbstractCommand<T> implements Command<T> {
             // set externally so execute/queue can see this
             command.timer.set(tl);
 
+            // Stop timer if the child un-subscribes before a notification
+            s.add(Subscriptions.create(tl::clear));
+
             /* If this subscriber receives values it means the parent succeeded/completed */
             final Subscriber<R> parent = new Subscriber<R>() {
                     @Override public void onCompleted() {
@@ -331,8 +510,7 @@ public abstract class AbstractCommand<T> implements Command<T> {
                     }
 
                     private boolean isNotTimedOut() {
-                        return command.timeout.get() == TimedOutStatus.COMPLETED ||
-                               command.timeout.compareAndSet(NOT_EXECUTED, TimedOutStatus.COMPLETED);
+                        return command.completeInTime();
                     }
                 };
 
@@ -0,0 +1,194 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.invoker.metric.InvocationEvent;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
+import tekgenesis.common.invoker.metric.InvocationMetrics.HealthCounts;
+import tekgenesis.common.logging.Logger;
+
+import static tekgenesis.common.command.CommandCircuitBreaker.Status.*;
+
+/**
+ * Circuit breaker used by {@link AbstractCommand} to stop executions (short-circuit) of a command
+ * key while its error percentage is above the configured threshold. Health is computed from the
+ * rolling {@link InvocationMetrics#getHealthCounts() health counts} of the command key.
+ */
+interface CommandCircuitBreaker {
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Returns true if an execution should be allowed. While the circuit is open this returns false
+     * until the sleep window elapses, and then allows a single trial execution (half-open).
+     */
+    boolean allowRequest();
+
+    /** Record a failed execution with the given event. Re-opens a half-open circuit. */
+    void markFailure(@NotNull InvocationEvent event);
+
+    /**
+     * Record an execution unsubscribed before terminating (or rejected before running). It counts
+     * neither as a success nor as a failure, but re-opens a half-open circuit so a new trial
+     * execution is allowed after the sleep window (instead of staying half-open forever).
+     */
+    void markCancelled();
+
+    /** Record a successful execution. Closes a half-open circuit. */
+    void markSuccess();
+
+    /** Returns true if the circuit is currently open (or half-open). */
+    boolean isOpen();
+
+    //~ Enums ........................................................................................................................................
+
+    enum Status { CLOSED, OPEN, HALF_OPEN }
+
+    //~ Inner Classes ................................................................................................................................
+
+    class DefaultCommandCircuitBreaker implements CommandCircuitBreaker {
+        private final AtomicLong      circuitOpened = new AtomicLong(-1);
+        private final LongSupplier    clock;
+        private final String          commandKey;
+        private final String          group;
+        private volatile CommandProps props;
+
+        private final AtomicReference<Status> status = new AtomicReference<>(CLOSED);
+
+        DefaultCommandCircuitBreaker(@NotNull String commandKey, @NotNull String group) {
+            this(commandKey, group, System::currentTimeMillis);
+        }
+
+        /** Creates a circuit breaker measuring the sleep window with the given clock (in millis). */
+        DefaultCommandCircuitBreaker(@NotNull String commandKey, @NotNull String group, @NotNull LongSupplier clock) {
+            this.clock      = clock;
+            this.commandKey = commandKey;
+            this.group      = group;
+            props           = Context.getEnvironment().get(commandKey, CommandProps.class, value -> {
+                        if (value.isPresent()) props = value.get();
+                    });
+        }
+
+        @Override public boolean allowRequest() {
+            if (!props.circuitBreakerEnabled) return true;
+
+            final boolean allowed;
+            if (props.circuitBreakerForceOpen) allowed = false;
+            else if (props.circuitBreakerForceClosed) allowed = true;
+            else if (circuitOpened.get() == -1) allowed = !tripIfUnhealthy();
+            else allowed = attemptTrialExecution();
+
+            if (!allowed) getMetrics().markShortCircuited();
+            return allowed;
+        }
+
+        @Override public void markFailure(@NotNull InvocationEvent event) {
+            if (!props.circuitBreakerEnabled) return;
+
+            final InvocationMetrics metrics = getMetrics();
+            switch (event) {
+            case BAD_REQUEST:
+                // Backend answered, so a bad request shouldn't count against its health
+                metrics.markError();
+                markHealthy();
+                return;
+            case TIMEOUT:
+                metrics.markTimeout();
+                break;
+            case THREAD_POOL_REJECTED:
+                metrics.markThreadPoolRejection();
+                break;
+            default:
+                metrics.markFailure();
+            }
+
+            // Trial execution failed, so go back to open for another sleep window
+            reopen();
+        }
+
+        @Override public void markCancelled() {
+            // Trial execution never terminated, so go back to open for another sleep window
+            if (props.circuitBreakerEnabled) reopen();
+        }
+
+        @Override public void markSuccess() {
+            if (!props.circuitBreakerEnabled) return;
+
+            getMetrics().markSuccess();
+            markHealthy();
+        }
+
+        @Override public boolean isOpen() {
+            return props.circuitBreakerEnabled && (props.circuitBreakerForceOpen || circuitOpened.get() != -1);
+        }
+
+        /** Once the sleep window elapses, allow a single execution to test the circuit. */
+        private boolean attemptTrialExecution() {
+            final long opened = circuitOpened.get();
+            return clock.getAsLong() > opened + props.circuitBreakerSleepWindow && status.compareAndSet(OPEN, HALF_OPEN);
+        }
+
+        private void markHealthy() {
+            if (status.compareAndSet(HALF_OPEN, CLOSED)) {
+                // Start with fresh health counts, otherwise the previous errors would trip the circuit again
+                getMetrics().resetCounter();
+                circuitOpened.set(-1);
+            }
+        }
+
+        private void reopen() {
+            if (status.compareAndSet(HALF_OPEN, OPEN)) circuitOpened.set(clock.getAsLong());
+        }
+
+        /** Open the circuit if the rolling health counts exceed the configured error threshold. */
+        private boolean tripIfUnhealthy() {
+            final HealthCounts health = getMetrics().getHealthCounts();
+            if (health.getTotalRequests() < props.circuitBreakerRequestVolumeThreshold) return false;
+            if (health.getErrorPercentage() < props.circuitBreakerErrorThresholdPercentage) return false;
+
+            if (status.compareAndSet(CLOSED, OPEN)) {
+                circuitOpened.set(clock.getAsLong());
+                logger.warning("Circuit breaker opened for command '" + commandKey + "' with " + health.getErrorPercentage() + "% errors");
+            }
+            return true;
+        }
+
+        private InvocationMetrics getMetrics() {
+            return InvocationMetrics.getOrCreateInstance(commandKey, group);
+        }
+
+        private static final Logger logger = Logger.getLogger(CommandCircuitBreaker.class);
+    }  // end class DefaultCommandCircuitBreaker
+
+    class Factory {
+        private Factory() {}
+
+        /** Get the {@link CommandCircuitBreaker} instance for a given command key. */
+        static CommandCircuitBreaker getInstance(@NotNull String commandKey, @NotNull String group) {
+            return circuitBreakers.computeIfAbsent(commandKey, key -> new DefaultCommandCircuitBreaker(key, group));
+        }
+
+        /** Clears all circuit breakers. */
+        static void reset() {
+            circuitBreakers.clear();
+        }
+
+        static final ConcurrentHashMap<String, CommandCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    }
+}  // end interface CommandCircuitBreaker
@@ -0,0 +1,221 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import rx.Observable;
+import rx.subjects.AsyncSubject;
+
+import tekgenesis.common.collections.Colls;
+import tekgenesis.common.collections.Seq;
+import tekgenesis.common.command.HashedWheelTimer.Timeout;
+import tekgenesis.common.command.exception.CommandInvocationException;
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
+
+/**
+ * Collapses requests submitted within a window (see {@link CommandProps#collapserTimerDelay}) into
+ * a single batch {@link Command}, so N concurrent requests become one execution. Identical requests
+ * within a window are sent once. The batch response is split back to each request using the given
+ * split function. Batch size and latency are recorded on the {@link InvocationMetrics} of the
+ * collapser key.
+ *
+ * @param  <A>  request argument type
+ * @param  <T>  request result type
+ * @param  <B>  batch response type
+ */
+public class CommandCollapser<A, T, B> {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final Function<Seq<A>, ? extends Command<B>> batch;
+    @NotNull private final AtomicReference<Batch>                 current = new AtomicReference<>();
+    @NotNull private final String                                 key;
+    private volatile CommandProps                                 props;
+    @NotNull private final BiFunction<B, A, T>                    split;
+
+    //~ Constructors .................................................................................................................................
+
+    /**
+     * Create a collapser for the given key (used for properties scope and metrics), with a function
+     * creating the batch command for the collapsed arguments and a function extracting the result
+     * of each argument from the batch response.
+     */
+    public CommandCollapser(@NotNull String key, @NotNull Function<Seq<A>, ? extends Command<B>> batch, @NotNull BiFunction<B, A, T> split) {
+        this.key   = key;
+        this.batch = batch;
+        this.split = split;
+        props      = Context.getEnvironment().get(key, CommandProps.class, value -> {
+                    if (value.isPresent()) props = value.get();
+                });
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Return a command for the given argument, to be executed collapsed with other requests. */
+    public Command<T> collapse(@NotNull A argument) {
+        return new CollapsedCommand(argument);
+    }
+
+    /** Submit given argument to current batch, creating a new batch if needed. */
+    private Observable<T> submit(@NotNull A argument) {
+        while (true) {
+            final Batch b = current.get();
+            if (b == null) {
+                final Batch created = new Batch();
+                if (current.compareAndSet(null, created)) created.schedule();
+                continue;
+            }
+
+            final Observable<T> result = b.offer(argument);
+            if (result != null) return result;
+
+            // Batch is full (or already executing), execute it and retry on a new one
+            if (current.compareAndSet(b, null)) b.execute();
+        }
+    }
+
+    private InvocationMetrics getMetrics() {
+        return InvocationMetrics.getOrCreateInstance(key, COLLAPSER_GROUP);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String COLLAPSER_GROUP = "CommandCollapser";
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Requests collapsed within a window.
+     */
+    private class Batch {
+        private final AtomicInteger            distinct  = new AtomicInteger();
+        private boolean                        executed  = false;
+        private final ReadWriteLock            lock      = new ReentrantReadWriteLock();
+        private final AtomicInteger            requested = new AtomicInteger();
+        private final Map<A, AsyncSubject<T>>  requests  = new ConcurrentHashMap<>();
+        private final AtomicReference<Timeout> timeout   = new AtomicReference<>();
+
+        /** Execute batch command, splitting its response to collapsed requests. */
+        private void execute() {
+            // Wait for in-flight offers, and stop accepting new ones
+            lock.writeLock().lock();
+            try {
+                if (executed) return;
+                executed = true;
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+
+            final Timeout t = timeout.get();
+            if (t != null) t.cancel();
+
+            final Seq<A> arguments = Colls.immutable(new ArrayList<>(requests.keySet()));
+            final long   start     = System.currentTimeMillis();
+            try {
+                batch.apply(arguments)
+                     .observe()
+                     .doOnTerminate(() -> getMetrics().addCollapsedBatch(requested.get(), arguments.size(), System.currentTimeMillis() - start))
+                     .subscribe(this::onResponse, this::onError, () -> requests.values().forEach(AsyncSubject::onCompleted));
+            }
+            catch (final RuntimeException e) {
+                onError(e);
+            }
+        }
+
+        /** Add argument to batch, returns null if batch is full or already executed. */
+        @Nullable private Observable<T> offer(@NotNull A argument) {
+            lock.readLock().lock();
+            try {
+                if (executed) return null;
+                // Offers run concurrently under the read lock, so reserve a slot atomically instead of checking the map size
+                final int             max     = props.collapserMaxRequestsInBatch;
+                final AsyncSubject<T> subject = requests.computeIfAbsent(argument, a -> distinct.getAndIncrement() < max ? AsyncSubject.create() : null);
+                if (subject == null) return null;
+                requested.incrementAndGet();
+                return subject;
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void onError(@NotNull Throwable e) {
+            requests.values().forEach(subject -> subject.onError(e));
+        }
+
+        private void onResponse(B response) {
+            requests.forEach((argument, subject) -> {
+                try {
+                    subject.onNext(split.apply(response, argument));
+                }
+                catch (final RuntimeException e) {
+                    subject.onError(e);
+                }
+            });
+        }
+
+        /** Schedule batch execution once the collapser window elapses. */
+        private void schedule() {
+            timeout.set(CommandTimer.getInstance().schedule(() -> {
+                        if (current.compareAndSet(this, null)) execute();
+                    }, props.collapserTimerDelay));
+        }
+    }  // end class Batch
+
+    /**
+     * Command for a single collapsed request.
+     */
+    private class CollapsedCommand implements Command<T> {
+        @NotNull private final A argument;
+
+        private CollapsedCommand(@NotNull A argument) {
+            this.argument = argument;
+        }
+
+        @Override public T execute() {
+            try {
+                return queue().get();
+            }
+            catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new CommandInvocationException(getClass(), e);
+            }
+            catch (final InterruptedException e) {
+                throw new CommandInvocationException(getClass(), e);
+            }
+        }
+
+        @Override public Observable<T> observe() {
+            return submit(argument);
+        }
+
+        @Override public Future<T> queue() {
+            return observe().toBlocking().toFuture();
+        }
+    }
+}  // end class CommandCollapser
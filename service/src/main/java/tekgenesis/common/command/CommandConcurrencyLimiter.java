@@ -0,0 +1,134 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.logging.Logger;
+import tekgenesis.common.metric.RollingPercentile;
+
+/**
+ * Limits the amount of concurrent executions on a {@link CommandThreadPool}. The limit adapts to
+ * downstream latency, shrinking when it degrades (or executions timeout or are rejected) and
+ * growing back while it is healthy.
+ */
+interface CommandConcurrencyLimiter {
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Release a permit acquired with {@link #tryAcquire()}, with the execution latency and whether
+     * it was dropped (timed out or rejected).
+     */
+    void release(long latency, boolean dropped);
+
+    /** Acquire a permit if the current limit allows it, returning false otherwise. */
+    boolean tryAcquire();
+
+    /** Returns true if executions should be bounded by this limiter. */
+    boolean isEnabled();
+
+    /** Current amount of acquired permits. */
+    int getInFlight();
+
+    /** Current concurrency limit. */
+    int getLimit();
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Additive increase, multiplicative decrease limiter. Once every adjust interval the limit is
+     * decreased to the backoff percentage if an execution was dropped or the rolling latency
+     * percentile exceeds the threshold, or increased by one if at least half of it was used.
+     */
+    class AimdConcurrencyLimiter implements CommandConcurrencyLimiter {
+        private final AtomicBoolean     dropped    = new AtomicBoolean();
+        private final AtomicInteger     inFlight   = new AtomicInteger();
+        private final AtomicLong        lastAdjust = new AtomicLong(System.currentTimeMillis());
+        private final RollingPercentile latencies;
+        private volatile int            limit;
+        private volatile int            maxLimit;
+        private final AtomicInteger     peak       = new AtomicInteger();
+        private volatile CommandProps   props;
+
+        AimdConcurrencyLimiter(@NotNull CommandProps props, int maxLimit) {
+            this.props    = props;
+            this.maxLimit = maxLimit;
+            limit         = maxLimit;
+            // Single bucket, so percentiles are computed over the last adjust interval
+            latencies = new RollingPercentile(props.poolLimiterAdjustInterval, 1, LATENCY_SAMPLES);
+        }
+
+        @Override public void release(long latency, boolean drop) {
+            inFlight.decrementAndGet();
+            latencies.addValue((int) latency);
+            if (drop) dropped.set(true);
+            adjustIfNeeded();
+        }
+
+        @Override public boolean tryAcquire() {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= limit) return false;
+            }
+            while (!inFlight.compareAndSet(current, current + 1));
+
+            peak.accumulateAndGet(current + 1, Math::max);
+            return true;
+        }
+
+        @Override public boolean isEnabled() {
+            return props.poolLimiterEnabled;
+        }
+
+        @Override public int getInFlight() {
+            return inFlight.get();
+        }
+
+        @Override public int getLimit() {
+            return limit;
+        }
+
+        /** Update properties and maximum limit (eg: when the pool is resized). */
+        void update(@NotNull CommandProps p, int max) {
+            props    = p;
+            maxLimit = max;
+            limit    = Math.min(limit, max);
+        }
+
+        private void adjustIfNeeded() {
+            final CommandProps p    = props;
+            final long         now  = System.currentTimeMillis();
+            final long         last = lastAdjust.get();
+            // Only one thread adjusts per interval
+            if (now - last < p.poolLimiterAdjustInterval || !lastAdjust.compareAndSet(last, now)) return;
+
+            final boolean overloaded = dropped.getAndSet(false) ||
+                                       latencies.getPercentile(p.poolLimiterLatencyPercentile) > p.poolLimiterLatencyThreshold;
+            final int     used       = peak.getAndSet(inFlight.get());
+            final int     current    = limit;
+
+            if (overloaded) limit = Math.max(p.poolLimiterMinLimit, Math.min(current - 1, current * p.poolLimiterBackoffPercentage / 100));
+            else if (used * 2 >= current) limit = Math.min(maxLimit, current + 1);
+
+            if (limit != current) logger.debug("Concurrency limit adjusted from " + current + " to " + limit);
+        }
+
+        private static final int LATENCY_SAMPLES = 1000;
+
+        private static final Logger logger = Logger.getLogger(CommandConcurrencyLimiter.class);
+    }  // end class AimdConcurrencyLimiter
+}  // end interface CommandConcurrencyLimiter
@@ -24,12 +24,119 @@ public class CommandProps implements Properties {
 
     //~ Instance Fields ..............................................................................................................................
 
+    /** Whether the circuit breaker should be enabled for the command key. */
+    public boolean circuitBreakerEnabled = false;
+
+    /**
+     * Percentage (%) of failed executions within the statistical window that trips the circuit
+     * (defaults to 50, if 50%+ of executions are failures or timeouts the circuit will open).
+     */
+    public int circuitBreakerErrorThresholdPercentage = 50;
+
+    /** Ignore errors and never trip the circuit open (ie. allow all traffic through). */
+    public boolean circuitBreakerForceClosed = false;
+
+    /** Force the circuit open, short-circuiting all executions. */
+    public boolean circuitBreakerForceOpen = false;
+
+    /**
+     * Minimum number of executions within the statistical window before the error percentage is
+     * taken into account to trip the circuit.
+     */
+    public int circuitBreakerRequestVolumeThreshold = 20;
+
+    /**
+     * Milliseconds after tripping the circuit before a single trial execution is allowed through
+     * (half-open state).
+     */
+    public int circuitBreakerSleepWindow = 5000;
+
+    /**
+     * Maximum amount of distinct requests collapsed into a single batch. Once reached the batch is
+     * executed without waiting for the collapser window.
+     */
+    public int collapserMaxRequestsInBatch = 100;
+
+    /**
+     * Window (in milliseconds) during which requests to a {@link CommandCollapser} are collapsed
+     * into a single batch.
+     */
+    public int collapserTimerDelay = 10;
+
+    /**
+     * Maximum hedged invocations budget: each invocation eligible for hedging earns
+     * hedgingBudgetPercentage / 100 of a hedge, up to this amount of hedges.
+     */
+    public int hedgingBudgetMaxTokens = 10;
+
+    /** Percentage of invocations that may be hedged, capping the extra load caused by hedging. */
+    public int hedgingBudgetPercentage = 10;
+
+    /**
+     * Fixed delay (in milliseconds) after which an unanswered invocation is hedged. Zero means the
+     * hedgingDelayPercentile of the host latency (bounded by hedgingMinDelay and hedgingMaxDelay).
+     */
+    public int hedgingDelay = 0;
+
+    /** Host latency percentile used as hedging delay. */
+    public int hedgingDelayPercentile = 95;
+
+    /**
+     * Whether idempotent invocations of multi host invokers are hedged: if the host has not
+     * answered after the hedging delay, the invocation is also sent to another host and the first
+     * response is used (the other one is cancelled).
+     */
+    public boolean hedgingEnabled = false;
+
+    /** Maximum hedging delay (in milliseconds), also used until host latencies are sampled. */
+    public int hedgingMaxDelay = 1000;
+
+    /** Minimum hedging delay (in milliseconds). */
+    public int hedgingMinDelay = 10;
+
+    /**
+     * Isolation used to execute the command: THREAD runs it on the command thread pool, SEMAPHORE
+     * runs it on the calling thread limiting concurrent executions to
+     * semaphoreMaxConcurrentRequests.
+     */
+    public IsolationStrategy isolationStrategy = IsolationStrategy.THREAD;
+
+    /**
+     * Interval (in milliseconds) between adjustments of the adaptive concurrency limit. Read when
+     * the thread pool is created.
+     */
+    public int poolLimiterAdjustInterval = 1000;
+
+    /**
+     * Percentage the adaptive concurrency limit is decreased to when latency exceeds the threshold,
+     * or executions timeout or are rejected.
+     */
+    public int poolLimiterBackoffPercentage = 90;
+
+    /**
+     * Whether an adaptive (AIMD) concurrency limiter bounds executions on the command thread pool,
+     * below its threads plus queue size.
+     */
+    public boolean poolLimiterEnabled = false;
+
+    /** Latency percentile compared against poolLimiterLatencyThreshold. */
+    public int poolLimiterLatencyPercentile = 90;
+
+    /**
+     * Latency (in milliseconds) at poolLimiterLatencyPercentile above which the adaptive
+     * concurrency limit is decreased.
+     */
+    public int poolLimiterLatencyThreshold = 1000;
+
+    /** Minimum adaptive concurrency limit. */
+    public int poolLimiterMinLimit = 1;
+
     /** Blocking queue size for command thread pool. */
     public int poolThreadQueueSize = 5;
 
     /**
      * Amount of threads per core to keep in the command thread pool (may be overridden be
-     * poolTotalThreads property).
+     * poolTotalThreads property). Pools are resized when changed at runtime.
      */
     public int poolThreadsPerCore = 5;
 
@@ -38,4 +145,45 @@ public class CommandProps implements Properties {
      * property). Zero means undefined, and poolThreadsPerCore will be used.
      */
     public int poolTotalThreads = 0;
+
+    /**
+     * Whether the command thread pool runs each execution on a new virtual thread (falling back to
+     * platform threads on JDKs without them), bounded by poolVirtualThreadsMaxConcurrency instead
+     * of by the amount of threads. Read when the thread pool is created.
+     */
+    public boolean poolVirtualThreads = false;
+
+    /** Maximum amount of concurrent executions on a virtual threads command pool. */
+    public int poolVirtualThreadsMaxConcurrency = 1000;
+
+    /**
+     * Whether executions of commands with the same cache key are shared (only applies to commands
+     * specifying a cache key).
+     */
+    public boolean requestCacheEnabled = true;
+
+    /**
+     * Maximum amount of concurrent executions when using SEMAPHORE isolation. Further executions
+     * are rejected (and go to fallback if any).
+     */
+    public int semaphoreMaxConcurrentRequests = 10;
+
+    /**
+     * Resolution (in milliseconds) of the timer used for command timeouts. Global property, it is
+     * not overridden by command key.
+     */
+    public int timerTickDuration = 10;
+
+    /**
+     * Amount of buckets of the timer wheel used for command timeouts (rounded up to a power of
+     * two). Global property, it is not overridden by command key.
+     */
+    public int timerWheelSize = 512;
+
+    //~ Enums ........................................................................................................................................
+
+    /**
+     * Command execution isolation strategies.
+     */
+    public enum IsolationStrategy { THREAD, SEMAPHORE }
 }
@@ -0,0 +1,69 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jetbrains.annotations.NotNull;
+
+import rx.Observable;
+
+import tekgenesis.common.core.Option;
+
+import static tekgenesis.common.Predefined.cast;
+
+/**
+ * Shares executions of commands with the same cache key. Without a {@link CommandRequestContext}
+ * only in-flight executions are shared (entries are removed once the execution terminates), within
+ * a context entries are kept until the context is closed.
+ */
+class CommandRequestCache {
+
+    //~ Constructors .................................................................................................................................
+
+    private CommandRequestCache() {}
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Return an observable that, once subscribed, subscribes to the execution cached for the given
+     * key or caches and subscribes to the given source. The hit callback is run when the execution
+     * is taken from the cache.
+     */
+    static <T> Observable<T> cached(@NotNull String key, @NotNull Observable<T> source, @NotNull Runnable hit) {
+        return Observable.defer(() -> {
+            final Option<CommandRequestContext>            context = CommandRequestContext.getContextForCurrentThread();
+            final ConcurrentHashMap<String, Observable<?>> cache   = context.isPresent() ? context.get().getCache() : inFlight;
+
+            final AtomicReference<Observable<T>> reference = new AtomicReference<>();
+            // In-flight only entries are removed as soon as the execution terminates
+            final Observable<T> execution = context.isPresent() ? source : source.doOnTerminate(() -> inFlight.remove(key, reference.get()));
+            final Observable<T> shared    = execution.cache();
+            reference.set(shared);
+
+            final Observable<T> existing = cast(cache.putIfAbsent(key, shared));
+            if (existing == null) return shared;
+
+            hit.run();
+            return existing;
+        });
+    }
+
+    /** Clears all in-flight entries. */
+    static void reset() {
+        inFlight.clear();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final ConcurrentHashMap<String, Observable<?>> inFlight = new ConcurrentHashMap<>();
+}  // end class CommandRequestCache
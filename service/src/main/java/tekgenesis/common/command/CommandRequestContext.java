@@ -0,0 +1,83 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.Nullable;
+
+import rx.Observable;
+
+import tekgenesis.common.core.Option;
+
+import static tekgenesis.common.Predefined.option;
+
+/**
+ * Request scoped cache for commands with a cache key. While a context is set on the current thread,
+ * responses of commands with the same cache key are shared for the whole context lifetime (not
+ * only while in-flight), until the context is closed.
+ *
+ * <pre>
+ *     try (CommandRequestContext ignored = CommandRequestContext.initialize()) {
+ *         ...
+ *     }
+ * </pre>
+ */
+public class CommandRequestContext implements AutoCloseable {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final ConcurrentHashMap<String, Observable<?>> cache = new ConcurrentHashMap<>();
+
+    //~ Constructors .................................................................................................................................
+
+    private CommandRequestContext() {}
+
+    //~ Methods ......................................................................................................................................
+
+    /** Clear cached responses, and remove context from current thread (if set). */
+    @Override public void close() {
+        cache.clear();
+        if (current.get() == this) current.remove();
+    }
+
+    /** Cached responses by command and cache key. */
+    ConcurrentHashMap<String, Observable<?>> getCache() {
+        return cache;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Create a new context and set it on the current thread. */
+    public static CommandRequestContext initialize() {
+        final CommandRequestContext context = new CommandRequestContext();
+        current.set(context);
+        return context;
+    }
+
+    /** Return the context set on the current thread, if any. */
+    public static Option<CommandRequestContext> getContextForCurrentThread() {
+        return option(current.get());
+    }
+
+    /**
+     * Set given context on the current thread (eg: to share it with a worker thread), or remove it
+     * if null.
+     */
+    public static void setContextOnCurrentThread(@Nullable CommandRequestContext context) {
+        if (context == null) current.remove();
+        else current.set(context);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final ThreadLocal<CommandRequestContext> current = new ThreadLocal<>();
+}  // end class CommandRequestContext
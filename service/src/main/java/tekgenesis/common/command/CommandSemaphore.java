@@ -0,0 +1,95 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.env.context.Context;
+
+import static tekgenesis.common.command.CommandProps.IsolationStrategy.SEMAPHORE;
+
+/**
+ * Semaphore used by {@link AbstractCommand} to limit concurrent executions of a command key
+ * configured with {@link CommandProps.IsolationStrategy#SEMAPHORE semaphore isolation}, where
+ * {@link AbstractCommand#run()} executes on the calling thread instead of the command thread pool.
+ */
+interface CommandSemaphore {
+
+    //~ Methods ......................................................................................................................................
+
+    /** Release a permit acquired with {@link #tryAcquire()}. */
+    void release();
+
+    /** Acquire a permit if one is available without blocking, returning false otherwise. */
+    boolean tryAcquire();
+
+    /** Current amount of acquired permits. */
+    int getActiveCount();
+
+    /** Returns true if the command key is configured with semaphore isolation. */
+    boolean isEnabled();
+
+    //~ Inner Classes ................................................................................................................................
+
+    class DefaultCommandSemaphore implements CommandSemaphore {
+        private final AtomicInteger   count = new AtomicInteger();
+        private volatile CommandProps props;
+
+        DefaultCommandSemaphore(@NotNull String commandKey) {
+            props = Context.getEnvironment().get(commandKey, CommandProps.class, value -> {
+                        if (value.isPresent()) props = value.get();
+                    });
+        }
+
+        @Override public void release() {
+            count.decrementAndGet();
+        }
+
+        @Override public boolean tryAcquire() {
+            // Max is read on each acquire, so it can be changed at runtime
+            final int max = props.semaphoreMaxConcurrentRequests;
+            int       current;
+            do {
+                current = count.get();
+                if (current >= max) return false;
+            }
+            while (!count.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        @Override public int getActiveCount() {
+            return count.get();
+        }
+
+        @Override public boolean isEnabled() {
+            return props.isolationStrategy == SEMAPHORE;
+        }
+    }
+
+    class Factory {
+        private Factory() {}
+
+        /** Get the {@link CommandSemaphore} instance for a given command key. */
+        static CommandSemaphore getInstance(@NotNull String commandKey) {
+            return semaphores.computeIfAbsent(commandKey, DefaultCommandSemaphore::new);
+        }
+
+        /** Clears all semaphores. */
+        static void reset() {
+            semaphores.clear();
+        }
+
+        static final ConcurrentHashMap<String, CommandSemaphore> semaphores = new ConcurrentHashMap<>();
+    }
+}  // end interface CommandSemaphore
@@ -12,6 +12,7 @@ package tekgenesis.common.command;
 
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -22,7 +23,9 @@ import rx.internal.schedulers.ScheduledAction;
 import rx.subscriptions.CompositeSubscription;
 import rx.subscriptions.Subscriptions;
 
+import tekgenesis.common.command.CommandConcurrencyLimiter.AimdConcurrencyLimiter;
 import tekgenesis.common.env.context.Context;
+import tekgenesis.common.logging.Logger;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
@@ -38,37 +41,81 @@ interface CommandThreadPool {
     /** Implementation of {@link ThreadPoolExecutor}. */
     ThreadPoolExecutor getExecutor();
 
+    /** Adaptive concurrency limiter for executions on this pool. */
+    CommandConcurrencyLimiter getLimiter();
+
+    /** Amount of executions rejected by this pool since it was created. */
+    long getRejectedCount();
+
     /** Implementation of {@link Scheduler}. */
     Scheduler getScheduler();
 
     //~ Inner Classes ................................................................................................................................
 
     class DefaultCommandThreadPool implements CommandThreadPool {
-        private final Scheduler scheduler;
+        private final AimdConcurrencyLimiter limiter;
+        private final LongAdder              rejected;
+        private final Scheduler              scheduler;
 
         private final ThreadPoolExecutor threadPool;
 
         DefaultCommandThreadPool(final String commandKey) {
-            final CommandProps            props   = Context.getEnvironment().get(commandKey, CommandProps.class);
+            final CommandProps            props   = Context.getEnvironment().get(commandKey, CommandProps.class, value -> {
+                        if (value.isPresent()) resize(value.get());
+                    });
             final BlockingQueue<Runnable> queue   = props.poolThreadQueueSize > 0 ? new LinkedBlockingQueue<>(props.poolThreadQueueSize)
                                                                                   : new SynchronousQueue<>();
-            final int                     threads = props.poolTotalThreads != 0
-                                                    ? props.poolTotalThreads
-                                                    : Runtime.getRuntime().availableProcessors() * props.poolThreadsPerCore;
-            // We always want maxSize the same as coreSize, we are not using a dynamically resizing pool
-            // KeepAliveTime doesn't really matter since we're not resizing
-            threadPool = new ThreadPoolExecutor(threads, threads, MILLIS_SECOND, MILLISECONDS, queue, createThreadFactory(commandKey));
+            final int                     threads = threads(props);
+            // We always want maxSize the same as coreSize, pool is only resized when properties change
+            // KeepAliveTime doesn't really matter since we're not resizing dynamically
+            rejected   = new LongAdder();
+            threadPool = new ThreadPoolExecutor(threads,
+                    threads,
+                    MILLIS_SECOND,
+                    MILLISECONDS,
+                    queue,
+                    createThreadFactory(commandKey),
+                    createRejectionHandler(rejected));
             scheduler  = new ThreadPoolScheduler(this);
+            limiter    = new AimdConcurrencyLimiter(props, threads + Math.max(props.poolThreadQueueSize, 0));
+        }
+
+        @Override public CommandConcurrencyLimiter getLimiter() {
+            return limiter;
         }
 
         @Override public ThreadPoolExecutor getExecutor() {
             return threadPool;
         }
 
+        @Override public long getRejectedCount() {
+            return rejected.sum();
+        }
+
         @Override public Scheduler getScheduler() {
             return scheduler;
         }
 
+        /**
+         * Resize pool to the amount of threads specified by given properties (queue size cannot be
+         * changed).
+         */
+        private synchronized void resize(@NotNull CommandProps props) {
+            final int threads = threads(props);
+            if (threads != threadPool.getCorePoolSize()) {
+                // Keep core <= max at any time
+                if (threads > threadPool.getMaximumPoolSize()) {
+                    threadPool.setMaximumPoolSize(threads);
+                    threadPool.setCorePoolSize(threads);
+                }
+                else {
+                    threadPool.setCorePoolSize(threads);
+                    threadPool.setMaximumPoolSize(threads);
+                }
+            }
+            limiter.update(props, threads + threadPool.getQueue().remainingCapacity() + threadPool.getQueue().size());
+        }
+
         private ThreadFactory createThreadFactory(final String threadPoolKey) {
             return new ThreadFactory() {
                 private final AtomicInteger threadNumber = new AtomicInteger(0);
@@ -80,7 +127,136 @@ interface CommandThreadPool {
                 }
             };
         }
-    }
+
+        /** Abort policy counting rejected executions. */
+        private static RejectedExecutionHandler createRejectionHandler(final LongAdder rejected) {
+            final RejectedExecutionHandler abort = new ThreadPoolExecutor.AbortPolicy();
+            return (r, executor) -> {
+                       rejected.increment();
+                       abort.rejectedExecution(r, executor);
+                   };
+        }
+
+        private static int threads(@NotNull CommandProps props) {
+            return props.poolTotalThreads != 0 ? props.poolTotalThreads : Runtime.getRuntime().availableProcessors() * props.poolThreadsPerCore;
+        }
+    }  // end class DefaultCommandThreadPool
+
+    /**
+     * Pool that runs each execution on a new virtual thread (when running on a JDK supporting them,
+     * falling back to platform daemon threads otherwise), with concurrency bounded by a semaphore of
+     * poolVirtualThreadsMaxConcurrency permits instead of by the amount of threads.
+     */
+    class VirtualCommandThreadPool implements CommandThreadPool {
+        private final AimdConcurrencyLimiter limiter;
+        private final Scheduler              scheduler;
+
+        private final BoundedExecutor threadPool;
+
+        VirtualCommandThreadPool(final String commandKey) {
+            final CommandProps props = Context.getEnvironment().get(commandKey, CommandProps.class, value -> {
+                        if (value.isPresent()) resize(value.get());
+                    });
+            threadPool = new BoundedExecutor(props.poolVirtualThreadsMaxConcurrency, createThreadFactory(commandKey));
+            scheduler  = new ThreadPoolScheduler(this);
+            limiter    = new AimdConcurrencyLimiter(props, props.poolVirtualThreadsMaxConcurrency);
+        }
+
+        @Override public ThreadPoolExecutor getExecutor() {
+            return threadPool;
+        }
+
+        @Override public CommandConcurrencyLimiter getLimiter() {
+            return limiter;
+        }
+
+        @Override public long getRejectedCount() {
+            return threadPool.rejected.sum();
+        }
+
+        @Override public Scheduler getScheduler() {
+            return scheduler;
+        }
+
+        private void resize(@NotNull CommandProps props) {
+            threadPool.permits = props.poolVirtualThreadsMaxConcurrency;
+            limiter.update(props, props.poolVirtualThreadsMaxConcurrency);
+        }
+
+        /** Virtual thread factory if supported by the running JDK, daemon platform threads otherwise. */
+        private static ThreadFactory createThreadFactory(final String commandKey) {
+            try {
+                // Thread.ofVirtual().name(prefix, start).factory(), looked up reflectively to keep Java 8 compatibility
+                final Object   builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                final Class<?> type    = Class.forName("java.lang.Thread$Builder");
+                final Object   named   = type.getMethod("name", String.class, long.class).invoke(builder, "command-" + commandKey + "-", 1L);
+                return (ThreadFactory) type.getMethod("factory").invoke(named);
+            }
+            catch (final ReflectiveOperationException e) {
+                logger.warning("Virtual threads not supported, using platform threads for command pool '" + commandKey + "'");
+                final AtomicInteger threadNumber = new AtomicInteger(0);
+                return r -> {
+                           final Thread t = new Thread(r, "command-" + commandKey + "-" + threadNumber.incrementAndGet());
+                           t.setDaemon(true);
+                           return t;
+                       };
+            }
+        }
+
+        private static final Logger logger = Logger.getLogger(VirtualCommandThreadPool.class);
+
+        /**
+         * Thread per task executor (threads are not reused), rejecting executions once all permits
+         * are taken.
+         */
+        static class BoundedExecutor extends ThreadPoolExecutor {
+            private final AtomicInteger active   = new AtomicInteger();
+            private volatile int        permits;
+            private final LongAdder     rejected = new LongAdder();
+
+            BoundedExecutor(int permits, ThreadFactory factory) {
+                super(0, Integer.MAX_VALUE, 0, MILLISECONDS, new SynchronousQueue<>(), factory);
+                this.permits = permits;
+            }
+
+            @Override public void execute(@NotNull Runnable command) {
+                if (!tryAcquire()) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("All " + permits + " permits taken, rejecting " + command);
+                }
+                try {
+                    super.execute(() -> {
+                        try {
+                            command.run();
+                        }
+                        finally {
+                            active.decrementAndGet();
+                        }
+                    });
+                }
+                catch (final RejectedExecutionException e) {
+                    active.decrementAndGet();
+                    rejected.increment();
+                    throw e;
+                }
+            }
+
+            /** Amount of executions running (or about to run). */
+            @Override public int getActiveCount() {
+                return active.get();
+            }
+
+            private boolean tryAcquire() {
+                int current;
+                do {
+                    current = active.get();
+                    if (current >= permits) return false;
+                }
+                while (!active.compareAndSet(current, current + 1));
+                return true;
+            }
+        }  // end class BoundedExecutor
+    }  // end class VirtualCommandThreadPool
 
     class Factory {
         private Factory() {}
@@ -124,12 +300,17 @@ interface CommandThreadPool {
             if (cached != null) return cached;
 
             synchronized (CommandThreadPool.class) {
-                if (!threadPools.containsKey(commandKey)) threadPools.put(commandKey, new DefaultCommandThreadPool(commandKey));
+                if (!threadPools.containsKey(commandKey)) threadPools.put(commandKey, create(commandKey));
             }
 
             return threadPools.get(commandKey);
         }
 
+        private static CommandThreadPool create(String commandKey) {
+            final CommandProps props = Context.getEnvironment().get(commandKey, CommandProps.class);
+            return props.poolVirtualThreads ? new VirtualCommandThreadPool(commandKey) : new DefaultCommandThreadPool(commandKey);
+        }
+
         static final ConcurrentHashMap<String, CommandThreadPool> threadPools = new ConcurrentHashMap<>();
     }  // end class Factory
 
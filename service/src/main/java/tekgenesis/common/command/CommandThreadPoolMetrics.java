@@ -0,0 +1,80 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.command.CommandThreadPool.Factory;
+
+/**
+ * Statistics of a command thread pool: active threads, queue depth and rejected executions.
+ */
+public class CommandThreadPoolMetrics {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final String            key;
+    @NotNull private final CommandThreadPool pool;
+
+    //~ Constructors .................................................................................................................................
+
+    private CommandThreadPoolMetrics(@NotNull String key, @NotNull CommandThreadPool pool) {
+        this.key  = key;
+        this.pool = pool;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Amount of threads actively executing commands. */
+    public int getActiveCount() {
+        return pool.getExecutor().getActiveCount();
+    }
+
+    /** Amount of executions completed since the pool was created. */
+    public long getCompletedCount() {
+        return pool.getExecutor().getCompletedTaskCount();
+    }
+
+    /** Returns the pool key. */
+    @NotNull public String getKey() {
+        return key;
+    }
+
+    /** Current amount of threads in the pool. */
+    public int getPoolSize() {
+        return pool.getExecutor().getPoolSize();
+    }
+
+    /** Amount of executions waiting on the pool queue. */
+    public int getQueueSize() {
+        return pool.getExecutor().getQueue().size();
+    }
+
+    /** Amount of executions rejected since the pool was created. */
+    public long getRejectedCount() {
+        return pool.getRejectedCount();
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Returns the statistics of all created pools. */
+    public static Collection<CommandThreadPoolMetrics> getInstances() {
+        final List<CommandThreadPoolMetrics> result = new ArrayList<>(Factory.threadPools.size());
+        for (final Map.Entry<String, CommandThreadPool> entry : Factory.threadPools.entrySet())
+            result.add(new CommandThreadPoolMetrics(entry.getKey(), entry.getValue()));
+        return result;
+    }
+}  // end class CommandThreadPoolMetrics
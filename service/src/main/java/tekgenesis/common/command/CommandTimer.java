@@ -12,26 +12,26 @@ package tekgenesis.common.command;
 
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.jetbrains.annotations.NotNull;
 
+import tekgenesis.common.command.HashedWheelTimer.Timeout;
+import tekgenesis.common.env.context.Context;
 import tekgenesis.common.logging.Logger;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
- * Timer used by {@link AbstractCommand} to timeout async executions.
+ * Timer used by {@link AbstractCommand} to timeout async executions. Listeners are kept on a
+ * {@link HashedWheelTimer hashed timing wheel}, so adding and clearing a listener per command
+ * execution is O(1) and doesn't contend on a shared delay queue.
  */
 class CommandTimer {
 
     //~ Instance Fields ..............................................................................................................................
 
-    private final AtomicReference<ScheduledExecutor> executor = new AtomicReference<>();
+    private final AtomicReference<HashedWheelTimer> timer = new AtomicReference<>();
 
     //~ Constructors .................................................................................................................................
 
@@ -39,13 +39,18 @@ class CommandTimer {
 
     //~ Methods ......................................................................................................................................
 
-    protected void startThreadIfNeeded() {
-        // Create and start thread if one doesn't exist
-        while (executor.get() == null || !executor.get().isInitialized()) {
-            if (executor.compareAndSet(null, new ScheduledExecutor()))
-            // Initialize the executor that we 'won' setting
-            executor.get().initialize();
+    /** Create and start timer if one doesn't exist. */
+    protected HashedWheelTimer startTimerIfNeeded() {
+        HashedWheelTimer current = timer.get();
+        while (current == null) {
+            final CommandProps     props   = Context.getEnvironment().get(CommandProps.class);
+            final HashedWheelTimer created = new HashedWheelTimer("CommandTimer", props.timerTickDuration, MILLISECONDS, props.timerWheelSize);
+            // Start the timer that we 'won' setting, and release the dispatcher of the one we lost
+            if (timer.compareAndSet(null, created)) created.start();
+            else created.stop();
+            current = timer.get();
         }
+        return current;
     }
 
     /**
@@ -53,11 +58,14 @@ class CommandTimer {
      * clearing the returned {@link Reference}.
      */
     Reference<TimerListener> addTimerListener(final TimerListener l) {
-        startThreadIfNeeded();
-
         final int interval = l.getIntervalTimeInMilliseconds();
 
-        return new TimerReference(l, executor.get().getThreadPool().scheduleAtFixedRate(() -> tick(l), interval, interval, MILLISECONDS));
+        return new TimerReference(l, startTimerIfNeeded().schedule(() -> tick(l), interval, interval, MILLISECONDS));
+    }
+
+    /** Schedule given task to be executed once after the specified delay. */
+    Timeout schedule(@NotNull Runnable task, int delayInMilliseconds) {
+        return startTimerIfNeeded().schedule(task, delayInMilliseconds, 0, MILLISECONDS);
     }
 
     private void tick(final TimerListener listener) {
@@ -73,8 +81,8 @@ class CommandTimer {
 
     /** Clears all listeners. */
     static void reset() {
-        final ScheduledExecutor ex = INSTANCE.executor.getAndSet(null);
-        if (ex != null && ex.getThreadPool() != null) ex.getThreadPool().shutdownNow();
+        final HashedWheelTimer t = INSTANCE.timer.getAndSet(null);
+        if (t != null) t.stop();
     }
 
     /** Retrieve the global instance. */
@@ -100,47 +108,18 @@ class CommandTimer {
 
     //~ Inner Classes ................................................................................................................................
 
-    static class ScheduledExecutor {
-        volatile ScheduledThreadPoolExecutor executor    = null;
-        private volatile boolean             initialized;
-
-        /**
-         * We want this only done once when created in compareAndSet so use an initialize method.
-         */
-        public void initialize() {
-            executor    = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
-                        final AtomicInteger counter = new AtomicInteger();
-
-                        @Override public Thread newThread(@NotNull Runnable r) {
-                            final Thread thread = new Thread(r, "CommandTimer-" + counter.incrementAndGet());
-                            thread.setDaemon(true);
-                            return thread;
-                        }
-                    });
-            initialized = true;
-        }
-
-        public boolean isInitialized() {
-            return initialized;
-        }
-
-        public ScheduledThreadPoolExecutor getThreadPool() {
-            return executor;
-        }
-    }
-
     private class TimerReference extends SoftReference<TimerListener> {
-        private final ScheduledFuture<?> f;
+        private final Timeout timeout;
 
-        TimerReference(TimerListener referent, ScheduledFuture<?> f) {
+        TimerReference(TimerListener referent, Timeout timeout) {
             super(referent);
-            this.f = f;
+            this.timeout = timeout;
         }
 
         @Override public void clear() {
             super.clear();
-            // Stop this ScheduledFuture from any further executions
-            f.cancel(false);
+            // Stop this Timeout from any further executions
+            timeout.cancel();
         }
     }
 }  // end class CommandTimer
@@ -0,0 +1,275 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.logging.Logger;
+
+/**
+ * Hashed timing wheel. Scheduling and cancelling a {@link Timeout} are O(1) lock-free queue
+ * operations, while a single ticker thread moves timeouts into the wheel buckets and expires them
+ * once per tick. Expired timeouts are dispatched to a separate pool, so slow tasks never delay the
+ * wheel. Accuracy is bounded by the tick duration.
+ */
+class HashedWheelTimer {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final ExecutorService dispatcher;
+    private final int             mask;
+    private final Queue<Timeout>  pending  = new ConcurrentLinkedQueue<>();
+    private volatile boolean      running;
+    private final long            startTime;
+
+    /* Only accessed by ticker thread. */
+    private long         tick;
+    private final Thread ticker;
+    private final long   tickDuration;
+
+    private final Bucket[] wheel;
+
+    //~ Constructors .................................................................................................................................
+
+    /**
+     * Creates a timer with the given tick duration and amount of buckets (rounded up to a power of
+     * two). Ticker thread is not started until {@link #start()} is called.
+     */
+    HashedWheelTimer(@NotNull String name, long tickDuration, @NotNull TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) throw new IllegalArgumentException("Tick duration must be greater than 0: " + tickDuration);
+        if (ticksPerWheel <= 0 || ticksPerWheel > MAX_TICKS_PER_WHEEL)
+            throw new IllegalArgumentException("Ticks per wheel must be between 1 and " + MAX_TICKS_PER_WHEEL + ": " + ticksPerWheel);
+
+        // Round up to a power of two, so bucket index is a mask instead of a modulo
+        wheel = new Bucket[Integer.highestOneBit(((ticksPerWheel - 1) << 1) | 1)];
+        for (int i = 0; i < wheel.length; i++)
+            wheel[i] = new Bucket();
+        mask = wheel.length - 1;
+
+        this.tickDuration = unit.toNanos(tickDuration);
+        startTime         = System.nanoTime();
+        running           = true;
+        tick              = 0;
+        ticker            = daemon(name + "-Ticker").newThread(this::run);
+        dispatcher        = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemon(name));
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Schedule given task to run after the specified delay, and then every period until cancelled
+     * (a zero period means the task will run only once).
+     */
+    Timeout schedule(@NotNull Runnable task, long delay, long period, @NotNull TimeUnit unit) {
+        final Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay), unit.toNanos(period));
+        if (running) pending.add(timeout);
+        return timeout;
+    }
+
+    /** Start ticker thread. */
+    void start() {
+        ticker.start();
+    }
+
+    /** Stop ticker thread, and discard all scheduled timeouts. */
+    void stop() {
+        running = false;
+        LockSupport.unpark(ticker);
+        dispatcher.shutdownNow();
+        pending.clear();
+        cancelled.clear();
+    }
+
+    /** Amount of timeouts waiting to be moved into the wheel (visible for testing). */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private void expire(@NotNull Timeout timeout) {
+        if (!running) return;
+        dispatcher.execute(() -> {
+            try {
+                timeout.task.run();
+            }
+            catch (final Exception e) {
+                logger.error("Failed while running timeout task", e);
+            }
+            // Periodic timeout, reschedule for next period
+            if (timeout.period > 0 && !timeout.isCancelled() && running) {
+                timeout.deadline += timeout.period;
+                pending.add(timeout);
+            }
+        });
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            final Bucket bucket = timeout.bucket;
+            if (bucket != null) bucket.remove(timeout);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            final long deadline = waitForNextTick();
+            if (deadline < 0) break;
+
+            removeCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+
+    /** Move pending timeouts to their buckets (bounded so a burst doesn't starve the current tick). */
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            final Timeout timeout = pending.poll();
+            if (timeout == null) return;
+            if (timeout.isCancelled()) continue;
+
+            final long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+            // Ensure we don't schedule for past
+            final long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /** Sleep until next tick, returning current time (relative to start) or -1 if stopped. */
+    private long waitForNextTick() {
+        final long deadline = tickDuration * (tick + 1);
+        while (running) {
+            final long current = System.nanoTime() - startTime;
+            if (current >= deadline) return current;
+            LockSupport.parkNanos(this, deadline - current);
+        }
+        return -1;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static ThreadFactory daemon(@NotNull String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override public Thread newThread(@NotNull Runnable r) {
+                final Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int MAX_TICKS_PER_WHEEL   = 1 << 20;
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+
+    private static final Logger logger = Logger.getLogger(HashedWheelTimer.class);
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Scheduled task handle.
+     */
+    class Timeout {
+        @Nullable private Bucket     bucket;
+        private final AtomicBoolean cancelRequested = new AtomicBoolean();
+
+        /* Relative to timer start time, in nanoseconds. */
+        private volatile long deadline;
+
+        @Nullable private Timeout next;
+        private final long       period;
+        @Nullable private Timeout prev;
+        private long             remainingRounds;
+        private final Runnable   task;
+
+        private Timeout(@NotNull Runnable task, long deadline, long period) {
+            this.task     = task;
+            this.deadline = deadline;
+            this.period   = period;
+        }
+
+        /** Cancel timeout, it won't be run again. Removal from wheel happens on next tick. */
+        void cancel() {
+            if (cancelRequested.compareAndSet(false, true)) cancelled.add(this);
+        }
+
+        boolean isCancelled() {
+            return cancelRequested.get();
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts. Only accessed by ticker thread.
+     */
+    private class Bucket {
+        @Nullable private Timeout head;
+        @Nullable private Timeout tail;
+
+        private void add(@NotNull Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) head = tail = timeout;
+            else {
+                assert tail != null;
+                tail.next    = timeout;
+                timeout.prev = tail;
+                tail         = timeout;
+            }
+        }
+
+        /** Expire all timeouts with no remaining rounds, and decrement the rest. */
+        private void expireTimeouts(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.isCancelled()) remove(timeout);
+                else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline) expire(timeout);
+                    // Not expired yet (shouldn't happen), so place it back in the pending queue
+                    else pending.add(timeout);
+                }
+                else timeout.remainingRounds--;
+                timeout = next;
+            }
+        }
+
+        private void remove(@NotNull Timeout timeout) {
+            final Timeout next = timeout.next;
+            if (timeout.prev != null) timeout.prev.next = next;
+            if (next != null) next.prev = timeout.prev;
+
+            if (timeout == head) head = next;
+            if (timeout == tail) tail = timeout.prev;
+
+            timeout.prev   = null;
+            timeout.next   = null;
+            timeout.bucket = null;
+        }
+    }  // end class Bucket
+}  // end class HashedWheelTimer
@@ -0,0 +1,33 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command.exception;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.command.AbstractCommand;
+
+/**
+ * RuntimeException that is thrown when an {@link AbstractCommand} is not executed because its
+ * circuit breaker is open.
+ */
+public class CommandShortCircuitException extends RuntimeException {
+
+    //~ Constructors .................................................................................................................................
+
+    /** Constructs a new short-circuit exception for the given command key. */
+    public CommandShortCircuitException(@NotNull String commandKey) {
+        super("Circuit breaker is open for command '" + commandKey + "'");
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final long serialVersionUID = 4817093154624581925L;
+}
@@ -0,0 +1,362 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.util.Sha;
+
+import static tekgenesis.common.service.HeaderNames.*;
+
+/**
+ * Response stored by an {@link HttpResponseCache}: status, headers and content, with the
+ * freshness information of its Cache-Control (or Expires) header and its validators. Immutable.
+ */
+class CachedResponse {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final long                               age;
+    @NotNull private final byte[]                    content;
+    @NotNull private final Map<String, List<String>> headers;
+    @NotNull private final String                    key;
+    private final long                               lifetime;
+    private final boolean                            mustRevalidate;
+    private final boolean                            noCache;
+    private final long                               staleWhileRevalidate;
+    private final int                                status;
+    private final long                               storedAt;
+    @NotNull private final Map<String, String>       vary;
+
+    //~ Constructors .................................................................................................................................
+
+    @SuppressWarnings("ConstructorWithTooManyParameters")
+    private CachedResponse(@NotNull String key, int status, @NotNull Map<String, List<String>> headers, @NotNull byte[] content,
+                           @NotNull Map<String, String> vary, long storedAt) {
+        this.key      = key;
+        this.status   = status;
+        this.headers  = headers;
+        this.content  = content;
+        this.vary     = vary;
+        this.storedAt = storedAt;
+
+        final CacheControl control = CacheControl.parse(headers.get(CACHE_CONTROL));
+        age                  = parseLong(getHeader(AGE)) * MILLIS;
+        lifetime             = lifetime(control);
+        noCache              = control.noCache;
+        mustRevalidate       = control.mustRevalidate;
+        staleWhileRevalidate = control.staleWhileRevalidate * MILLIS;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Returns the response updated with the headers of a not modified (304) revalidation. */
+    @NotNull CachedResponse revalidated(@NotNull Map<String, List<String>> notModified, long now) {
+        final Map<String, List<String>> updated = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        updated.putAll(headers);
+        for (final Map.Entry<String, List<String>> header : notModified.entrySet()) {
+            // Content headers describe the (empty) 304 content, not the stored one
+            final String name = header.getKey();
+            if (name != null && !CONTENT_LENGTH.equalsIgnoreCase(name) && !CONTENT_ENCODING.equalsIgnoreCase(name))
+                updated.put(name, header.getValue());
+        }
+        updated.remove(AGE);
+        return new CachedResponse(key, status, updated, content, vary, now);
+    }
+
+    /** Write response (to a disk tier). */
+    void write(@NotNull DataOutputStream out)
+        throws IOException
+    {
+        out.writeInt(VERSION);
+        out.writeUTF(key);
+        out.writeInt(status);
+        out.writeLong(storedAt);
+        out.writeInt(headers.size());
+        for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            out.writeInt(header.getValue().size());
+            for (final String value : header.getValue())
+                out.writeUTF(value);
+        }
+        out.writeInt(vary.size());
+        for (final Map.Entry<String, String> entry : vary.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.writeInt(content.length);
+        out.write(content);
+    }
+
+    /** Returns the stored content. */
+    @NotNull byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * Returns true if the response is fresh at the given time, so it can be used without
+     * revalidation (never for no-cache ones, must-revalidate only applies once stale).
+     */
+    boolean isFresh(long now) {
+        return !noCache && getAge(now) < lifetime;
+    }
+
+    /** Returns the first value of the given header, or null. */
+    @Nullable String getHeader(@NotNull String name) {
+        final List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /** Returns the stored headers. */
+    @NotNull Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /** Returns the key (url) of the response. */
+    @NotNull String getKey() {
+        return key;
+    }
+
+    /** Returns true if the response has validators, so it can be revalidated with a conditional request. */
+    boolean isRevalidable() {
+        return getHeader(ETAG) != null || getHeader(LAST_MODIFIED) != null;
+    }
+
+    /**
+     * Returns true if the response is stale at the given time, but can still be used while it is
+     * revalidated in background (stale-while-revalidate).
+     */
+    boolean isServableWhileRevalidating(long now) {
+        return !noCache && !mustRevalidate && staleWhileRevalidate > 0 && getAge(now) < lifetime + staleWhileRevalidate;
+    }
+
+    /** Returns true if the given response is a variant for the same (vary) request headers. */
+    boolean isSameVariant(@NotNull CachedResponse response) {
+        return vary.equals(response.vary);
+    }
+
+    /** Returns the response status code. */
+    int getStatus() {
+        return status;
+    }
+
+    /** Returns true if the response was stored for a request with the given (vary) headers. */
+    boolean matches(@NotNull Map<String, List<String>> requestHeaders) {
+        for (final Map.Entry<String, String> entry : vary.entrySet())
+            if (!entry.getValue().equals(varyValue(requestHeaders, entry.getKey()))) return false;
+        return true;
+    }
+
+    /** Weight of the response on a memory tier (approximately its size in bytes). */
+    int getWeight() {
+        int weight = content.length + key.length();
+        for (final Map.Entry<String, List<String>> header : headers.entrySet())
+            for (final String value : header.getValue())
+                weight += header.getKey().length() + value.length();
+        return weight;
+    }
+
+    /** Current age (in milliseconds) of the response. */
+    private long getAge(long now) {
+        return age + Math.max(0, now - storedAt);
+    }
+
+    /** Freshness lifetime (in milliseconds), from max-age or else Expires (relative to Date). */
+    private long lifetime(@NotNull CacheControl control) {
+        if (control.maxAge >= 0) return control.maxAge * MILLIS;
+        final long expires = parseDate(getHeader(EXPIRES));
+        if (expires < 0) return 0;
+        final long date = parseDate(getHeader(DATE));
+        return Math.max(0, expires - (date < 0 ? storedAt : date));
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Create a response to be cached for the given request headers, or null if it cannot be cached
+     * (no-store, private, varying on any header, or without freshness nor validators). Responses to
+     * requests with credentials are only cached if explicitly public (or with s-maxage), and only
+     * reused for requests with the same credentials.
+     */
+    @Nullable static CachedResponse create(@NotNull String key, int status, @NotNull Map<String, List<String>> responseHeaders,
+                                           @NotNull Map<String, List<String>> requestHeaders, @NotNull byte[] content, long now) {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (final Map.Entry<String, List<String>> header : responseHeaders.entrySet())
+            if (header.getKey() != null) headers.put(header.getKey(), new ArrayList<>(header.getValue()));
+
+        final CacheControl control = CacheControl.parse(headers.get(CACHE_CONTROL));
+        if (control.noStore || control.isPrivate) return null;
+
+        final Map<String, String> vary = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (final String name : CREDENTIALS) {
+            final String value = varyValue(requestHeaders, name);
+            if (!value.isEmpty() && !control.isPublic && control.sharedMaxAge < 0) return null;
+            vary.put(name, value);
+        }
+        for (final String name : values(headers.get(VARY))) {
+            if ("*".equals(name)) return null;
+            vary.put(name, varyValue(requestHeaders, name));
+        }
+
+        final CachedResponse response = new CachedResponse(key, status, headers, content, vary, now);
+        return response.lifetime <= 0 && !response.isRevalidable() ? null : response;
+    }
+
+    /** Read response (from a disk tier). */
+    @NotNull static CachedResponse read(@NotNull DataInputStream in)
+        throws IOException
+    {
+        if (in.readInt() != VERSION) throw new IOException("Unknown cached response version");
+        final String key      = in.readUTF();
+        final int    status   = in.readInt();
+        final long   storedAt = in.readLong();
+
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = in.readInt(); i > 0; i--) {
+            final String       name   = in.readUTF();
+            final List<String> values = new ArrayList<>();
+            for (int j = in.readInt(); j > 0; j--)
+                values.add(in.readUTF());
+            headers.put(name, values);
+        }
+        final Map<String, String> vary = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = in.readInt(); i > 0; i--)
+            vary.put(in.readUTF(), in.readUTF());
+
+        final byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        return new CachedResponse(key, status, headers, content, vary, storedAt);
+    }
+
+    /** Parse an http date, returning -1 if absent or invalid (eg: Expires: 0). */
+    static long parseDate(@Nullable String date) {
+        if (date == null) return -1;
+        try {
+            return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        }
+        catch (final DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static Set<String> credentials() {
+        final Set<String> result = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        result.addAll(Arrays.asList(AUTHORIZATION, COOKIE, TEK_APP_TOKEN, TEK_APP_TOKEN_SURROGATE, OLD_TEK_APP_TOKEN));
+        return result;
+    }
+
+    private static long parseLong(@Nullable String value) {
+        try {
+            return value == null ? 0 : Math.max(0, Long.parseLong(value.trim()));
+        }
+        catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Split comma separated header values. */
+    private static List<String> values(@Nullable List<String> header) {
+        if (header == null) return Collections.emptyList();
+        final List<String> result = new ArrayList<>();
+        for (final String value : header)
+            for (final String token : value.split(","))
+                if (!token.trim().isEmpty()) result.add(token.trim());
+        return result;
+    }
+
+    /** Value of a request header a response varies on (credentials are digested, not stored as they are). */
+    private static String varyValue(@NotNull Map<String, List<String>> requestHeaders, @NotNull String name) {
+        for (final Map.Entry<String, List<String>> header : requestHeaders.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                final String value = String.join(",", header.getValue());
+                if (value.isEmpty() || !CREDENTIALS.contains(name)) return value;
+                final Sha sha = new Sha();
+                sha.process(value.getBytes(StandardCharsets.UTF_8));
+                return sha.getDigestAsString();
+            }
+        }
+        return "";
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    /** Request headers with credentials: responses to them are private unless stated otherwise. */
+    private static final Set<String> CREDENTIALS = credentials();
+
+    private static final long MILLIS  = 1000;
+    private static final int  VERSION = 2;
+
+    //~ Inner Classes ................................................................................................................................
+
+    /** Cache-Control directives of a request or response. */
+    static class CacheControl {
+        boolean isPrivate            = false;
+        boolean isPublic             = false;
+        long    maxAge               = -1;
+        boolean mustRevalidate       = false;
+        boolean noCache              = false;
+        boolean noStore              = false;
+        long    sharedMaxAge         = -1;
+        long    staleWhileRevalidate = 0;
+
+        private CacheControl() {}
+
+        /** Parse given Cache-Control header values (if any). */
+        @NotNull static CacheControl parse(@Nullable List<String> header) {
+            final CacheControl result = new CacheControl();
+            for (final String directive : values(header)) {
+                final String d     = directive.toLowerCase(Locale.ENGLISH);
+                final int    equal = d.indexOf('=');
+                final String name  = equal < 0 ? d : d.substring(0, equal).trim();
+                final String value = equal < 0 ? null : d.substring(equal + 1).trim().replace("\"", "");
+                switch (name) {
+                case "max-age":
+                    result.maxAge = parseLong(value);
+                    break;
+                case "must-revalidate":
+                    result.mustRevalidate = true;
+                    break;
+                case "no-cache":
+                    result.noCache = true;
+                    break;
+                case "no-store":
+                    result.noStore = true;
+                    break;
+                case "private":
+                    result.isPrivate = true;
+                    break;
+                case "public":
+                    result.isPublic = true;
+                    break;
+                case "s-maxage":
+                    result.sharedMaxAge = parseLong(value);
+                    break;
+                case "stale-while-revalidate":
+                    result.staleWhileRevalidate = parseLong(value);
+                    break;
+                default:
+                    break;
+                }
+            }
+            return result;
+        }
+    }  // end class CacheControl
+}  // end class CachedResponse
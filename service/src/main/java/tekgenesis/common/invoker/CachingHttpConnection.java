@@ -0,0 +1,445 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.invoker.CachedResponse.CacheControl;
+import tekgenesis.common.logging.Logger;
+
+import static tekgenesis.common.service.HeaderNames.*;
+
+/**
+ * {@link HttpURLConnection} adapter answering GET requests from an {@link HttpResponseCache} when
+ * possible, else sending them through the underlying transport (conditionally, if a stale response
+ * can be revalidated) and storing cacheable responses. Other methods are sent as is, invalidating
+ * the stored response of the url if unsafe.
+ */
+class CachingHttpConnection extends HttpURLConnection {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final HttpResponseCache cache;
+    @Nullable private CachedResponse         cached;
+    private CompletableFuture<Void>          exchange;
+    @Nullable private InputStream            live;
+    @Nullable private byte[]                 prefix;
+    private Map<String, List<String>>        properties;
+    private boolean                          released;
+    @Nullable private HttpURLConnection      target;
+    @NotNull private final HttpTransport     transport;
+
+    //~ Constructors .................................................................................................................................
+
+    CachingHttpConnection(@NotNull URL url, @NotNull HttpTransport transport, @NotNull HttpResponseCache cache) {
+        super(url);
+        this.transport = transport;
+        this.cache     = cache;
+        cached         = null;
+        exchange       = null;
+        live           = null;
+        prefix         = null;
+        properties     = Collections.emptyMap();
+        released       = false;
+        target         = null;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Send the request (if not answered by the cache), waiting for its response. */
+    @Override public void connect()
+        throws IOException
+    {
+        await();
+    }
+
+    @Override public void disconnect() {
+        if (target != null) target.disconnect();
+    }
+
+    @Override public boolean usingProxy() {
+        return false;
+    }
+
+    @Override public InputStream getErrorStream() {
+        if (cached != null || target == null) return null;
+        if (live == null) live = target.getErrorStream();
+        return live;
+    }
+
+    @Override public String getHeaderField(String name) {
+        if (!awaitSilently()) return null;
+        final CachedResponse response = cached;
+        if (response == null) return target.getHeaderField(name);
+        return name == null ? null : response.getHeader(name);
+    }
+
+    @Override public String getHeaderField(int n) {
+        if (!awaitSilently()) return null;
+        if (cached == null) return target.getHeaderField(n);
+        final List<String[]> fields = fields(cached);
+        return n < 0 || n >= fields.size() ? null : fields.get(n)[1];
+    }
+
+    @Override public String getHeaderFieldKey(int n) {
+        if (!awaitSilently()) return null;
+        if (cached == null) return target.getHeaderFieldKey(n);
+        final List<String[]> fields = fields(cached);
+        return n < 0 || n >= fields.size() ? null : fields.get(n)[0];
+    }
+
+    @Override public Map<String, List<String>> getHeaderFields() {
+        if (!awaitSilently()) return Collections.emptyMap();
+        return cached == null ? target.getHeaderFields() : Collections.unmodifiableMap(cached.getHeaders());
+    }
+
+    @Override public InputStream getInputStream()
+        throws IOException
+    {
+        await();
+        final CachedResponse response = cached;
+        if (response != null) return new ByteArrayInputStream(response.getContent());
+        if (live == null) live = target.getInputStream();
+        // Content was partially read while trying to cache it
+        return prefix == null ? live : new SequenceInputStream(new ByteArrayInputStream(prefix), live);
+    }
+
+    @Override public OutputStream getOutputStream()
+        throws IOException
+    {
+        if (!doOutput) throw new ProtocolException("Cannot write to a URLConnection if doOutput=false - call setDoOutput(true)");
+        return openTarget().getOutputStream();
+    }
+
+    @Override public int getResponseCode()
+        throws IOException
+    {
+        await();
+        return cached != null ? cached.getStatus() : target.getResponseCode();
+    }
+
+    @Override public String getResponseMessage()
+        throws IOException
+    {
+        await();
+        return cached != null ? (cached.getStatus() == HTTP_OK ? "OK" : "") : target.getResponseMessage();
+    }
+
+    /** Release the underlying connection (if any) once the response is closed. */
+    void release() {
+        final HttpURLConnection t = target;
+        if (t != null && !released) {
+            released = true;
+            transport.release(t, live);
+        }
+    }
+
+    /** Discard the underlying connection (if any) when the invocation failed. */
+    void discard() {
+        final HttpURLConnection t = target;
+        if (t != null && !released) {
+            released = true;
+            transport.discard(t);
+        }
+    }
+
+    /** Returns true if the response is served from the cache. */
+    boolean isCached() {
+        return cached != null;
+    }
+
+    /** Answer the request from the cache, or send it through the transport. */
+    synchronized CompletableFuture<Void> send() {
+        if (exchange == null) {
+            properties = getRequestProperties();
+            connected  = true;
+            try {
+                exchange = exchange();
+            }
+            catch (final IOException e) {
+                exchange = failed(e);
+            }
+        }
+        return exchange;
+    }
+
+    /** Send request (if not answered) and wait for the response. */
+    private void await()
+        throws IOException
+    {
+        try {
+            send().get();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        catch (final ExecutionException e) {
+            final Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause()
+                                                                                                                 : e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private boolean awaitSilently() {
+        try {
+            await();
+            return true;
+        }
+        catch (final IOException e) {
+            return false;
+        }
+    }
+
+    /** Add validators of the stored response to the request (unless specified). */
+    private void conditional(@NotNull HttpURLConnection t, @NotNull CachedResponse stored) {
+        final String etag         = stored.getHeader(ETAG);
+        final String lastModified = stored.getHeader(LAST_MODIFIED);
+        if (etag != null && t.getRequestProperty(IF_NONE_MATCH) == null) t.setRequestProperty(IF_NONE_MATCH, etag);
+        if (lastModified != null && t.getRequestProperty(IF_MODIFIED_SINCE) == null) t.setRequestProperty(IF_MODIFIED_SINCE, lastModified);
+    }
+
+    private CompletableFuture<Void> exchange()
+        throws IOException
+    {
+        final String key = url.toString();
+        if (!GET.equals(method)) {
+            // Unsafe methods invalidate the stored response of the url
+            if (!HEAD.equals(method) && !OPTIONS.equals(method) && !TRACE.equals(method)) cache.invalidate(key);
+            return transport.send(openTarget());
+        }
+
+        final CacheControl request = CacheControl.parse(all(properties, CACHE_CONTROL));
+        if (request.noStore) return transport.send(openTarget());
+
+        final long           now    = cache.now();
+        final CachedResponse stored = cache.get(key, properties);
+        if (stored != null && !request.noCache && request.maxAge != 0) {
+            if (stored.isFresh(now)) {
+                cache.markHit();
+                cached = stored;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (stored.isServableWhileRevalidating(now)) {
+                cache.markHit();
+                cached = stored;
+                revalidate(stored);
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        cache.markMiss();
+        return fetch(stored);
+    }
+
+    /** Send the request (conditionally, if there is a stored response), storing its response. */
+    private CompletableFuture<Void> fetch(@Nullable CachedResponse stored)
+        throws IOException
+    {
+        final HttpURLConnection t = openTarget();
+        if (stored != null && stored.isRevalidable()) conditional(t, stored);
+        return transport.send(t).thenAccept(ignored -> {
+            try {
+                store(t, stored);
+            }
+            catch (final IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /** Open the underlying connection, with the same configuration and request properties. */
+    private HttpURLConnection openTarget()
+        throws IOException
+    {
+        if (target == null) {
+            final HttpURLConnection t = transport.open(url);
+            t.setRequestMethod(method);
+            t.setConnectTimeout(getConnectTimeout());
+            t.setReadTimeout(getReadTimeout());
+            t.setInstanceFollowRedirects(getInstanceFollowRedirects());
+            t.setDoInput(doInput);
+            t.setDoOutput(doOutput);
+            if (fixedContentLengthLong != -1) t.setFixedLengthStreamingMode(fixedContentLengthLong);
+            else if (chunkLength != -1) t.setChunkedStreamingMode(chunkLength);
+            for (final Map.Entry<String, List<String>> property : (connected ? properties : getRequestProperties()).entrySet()) {
+                if (property.getKey() == null) continue;
+                for (final String value : property.getValue())
+                    t.addRequestProperty(property.getKey(), value);
+            }
+            target = t;
+        }
+        return target;
+    }
+
+    /** Read content up to the given length, returning null (keeping what was read) if longer. */
+    @Nullable private byte[] read(@NotNull InputStream in, int max)
+        throws IOException
+    {
+        final ByteArrayOutputStream out    = new ByteArrayOutputStream();
+        final byte[]                buffer = new byte[BUFFER_SIZE];
+        int                         n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            if (out.size() > max) {
+                prefix = out.toByteArray();
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Revalidate (or refresh) given stale response in background, while it is still being used. */
+    private void revalidate(@NotNull CachedResponse stored) {
+        final String key = stored.getKey();
+        if (!cache.startRevalidation(key)) return;
+
+        final CachingHttpConnection revalidation = new CachingHttpConnection(url, transport, cache);
+        revalidation.method = method;
+        revalidation.setConnectTimeout(getConnectTimeout());
+        revalidation.setReadTimeout(getReadTimeout());
+        revalidation.setInstanceFollowRedirects(getInstanceFollowRedirects());
+        revalidation.properties = properties;
+        revalidation.connected  = true;
+
+        CompletableFuture.supplyAsync(() -> {
+                             try {
+                                 return revalidation.fetch(stored);
+                             }
+                             catch (final IOException e) {
+                                 throw new CompletionException(e);
+                             }
+                         }, revalidations)
+                         .thenCompose(f -> f)
+                         .whenComplete((ignored, e) -> {
+                             if (e == null) revalidation.release();
+                             else {
+                                 logger.warning("Cannot revalidate cached response of " + key, e);
+                                 revalidation.discard();
+                             }
+                             cache.endRevalidation(key);
+                         });
+    }
+
+    /**
+     * Handle the response: a not modified one refreshes the stored response (used instead), and
+     * cacheable ones are read and stored (unless too large). Other responses are used as they are.
+     */
+    private void store(@NotNull HttpURLConnection t, @Nullable CachedResponse stored)
+        throws IOException
+    {
+        final int status = t.getResponseCode();
+        if (status == HTTP_NOT_MODIFIED && stored != null) {
+            final CachedResponse response = stored.revalidated(t.getHeaderFields(), cache.now());
+            live = t.getInputStream();
+            while (live.read() != -1) {}
+            release();
+            cache.put(response);
+            cache.markRevalidated();
+            cached = response;
+            return;
+        }
+
+        final long length = t.getContentLengthLong();
+        if (status != HTTP_OK || length > cache.getMaxContentLength()) return;
+
+        final String key = url.toString();
+        final long   now = cache.now();
+        if (CachedResponse.create(key, status, t.getHeaderFields(), properties, EMPTY, now) == null) return;
+
+        live = t.getInputStream();
+        final byte[] content = read(live, cache.getMaxContentLength());
+        if (content == null) return;
+        release();
+
+        final CachedResponse response = CachedResponse.create(key, status, t.getHeaderFields(), properties, content, now);
+        if (response != null) {
+            cache.put(response);
+            cached = response;
+        }
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Returns all the values of the given header (of any case). */
+    @NotNull private static List<String> all(@NotNull Map<String, List<String>> headers, @NotNull String name) {
+        final List<String> result = new ArrayList<>();
+        for (final Map.Entry<String, List<String>> header : headers.entrySet())
+            if (name.equalsIgnoreCase(header.getKey())) result.addAll(header.getValue());
+        return result;
+    }
+
+    private static CompletableFuture<Void> failed(@NotNull Throwable t) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        result.completeExceptionally(t);
+        return result;
+    }
+
+    /** Header fields of a stored response, as returned by the indexed accessors (status line first). */
+    private static List<String[]> fields(@NotNull CachedResponse response) {
+        final List<String[]> result = new ArrayList<>();
+        result.add(new String[] { null, "HTTP/1.1 " + response.getStatus() });
+        for (final Map.Entry<String, List<String>> header : response.getHeaders().entrySet())
+            for (final String value : header.getValue())
+                result.add(new String[] { header.getKey(), value });
+        return result;
+    }
+
+    /**
+     * Executor of background revalidations, so they neither block nor are blocked by the common
+     * pool. Bounded, with daemon threads released once idle.
+     */
+    private static Executor revalidationExecutor() {
+        final AtomicInteger      counter  = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(REVALIDATION_THREADS,
+                REVALIDATION_THREADS,
+                REVALIDATION_KEEP_ALIVE,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    final Thread thread = new Thread(r, "http-cache-revalidation-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int    BUFFER_SIZE = 8192;
+    private static final byte[] EMPTY       = new byte[0];
+    private static final String GET         = "GET";
+    private static final String HEAD        = "HEAD";
+    private static final String OPTIONS     = "OPTIONS";
+    private static final String TRACE       = "TRACE";
+
+    private static final int      REVALIDATION_KEEP_ALIVE = 60;
+    private static final int      REVALIDATION_THREADS    = 4;
+    private static final Executor revalidations           = revalidationExecutor();
+
+    private static final Logger logger = Logger.getLogger(CachingHttpConnection.class);
+}  // end class CachingHttpConnection
@@ -0,0 +1,82 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.util.Files;
+
+/**
+ * {@link HttpTransport Transport} layer answering GET invocations from an
+ * {@link HttpResponseCache}, and sending the rest (and revalidations) through a delegate transport.
+ */
+public class CachingHttpTransport implements HttpTransport {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final HttpResponseCache cache;
+    @NotNull private final HttpTransport     delegate;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a caching transport storing responses of given delegate transport on given cache. */
+    public CachingHttpTransport(@NotNull HttpTransport delegate, @NotNull HttpResponseCache cache) {
+        this.delegate = delegate;
+        this.cache    = cache;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public void discard(@NotNull HttpURLConnection connection) {
+        if (connection instanceof CachingHttpConnection) ((CachingHttpConnection) connection).discard();
+        else delegate.discard(connection);
+    }
+
+    @NotNull @Override public HttpURLConnection open(@NotNull URL url)
+        throws IOException
+    {
+        return new CachingHttpConnection(url, delegate, cache);
+    }
+
+    @Override public void release(@NotNull HttpURLConnection connection, @Nullable InputStream content) {
+        if (connection instanceof CachingHttpConnection) {
+            final CachingHttpConnection c = (CachingHttpConnection) connection;
+            // Content served from the cache is not bound to a connection
+            if (c.isCached()) Files.close(content);
+            else c.release();
+        }
+        else delegate.release(connection, content);
+    }
+
+    @NotNull @Override public CompletableFuture<Void> send(@NotNull HttpURLConnection connection) {
+        return ((CachingHttpConnection) connection).send();
+    }
+
+    @Override public String toString() {
+        return "Caching(" + delegate + ")";
+    }
+
+    /** Returns the cache responses are stored on. */
+    @NotNull public HttpResponseCache getCache() {
+        return cache;
+    }
+
+    @Override public boolean isNonBlocking() {
+        return delegate.isNonBlocking();
+    }
+}  // end class CachingHttpTransport
@@ -0,0 +1,155 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.invoker.metric.CompressionMetrics;
+
+/**
+ * Request content stream compressing content straight into the connection stream, unless the
+ * whole content is smaller than a threshold. Content is buffered up to the threshold, so whether
+ * it is compressed (and the request Content-Encoding header) is decided before opening the
+ * connection stream.
+ */
+class CompressingOutputStream extends OutputStream {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final ByteArrayOutputStream buffer;
+    private boolean                              closed;
+    @NotNull private final ContentCodec          codec;
+    @NotNull private final CompressionMetrics    metrics;
+    @NotNull private final Opener                opener;
+    private OutputStream                         out;
+    private CountingOutputStream                 sent;
+    private final int                            threshold;
+    private long                                 written;
+
+    //~ Constructors .................................................................................................................................
+
+    CompressingOutputStream(@NotNull ContentCodec codec, int threshold, @NotNull CompressionMetrics metrics, @NotNull Opener opener) {
+        this.codec     = codec;
+        this.threshold = threshold;
+        this.metrics   = metrics;
+        this.opener    = opener;
+        buffer         = new ByteArrayOutputStream(Math.min(threshold, MAX_INITIAL_BUFFER));
+        closed         = false;
+        out            = null;
+        sent           = null;
+        written        = 0;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Finish content, compressing it only if it reached the threshold. */
+    @Override public void close()
+        throws IOException
+    {
+        if (closed) return;
+        closed = true;
+        if (out == null) {
+            start(false);
+            metrics.markRequestUncompressed();
+        }
+        out.close();
+        if (sent != null) metrics.markRequestCompressed(written, sent.count);
+    }
+
+    @Override public void flush()
+        throws IOException
+    {
+        // Flushing buffered content would force the decision, before knowing the content size
+        if (out != null) out.flush();
+    }
+
+    @Override public void write(int b)
+        throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override public void write(@NotNull byte[] b, int off, int len)
+        throws IOException
+    {
+        if (closed) throw new IOException("Stream closed");
+        written += len;
+        if (out == null) {
+            if (written < threshold) {
+                buffer.write(b, off, len);
+                return;
+            }
+            start(true);
+        }
+        out.write(b, off, len);
+    }
+
+    /** Open the connection stream (compressing if specified) and write buffered content. */
+    private void start(boolean compress)
+        throws IOException
+    {
+        final OutputStream connection = opener.open(compress ? codec : null);
+        if (compress) {
+            sent = new CountingOutputStream(connection);
+            out  = codec.encode(sent);
+        }
+        else out = connection;
+        buffer.writeTo(out);
+        buffer.reset();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int MAX_INITIAL_BUFFER = 8192;
+
+    //~ Inner Interfaces .............................................................................................................................
+
+    /** Opens the connection stream, once the content coding (null if uncompressed) is decided. */
+    interface Opener {
+        /** Set content headers and return the connection stream. */
+        @NotNull OutputStream open(@Nullable ContentCodec coding)
+            throws IOException;
+    }
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Stream counting the bytes written to the connection.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(@NotNull OutputStream out) {
+            super(out);
+            count = 0;
+        }
+
+        @Override public void write(int b)
+            throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override public void write(@NotNull byte[] b, int off, int len)
+            throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}  // end class CompressingOutputStream
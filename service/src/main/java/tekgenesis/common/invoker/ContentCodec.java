@@ -0,0 +1,106 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Http content coding (as in Content-Encoding and Accept-Encoding headers), encoding and decoding
+ * streamed content. See {@link ContentCodecs} for the available ones.
+ */
+public interface ContentCodec {
+
+    //~ Methods ......................................................................................................................................
+
+    /** Returns true if the codec can encode content (some are only able to decode it). */
+    boolean canEncode();
+
+    /** Returns a stream decoding given encoded content. */
+    @NotNull InputStream decode(@NotNull InputStream content)
+        throws IOException;
+
+    /** Returns a stream encoding content into given stream (closing it closes the given one). */
+    @NotNull OutputStream encode(@NotNull OutputStream content)
+        throws IOException;
+
+    /** Returns the content coding name. */
+    @NotNull String getName();
+
+    //~ Static Fields ................................................................................................................................
+
+    /** Deflate coding (zlib format). */
+    ContentCodec DEFLATE = new DeflateCodec();
+
+    /** Gzip coding. */
+    ContentCodec GZIP = new GzipCodec();
+
+    //~ Inner Classes ................................................................................................................................
+
+    class DeflateCodec implements ContentCodec {
+        private DeflateCodec() {}
+
+        @Override public boolean canEncode() {
+            return true;
+        }
+
+        @NotNull @Override public InputStream decode(@NotNull InputStream content) {
+            return new InflaterInputStream(content);
+        }
+
+        @NotNull @Override public OutputStream encode(@NotNull OutputStream content) {
+            return new DeflaterOutputStream(content);
+        }
+
+        @NotNull @Override public String getName() {
+            return "deflate";
+        }
+
+        @Override public String toString() {
+            return getName();
+        }
+    }
+
+    class GzipCodec implements ContentCodec {
+        private GzipCodec() {}
+
+        @Override public boolean canEncode() {
+            return true;
+        }
+
+        @NotNull @Override public InputStream decode(@NotNull InputStream content)
+            throws IOException
+        {
+            return new GZIPInputStream(content);
+        }
+
+        @NotNull @Override public OutputStream encode(@NotNull OutputStream content)
+            throws IOException
+        {
+            return new GZIPOutputStream(content);
+        }
+
+        @NotNull @Override public String getName() {
+            return "gzip";
+        }
+
+        @Override public String toString() {
+            return getName();
+        }
+    }
+}  // end interface ContentCodec
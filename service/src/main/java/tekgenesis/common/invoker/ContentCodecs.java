@@ -0,0 +1,147 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.core.Option;
+
+/**
+ * Available {@link ContentCodec content codecs}: gzip and deflate, plus zstd (zstd-jni) and brotli
+ * (brotli4j, or the org.brotli decoder) if present on the classpath.
+ */
+public class ContentCodecs {
+
+    //~ Constructors .................................................................................................................................
+
+    private ContentCodecs() {}
+
+    //~ Methods ......................................................................................................................................
+
+    /** Returns the available codecs, in preference order (better compression first). */
+    public static List<ContentCodec> available() {
+        return available;
+    }
+
+    /** Returns the available codec with given name (case insensitive). */
+    public static Option<ContentCodec> forName(@NotNull String name) {
+        for (final ContentCodec codec : available)
+            if (codec.getName().equalsIgnoreCase(name.trim())) return Option.some(codec);
+        return Option.empty();
+    }
+
+    private static List<ContentCodec> createAvailable() {
+        final List<ContentCodec> result = new ArrayList<>();
+        final ContentCodec       zstd   = reflective(ZSTD, ZSTD_ENCODER, ZSTD_DECODER);
+        if (zstd != null) result.add(zstd);
+        final ContentCodec brotli = reflective(BROTLI, BROTLI_ENCODER, BROTLI_DECODER, BROTLI_DECODER_FALLBACK);
+        if (brotli != null) result.add(brotli);
+        result.add(ContentCodec.GZIP);
+        result.add(ContentCodec.DEFLATE);
+        return Collections.unmodifiableList(result);
+    }
+
+    /** Codec over stream classes found by name, or null if no decoder class is present. */
+    @Nullable private static ContentCodec reflective(@NotNull String name, @NotNull String encoder, @NotNull String... decoders) {
+        Constructor<?> decoding = null;
+        for (int i = 0; i < decoders.length && decoding == null; i++)
+            decoding = constructor(decoders[i], InputStream.class);
+        return decoding == null ? null : new ReflectiveCodec(name, constructor(encoder, OutputStream.class), decoding);
+    }
+
+    @Nullable private static Constructor<?> constructor(@NotNull String className, @NotNull Class<?> argument) {
+        try {
+            return Class.forName(className).getConstructor(argument);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+            return null;
+        }
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String BROTLI                  = "br";
+    private static final String BROTLI_DECODER          = "com.aayushatharva.brotli4j.decoder.BrotliInputStream";
+    private static final String BROTLI_DECODER_FALLBACK = "org.brotli.dec.BrotliInputStream";
+    private static final String BROTLI_ENCODER          = "com.aayushatharva.brotli4j.encoder.BrotliOutputStream";
+    private static final String ZSTD                    = "zstd";
+    private static final String ZSTD_DECODER            = "com.github.luben.zstd.ZstdInputStream";
+    private static final String ZSTD_ENCODER            = "com.github.luben.zstd.ZstdOutputStream";
+
+    private static final List<ContentCodec> available = createAvailable();
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Codec instantiating stream classes of an optional library.
+     */
+    private static class ReflectiveCodec implements ContentCodec {
+        @NotNull private final Constructor<?>  decoder;
+        @Nullable private final Constructor<?> encoder;
+        @NotNull private final String          name;
+
+        private ReflectiveCodec(@NotNull String name, @Nullable Constructor<?> encoder, @NotNull Constructor<?> decoder) {
+            this.name    = name;
+            this.encoder = encoder;
+            this.decoder = decoder;
+        }
+
+        @Override public boolean canEncode() {
+            return encoder != null;
+        }
+
+        @NotNull @Override public InputStream decode(@NotNull InputStream content)
+            throws IOException
+        {
+            return (InputStream) create(decoder, content);
+        }
+
+        @NotNull @Override public OutputStream encode(@NotNull OutputStream content)
+            throws IOException
+        {
+            if (encoder == null) throw new UnsupportedOperationException("No encoder available for " + name);
+            return (OutputStream) create(encoder, content);
+        }
+
+        @NotNull @Override public String getName() {
+            return name;
+        }
+
+        @Override public String toString() {
+            return name;
+        }
+
+        private Object create(@NotNull Constructor<?> constructor, @NotNull Object stream)
+            throws IOException
+        {
+            try {
+                return constructor.newInstance(stream);
+            }
+            catch (final InvocationTargetException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+            catch (InstantiationException | IllegalAccessException e) {
+                throw new IOException(e);
+            }
+        }
+    }  // end class ReflectiveCodec
+}  // end class ContentCodecs
@@ -0,0 +1,250 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.invoker.metric.CompressionMetrics;
+import tekgenesis.common.service.Headers;
+
+import static tekgenesis.common.Predefined.checkArgument;
+import static tekgenesis.common.service.HeaderNames.*;
+
+/**
+ * Modifier compressing request content and decompressing response content with
+ * {@link ContentCodec content codecs}. Responses encoded with any of the accepted codecs (all the
+ * {@link ContentCodecs#available() available} ones by default) are decoded (multiple codings are
+ * decoded in reverse order, and left as is if any is not accepted), and request content
+ * is compressed (with gzip by default) if not smaller than a threshold. Compression ratios are
+ * recorded on {@link CompressionMetrics}.
+ */
+public class ContentCompression implements MessageModifier {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private List<ContentCodec>                accepted;
+    @NotNull private final CompressionMetrics metrics;
+    @Nullable private ContentCodec            requestCodec;
+    private int                               threshold;
+
+    //~ Constructors .................................................................................................................................
+
+    private ContentCompression(@NotNull String name) {
+        metrics      = CompressionMetrics.getOrCreateInstance(name);
+        accepted     = ContentCodecs.available();
+        requestCodec = ContentCodec.GZIP;
+        threshold    = DEFAULT_THRESHOLD;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Accept responses encoded with given codecs, in preference order. */
+    public ContentCompression accepting(@NotNull ContentCodec... codecs) {
+        accepted = Collections.unmodifiableList(Arrays.asList(codecs));
+        return this;
+    }
+
+    @Override public void modify(@NotNull HttpConnectionRequest request) {
+        final Headers headers = request.getHeaders();
+        if (headers.getFirst(ACCEPT_ENCODING).isEmpty() && !accepted.isEmpty()) headers.set(ACCEPT_ENCODING, acceptEncoding());
+
+        // Content already encoded by the caller is left as is
+        final ContentCodec codec = requestCodec;
+        if (codec != null && headers.getFirst(CONTENT_ENCODING).isEmpty()) request.compressWith(codec, threshold, metrics);
+    }
+
+    @Override public void modify(@NotNull HttpConnectionResponse response) {
+        final Headers            headers = response.getHeaders();
+        final List<ContentCodec> codecs  = new ArrayList<>();
+        for (final String value : headers.getAll(CONTENT_ENCODING)) {
+            for (final String coding : value.split(",")) {
+                if (coding.trim().isEmpty() || IDENTITY.equalsIgnoreCase(coding.trim())) continue;
+                final ContentCodec codec = acceptedCodec(coding);
+                if (codec == null) return;
+                codecs.add(codec);
+            }
+        }
+        if (codecs.isEmpty()) return;
+
+        try {
+            response.setBody(new DecodingInputStream(codecs, response.getContent(), metrics));
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final Map<String, Collection<String>> mutable = headers.asMap();
+        mutable.remove(CONTENT_ENCODING);
+        mutable.remove(CONTENT_LENGTH);
+        mutable.remove(CONTENT_MD5);
+    }
+
+    /** Compress request content with given codec. */
+    public ContentCompression withRequestCodec(@NotNull ContentCodec codec) {
+        checkArgument(codec.canEncode(), "Codec cannot encode content: " + codec);
+        requestCodec = codec;
+        return this;
+    }
+
+    /** Leave request content uncompressed (only decompressing responses). */
+    public ContentCompression withoutRequestCompression() {
+        requestCodec = null;
+        return this;
+    }
+
+    /** Leave request content smaller than given amount of bytes uncompressed. */
+    public ContentCompression withThreshold(int bytes) {
+        checkArgument(bytes >= 0, "Threshold must not be negative.");
+        threshold = bytes;
+        return this;
+    }
+
+    /** Returns the compression metrics. */
+    @NotNull public CompressionMetrics getMetrics() {
+        return metrics;
+    }
+
+    private String acceptEncoding() {
+        final StringBuilder result = new StringBuilder();
+        for (final ContentCodec codec : accepted) {
+            if (result.length() > 0) result.append(", ");
+            result.append(codec.getName());
+        }
+        return result.toString();
+    }
+
+    @Nullable private ContentCodec acceptedCodec(@NotNull String coding) {
+        for (final ContentCodec codec : accepted)
+            if (codec.getName().equalsIgnoreCase(coding.trim())) return codec;
+        return null;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Create a compression modifier, recording metrics with the given name. See
+     * {@link HttpInvoker#withCompression(ContentCompression)}.
+     */
+    public static ContentCompression compression(@NotNull String name) {
+        return new ContentCompression(name);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int    DEFAULT_THRESHOLD = 1024;
+    private static final String IDENTITY          = "identity";
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Response content decoded on demand (empty content, eg: of HEAD requests, is not decoded),
+     * recording sizes once closed.
+     */
+    private static class DecodingInputStream extends InputStream {
+        private boolean                            closed;
+        @NotNull private final List<ContentCodec>  codecs;  // In the order they were applied
+        private long                               compressed;
+        private InputStream                        decoded;
+        private long                               decompressed;
+        @NotNull private final CompressionMetrics  metrics;
+        @NotNull private final PushbackInputStream source;
+
+        private DecodingInputStream(@NotNull List<ContentCodec> codecs, @NotNull InputStream content,
+                                    @NotNull CompressionMetrics metrics) {
+            this.codecs  = codecs;
+            this.metrics = metrics;
+            source       = new PushbackInputStream(new InputStream() {
+                        @Override public int read()
+                            throws IOException
+                        {
+                            final int b = content.read();
+                            if (b != -1) compressed++;
+                            return b;
+                        }
+
+                        @Override public int read(@NotNull byte[] b, int off, int len)
+                            throws IOException
+                        {
+                            final int n = content.read(b, off, len);
+                            if (n > 0) compressed += n;
+                            return n;
+                        }
+
+                        @Override public void close()
+                            throws IOException
+                        {
+                            content.close();
+                        }
+                    });
+            closed       = false;
+            decoded      = null;
+            compressed   = 0;
+            decompressed = 0;
+        }
+
+        @Override public void close()
+            throws IOException
+        {
+            if (closed) return;
+            closed = true;
+            if (decoded != null) {
+                decoded.close();
+                metrics.markResponseDecompressed(compressed, decompressed);
+            }
+            else source.close();
+        }
+
+        @Override public int read()
+            throws IOException
+        {
+            final InputStream in = decoded();
+            final int         b  = in == null ? -1 : in.read();
+            if (b != -1) decompressed++;
+            return b;
+        }
+
+        @Override public int read(@NotNull byte[] b, int off, int len)
+            throws IOException
+        {
+            final InputStream in = decoded();
+            final int         n  = in == null ? -1 : in.read(b, off, len);
+            if (n > 0) decompressed += n;
+            return n;
+        }
+
+        /** Returns the decoded stream, or null if content is empty. */
+        @Nullable private InputStream decoded()
+            throws IOException
+        {
+            if (decoded == null) {
+                final int first = source.read();
+                if (first == -1) return null;
+                source.unread(first);
+                InputStream in = source;
+                for (int i = codecs.size() - 1; i >= 0; i--)
+                    in = codecs.get(i).decode(in);
+                decoded = in;
+            }
+            return decoded;
+        }
+    }  // end class DecodingInputStream
+}  // end class ContentCompression
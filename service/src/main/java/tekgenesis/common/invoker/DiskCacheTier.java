@@ -0,0 +1,130 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.logging.Logger;
+import tekgenesis.common.util.Sha;
+
+/**
+ * Disk tier of an {@link HttpResponseCache}: a file per response in the given directory (named by
+ * the digest of its key), bounded by a maximum amount of bytes. Least recently written files are
+ * deleted once the bound is exceeded.
+ */
+class DiskCacheTier {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final File directory;
+    private final long          maxBytes;
+    private long                size;
+
+    //~ Constructors .................................................................................................................................
+
+    DiskCacheTier(@NotNull File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes  = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IllegalArgumentException("Cannot create cache directory " + directory);
+        size = 0;
+        for (final File file : files())
+            size += file.length();
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Returns the response stored for given key, or null. */
+    @Nullable CachedResponse get(@NotNull String key) {
+        final File file = file(key);
+        if (!file.isFile()) return null;
+        try(final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final CachedResponse response = CachedResponse.read(in);
+            return key.equals(response.getKey()) ? response : null;
+        }
+        catch (final IOException e) {
+            logger.warning("Discarding unreadable cached response " + file);
+            remove(key);
+            return null;
+        }
+    }
+
+    /** Store given response, deleting the oldest ones if the maximum size is exceeded. */
+    synchronized void put(@NotNull CachedResponse response) {
+        final File file = file(response.getKey());
+        final File temp = new File(directory, file.getName() + TEMP_SUFFIX);
+        try(final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            response.write(out);
+        }
+        catch (final IOException e) {
+            logger.warning("Cannot write cached response " + file, e);
+            delete(temp);
+            return;
+        }
+        final long previous = file.length();
+        if (!temp.renameTo(file)) {
+            delete(temp);
+            return;
+        }
+        size += file.length() - previous;
+        trim();
+    }
+
+    /** Remove the response stored for given key (if any). */
+    synchronized void remove(@NotNull String key) {
+        final File file = file(key);
+        final long length = file.length();
+        if (delete(file)) size -= length;
+    }
+
+    /** Returns the size (in bytes) of the stored responses. */
+    synchronized long getSize() {
+        return size;
+    }
+
+    private boolean delete(@NotNull File file) {
+        return file.exists() && file.delete();
+    }
+
+    private File file(@NotNull String key) {
+        final Sha sha = new Sha();
+        sha.process(key.getBytes(StandardCharsets.UTF_8));
+        return new File(directory, sha.getDigestAsString() + SUFFIX);
+    }
+
+    private File[] files() {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    /** Delete least recently written files until the maximum size is not exceeded. */
+    private void trim() {
+        if (size <= maxBytes) return;
+        final File[] files = files();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && size > maxBytes; i++) {
+            final long length = files[i].length();
+            if (delete(files[i])) size -= length;
+        }
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String SUFFIX      = ".response";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Logger logger = Logger.getLogger(DiskCacheTier.class);
+}  // end class DiskCacheTier
@@ -0,0 +1,132 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.metric.RollingHistogram;
+
+/**
+ * Load and health statistics of a single host of a multi host invoker: invocations in flight,
+ * rolling latency percentiles, peak EWMA latency and consecutive failures. Thread safe.
+ */
+class HostStats {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private double                           ewma;
+    private final AtomicInteger              failures;
+    @NotNull private final HttpInvoker       invoker;
+    private long                             lastSample;
+    @NotNull private final RollingHistogram  latency;
+    private final AtomicInteger              outstanding;
+    private boolean                          sampled;
+    @NotNull private final LongSupplier      time;
+    private volatile long                    unhealthyUntil;
+
+    //~ Constructors .................................................................................................................................
+
+    HostStats(@NotNull HttpInvoker invoker) {
+        this(invoker, System::currentTimeMillis);
+    }
+
+    HostStats(@NotNull HttpInvoker invoker, @NotNull LongSupplier time) {
+        this.invoker   = invoker;
+        this.time      = time;
+        latency        = new RollingHistogram(LATENCY_WINDOW, LATENCY_WINDOW_BUCKETS);
+        outstanding    = new AtomicInteger();
+        failures       = new AtomicInteger();
+        ewma           = 0;
+        lastSample     = time.getAsLong();
+        sampled        = false;
+        unhealthyUntil = 0;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Called when an invocation on the host completes, with its latency (negative if cancelled, so
+     * it is not sampled). Failed invocations penalize the host (with an exponential backoff on
+     * consecutive failures) instead of sampling latency.
+     */
+    void completed(long latencyInMilliseconds, boolean failed) {
+        outstanding.decrementAndGet();
+        if (failed) {
+            final int n = Math.min(failures.incrementAndGet(), MAX_BACKOFF_SHIFT);
+            unhealthyUntil = time.getAsLong() + Math.min(PENALTY_BASE << (n - 1), PENALTY_MAX);
+        }
+        else if (latencyInMilliseconds >= 0) {
+            failures.set(0);
+            unhealthyUntil = 0;
+            latency.addValue((int) Math.min(latencyInMilliseconds, Integer.MAX_VALUE));
+            sample(latencyInMilliseconds);
+        }
+    }
+
+    /** Called when an invocation on the host starts. */
+    void started() {
+        outstanding.incrementAndGet();
+    }
+
+    /** Returns true if the host is not penalized by recent failures. */
+    boolean isHealthy() {
+        return time.getAsLong() >= unhealthyUntil;
+    }
+
+    /** Returns true if at least one latency was sampled (so its peak EWMA latency is meaningful). */
+    synchronized boolean isSampled() {
+        return sampled;
+    }
+
+    /** Returns the invoker of the host. */
+    @NotNull HttpInvoker getInvoker() {
+        return invoker;
+    }
+
+    /** Invocations currently in flight on the host. */
+    int getOutstanding() {
+        return Math.max(0, outstanding.get());
+    }
+
+    /**
+     * Peak EWMA latency: jumps to latencies above the average and decays towards lower ones, so a
+     * host that got slow is avoided immediately and recovers gradually.
+     */
+    synchronized double getPeakEwma() {
+        return ewma;
+    }
+
+    /** Rolling latency percentile of the host (0 if no latency was sampled yet). */
+    int getPercentile(double percentile) {
+        return Math.max(0, latency.getPercentile(percentile));
+    }
+
+    private synchronized void sample(long rtt) {
+        final long   now     = time.getAsLong();
+        final long   elapsed = Math.max(0, now - lastSample);
+        final double w       = Math.exp(-elapsed / (double) DECAY_TIME);
+        lastSample = now;
+        ewma       = !sampled || rtt > ewma ? rtt : ewma * w + rtt * (1 - w);
+        sampled    = true;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int  DECAY_TIME             = 10000;
+    private static final int  LATENCY_WINDOW         = 60000;
+    private static final int  LATENCY_WINDOW_BUCKETS = 6;
+    private static final int  MAX_BACKOFF_SHIFT      = 6;
+    private static final long PENALTY_BASE           = 1000;
+    private static final long PENALTY_MAX            = 30000;
+}  // end class HostStats
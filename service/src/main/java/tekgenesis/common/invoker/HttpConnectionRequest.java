@@ -19,12 +19,16 @@ import java.util.List;
 import java.util.Map;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import tekgenesis.common.invoker.metric.CompressionMetrics;
 import tekgenesis.common.service.Headers;
 import tekgenesis.common.service.Method;
 import tekgenesis.common.service.client.Request;
 import tekgenesis.common.service.cookie.Cookie;
 
+import static tekgenesis.common.service.HeaderNames.CONTENT_ENCODING;
+import static tekgenesis.common.service.HeaderNames.CONTENT_LENGTH;
 import static tekgenesis.common.service.cookie.Cookies.encodeClientCookies;
 
 /**
@@ -34,10 +38,13 @@ class HttpConnectionRequest implements Request {
 
     //~ Instance Fields ..............................................................................................................................
 
+    @Nullable private Compression            compression;
     @NotNull private final HttpURLConnection connection;
+    private OutputStream                     content;
     @NotNull private final List<Cookie>      cookies;
     @NotNull private final Headers           headers;
     @NotNull private final Method            method;
+    private boolean                          streaming;
     @NotNull private final URI               uri;
 
     //~ Constructors .................................................................................................................................
@@ -49,6 +56,9 @@ class HttpConnectionRequest implements Request {
         this.connection = connection;
         this.headers    = headers;
         this.cookies    = cookies;
+        content         = null;
+        compression     = null;
+        streaming       = false;
     }
 
     //~ Methods ......................................................................................................................................
@@ -56,8 +66,12 @@ class HttpConnectionRequest implements Request {
     @Override public OutputStream getContent()
         throws IOException
     {
-        writeHeaders();
-        return connection.getOutputStream();
+        if (content == null) {
+            final Compression c = compression;
+            if (c == null) content = open(null);
+            else content = new CompressingOutputStream(c.codec, c.threshold, c.metrics, this::open);
+        }
+        return content;
     }
 
     @NotNull @Override public Headers getHeaders() {
@@ -85,7 +99,64 @@ class HttpConnectionRequest implements Request {
         }
     }
 
+    /**
+     * Compress content with given codec, unless smaller than the given threshold (in which case
+     * content is sent as is).
+     */
+    void compressWith(@NotNull ContentCodec codec, int threshold, @NotNull CompressionMetrics metrics) {
+        compression = new Compression(codec, threshold, metrics);
+    }
+
+    /** Finish writing content (if any was written). */
+    void finish()
+        throws IOException
+    {
+        if (content != null) content.close();
+    }
+
+    /**
+     * Stream content to the connection instead of letting it buffer the whole content: with a fixed
+     * length if its Content-Length is known (and not compressed), chunked otherwise.
+     */
+    void streamContent() {
+        streaming = true;
+    }
+
     @NotNull HttpURLConnection getConnection() {
         return connection;
     }
+
+    /** Write headers (with the chosen content coding) and open the connection stream. */
+    @NotNull private OutputStream open(@Nullable ContentCodec coding)
+        throws IOException
+    {
+        if (coding != null) headers.set(CONTENT_ENCODING, coding.getName());
+        // Length is set by the connection itself (and unknown once compressed)
+        final long length = coding == null ? headers.getContentLength() : -1;
+        headers.asMap().remove(CONTENT_LENGTH);
+        if (streaming) {
+            if (length >= 0) connection.setFixedLengthStreamingMode(length);
+            else connection.setChunkedStreamingMode(CHUNK_SIZE);
+        }
+        writeHeaders();
+        return connection.getOutputStream();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int CHUNK_SIZE = 8192;
+
+    //~ Inner Classes ................................................................................................................................
+
+    private static class Compression {
+        @NotNull private final ContentCodec       codec;
+        @NotNull private final CompressionMetrics metrics;
+        private final int                         threshold;
+
+        private Compression(@NotNull ContentCodec codec, int threshold, @NotNull CompressionMetrics metrics) {
+            this.codec     = codec;
+            this.threshold = threshold;
+            this.metrics   = metrics;
+        }
+    }
 }  // end class HttpConnectionRequest
@@ -11,6 +11,7 @@
 package tekgenesis.common.invoker;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -26,6 +27,7 @@ import tekgenesis.common.service.Headers;
 import tekgenesis.common.service.Status;
 import tekgenesis.common.service.client.Response;
 import tekgenesis.common.service.cookie.Cookie;
+import tekgenesis.common.service.etl.StreamingContent;
 import tekgenesis.common.util.Files;
 
 import static java.lang.String.format;
@@ -42,16 +44,22 @@ class HttpConnectionResponse implements Response {
     //~ Instance Fields ..............................................................................................................................
 
     @NotNull private final HttpURLConnection connection;
+    private InputStream                      content;
     private Seq<Cookie>                      cookies;
+    private boolean                          deferred;
     private Headers                          headers;
     private Status                           status;
     private InputStream                      stream;
+    @NotNull private final HttpTransport     transport;
 
     //~ Constructors .................................................................................................................................
 
-    HttpConnectionResponse(@NotNull HttpURLConnection connection) {
+    HttpConnectionResponse(@NotNull HttpURLConnection connection, @NotNull HttpTransport transport) {
         this.connection = connection;
+        this.transport  = transport;
         headers         = null;
+        deferred        = false;
+        content         = null;
         cookies         = null;
         stream          = null;
         status          = null;
@@ -60,7 +68,7 @@ class HttpConnectionResponse implements Response {
     //~ Methods ......................................................................................................................................
 
     @Override public void close() {
-        Files.close(stream);
+        if (!deferred) release();
     }
 
     public void setBody(@NotNull InputStream wrapper) {
@@ -71,8 +79,8 @@ class HttpConnectionResponse implements Response {
         throws IOException
     {
         if (stream == null) {
-            if (getStatus().code() < Status.BAD_REQUEST.code()) stream = connection.getInputStream();
-            else stream = getErrorInputStream();
+            content = getStatus().code() < Status.BAD_REQUEST.code() ? connection.getInputStream() : getErrorInputStream();
+            stream  = new ContentStream(content);
         }
         return stream;
     }
@@ -102,6 +110,15 @@ class HttpConnectionResponse implements Response {
         return status;
     }
 
+    /**
+     * Defer closing the response until given content (read from it) is closed or fully read, or
+     * garbage collected without being closed.
+     */
+    void closeWith(@NotNull StreamingContent streaming) {
+        deferred = true;
+        StreamingContentReaper.releaseOnClose(streaming, this::release);
+    }
+
     private Seq<Cookie> readCookies() {
         if (cookies == null) {
             readHeaders();
@@ -121,6 +138,12 @@ class HttpConnectionResponse implements Response {
         return headers;
     }
 
+    private void release() {
+        // Close content wrappers (eg: decompressing ones), connection content is released by transport
+        Files.close(stream);
+        transport.release(connection, content);
+    }
+
     private InputStream getErrorInputStream() {
         final InputStream error = connection.getErrorStream();
         return error != null ? error : new ByteArrayInputStream(empty_byte_array);
@@ -129,4 +152,17 @@ class HttpConnectionResponse implements Response {
     //~ Static Fields ................................................................................................................................
 
     private static final byte[] empty_byte_array = new byte[0];
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Connection content as seen by consumers, closing it is left to the {@link HttpTransport}.
+     */
+    private static class ContentStream extends FilterInputStream {
+        private ContentStream(@NotNull InputStream in) {
+            super(in);
+        }
+
+        @Override public void close() {}
+    }
 }  // end class HttpConnectionResponse
@@ -36,6 +36,12 @@ public interface HttpInvoker extends WithHeaders<HttpInvoker> {
      */
     HttpInvoker withCommandPool(@NotNull String commandPoolName);
 
+    /**
+     * Compress request content and decompress response content with the given
+     * {@link ContentCompression compression} (eg: {@code compression("Orders").withThreshold(4096)}).
+     */
+    HttpInvoker withCompression(@NotNull ContentCompression compression);
+
     /**
      * Timeout value, in milliseconds, to be used when opening a communications link to a resource.
      * Zero value implies that the option is disabled (i.e., timeout of infinity).
@@ -66,9 +72,29 @@ public interface HttpInvoker extends WithHeaders<HttpInvoker> {
      */
     HttpInvoker withReadTimeout(int timeout);
 
+    /**
+     * Answer GET invocations from the given {@link HttpResponseCache cache} when possible, storing
+     * cacheable responses on it. Applies to the current {@link #withTransport transport}.
+     */
+    HttpInvoker withResponseCache(@NotNull HttpResponseCache cache);
+
+    /**
+     * Retry failed invocations with the given {@link RetryPolicy policy} (its budget is kept per
+     * host). Invocations are not retried if not specified, except for multi host invokers, which
+     * immediately fail over to the next host.
+     */
+    HttpInvoker withRetryPolicy(@NotNull RetryPolicy policy);
+
     /** Application token for X-Tek-app-Token. */
     HttpInvoker withSgAppToken(@NotNull String sgAppToken);
 
     /** Application surrogate user. */
     HttpInvoker withSurrogate(@NotNull String surrogate);
+
+    /**
+     * Specify the {@link HttpTransport transport} used to open connections (eg: a
+     * {@link PooledHttpTransport pooled} one). Invoker will use {@link HttpTransport#DEFAULT} if
+     * not specified.
+     */
+    HttpInvoker withTransport(@NotNull HttpTransport transport);
 }  // end interface HttpInvoker
@@ -17,6 +17,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -32,8 +33,10 @@ import tekgenesis.common.media.MediaType;
 import tekgenesis.common.service.*;
 import tekgenesis.common.service.cookie.Cookie;
 import tekgenesis.common.service.cookie.Cookies;
+import tekgenesis.common.service.etl.ByteMessageConverter;
 import tekgenesis.common.service.etl.HtmlReadMessageConverter;
 import tekgenesis.common.service.etl.MessageConverter;
+import tekgenesis.common.service.etl.MessageConverterResolver;
 
 import static tekgenesis.common.Predefined.isNotEmpty;
 import static tekgenesis.common.core.Option.some;
@@ -53,7 +56,7 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
 
     private int connectTimeout;
 
-    private final List<MessageConverter<?>> converters   = new ArrayList<>();
+    private final MessageConverterResolver  converters   = new MessageConverterResolver();
     @NotNull private final List<Cookie>     cookies;
     private Option<InvokerErrorHandler>     errorHandler;
     @NotNull private InvokerCommandFactory  factory;
@@ -62,7 +65,9 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
     @NotNull private InvocationKeyGenerator keyGenerator = NO_KEY_GENERATOR;
     private final List<MessageModifier>     modifiers    = new ArrayList<>();
     private int                             readTimeout;
+    private Option<RetryPolicy>             retryPolicy;
     private Option<String>                  threadPoolKey;
+    @NotNull private HttpTransport          transport;
 
     //~ Constructors .................................................................................................................................
 
@@ -92,8 +97,14 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
         // No error handler by default
         errorHandler = Option.empty();
 
+        // Invocations are not retried by default
+        retryPolicy = Option.empty();
+
         // Specify self as default command factory
         factory = this;
+
+        // Open a new connection per invocation by default
+        transport = HttpTransport.DEFAULT;
     }
 
     //~ Methods ......................................................................................................................................
@@ -149,6 +160,10 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
         return this;
     }
 
+    @Override public HttpInvoker withCompression(@NotNull ContentCompression compression) {
+        return withModifier(compression);
+    }
+
     /**
      * Timeout value, in milliseconds, to be used when opening a communications link to a resource.
      * Zero value implies that the option is disabled (i.e., timeout of infinity). Default is one
@@ -159,9 +174,9 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
         return this;
     }
 
-    /** Add given {@link MessageConverter converter} to invoker. */
+    /** Add given {@link MessageConverter converter} to invoker (invalidating resolved converters). */
     @Override public HttpInvoker withConverter(@NotNull final MessageConverter<?> converter) {
-        converters.add(0, converter);
+        converters.add(converter);
         return this;
     }
 
@@ -208,6 +223,18 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
         return this;
     }
 
+    /** Cache responses on the given cache, wrapping the current transport. */
+    @Override public HttpInvoker withResponseCache(@NotNull HttpResponseCache cache) {
+        transport = new CachingHttpTransport(transport, cache);
+        return this;
+    }
+
+    /** Retry failed invocations with the given policy. */
+    @Override public HttpInvoker withRetryPolicy(@NotNull RetryPolicy policy) {
+        retryPolicy = some(policy);
+        return this;
+    }
+
     /** Application token for X-Tek-app-Token. */
     @Override public HttpInvoker withSgAppToken(@NotNull String token) {
         header(HeaderNames.TEK_APP_TOKEN, token);
@@ -219,6 +246,12 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
         return this;
     }
 
+    /** Specify the {@link HttpTransport transport} used to open connections. */
+    @Override public HttpInvoker withTransport(@NotNull HttpTransport t) {
+        transport = t;
+        return this;
+    }
+
     void applyModifiers(HttpConnectionRequest request) {
         for (final MessageModifier modifier : modifiers)
             modifier.modify(request);
@@ -250,7 +283,12 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
     void doPrepare(@Nullable Object payload, @NotNull HttpConnectionRequest request)
         throws IOException
     {
-        if (payload != null) new OutboundMessageWriter().write(request, converters, payload);
+        if (payload != null) {
+            // Binary payloads are streamed instead of being buffered by the connection
+            if (ByteMessageConverter.isStreamed(payload.getClass())) request.streamContent();
+            new OutboundMessageWriter().write(request, converters, payload);
+            request.finish();
+        }
         else request.writeHeaders();
     }
 
@@ -259,7 +297,14 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
     {
         final HttpURLConnection connection = request.getConnection();
         connection.connect();
-        return new HttpConnectionResponse(connection);
+        return new HttpConnectionResponse(connection, transport);
+    }
+
+    /** Send prepared request through the transport, completing once the response is received. */
+    CompletableFuture<HttpConnectionResponse> executeAsync(@NotNull HttpConnectionRequest request) {
+        final HttpURLConnection connection = request.getConnection();
+        final HttpTransport     t          = transport;
+        return t.send(connection).thenApply(ignored -> new HttpConnectionResponse(connection, t));
     }
 
     /** Set internal {@link InvokerCommandFactory command factory}. */
@@ -282,6 +327,11 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
         return keyGenerator != NO_KEY_GENERATOR;
     }
 
+    /** Factory creating the commands of the invoker (eg: a multi host one). */
+    @NotNull InvokerCommandFactory getCommandFactory() {
+        return factory;
+    }
+
     Option<InvokerErrorHandler> getErrorHandler() {
         return errorHandler;
     }
@@ -298,6 +348,14 @@ class HttpInvokerImpl implements HttpInvoker, InvokerCommandFactory {
         return readTimeout;
     }
 
+    Option<RetryPolicy> getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    @NotNull HttpTransport getTransport() {
+        return transport;
+    }
+
     /** Create resource copying all headers specified on {@link HttpInvoker}. */
     private HttpResourceImpl createHttpResource(@NotNull String path, @NotNull Method method) {
         final HttpResourceImpl resource = new HttpResourceImpl(this, factory, keyGenerator, path, method);
@@ -10,8 +10,14 @@
 
 package tekgenesis.common.invoker;
 
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 import org.jetbrains.annotations.NotNull;
 
+import tekgenesis.common.collections.Seq;
+import tekgenesis.common.command.CommandCollapser;
+
 /**
  * Factory class for {@link HttpInvokerImpl invokers}.
  */
@@ -23,6 +29,20 @@ public class HttpInvokers {
 
     //~ Methods ......................................................................................................................................
 
+    /**
+     * Create a collapser merging requests submitted within a window into a single invocation,
+     * created by the batch function for the collapsed arguments (eg: a GET with all ids as
+     * parameters). The batch response is split back to each request with the split function. The
+     * batch invocation cannot have a streamed result, as it is shared by the collapsed requests.
+     */
+    public static <A, T, B> CommandCollapser<A, T, HttpInvokerResult<B>> collapser(@NotNull String key,
+                                                                                    @NotNull Function<Seq<A>, InvokerCommand<B>> batch,
+                                                                                    @NotNull BiFunction<B, A, T> split) {
+        return new CommandCollapser<>(key,
+                                      arguments -> shareable(batch.apply(arguments)),
+                                      (result, argument) -> split.apply(result.get(), argument));
+    }
+
     /**
      * Create multi host http invoker for specified servers (or default http invoker is a single
      * server is specified).
@@ -40,4 +60,9 @@ public class HttpInvokers {
         if (servers.length > 1) return new MultiHostHttpInvoker(strategy, servers);
         throw new IllegalArgumentException("No servers provided.");
     }
+
+    private static <B> InvokerCommand<B> shareable(@NotNull InvokerCommand<B> command) {
+        if (command instanceof InvokerCommandImpl) ((InvokerCommandImpl<B>) command).checkShareable();
+        return command;
+    }
 }
@@ -0,0 +1,201 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.util.LruCache;
+
+import static tekgenesis.common.Predefined.checkArgument;
+
+/**
+ * Client side http response cache, honouring Cache-Control (max-age, no-cache, no-store,
+ * must-revalidate and stale-while-revalidate) and Expires headers. Private responses are not
+ * stored, nor responses to requests with credentials (Authorization, Cookie or application token)
+ * unless public, in which case they are only reused for the same credentials. Stale responses
+ * with validators (ETag or Last-Modified) are revalidated with conditional requests, and reused if
+ * not modified. Responses are kept on a bounded memory tier (weighted by size, see {@link LruCache}),
+ * with a few variants per url for responses that vary on request headers, and optionally on a disk
+ * tier (keeping the last variant). Used by invokers through a {@link CachingHttpTransport}, so a
+ * cache can be shared by many invokers.
+ */
+public class HttpResponseCache {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @Nullable private DiskCacheTier                               disk;
+    private final LongAdder                                       hits;
+    private final int                                             maxContentLength;
+    @NotNull private final LruCache<String, List<CachedResponse>> memory;  // Variants by url
+    private final LongAdder                                       misses;
+    private final Set<String>                                     revalidating;
+    private final LongAdder                                       revalidations;
+    @NotNull private final LongSupplier                           time;
+
+    //~ Constructors .................................................................................................................................
+
+    private HttpResponseCache(int maxWeight, @NotNull LongSupplier time) {
+        this.time        = time;
+        memory           = new LruCache.Builder<String, List<CachedResponse>>().maxWeight(maxWeight)
+                                                                             .weigher(HttpResponseCache::getWeight)
+                                                                             .build();
+        maxContentLength = maxWeight / MAX_ENTRY_FRACTION;
+        disk             = null;
+        hits             = new LongAdder();
+        misses           = new LongAdder();
+        revalidations    = new LongAdder();
+        revalidating     = ConcurrentHashMap.newKeySet();
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Remove all responses from the memory tier. */
+    public void evictAll() {
+        memory.evictAll();
+    }
+
+    /** Remove the response of given url (eg: once modified by an unsafe method). */
+    public void invalidate(@NotNull String url) {
+        memory.remove(url);
+        if (disk != null) disk.remove(url);
+    }
+
+    /**
+     * Also keep responses on a disk tier in the given directory, bounded by the given amount of
+     * bytes. Responses are read back into memory once requested.
+     */
+    public HttpResponseCache withDiskTier(@NotNull File directory, long maxBytes) {
+        checkArgument(maxBytes > 0, "Disk tier size must be positive.");
+        disk = new DiskCacheTier(directory, maxBytes);
+        return this;
+    }
+
+    /** Returns the amount of requests answered by the cache (without revalidation). */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** Returns the amount of requests that could not be answered by the cache. */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** Returns the amount of stale responses revalidated as not modified. */
+    public long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    /** Returns the weight (approximately the size in bytes) of the memory tier. */
+    public int getWeight() {
+        return memory.getWeight();
+    }
+
+    /** Returns the response stored for given url and request headers, or null. */
+    @Nullable CachedResponse get(@NotNull String url, @NotNull Map<String, List<String>> requestHeaders) {
+        List<CachedResponse> variants = memory.get(url);
+        if (variants == null && disk != null) {
+            final CachedResponse response = disk.get(url);
+            if (response != null) {
+                variants = Collections.singletonList(response);
+                memory.put(url, variants);
+            }
+        }
+        if (variants != null) {
+            for (final CachedResponse response : variants)
+                if (response.matches(requestHeaders)) return response;
+        }
+        return null;
+    }
+
+    void markHit() {
+        hits.increment();
+    }
+
+    void markMiss() {
+        misses.increment();
+    }
+
+    void markRevalidated() {
+        revalidations.increment();
+    }
+
+    /** Store given response on all tiers, replacing the variant for the same request headers (if any). */
+    void put(@NotNull CachedResponse response) {
+        final List<CachedResponse> variants = new ArrayList<>(MAX_VARIANTS);
+        variants.add(response);
+        final List<CachedResponse> previous = memory.get(response.getKey());
+        if (previous != null) {
+            for (final CachedResponse variant : previous)
+                if (variants.size() < MAX_VARIANTS && !variant.isSameVariant(response)) variants.add(variant);
+        }
+        memory.put(response.getKey(), Collections.unmodifiableList(variants));
+        if (disk != null) disk.put(response);
+    }
+
+    /** Returns true if a background revalidation of the given url was not already started. */
+    boolean startRevalidation(@NotNull String url) {
+        return revalidating.add(url);
+    }
+
+    /** Called once a background revalidation of the given url completes. */
+    void endRevalidation(@NotNull String url) {
+        revalidating.remove(url);
+    }
+
+    /** Maximum content length of a cached response (larger ones are not cached). */
+    int getMaxContentLength() {
+        return maxContentLength;
+    }
+
+    /** Current time (in milliseconds). */
+    long now() {
+        return time.getAsLong();
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Create a response cache with a memory tier bounded to the given amount of bytes. */
+    public static HttpResponseCache responseCache(int maxWeight) {
+        return responseCache(maxWeight, System::currentTimeMillis);
+    }
+
+    /** Create a response cache with the given time source. Visible for testing. */
+    static HttpResponseCache responseCache(int maxWeight, @NotNull LongSupplier time) {
+        checkArgument(maxWeight > 0, "Response cache size must be positive.");
+        return new HttpResponseCache(maxWeight, time);
+    }
+
+    private static int getWeight(@NotNull List<CachedResponse> variants) {
+        int weight = 0;
+        for (final CachedResponse variant : variants)
+            weight += variant.getWeight();
+        return weight;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    /** Maximum amount of variants (for different request headers) kept per url. */
+    private static final int MAX_VARIANTS = 4;
+
+    /** A single response may not take more than this fraction of the memory tier. */
+    private static final int MAX_ENTRY_FRACTION = 8;
+}  // end class HttpResponseCache
@@ -0,0 +1,266 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.lang.String.format;
+
+/**
+ * Incremental HTTP/1.1 response parser, fed with the bytes read from a non-blocking channel. The
+ * response body is buffered (content length, chunked or delimited by the connection close).
+ */
+class HttpResponseParser {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final ByteArrayOutputStream     body;
+    private boolean                         chunked;
+    private boolean                         complete;
+    private int                             contentLength;
+    private byte[]                          data;
+    private final Map<String, List<String>> headers;
+    private final List<String>              lines;
+    private final boolean                   noBody;
+    private int                             position;
+    private String                          reason;
+    private int                             size;
+    private int                             status;
+    private String                          version;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a parser, for a response without body if the request method was HEAD. */
+    HttpResponseParser(boolean head) {
+        noBody        = head;
+        body          = new ByteArrayOutputStream();
+        headers       = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        lines         = new ArrayList<>();
+        data          = new byte[INITIAL_SIZE];
+        size          = 0;
+        position      = 0;
+        status        = -1;
+        reason        = "";
+        version       = "";
+        chunked       = false;
+        complete      = false;
+        contentLength = -1;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Signal the end of the stream, returns true if the response is complete. */
+    boolean eof() {
+        // Responses without length are delimited by the connection close
+        if (status != -1 && !chunked && contentLength == -1) {
+            body.write(data, position, size - position);
+            position = size;
+            complete = true;
+        }
+        return complete;
+    }
+
+    /** Feed parser with given bytes, returns true once the response is complete. */
+    boolean feed(@NotNull ByteBuffer buffer)
+        throws ProtocolException
+    {
+        final int length = buffer.remaining();
+        if (size + length > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+        buffer.get(data, size, length);
+        size += length;
+
+        if (status == -1 && !parseHead()) return false;
+        if (!complete) parseBody();
+        return complete;
+    }
+
+    /** Response body content. */
+    @NotNull InputStream getContent() {
+        return new ByteArrayInputStream(body.toByteArray());
+    }
+
+    /** Returns the first value of the given header, or null if not present. */
+    @Nullable String getHeader(@NotNull String name) {
+        final List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /** Header lines as received, with the status line first. */
+    @NotNull List<String> getHeaderLines() {
+        return lines;
+    }
+
+    /** Response headers (keys are case insensitive). */
+    @NotNull Map<String, List<String>> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /** Returns true if the connection may be reused for a subsequent request. */
+    boolean isKeepAlive() {
+        final String connection = getHeader(CONNECTION);
+        if (connection != null) return !CLOSE.equalsIgnoreCase(connection.trim());
+        return HTTP_1_1.equals(version) && (chunked || contentLength != -1 || isWithoutBody());
+    }
+
+    /** Response reason phrase. */
+    @NotNull String getReason() {
+        return reason;
+    }
+
+    /** Response status code. */
+    int getStatus() {
+        return status;
+    }
+
+    /** Parse chunks available from current position, returns false if more data is needed. */
+    private boolean parseChunks()
+        throws ProtocolException
+    {
+        while (true) {
+            final int lineEnd = indexOfCrlf(position);
+            if (lineEnd == -1) return false;
+
+            final String line  = new String(data, position, lineEnd - position, StandardCharsets.ISO_8859_1);
+            final int    colon = line.indexOf(';');
+            final int    chunk;
+            try {
+                chunk = Integer.parseInt((colon == -1 ? line : line.substring(0, colon)).trim(), HEX);
+            }
+            catch (final NumberFormatException e) {
+                throw new ProtocolException(format("Invalid chunk size '%s'", line));
+            }
+
+            if (chunk == 0) {
+                // Skip trailers until the empty line
+                int start = lineEnd + 2;
+                while (true) {
+                    final int end = indexOfCrlf(start);
+                    if (end == -1) return false;
+                    if (end == start) {
+                        position = end + 2;
+                        return true;
+                    }
+                    start = end + 2;
+                }
+            }
+
+            if (size < lineEnd + 2 + chunk + 2) return false;
+            body.write(data, lineEnd + 2, chunk);
+            position = lineEnd + 2 + chunk + 2;
+        }
+    }
+
+    private void parseBody()
+        throws ProtocolException
+    {
+        if (isWithoutBody()) complete = true;
+        else if (chunked) complete = parseChunks();
+        else if (contentLength != -1 && size - position >= contentLength) {
+            body.write(data, position, contentLength);
+            position += contentLength;
+            complete = true;
+        }
+    }
+
+    /** Parse status line and headers, returns false if more data is needed. */
+    private boolean parseHead()
+        throws ProtocolException
+    {
+        final List<String> head  = new ArrayList<>();
+        int                start = position;
+        while (true) {
+            final int end = indexOfCrlf(start);
+            if (end == -1) return false;
+            if (end == start) break;
+            head.add(new String(data, start, end - start, StandardCharsets.ISO_8859_1));
+            start = end + 2;
+        }
+        position = start + 2;
+        lines.addAll(head);
+
+        if (lines.isEmpty()) throw new ProtocolException("Empty response status line");
+        parseStatusLine(lines.get(0));
+        for (final String line : lines.subList(1, lines.size())) {
+            final int colon = line.indexOf(':');
+            if (colon > 0) headers.computeIfAbsent(line.substring(0, colon).trim(), k -> new ArrayList<>()).add(line.substring(colon + 1).trim());
+        }
+
+        // Skip informational responses (eg: 100 Continue)
+        if (status / 100 == 1 && status != SWITCHING_PROTOCOLS) {
+            lines.clear();
+            headers.clear();
+            status = -1;
+            return parseHead();
+        }
+
+        final String encoding = getHeader(TRANSFER_ENCODING);
+        chunked = encoding != null && encoding.toLowerCase(Locale.ROOT).contains(CHUNKED);
+        final String length = getHeader(CONTENT_LENGTH);
+        if (!chunked && length != null) {
+            try {
+                contentLength = Integer.parseInt(length.trim());
+            }
+            catch (final NumberFormatException e) {
+                throw new ProtocolException(format("Invalid content length '%s'", length));
+            }
+        }
+        return true;
+    }
+
+    private void parseStatusLine(@NotNull String line)
+        throws ProtocolException
+    {
+        final String[] parts = line.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) throw new ProtocolException(format("Invalid response status line '%s'", line));
+        version = parts[0];
+        try {
+            status = Integer.parseInt(parts[1]);
+        }
+        catch (final NumberFormatException e) {
+            throw new ProtocolException(format("Invalid response status line '%s'", line));
+        }
+        reason = parts.length > 2 ? parts[2] : "";
+    }
+
+    private int indexOfCrlf(int from) {
+        for (int i = from; i < size - 1; i++)
+            if (data[i] == '\r' && data[i + 1] == '\n') return i;
+        return -1;
+    }
+
+    private boolean isWithoutBody() {
+        return noBody || status == NO_CONTENT || status == NOT_MODIFIED || status / 100 == 1;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String CHUNKED           = "chunked";
+    private static final String CLOSE             = "close";
+    private static final String CONNECTION        = "Connection";
+    private static final String CONTENT_LENGTH    = "Content-Length";
+    private static final String HTTP_1_1          = "HTTP/1.1";
+    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
+
+    private static final int HEX                 = 16;
+    private static final int INITIAL_SIZE        = 8192;
+    private static final int NO_CONTENT          = 204;
+    private static final int NOT_MODIFIED        = 304;
+    private static final int SWITCHING_PROTOCOLS = 101;
+}  // end class HttpResponseParser
@@ -0,0 +1,98 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.util.Files;
+
+/**
+ * Transport used by {@link HttpInvoker invokers} to open and release connections. Every opened
+ * connection is either released once its response is closed, or discarded if the invocation fails
+ * before obtaining a response.
+ */
+public interface HttpTransport {
+
+    //~ Methods ......................................................................................................................................
+
+    /** Discard a connection whose invocation failed before obtaining a response. */
+    void discard(@NotNull HttpURLConnection connection);
+
+    /**
+     * Send the request of an opened connection (with its content already written), completing once
+     * the response is received. Blocking transports complete it before returning.
+     */
+    @NotNull CompletableFuture<Void> send(@NotNull HttpURLConnection connection);
+
+    /** Returns true if responses are received without holding a thread while waiting for them. */
+    boolean isNonBlocking();
+
+    /** Open a connection to the given url. */
+    @NotNull HttpURLConnection open(@NotNull URL url)
+        throws IOException;
+
+    /**
+     * Release a connection once its response is closed, with the response content stream if it was
+     * read. The transport is responsible for closing it.
+     */
+    void release(@NotNull HttpURLConnection connection, @Nullable InputStream content);
+
+    //~ Static Fields ................................................................................................................................
+
+    /** Default transport, opening a new connection per invocation and relying on JDK defaults. */
+    HttpTransport DEFAULT = new DefaultHttpTransport();
+
+    //~ Inner Classes ................................................................................................................................
+
+    class DefaultHttpTransport implements HttpTransport {
+        private DefaultHttpTransport() {}
+
+        @Override public void discard(@NotNull HttpURLConnection connection) {}
+
+        @NotNull @Override public HttpURLConnection open(@NotNull URL url)
+            throws IOException
+        {
+            return (HttpURLConnection) url.openConnection();
+        }
+
+        @Override public void release(@NotNull HttpURLConnection connection, @Nullable InputStream content) {
+            Files.close(content);
+        }
+
+        @NotNull @Override public CompletableFuture<Void> send(@NotNull HttpURLConnection connection) {
+            return sendBlocking(connection);
+        }
+
+        @Override public boolean isNonBlocking() {
+            return false;
+        }
+
+        /** Send request waiting for the response status on the calling thread. */
+        static CompletableFuture<Void> sendBlocking(@NotNull HttpURLConnection connection) {
+            final CompletableFuture<Void> result = new CompletableFuture<>();
+            try {
+                connection.getResponseCode();
+                result.complete(null);
+            }
+            catch (final IOException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+    }
+}  // end interface HttpTransport
@@ -0,0 +1,42 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import javax.inject.Named;
+
+import tekgenesis.common.env.Mutable;
+import tekgenesis.common.env.Properties;
+
+/**
+ * {@link PooledHttpTransport Pooled transport} properties.
+ */
+@Mutable
+@Named("transport")
+@SuppressWarnings("MagicNumber")
+public class HttpTransportProps implements Properties {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    /** Time in milliseconds to wait for a connection when the host pool is exhausted. */
+    public int acquireTimeout = 1000;
+
+    /**
+     * Time in milliseconds a released connection is kept for reuse (by transports managing their
+     * own connections), and an unused host pool is retained.
+     */
+    public int idleTimeout = 30000;
+
+    /** Maximum amount of concurrent connections per host (protocol, host and port). */
+    public int maxConnectionsPerHost = 20;
+
+    /** Maximum amount of response bytes drained on release to keep the connection alive. */
+    public int maxDrainSize = 65536;
+}  // end class HttpTransportProps
@@ -15,10 +15,13 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.*;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import rx.Observable;
+
 import tekgenesis.common.collections.MultiMap;
 import tekgenesis.common.collections.Seq;
 import tekgenesis.common.command.exception.CommandInvocationException;
@@ -32,6 +35,8 @@ import tekgenesis.common.invoker.metric.InvocationKeyGenerator;
 import tekgenesis.common.invoker.metric.InvocationMetrics;
 import tekgenesis.common.service.*;
 import tekgenesis.common.service.cookie.Cookie;
+import tekgenesis.common.service.etl.ByteMessageConverter;
+import tekgenesis.common.service.etl.StreamingContent;
 import tekgenesis.common.util.Files;
 
 import static java.lang.System.currentTimeMillis;
@@ -89,6 +94,60 @@ class Invocation<T> {
         return invoke(invoker);
     }
 
+    /**
+     * Execute invocation asynchronously with given invoker. The request is prepared on subscription,
+     * and the response is handled once received by the invoker transport (without holding a thread
+     * while waiting for it, on non-blocking transports).
+     */
+    Observable<HttpInvokerResult<T>> invokeAsync(@NotNull HttpInvokerImpl invoker) {
+        return Observable.create(subscriber -> {
+            final Option<InvocationMetrics> metrics = option(getMetricsInstance(invoker));
+            final HttpConnectionRequest     request;
+            final long                      invocationTime;
+            try {
+                request        = prepare(invoker);
+                invocationTime = currentTimeMillis();
+            }
+            catch (IOException | URISyntaxException exception) {
+                if (invoker.isMetricsEnabled()) registerExceptionExecution(metrics.get(), exception);
+                subscriber.onError(new InvokerConnectionException(exception));
+                return;
+            }
+            catch (final RuntimeException e) {
+                subscriber.onError(e);
+                return;
+            }
+
+            invoker.executeAsync(request).whenComplete((response, failure) -> {
+                if (failure != null) {
+                    invoker.getTransport().discard(request.getConnection());
+                    final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                    if (cause instanceof IOException) {
+                        if (invoker.isMetricsEnabled()) registerExceptionExecution(metrics.get(), (IOException) cause);
+                        subscriber.onError(new InvokerConnectionException(cause));
+                    }
+                    else subscriber.onError(cause);
+                    return;
+                }
+                try {
+                    final HttpInvokerResult<T> result = handle(invoker, metrics, response, invocationTime);
+                    subscriber.onNext(result);
+                    subscriber.onCompleted();
+                }
+                catch (final IOException exception) {
+                    if (invoker.isMetricsEnabled()) registerExceptionExecution(metrics.get(), exception);
+                    subscriber.onError(new InvokerConnectionException(exception));
+                }
+                catch (final RuntimeException e) {
+                    subscriber.onError(e);
+                }
+                finally {
+                    Files.close(response);
+                }
+            });
+        });
+    }  // end method invokeAsync
+
     Invocation<T> withConnectTimeout(int t) {
         connectTimeout = some(t);
         return this;
@@ -103,10 +162,34 @@ class Invocation<T> {
         this.key = some(key);
     }
 
+    /** Key identifying identical invocations (method, path, parameters, headers and cookies). */
+    @NotNull String getCacheKey() {
+        if (payload != null) throw new IllegalStateException("Cache key cannot be derived for invocations with payload, specify one instead.");
+        final StringBuilder result = new StringBuilder(method.name()).append(' ').append(path).append(parameters).append(headers.asMap());
+        for (final Cookie cookie : cookies)
+            result.append(';').append(cookie.getName()).append('=').append(cookie.getValue());
+        return result.toString();
+    }
+
     @NotNull String getPath() {
         return path;
     }
 
+    /** Returns true if the result is streamed, so it is read once and cannot be shared. */
+    boolean isStreaming() {
+        return extractor != null && extractor.isStreaming();
+    }
+
+    /** Returns true if the invocation may be sent more than once (eg: hedged or retried). */
+    boolean isIdempotent() {
+        return method.isIdempotent();
+    }
+
+    /** Returns true if the payload (if any) can be sent again, so the invocation can be retried or hedged. */
+    boolean isReplayable() {
+        return payload == null || ByteMessageConverter.isReplayable(payload);
+    }
+
     private InvokerApplicationException applicationException(@NotNull Status status, @NotNull Headers responseHeaders, @Nullable InputStream data) {
         try {
             final ApplicationExceptionResult result = shared().readValue(data, ApplicationExceptionResult.class);
@@ -121,7 +204,7 @@ class Invocation<T> {
     private HttpURLConnection createConnection(@NotNull URI uri, @NotNull HttpInvokerImpl invoker)
         throws IOException
     {
-        final HttpURLConnection connection = (HttpURLConnection) toUrl(uri).openConnection();
+        final HttpURLConnection connection = invoker.getTransport().open(toUrl(uri));
 
         final int ct = connectTimeout.orElse(invoker.getConnectTimeout());
         if (ct >= 0) connection.setConnectTimeout(ct);
@@ -169,47 +252,72 @@ class Invocation<T> {
         return new InvokerInvocationException(status, responseHeaders, data);
     }
 
+    /** Handle response: apply modifiers, register metrics and extract result or fail. */
+    private HttpInvokerResult<T> handle(@NotNull HttpInvokerImpl invoker, @NotNull Option<InvocationMetrics> metrics,
+                                        @NotNull HttpConnectionResponse response, long invocationTime)
+        throws IOException
+    {
+        final boolean metricsEnabled = invoker.isMetricsEnabled();
+
+        invoker.applyModifiers(response);
+
+        final Status status = response.getStatus();
+
+        if (status.isSuccessful()) {
+            if (metricsEnabled) registerSuccessExecution(metrics.get(), invocationTime);
+            final T result = invoker.doExtract(extractor, response);
+            // Streamed content is read after the invocation, so it is responsible for closing the response
+            if (result instanceof StreamingContent) response.closeWith((StreamingContent) result);
+            if (result != null) return new SomeInvocationResult<>(invoker, response, result);
+            else return new EmptyInvocationResult<>(invoker, response);
+        }
+        else {
+            if (metricsEnabled) registerErrorExecution(metrics.get());
+            throw createInvocationException(invoker, response, status);
+        }
+    }
+
     private HttpInvokerResult<T> invoke(HttpInvokerImpl invoker) {
+        HttpConnectionRequest  request  = null;
         HttpConnectionResponse response = null;
 
-        final Option<InvocationMetrics> metrics        = option(getMetricsInstance(invoker));
-        final boolean                   metricsEnabled = invoker.isMetricsEnabled();
+        final Option<InvocationMetrics> metrics = option(getMetricsInstance(invoker));
         try {
-            final URI                   uri     = invoker.createUri(path, parameters);
-            final HttpConnectionRequest request = createRequest(uri, invoker);
-
-            invoker.applyModifiers(request);
-
-            invoker.doPrepare(payload, request);
+            request = prepare(invoker);
 
             final long invocationTime = currentTimeMillis();
 
             response = invoker.execute(request);
 
-            invoker.applyModifiers(response);
-
-            final Status status = response.getStatus();
-
-            if (status.isSuccessful()) {
-                if (metricsEnabled) registerSuccessExecution(metrics.get(), invocationTime);
-                final T result = invoker.doExtract(extractor, response);
-                if (result != null) return new SomeInvocationResult<>(invoker, response, result);
-                else return new EmptyInvocationResult<>(invoker, response);
-            }
-            else {
-                if (metricsEnabled) registerErrorExecution(metrics.get());
-                throw createInvocationException(invoker, response, status);
-            }
+            return handle(invoker, metrics, response, invocationTime);
         }
         catch (IOException | URISyntaxException exception) {
-            if (metricsEnabled) registerExceptionExecution(metrics.get(), exception);
+            if (invoker.isMetricsEnabled()) registerExceptionExecution(metrics.get(), exception);
             throw new InvokerConnectionException(exception);
         }
         finally {
             if (response != null) Files.close(response);
+            else if (request != null) invoker.getTransport().discard(request.getConnection());
         }
     }  // end method invoke
 
+    /** Create request for invoker, applying modifiers and writing headers and payload. */
+    private HttpConnectionRequest prepare(@NotNull HttpInvokerImpl invoker)
+        throws IOException, URISyntaxException
+    {
+        final URI                   uri     = invoker.createUri(path, parameters);
+        final HttpConnectionRequest request = createRequest(uri, invoker);
+        try {
+            invoker.applyModifiers(request);
+            invoker.doPrepare(payload, request);
+            return request;
+        }
+        catch (IOException | RuntimeException e) {
+            invoker.getTransport().discard(request.getConnection());
+            throw e;
+        }
+    }
+
     private void registerErrorExecution(@NotNull InvocationMetrics metrics) {
         metrics.markError();
     }
@@ -10,6 +10,7 @@
 
 package tekgenesis.common.invoker;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -38,6 +39,15 @@ public interface InvokerCommand<T> extends FallbackCommand<T>, Command<HttpInvok
      */
     void acceptEither(@NotNull Consumer<T> result, @NotNull Consumer<InvokerApplicationException> exception);
 
+    /**
+     * Used for asynchronous execution of command. If the invoker transport is non-blocking, no
+     * thread is held while waiting for the response (neither the caller nor a pool one), else the
+     * invocation is executed on the command thread pool.
+     *
+     * @return  future completed with the result of {@link Command} execution or its fallback
+     */
+    CompletableFuture<HttpInvokerResult<T>> async();
+
     /**
      * Used for synchronous execution of command.
      *
@@ -75,6 +85,14 @@ public interface InvokerCommand<T> extends FallbackCommand<T>, Command<HttpInvok
      */
     InvokerCommand<T> onExceptionFallback(@NotNull Function<InvokerApplicationException, T> fallback);
 
+    /**
+     * Share the execution of this command with concurrent commands with the same cache key (or
+     * with all of them while a {@link tekgenesis.common.command.CommandRequestContext request
+     * context} is open), instead of making duplicate network calls. Not allowed for streamed
+     * results (eg: a {@link tekgenesis.common.service.etl.StreamingSeq}), which are read once.
+     */
+    InvokerCommand<T> withCacheKey(@NotNull String key);
+
     /**
      * Timeout value, in milliseconds, to be used when opening a communications link to a resource.
      * Zero value implies that the option is disabled (i.e., timeout of infinity). Value is
@@ -94,6 +112,19 @@ public interface InvokerCommand<T> extends FallbackCommand<T>, Command<HttpInvok
      */
     InvokerCommand<T> withReadTimeout(int timeout);
 
+    /**
+     * Share the execution of this command as in {@link #withCacheKey(String)}, using the
+     * invocation method, path, parameters, headers and cookies (as of execution) as cache key.
+     * Invocations with payload must specify their own cache key.
+     */
+    InvokerCommand<T> withRequestCache();
+
+    /**
+     * Retry failed invocations with the given {@link RetryPolicy policy}. Policy is inherited from
+     * {@link HttpInvoker#withRetryPolicy} but can be overridden for each command.
+     */
+    InvokerCommand<T> withRetryPolicy(@NotNull RetryPolicy policy);
+
     /**
      * Used for synchronous execution of invocation, suppressing InvokerApplicationException and
      * InvokerInvocationException.
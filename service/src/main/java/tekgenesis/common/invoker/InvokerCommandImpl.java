@@ -10,23 +10,31 @@
 
 package tekgenesis.common.invoker;
 
+import java.io.Closeable;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import rx.Observable;
+
 import tekgenesis.common.collections.Colls;
 import tekgenesis.common.collections.Seq;
 import tekgenesis.common.command.AbstractCommand;
 import tekgenesis.common.core.Option;
 import tekgenesis.common.invoker.exception.InvokerApplicationException;
 import tekgenesis.common.invoker.exception.InvokerResponseException;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
 import tekgenesis.common.service.Headers;
 import tekgenesis.common.service.Status;
 import tekgenesis.common.service.cookie.Cookie;
+import tekgenesis.common.util.Files;
 
+import static tekgenesis.common.Predefined.isEmpty;
 import static tekgenesis.common.core.Option.*;
 import static tekgenesis.common.core.Option.some;
 import static tekgenesis.common.service.Status.OK;
@@ -38,18 +46,33 @@ class InvokerCommandImpl<T> extends AbstractCommand<HttpInvokerResult<T>> implem
 
     //~ Instance Fields ..............................................................................................................................
 
+    private int attempt;
+
+    @NotNull private Option<String> cacheKey;
+
     @Nullable private FallbackFunction fallback;
 
     @NotNull private final Invocation<T> invocation;
 
     @Nullable private HttpInvoker invoker;
 
+    private boolean nonBlocking;
+
+    private boolean requestCache;
+
+    @NotNull private Option<RetryPolicy> retryPolicy;
+
     //~ Constructors .................................................................................................................................
 
     InvokerCommandImpl(@NotNull final Invocation<T> invocation) {
         this.invocation = invocation;
+        attempt         = 1;
+        cacheKey        = empty();
         fallback        = null;
         invoker         = null;
+        nonBlocking     = false;
+        requestCache    = false;
+        retryPolicy     = empty();
     }
 
     //~ Methods ......................................................................................................................................
@@ -63,6 +86,13 @@ class InvokerCommandImpl<T> extends AbstractCommand<HttpInvokerResult<T>> implem
         }
     }
 
+    @Override public CompletableFuture<HttpInvokerResult<T>> async() {
+        nonBlocking = true;
+        final CompletableFuture<HttpInvokerResult<T>> result = new CompletableFuture<>();
+        observe().subscribe(result::complete, result::completeExceptionally);
+        return result;
+    }
+
     @Override public T get() {
         return execute().get();
     }
@@ -86,6 +116,12 @@ class InvokerCommandImpl<T> extends AbstractCommand<HttpInvokerResult<T>> implem
         return this;
     }
 
+    @Override public InvokerCommand<T> withCacheKey(@NotNull String key) {
+        checkShareable();
+        cacheKey = some(key);
+        return this;
+    }
+
     @Override public InvokerCommand<T> withConnectTimeout(int t) {
         invocation.withConnectTimeout(t);
         return this;
@@ -101,6 +137,17 @@ class InvokerCommandImpl<T> extends AbstractCommand<HttpInvokerResult<T>> implem
         return this;
     }
 
+    @Override public InvokerCommand<T> withRequestCache() {
+        checkShareable();
+        requestCache = true;
+        return this;
+    }
+
+    @Override public InvokerCommand<T> withRetryPolicy(@NotNull RetryPolicy policy) {
+        retryPolicy = some(policy);
+        return this;
+    }
+
     @Override public Headers getHeaders() {
         return silentExecute().getHeaders();
     }
@@ -110,19 +157,103 @@ class InvokerCommandImpl<T> extends AbstractCommand<HttpInvokerResult<T>> implem
     }
 
     @Override protected HttpInvokerResult<T> run() {
-        return invocation.invokeUsing((HttpInvokerImpl) getInvoker());
+        return closeIfTimedOut(invocation.invokeUsing((HttpInvokerImpl) getInvoker()));
+    }
+
+    /** Invocation executed asynchronously, completing on the transport once the response is received. */
+    @Override protected Observable<HttpInvokerResult<T>> construct() {
+        return invocation.invokeAsync((HttpInvokerImpl) getInvoker()).map(this::closeIfTimedOut);
+    }
+
+    /**
+     * Retry failed invocation on a new command (if retryable and within the host budget) once the
+     * backoff delay elapses on a timer, else fall back. Retries share the fallback, which only
+     * applies once they are exhausted.
+     */
+    @Override protected Observable<HttpInvokerResult<T>> recover(@NotNull Throwable t) {
+        final Option<RetryPolicy> policy = getRetryPolicy();
+        if (policy.isEmpty() || !policy.get().hasAttemptsLeft(attempt) || !isRetryable(policy.get(), t)) return super.recover(t);
+
+        final Option<InvokerCommandImpl<T>> next = nextAttempt();
+        if (next.isEmpty()) return super.recover(t);
+
+        final InvocationMetrics metrics = InvocationMetrics.getOrCreateInstance(getCommandKey(), getThreadPoolKey());
+        if (!policy.get().tryAcquire(getInvoker())) {
+            metrics.markRetryBudgetExhausted();
+            return super.recover(t);
+        }
+        metrics.markRetry();
+
+        final InvokerCommandImpl<T> command = next.get();
+        command.attempt     = attempt + 1;
+        command.retryPolicy = policy;
+        command.nonBlocking = nonBlocking;
+        if (fallback != null) command.withFallback(fallback);
+        return Observable.timer(policy.get().getDelay(attempt), TimeUnit.MILLISECONDS).flatMap(tick -> command.observe());
+    }
+
+    /** Request cache key is derived from the invocation when executed, so it reflects its final state. */
+    @Override protected Option<String> getCacheKey() {
+        return cacheKey.isEmpty() && requestCache ? some(invocation.getCacheKey()) : cacheKey;
+    }
+
+    /**
+     * Circuit breaker is kept per invoker server (falling back to thread pool key). Server scheme
+     * and port separator are removed, as the key is used as the properties scope.
+     */
+    @Override protected String getCommandKey() {
+        final String server = getInvoker().toString();
+        return isEmpty(server) ? super.getCommandKey() : server.replaceFirst(URL_SCHEME, "").replace(':', '_');
+    }
+
+    /** Application exceptions and client errors are answered by a healthy server. */
+    @Override protected boolean isBadRequest(@NotNull Throwable t) {
+        return t instanceof InvokerApplicationException ||
+               t instanceof InvokerResponseException && ((InvokerResponseException) t).getStatus().isClientError();
+    }
+
+    /** Asynchronous executions over a non-blocking transport are not scheduled on the pool. */
+    @Override protected boolean isNonBlocking() {
+        return nonBlocking && ((HttpInvokerImpl) getInvoker()).getTransport().isNonBlocking();
+    }
+
+    @Override protected Observable<HttpInvokerResult<T>> getDecoratedObservable() {
+        depositRetryBudget();
+        return super.getDecoratedObservable();
     }
 
     @Override protected String getThreadPoolKey() {
         return "InvokerCommand";
     }
 
+    /** Streamed results are read once, so they cannot be shared by cached or collapsed requests. */
+    void checkShareable() {
+        if (invocation.isStreaming()) throw new IllegalStateException("Streamed results cannot be cached nor collapsed.");
+    }
+
+    /** Every first attempt earns retry budget for its host. */
+    void depositRetryBudget() {
+        if (attempt == 1) getRetryPolicy().ifPresent(policy -> policy.deposit(getInvoker()));
+    }
+
+    /** Returns the command to retry a failed invocation with (on the same invoker). */
+    Option<InvokerCommandImpl<T>> nextAttempt() {
+        final HttpInvoker i = getInvoker();
+        return some(((HttpInvokerImpl) i).getCommandFactory().command(invocation).withInvoker(i));
+    }
+
     /** Specify {@link HttpInvoker invoker} to perform invocation command with. */
-    InvokerCommand<T> withInvoker(@NotNull HttpInvoker i) {
+    InvokerCommandImpl<T> withInvoker(@NotNull HttpInvoker i) {
         invoker = i;
         return this;
     }
 
+    /** Specify whether the command is executed asynchronously (as requested by {@link #async()}). */
+    InvokerCommandImpl<T> withNonBlocking(boolean b) {
+        nonBlocking = b;
+        return this;
+    }
+
     @NotNull
     @SuppressWarnings("DuplicateStringLiteralInspection")
     HttpInvoker getInvoker() {
@@ -130,6 +261,27 @@ class InvokerCommandImpl<T> extends AbstractCommand<HttpInvokerResult<T>> implem
         return invoker;
     }
 
+    /** Returns true if the command was requested to execute asynchronously. */
+    boolean isAsync() {
+        return nonBlocking;
+    }
+
+    /** Retry policy of the command, or else the invoker one. */
+    Option<RetryPolicy> getRetryPolicy() {
+        return retryPolicy.isPresent() ? retryPolicy : ((HttpInvokerImpl) getInvoker()).getRetryPolicy();
+    }
+
+    /** Returns true if given failure is retryable by the policy. */
+    boolean isRetryable(@NotNull RetryPolicy policy, @NotNull Throwable t) {
+        return policy.isRetryable(invocation, t);
+    }
+
+    /** Close a streamed result the command timed out on while it was read, as it will be discarded. */
+    private HttpInvokerResult<T> closeIfTimedOut(@NotNull HttpInvokerResult<T> result) {
+        if (result.get() instanceof Closeable && !completeInTime()) Files.close((Closeable) result.get());
+        return result;
+    }
+
     private HttpInvokerResult<T> silentExecute() {
         try {
             return execute();
@@ -147,6 +299,10 @@ class InvokerCommandImpl<T> extends AbstractCommand<HttpInvokerResult<T>> implem
         return fallback;
     }
 
+    //~ Static Fields ................................................................................................................................
+
+    private static final String URL_SCHEME = "^[a-zA-Z][a-zA-Z0-9+.-]*://";
+
     //~ Inner Classes ................................................................................................................................
 
     private class FallbackFunction implements Function<Throwable, HttpInvokerResult<T>> {
@@ -0,0 +1,34 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Least outstanding requests strategy for multi host invoker: picks the host with fewer invocations
+ * in flight, with fail over support and penalisation.
+ */
+class LeastOutstandingStrategy extends LoadBalancingStrategy {
+
+    //~ Constructors .................................................................................................................................
+
+    LeastOutstandingStrategy(List<HttpInvoker> invokers) {
+        super(invokers);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @NotNull @Override HostStats choose(@NotNull List<HostStats> candidates) {
+        return lowest(candidates, HostStats::getOutstanding);
+    }
+}  // end class LeastOutstandingStrategy
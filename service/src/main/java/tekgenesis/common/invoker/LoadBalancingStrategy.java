@@ -0,0 +1,138 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.core.Option;
+import tekgenesis.common.logging.Logger;
+
+import static java.lang.String.format;
+
+import static tekgenesis.common.Predefined.checkArgument;
+import static tekgenesis.common.Predefined.option;
+
+/**
+ * Base for thread safe strategies choosing hosts by their {@link HostStats load and latency}.
+ * Hosts penalized by recent failures are only chosen if all of them are. Failed invocations are
+ * retried on hosts not yet tried by the same invocation.
+ */
+abstract class LoadBalancingStrategy implements MultiHostStrategy {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final Map<Invocation<?>, Set<HttpInvoker>> attempts;
+    private final List<HostStats>                      hosts;
+
+    //~ Constructors .................................................................................................................................
+
+    LoadBalancingStrategy(@NotNull List<HttpInvoker> invokers) {
+        checkArgument(invokers.size() >= 2, "Load balancing strategy must be implemented with a minimum of two invokers.");
+        final List<HostStats> stats = new ArrayList<>(invokers.size());
+        for (final HttpInvoker invoker : invokers)
+            stats.add(new HostStats(invoker));
+        hosts = Collections.unmodifiableList(stats);
+        // Invocations are only held while retried
+        attempts = Collections.synchronizedMap(new WeakHashMap<>());
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public Option<HttpInvoker> alternative(@NotNull HttpInvoker primary) {
+        final List<HostStats> candidates = new ArrayList<>(hosts.size());
+        for (final HostStats host : hosts)
+            if (host.getInvoker() != primary) candidates.add(host);
+        return Option.some(choose(healthy(candidates)).getInvoker());
+    }
+
+    @Override public void completed(@NotNull HttpInvoker invoker, long latency, boolean failed) {
+        final HostStats stats = getStats(invoker);
+        if (stats != null) stats.completed(latency, failed);
+    }
+
+    @Override public Option<HttpInvoker> next(@NotNull Logger logger, @NotNull HttpInvoker last, @NotNull Invocation<?> failed) {
+        final Set<HttpInvoker> tried = attempts.computeIfAbsent(failed, i -> Collections.newSetFromMap(new IdentityHashMap<>()));
+        final HostStats        next;
+        synchronized (tried) {
+            tried.add(last);
+            final List<HostStats> candidates = new ArrayList<>(hosts.size());
+            for (final HostStats host : hosts)
+                if (!tried.contains(host.getInvoker())) candidates.add(host);
+            next = candidates.isEmpty() ? null : choose(healthy(candidates));
+            if (next == null) attempts.remove(failed);
+
+            final String failure = format(EXECUTION_FAILED_ON_SERVER, failed.getPath(), last, tried.size(), hosts.size());
+            final String retry   = next != null ? format(WILL_RETRY_ON_SERVER, next.getInvoker(), tried.size() + 1, hosts.size())
+                                                : NO_FURTHER_SERVER_TO_RETRIEVE;
+            logger.warning(failure + ". " + retry);
+        }
+        return option(next).map(HostStats::getInvoker);
+    }
+
+    @Override public Option<HttpInvoker> pick() {
+        return Option.some(choose(healthy(hosts)).getInvoker());
+    }
+
+    @Override public void started(@NotNull HttpInvoker invoker) {
+        final HostStats stats = getStats(invoker);
+        if (stats != null) stats.started();
+    }
+
+    /** Choose a host among the given (non empty) candidates. */
+    @NotNull abstract HostStats choose(@NotNull List<HostStats> candidates);
+
+    /** Visible for testing. */
+    @Nullable HostStats getStats(@NotNull HttpInvoker invoker) {
+        for (final HostStats host : hosts)
+            if (host.getInvoker() == invoker) return host;
+        return null;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Pick the candidate with the lowest cost, breaking ties randomly to avoid herding. */
+    @NotNull static HostStats lowest(@NotNull List<HostStats> candidates, @NotNull Cost cost) {
+        final int size   = candidates.size();
+        final int offset = ThreadLocalRandom.current().nextInt(size);
+
+        HostStats result = null;
+        double    lowest = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            final HostStats host  = candidates.get((offset + i) % size);
+            final double    value = cost.of(host);
+            if (result == null || value < lowest) {
+                result = host;
+                lowest = value;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the healthy candidates, or all of them if none is. */
+    private static List<HostStats> healthy(@NotNull List<HostStats> candidates) {
+        final List<HostStats> result = new ArrayList<>(candidates.size());
+        for (final HostStats host : candidates)
+            if (host.isHealthy()) result.add(host);
+        return result.isEmpty() ? candidates : result;
+    }
+
+    //~ Inner Interfaces .............................................................................................................................
+
+    /** Cost of routing an invocation to a host. */
+    interface Cost {
+        /** Returns the cost of the given host (lower is better). */
+        double of(@NotNull HostStats host);
+    }
+}  // end class LoadBalancingStrategy
@@ -41,6 +41,13 @@ class MasterSlaveStrategy implements MultiHostStrategy {
 
     //~ Methods ......................................................................................................................................
 
+    /** Master invocations are hedged on the first slave, slave ones on the following invoker. */
+    @Override public Option<HttpInvoker> alternative(@NotNull HttpInvoker primary) {
+        return some(invokers.get((invokers.indexOf(primary) + 1) % invokers.size()));
+    }
+
+    @Override public void completed(@NotNull HttpInvoker invoker, long latency, boolean failed) {}
+
     @Override public Option<HttpInvoker> next(@NotNull Logger logger, @NotNull HttpInvoker last, @NotNull Invocation<?> failed) {
         final int         index = invokers.indexOf(last) + 1;
         final HttpInvoker next  = index < invokers.size() ? invokers.get(index) : null;
@@ -52,6 +59,8 @@ class MasterSlaveStrategy implements MultiHostStrategy {
         return some(getMaster());
     }
 
+    @Override public void started(@NotNull HttpInvoker invoker) {}
+
     private void log(Logger logger, Invocation<?> failed, @NotNull HttpInvoker last, @Nullable HttpInvoker next) {
         final String failure = format(EXECUTION_FAILED_ON_SERVER, failed.getPath(), last, invokers.indexOf(last) + 1, invokers.size());
         final String retry   = next != null ? format(WILL_RETRY_ON_SERVER, next, invokers.indexOf(next) + 1, invokers.size())
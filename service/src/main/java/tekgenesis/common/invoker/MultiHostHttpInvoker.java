@@ -13,20 +13,27 @@ package tekgenesis.common.invoker;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import rx.Observable;
+import rx.Subscriber;
 import rx.functions.Func1;
+import rx.subscriptions.CompositeSubscription;
 
+import tekgenesis.common.command.exception.CommandShortCircuitException;
 import tekgenesis.common.core.Option;
 import tekgenesis.common.invoker.error.InvokerErrorHandler;
 import tekgenesis.common.invoker.exception.InvokerConnectionException;
 import tekgenesis.common.invoker.exception.InvokerInvocationException;
 import tekgenesis.common.invoker.exception.NoInvokerAvailable;
 import tekgenesis.common.invoker.metric.InvocationKeyGenerator;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
 import tekgenesis.common.logging.Logger;
 import tekgenesis.common.media.MediaType;
 import tekgenesis.common.service.Call;
@@ -48,6 +55,7 @@ class MultiHostHttpInvoker implements HttpInvoker, InvokerCommandFactory {
 
     //~ Instance Fields ..............................................................................................................................
 
+    private RequestHedging          hedging;
     private final List<HttpInvoker> invokers;
     private final MultiHostStrategy strategy;
     private Option<String>          threadPoolKey;
@@ -64,6 +72,7 @@ class MultiHostHttpInvoker implements HttpInvoker, InvokerCommandFactory {
             invokers.add(host);
         }
         this.strategy = strategy.create(invokers);
+        hedging       = new RequestHedging(DEFAULT_POOL);
     }
 
     //~ Methods ......................................................................................................................................
@@ -102,6 +111,12 @@ class MultiHostHttpInvoker implements HttpInvoker, InvokerCommandFactory {
 
     @Override public HttpInvoker withCommandPool(@NotNull final String commandPoolName) {
         threadPoolKey = some(commandPoolName);
+        hedging       = new RequestHedging(commandPoolName);
+        return this;
+    }
+
+    @Override public HttpInvoker withCompression(@NotNull final ContentCompression compression) {
+        forEach(invoker -> invoker.withCompression(compression));
         return this;
     }
 
@@ -150,6 +165,16 @@ class MultiHostHttpInvoker implements HttpInvoker, InvokerCommandFactory {
         return this;
     }
 
+    @Override public HttpInvoker withResponseCache(@NotNull final HttpResponseCache cache) {
+        forEach(invoker -> invoker.withResponseCache(cache));
+        return this;
+    }
+
+    @Override public HttpInvoker withRetryPolicy(@NotNull final RetryPolicy policy) {
+        forEach(invoker -> invoker.withRetryPolicy(policy));
+        return this;
+    }
+
     @Override public HttpInvoker withSgAppToken(@NotNull final String sgAppToken) {
         forEach(invoker -> invoker.withSgAppToken(sgAppToken));
         return this;
@@ -160,6 +185,11 @@ class MultiHostHttpInvoker implements HttpInvoker, InvokerCommandFactory {
         return this;
     }
 
+    @Override public HttpInvoker withTransport(@NotNull final HttpTransport transport) {
+        forEach(invoker -> invoker.withTransport(transport));
+        return this;
+    }
+
     /** Visible for testing. */
     MultiHostStrategy getStrategy() {
         return strategy;
@@ -176,6 +206,9 @@ class MultiHostHttpInvoker implements HttpInvoker, InvokerCommandFactory {
 
     //~ Static Fields ................................................................................................................................
 
+    /** Command pool of invoker commands (properties scope of hedging, unless specified). */
+    private static final String DEFAULT_POOL = "InvokerCommand";
+
     private static final Logger logger = Logger.getLogger(MultiHostHttpInvoker.class);
 
     //~ Inner Classes ................................................................................................................................
@@ -269,36 +302,127 @@ class MultiHostHttpInvoker implements HttpInvoker, InvokerCommandFactory {
     private class MultiHostInvokerCommandImpl<T> extends InvokerCommandImpl<T>
         implements Func1<Throwable, Observable<? extends HttpInvokerResult<T>>>
     {
+        private boolean             hedgeAttempt;
         private final Invocation<T> invocation;
         private Throwable           previous;
 
         MultiHostInvokerCommandImpl(Invocation<T> invocation) {
             super(invocation);
             this.invocation = invocation;
+            hedgeAttempt    = false;
             previous        = null;
         }
 
         @Override public Observable<? extends HttpInvokerResult<T>> call(Throwable t) {
-            if (isConnectionException(t) || isServerError(t)) {
+            // Invocations with a consumed payload are only sent to another host if not sent yet
+            if (isShortCircuited(t) || invocation.isReplayable() && (isConnectionException(t) || isServerError(t))) {
                 logger.error(format("Cannot invoke '%s' with error '%s'", invocation.getPath(), t));
                 previous = chainWithPreviousExceptions(t);
                 final HttpInvoker                    next   = strategy.next(logger, getInvoker(), invocation).orElseThrow(() ->
                             new NoInvokerAvailable(previous));
                 final MultiHostInvokerCommandImpl<T> result = new MultiHostInvokerCommandImpl<>(invocation);
                 result.previous = previous;
+                result.withNonBlocking(isAsync());
                 return result.withInvoker(next).observe();
             }
             return Observable.error(t);
         }
 
+        /** Asynchronous invocation, feeding the strategy with the host load and health. */
+        @Override protected Observable<HttpInvokerResult<T>> construct() {
+            return tracked(getInvoker(), super.construct());
+        }
+
+        /**
+         * Hedged invocations (if enabled) run each attempt as a command of its own host. Fail over
+         * to the next host immediately, unless retried by a retry policy.
+         */
         @Override protected Observable<HttpInvokerResult<T>> getDecoratedObservable() {
-            return super.getDecoratedObservable().onErrorResumeNext(this);
+            if (hedgeAttempt) return super.getDecoratedObservable();
+
+            final Observable<HttpInvokerResult<T>> result;
+            if (isHedged()) {
+                depositRetryBudget();
+                result = Observable.create(new Hedge(this::attempt)).onErrorResumeNext(this::recover);
+            }
+            else result = super.getDecoratedObservable();
+            return getRetryPolicy().isPresent() ? result : result.onErrorResumeNext(this);
+        }
+
+        /** Hedge attempts fail as is, retries and fallback apply to the hedged invocation as a whole. */
+        @Override protected Observable<HttpInvokerResult<T>> recover(@NotNull Throwable t) {
+            return hedgeAttempt ? Observable.error(t) : super.recover(t);
+        }
+
+        /** Invocation feeding the strategy with the host load and health. */
+        @Override protected HttpInvokerResult<T> run() {
+            final HttpInvoker invoker = getInvoker();
+            final long        start   = System.currentTimeMillis();
+            strategy.started(invoker);
+            boolean failed = false;
+            try {
+                return super.run();
+            }
+            catch (final RuntimeException e) {
+                failed = isHostFailure(e);
+                throw e;
+            }
+            finally {
+                completed(invoker, elapsed(start), failed);
+            }
         }
 
         @Override protected String getThreadPoolKey() {
             return threadPoolKey.orElse(super.getThreadPoolKey());
         }
 
+        /** Retries are sent to the next host not tried yet. */
+        @Override Option<InvokerCommandImpl<T>> nextAttempt() {
+            return strategy.next(logger, getInvoker(), invocation).map(next -> command(invocation).withInvoker(next));
+        }
+
+        /** Short-circuited hosts are also retried on another one, as the invocation was not sent. */
+        @Override boolean isRetryable(@NotNull RetryPolicy policy, @NotNull Throwable t) {
+            return isShortCircuited(t) || super.isRetryable(policy, t);
+        }
+
+        /** Hedge attempts are not retried on their own. */
+        @Override Option<RetryPolicy> getRetryPolicy() {
+            return hedgeAttempt ? Option.empty() : super.getRetryPolicy();
+        }
+
+        /**
+         * Attempt of a hedged invocation on given host, executed as a command of the host (with its
+         * circuit breaker and isolation), and scheduled on the command pool unless non-blocking. A
+         * cancelled attempt counts neither as a success nor as a failure of the host.
+         */
+        private Observable<HttpInvokerResult<T>> attempt(@NotNull HttpInvoker host) {
+            final MultiHostInvokerCommandImpl<T> command = new MultiHostInvokerCommandImpl<>(invocation);
+            command.hedgeAttempt = true;
+            command.withNonBlocking(isAsync());
+            command.withInvoker(host);
+            return Observable.defer(command::getDecoratedObservable);
+        }
+
+        /** Track given invocation on host, feeding the strategy and hedging with its outcome. */
+        private Observable<HttpInvokerResult<T>> tracked(@NotNull HttpInvoker invoker, @NotNull Observable<HttpInvokerResult<T>> invocation) {
+            return Observable.defer(() -> {
+                final long          start     = System.currentTimeMillis();
+                final AtomicBoolean completed = new AtomicBoolean();
+                strategy.started(invoker);
+                return invocation.doOnNext(result -> {
+                                     if (completed.compareAndSet(false, true)) completed(invoker, elapsed(start), false);
+                                 })
+                                 .doOnError(t -> {
+                                     if (completed.compareAndSet(false, true)) completed(invoker, elapsed(start), isHostFailure(t));
+                                 })
+                                 .doOnUnsubscribe(() -> {
+                                     // Cancelled (eg: hedging lost), latency is not sampled
+                                     if (completed.compareAndSet(false, true)) completed(invoker, -1, false);
+                                 });
+            });
+        }
+
         private Throwable chainWithPreviousExceptions(Throwable t) {
             final Throwable cause = t instanceof InvokerConnectionException ? t.getCause() : t;
             if (previous == null) previous = cause;
@@ -306,12 +430,110 @@ class MultiHostHttpInvoker implements HttpInvoker, InvokerCommandFactory {
             return previous;
         }
 
+        private void completed(@NotNull HttpInvoker invoker, long latency, boolean failed) {
+            strategy.completed(invoker, latency, failed);
+            hedging.completed(invoker, latency, failed);
+        }
+
+        private long elapsed(long start) {
+            return System.currentTimeMillis() - start;
+        }
+
         private boolean isConnectionException(Throwable t) {
             return t instanceof InvokerConnectionException;
         }
 
+        /** Failures caused by the host health (and not by the request). */
+        private boolean isHostFailure(Throwable t) {
+            return isConnectionException(t) || isServerError(t);
+        }
+
+        /** Idempotent invocations (with a payload that can be sent again) are hedged if enabled. */
+        private boolean isHedged() {
+            return !hedgeAttempt && hedging.isEnabled() && invocation.isIdempotent() && invocation.isReplayable();
+        }
+
         private boolean isServerError(Throwable t) {
             return t instanceof InvokerInvocationException && ((InvokerInvocationException) t).getStatus().isServerError();
         }
+
+        private boolean isShortCircuited(Throwable t) {
+            return t instanceof CommandShortCircuitException;
+        }
+
+        /**
+         * Invocation on the command invoker, also sent to an alternative invoker (within the hedging
+         * budget) if not answered after the hedging delay. The first response is used, and the other
+         * invocation is cancelled. Fails once all invocations fail.
+         */
+        private class Hedge implements Observable.OnSubscribe<HttpInvokerResult<T>> {
+            private final Function<HttpInvoker, Observable<HttpInvokerResult<T>>> attempt;
+            private final CompositeSubscription                                   attempts;
+            private boolean                                                       done;
+            private Throwable                                                     error;
+            private int                                                           pending;
+            private Subscriber<? super HttpInvokerResult<T>>                      subscriber;
+
+            private Hedge(@NotNull Function<HttpInvoker, Observable<HttpInvokerResult<T>>> attempt) {
+                this.attempt = attempt;
+                attempts     = new CompositeSubscription();
+                done         = false;
+                error        = null;
+                pending      = 0;
+                subscriber   = null;
+            }
+
+            @Override public void call(Subscriber<? super HttpInvokerResult<T>> s) {
+                final HttpInvoker primary = getInvoker();
+                subscriber = s;
+                subscriber.add(attempts);
+                hedging.deposit();
+                run(primary, false);
+                attempts.add(Observable.timer(hedging.getDelay(primary), TimeUnit.MILLISECONDS).subscribe(tick -> hedge(primary)));
+            }
+
+            private void failed(@NotNull Throwable t) {
+                final Throwable e;
+                synchronized (this) {
+                    if (done) return;
+                    if (error == null) error = t;
+                    if (--pending > 0) return;
+                    done = true;
+                    e    = error;
+                }
+                subscriber.onError(e);
+                attempts.unsubscribe();
+            }
+
+            private void hedge(@NotNull HttpInvoker primary) {
+                synchronized (this) {
+                    if (done) return;
+                }
+                final Option<HttpInvoker> alternative = strategy.alternative(primary);
+                if (alternative.isPresent() && alternative.get() != primary && hedging.tryAcquire()) {
+                    InvocationMetrics.getOrCreateInstance(getCommandKey(), getThreadPoolKey()).markHedged();
+                    run(alternative.get(), true);
+                }
+            }
+
+            private void run(@NotNull HttpInvoker invoker, boolean hedged) {
+                synchronized (this) {
+                    if (done) return;
+                    pending++;
+                }
+                attempts.add(attempt.apply(invoker).subscribe(result -> won(result, hedged), this::failed));
+            }
+
+            private void won(@NotNull HttpInvokerResult<T> result, boolean hedged) {
+                synchronized (this) {
+                    if (done) return;
+                    done = true;
+                }
+                if (hedged) InvocationMetrics.getOrCreateInstance(getCommandKey(), getThreadPoolKey()).markHedgeWon();
+                subscriber.onNext(result);
+                subscriber.onCompleted();
+                attempts.unsubscribe();
+            }
+        }  // end class Hedge
     }  // end class MultiHostInvokerCommandImpl
 }  // end class MultiHostHttpInvoker
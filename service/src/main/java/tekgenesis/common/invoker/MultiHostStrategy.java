@@ -28,9 +28,22 @@ interface MultiHostStrategy {
 
     //~ Methods ......................................................................................................................................
 
+    /** Pick an invoker other than the given one, to hedge an invocation. */
+    Option<HttpInvoker> alternative(@NotNull HttpInvoker primary);
+
+    /**
+     * Called when an invocation on given invoker completes, with its latency (negative if it was
+     * cancelled). Failed invocations are the ones caused by the host health (connection failures and
+     * server errors).
+     */
+    void completed(@NotNull HttpInvoker invoker, long latency, boolean failed);
+
     /** Pick next invoker for retrying a failed invocation. */
     Option<HttpInvoker> next(@NotNull Logger logger, @NotNull HttpInvoker last, @NotNull Invocation<?> failed);
 
     /** Pick an invoker for a new resource invocation. */
     Option<HttpInvoker> pick();
+
+    /** Called when an invocation on given invoker starts. */
+    void started(@NotNull HttpInvoker invoker);
 }
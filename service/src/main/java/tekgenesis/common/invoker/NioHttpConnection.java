@@ -0,0 +1,352 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.invoker.NioHttpTransport.PooledChannel;
+
+import static java.lang.String.format;
+
+/**
+ * {@link HttpURLConnection} adapter over a {@link NioHttpTransport} exchange. Request content is
+ * buffered and sent by {@link #send()} (or {@link #connect()}, waiting for the response), and the
+ * response is read from its buffered content, so existing converters and modifiers apply.
+ */
+class NioHttpConnection extends HttpURLConnection {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final AtomicReference<PooledChannel> channel;
+    private final ByteArrayOutputStream          content;
+    private volatile boolean                     disconnected;
+    private CompletableFuture<Void>              exchange;
+    private Map<String, List<String>>            properties;
+    private int                                  redirects;
+    private volatile HttpResponseParser          response;
+    @NotNull private final NioHttpTransport      transport;
+
+    //~ Constructors .................................................................................................................................
+
+    NioHttpConnection(@NotNull URL url, @NotNull NioHttpTransport transport) {
+        super(url);
+        this.transport = transport;
+        content        = new ByteArrayOutputStream();
+        exchange       = null;
+        properties     = Collections.emptyMap();
+        channel        = new AtomicReference<>();
+        disconnected   = false;
+        response       = null;
+        redirects      = 0;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Send the request, waiting for its response. */
+    @Override public void connect()
+        throws IOException
+    {
+        await();
+    }
+
+    /** Close the channel of an in-flight exchange (if any), which won't be retried. */
+    @Override public void disconnect() {
+        disconnected = true;
+        final PooledChannel c = channel.getAndSet(null);
+        if (c != null) c.release(false);
+    }
+
+    @Override public boolean usingProxy() {
+        return false;
+    }
+
+    @Override public InputStream getErrorStream() {
+        final HttpResponseParser r = response;
+        return r != null && r.getStatus() >= HTTP_BAD_REQUEST ? r.getContent() : null;
+    }
+
+    @Override public String getHeaderField(String name) {
+        final HttpResponseParser r = awaitSilently();
+        return r == null || name == null ? null : r.getHeader(name);
+    }
+
+    @Override public String getHeaderField(int n) {
+        final HttpResponseParser r     = awaitSilently();
+        final List<String>       lines = r == null ? Collections.emptyList() : r.getHeaderLines();
+        if (n < 0 || n >= lines.size()) return null;
+        final String line = lines.get(n);
+        return n == 0 ? line : line.substring(line.indexOf(':') + 1).trim();
+    }
+
+    @Override public String getHeaderFieldKey(int n) {
+        final HttpResponseParser r     = awaitSilently();
+        final List<String>       lines = r == null ? Collections.emptyList() : r.getHeaderLines();
+        if (n <= 0 || n >= lines.size()) return null;
+        final String line = lines.get(n);
+        return line.substring(0, Math.max(0, line.indexOf(':'))).trim();
+    }
+
+    @Override public Map<String, List<String>> getHeaderFields() {
+        final HttpResponseParser r = awaitSilently();
+        return r == null ? Collections.emptyMap() : r.getHeaders();
+    }
+
+    @Override public InputStream getInputStream()
+        throws IOException
+    {
+        if (!doInput) throw new ProtocolException("Cannot read from URLConnection if doInput=false (call setDoInput(true))");
+        final HttpResponseParser r = await();
+        if (r.getStatus() >= HTTP_BAD_REQUEST) throw new IOException(format("Server returned HTTP response code: %d for URL: %s", r.getStatus(), url));
+        return r.getContent();
+    }
+
+    @Override public OutputStream getOutputStream()
+        throws IOException
+    {
+        if (!doOutput) throw new ProtocolException("Cannot write to a URLConnection if doOutput=false - call setDoOutput(true)");
+        if (exchange != null) throw new ProtocolException("Cannot write output after reading input.");
+        return content;
+    }
+
+    @Override public int getResponseCode()
+        throws IOException
+    {
+        return await().getStatus();
+    }
+
+    @Override public String getResponseMessage()
+        throws IOException
+    {
+        return await().getReason();
+    }
+
+    /** Send the buffered request, completing once the whole response is received. */
+    synchronized CompletableFuture<Void> send() {
+        if (exchange == null) {
+            final byte[] request;
+            try {
+                properties = getRequestProperties();
+                request    = encodeRequest();
+            }
+            catch (final IOException e) {
+                return failed(e);
+            }
+            connected = true;
+            exchange  = exchange(request, true);
+        }
+        return exchange;
+    }
+
+    /** Send request (if not sent) and wait for the response. */
+    private HttpResponseParser await()
+        throws IOException
+    {
+        try {
+            send().get();
+            return response;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    @Nullable private HttpResponseParser awaitSilently() {
+        try {
+            return await();
+        }
+        catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /** Encode request line, headers and content for the current url. */
+    private byte[] encodeRequest()
+        throws IOException
+    {
+        final StringBuilder head  = new StringBuilder();
+        final String        query = url.getQuery();
+        final String        path  = url.getPath().isEmpty() ? "/" : url.getPath();
+        head.append(method).append(' ').append(path).append(query == null ? "" : "?" + query).append(" HTTP/1.1").append(CRLF);
+
+        head.append(HOST).append(": ").append(url.getHost()).append(url.getPort() == -1 ? "" : ":" + url.getPort()).append(CRLF);
+        for (final Map.Entry<String, List<String>> property : properties.entrySet()) {
+            if (property.getKey() == null || HOST.equalsIgnoreCase(property.getKey())) continue;
+            for (final String value : property.getValue())
+                head.append(property.getKey()).append(": ").append(value).append(CRLF);
+        }
+        final byte[] body = content.toByteArray();
+        if (body.length > 0 || doOutput) head.append(CONTENT_LENGTH).append(": ").append(body.length).append(CRLF);
+        head.append(CRLF);
+
+        final ByteArrayOutputStream request = new ByteArrayOutputStream(head.length() + body.length);
+        request.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        request.write(body);
+        return request.toByteArray();
+    }
+
+    /**
+     * Execute exchange on a leased channel, retrying once on a new channel if a reused one was
+     * closed (unless disconnected). Non idempotent requests are only retried if no byte was written,
+     * as they may have reached the server. The channel is released by whoever clears it first,
+     * either the exchange once completed or {@link #disconnect()}.
+     */
+    private CompletableFuture<Void> exchange(@NotNull byte[] request, boolean retry) {
+        final HttpResponseParser parser = new HttpResponseParser(HEAD.equals(method));
+        return transport.lease(url, getConnectTimeout()).thenCompose(c -> {
+                            channel.set(c);
+                            if (disconnected && channel.compareAndSet(c, null)) {
+                                c.release(false);
+                                return failed(new SocketException("Connection disconnected"));
+                            }
+                            final CompletableFuture<Void> result = new CompletableFuture<>();
+                            final ByteBuffer              buffer = ByteBuffer.wrap(request);
+                            write(c, buffer, parser, result);
+                            return result.handle((ignored, e) -> {
+                                    if (e == null) {
+                                        if (channel.compareAndSet(c, null)) c.release(parser.isKeepAlive());
+                                        return CompletableFuture.<Void>completedFuture(null);
+                                    }
+                                    if (channel.compareAndSet(c, null)) c.release(false);
+                                    final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                                    // Kept alive channel may have been closed by the peer while idle
+                                    if (retry && !disconnected && c.isReused() && cause instanceof IOException &&
+                                        !(cause instanceof SocketTimeoutException) && (isIdempotent() || buffer.position() == 0))
+                                        return exchange(request, false);
+                                    return NioHttpConnection.<Void>failed(cause);
+                                }).thenCompose(f -> f);
+                        }).thenCompose(ignored -> {
+                            response = parser;
+                            return redirect();
+                        });
+    }
+
+    /** Returns true if the request method may be executed twice (mirrors {@code Method#isIdempotent}). */
+    private boolean isIdempotent() {
+        return !POST.equals(method) && !PATCH.equals(method);
+    }
+
+    private void read(@NotNull PooledChannel c, @NotNull ByteBuffer buffer, @NotNull HttpResponseParser parser,
+                      @NotNull CompletableFuture<Void> result) {
+        final int timeout = getReadTimeout();
+        c.getChannel().read(buffer, timeout > 0 ? timeout : Long.MAX_VALUE, TimeUnit.MILLISECONDS, null, new Handler(result) {
+                @Override public void completed(Integer read, Void attachment) {
+                    try {
+                        if (read == -1) {
+                            if (parser.eof()) result.complete(null);
+                            else result.completeExceptionally(new EOFException("Unexpected end of stream from " + url.getHost()));
+                            return;
+                        }
+                        buffer.flip();
+                        final boolean complete = parser.feed(buffer);
+                        buffer.clear();
+                        if (complete) result.complete(null);
+                        else read(c, buffer, parser, result);
+                    }
+                    catch (final IOException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+    }
+
+    /** Follow redirect (if enabled) for GET requests, up to a maximum amount of redirects. */
+    private CompletableFuture<Void> redirect() {
+        final HttpResponseParser r        = response;
+        final String             location = r.getHeader(LOCATION);
+        final int                status   = r.getStatus();
+        final boolean            redirect = status == HTTP_MOVED_PERM || status == HTTP_MOVED_TEMP || status == HTTP_SEE_OTHER ||
+                                            status == TEMPORARY_REDIRECT || status == PERMANENT_REDIRECT;
+
+        if (!redirect || location == null || !getInstanceFollowRedirects() || !GET.equals(method) || ++redirects > MAX_REDIRECTS)
+            return CompletableFuture.completedFuture(null);
+
+        try {
+            final URL target = new URL(url, location);
+            if (!target.getProtocol().equals(url.getProtocol())) return CompletableFuture.completedFuture(null);
+            url = target;
+            return exchange(encodeRequest(), true);
+        }
+        catch (final IOException e) {
+            return failed(e);
+        }
+    }
+
+    private void write(@NotNull PooledChannel c, @NotNull ByteBuffer buffer, @NotNull HttpResponseParser parser,
+                       @NotNull CompletableFuture<Void> result) {
+        c.getChannel().write(buffer, null, new Handler(result) {
+                @Override public void completed(Integer written, Void attachment) {
+                    if (buffer.hasRemaining()) write(c, buffer, parser, result);
+                    else read(c, ByteBuffer.allocate(BUFFER_SIZE), parser, result);
+                }
+            });
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static <T> CompletableFuture<T> failed(@NotNull Throwable cause) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(cause);
+        return result;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String CRLF           = "\r\n";
+    private static final String GET            = "GET";
+    private static final String HEAD           = "HEAD";
+    private static final String HOST           = "Host";
+    private static final String LOCATION       = "Location";
+    private static final String PATCH          = "PATCH";
+    private static final String POST           = "POST";
+
+    private static final int BUFFER_SIZE        = 8192;
+    private static final int MAX_REDIRECTS      = 5;
+    private static final int PERMANENT_REDIRECT = 308;
+    private static final int TEMPORARY_REDIRECT = 307;
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Completion handler failing the exchange result, mapping read timeouts to socket ones.
+     */
+    private abstract static class Handler implements java.nio.channels.CompletionHandler<Integer, Void> {
+        private final CompletableFuture<Void> result;
+
+        private Handler(@NotNull CompletableFuture<Void> result) {
+            this.result = result;
+        }
+
+        @Override public void failed(Throwable e, Void attachment) {
+            if (e instanceof InterruptedByTimeoutException) result.completeExceptionally(new SocketTimeoutException("Read timed out"));
+            else result.completeExceptionally(e);
+        }
+    }
+}  // end class NioHttpConnection
@@ -0,0 +1,325 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.*;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.invoker.metric.ConnectionPoolMetrics;
+import tekgenesis.common.util.Files;
+
+import static java.lang.String.format;
+
+/**
+ * Non-blocking {@link HttpTransport transport} over asynchronous socket channels. Requests are
+ * buffered and sent once written, and responses are buffered before being read, so no thread is
+ * held while waiting for the socket. Channels are kept alive and pooled per host, bounded by
+ * {@link HttpTransportProps} (waiting for a channel doesn't hold a thread either). Pool statistics
+ * are recorded on {@link ConnectionPoolMetrics}. Only plain http is supported.
+ */
+public class NioHttpTransport implements HttpTransport {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final String                        name;
+    private final ConcurrentHashMap<String, ChannelPool> pools = new ConcurrentHashMap<>();
+    private volatile HttpTransportProps                  props;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a non-blocking transport with the given name (used for properties scope and metrics). */
+    public NioHttpTransport(@NotNull String name) {
+        this.name = name;
+        props     = Context.getEnvironment().get(name, HttpTransportProps.class, value -> {
+                    if (value.isPresent()) props = value.get();
+                });
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public void discard(@NotNull HttpURLConnection connection) {
+        connection.disconnect();
+    }
+
+    @NotNull @Override public HttpURLConnection open(@NotNull URL url)
+        throws IOException
+    {
+        if (!HTTP.equals(url.getProtocol())) throw new MalformedURLException(format("Protocol '%s' not supported by %s", url.getProtocol(), this));
+        return new NioHttpConnection(url, this);
+    }
+
+    @Override public void release(@NotNull HttpURLConnection connection, @Nullable InputStream content) {
+        // Channel was already released once the response was received
+        Files.close(content);
+    }
+
+    @NotNull @Override public CompletableFuture<Void> send(@NotNull HttpURLConnection connection) {
+        return ((NioHttpConnection) connection).send();
+    }
+
+    @Override public String toString() {
+        return name;
+    }
+
+    @Override public boolean isNonBlocking() {
+        return true;
+    }
+
+    /** Returns the pool statistics of the host (protocol, host and port) of the given url. */
+    @Nullable public ConnectionPoolMetrics getMetrics(@NotNull URL url) {
+        final ChannelPool pool = pools.get(host(url));
+        return pool == null ? null : pool.metrics;
+    }
+
+    /** Lease a connected channel to the host of the given url. */
+    CompletableFuture<PooledChannel> lease(@NotNull URL url, int connectTimeout) {
+        final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return pools.computeIfAbsent(host(url), h -> new ChannelPool(h, url.getHost(), port)).lease(connectTimeout);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Schedule given task on the transport timer. */
+    static ScheduledFuture<?> schedule(@NotNull Runnable task, int delayInMilliseconds) {
+        return timer.schedule(task, delayInMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    private static String host(@NotNull URL url) {
+        final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol() + "://" + url.getHost() + ":" + port;
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                    final Thread thread = new Thread(r, "NioHttpTransportTimer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String HTTP = "http";
+
+    private static final ScheduledThreadPoolExecutor timer = createTimer();
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Channel leased from a pool, released back (if kept alive) or closed once the exchange
+     * completes.
+     */
+    class PooledChannel {
+        @NotNull private final AsynchronousSocketChannel channel;
+        private long                                     idleSince;
+        private final AtomicBoolean                      leased;
+        @NotNull private final ChannelPool               pool;
+        private boolean                                  reused;
+
+        private PooledChannel(@NotNull AsynchronousSocketChannel channel, @NotNull ChannelPool pool) {
+            this.channel = channel;
+            this.pool    = pool;
+            idleSince    = 0;
+            leased       = new AtomicBoolean(true);
+            reused       = false;
+        }
+
+        /** Release channel, keeping it alive for reuse or closing it. Only the first release of a lease applies. */
+        void release(boolean keepAlive) {
+            if (!leased.compareAndSet(true, false)) return;
+            if (keepAlive && channel.isOpen()) pool.release(this);
+            else {
+                Files.close(channel);
+                pool.discard();
+            }
+        }
+
+        /** Returns the underlying channel. */
+        @NotNull AsynchronousSocketChannel getChannel() {
+            return channel;
+        }
+
+        /** Returns true if the channel was previously used by another exchange. */
+        boolean isReused() {
+            return reused;
+        }
+
+        /** Mark a kept alive channel as leased again. */
+        private PooledChannel lease() {
+            leased.set(true);
+            return this;
+        }
+    }  // end class PooledChannel
+
+    /**
+     * Channels to a single host. Leases exceeding the maximum connections wait (without blocking)
+     * for a released channel, up to the acquire timeout.
+     */
+    private class ChannelPool {
+        private final String                                  address;
+        private final String                                  host;
+        private final Deque<PooledChannel>                    idle    = new ArrayDeque<>();
+        private int                                           leased  = 0;
+        private final ConnectionPoolMetrics                   metrics;
+        private final int                                     port;
+        private final Deque<CompletableFuture<PooledChannel>> waiters = new ArrayDeque<>();
+
+        private ChannelPool(@NotNull String host, @NotNull String address, int port) {
+            this.host    = host;
+            this.address = address;
+            this.port    = port;
+            metrics      = ConnectionPoolMetrics.getOrCreateInstance(name, host);
+        }
+
+        /** Connect a new channel, releasing the lease on failure. */
+        private CompletableFuture<PooledChannel> connect(int connectTimeout) {
+            final CompletableFuture<PooledChannel> result = new CompletableFuture<>();
+            try {
+                final InetSocketAddress socket = new InetSocketAddress(address, port);
+                if (socket.isUnresolved()) throw new UnknownHostException(address);
+
+                final AsynchronousSocketChannel channel = AsynchronousSocketChannel.open();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                final ScheduledFuture<?> timeout = connectTimeout <= 0 ? null : schedule(() -> {
+                            if (result.completeExceptionally(new SocketTimeoutException("connect timed out"))) Files.close(channel);
+                        }, connectTimeout);
+
+                channel.connect(socket, null, new CompletionHandler<Void, Void>() {
+                        @Override public void completed(Void ignored, Void attachment) {
+                            if (timeout != null) timeout.cancel(false);
+                            if (!result.complete(new PooledChannel(channel, ChannelPool.this))) Files.close(channel);
+                        }
+
+                        @Override public void failed(Throwable e, Void attachment) {
+                            if (timeout != null) timeout.cancel(false);
+                            Files.close(channel);
+                            result.completeExceptionally(e);
+                        }
+                    });
+            }
+            catch (final IOException e) {
+                result.completeExceptionally(e);
+            }
+            return result.whenComplete((channel, e) -> {
+                if (e != null) discard();
+            });
+        }
+
+        /**
+         * Discard a leased channel (closed), handing its lease to a waiter if any (or to the next
+         * one, if the waiter was already completed).
+         */
+        private void discard() {
+            synchronized (this) {
+                metrics.markDiscarded();
+            }
+            while (true) {
+                final CompletableFuture<PooledChannel> waiter;
+                synchronized (this) {
+                    waiter = waiters.pollFirst();
+                    if (waiter == null) leased--;
+                    updateMetrics();
+                }
+                // A null channel signals the waiter to connect a new one
+                if (waiter == null || waiter.complete(null)) return;
+            }
+        }
+
+        /** Drop idle channels released longer than the idle timeout ago. */
+        private void expireIdle(long now, int timeout) {
+            while (!idle.isEmpty() && now - idle.peekFirst().idleSince > timeout)
+                Files.close(idle.pollFirst().channel);
+        }
+
+        private CompletableFuture<PooledChannel> lease(int connectTimeout) {
+            final HttpTransportProps               p = props;
+            final CompletableFuture<PooledChannel> waiter;
+            synchronized (this) {
+                expireIdle(System.currentTimeMillis(), p.idleTimeout);
+                final PooledChannel channel = idle.pollLast();
+                if (channel != null) {
+                    leased++;
+                    metrics.markLeased(true);
+                    updateMetrics();
+                    return CompletableFuture.completedFuture(channel.lease());
+                }
+                if (leased < p.maxConnectionsPerHost) {
+                    leased++;
+                    metrics.markLeased(false);
+                    updateMetrics();
+                    waiter = null;
+                }
+                else {
+                    waiter = new CompletableFuture<>();
+                    waiters.addLast(waiter);
+                    updateMetrics();
+                }
+            }
+
+            if (waiter == null) return connect(connectTimeout);
+
+            final ScheduledFuture<?> timeout = schedule(() -> {
+                        final boolean removed;
+                        synchronized (this) {
+                            removed = waiters.remove(waiter);
+                            updateMetrics();
+                        }
+                        if (removed) {
+                            metrics.markAcquireTimeout();
+                            waiter.completeExceptionally(new SocketTimeoutException(format("Timeout waiting for connection to '%s'", host)));
+                        }
+                    }, p.acquireTimeout);
+
+            return waiter.thenCompose(channel -> {
+                timeout.cancel(false);
+                metrics.markLeased(channel != null);
+                return channel != null ? CompletableFuture.completedFuture(channel.lease()) : connect(connectTimeout);
+            });
+        }  // end method lease
+
+        /** Release a kept alive channel, handing it to a waiter if any. */
+        private void release(@NotNull PooledChannel channel) {
+            final CompletableFuture<PooledChannel> waiter;
+            channel.reused = true;
+            synchronized (this) {
+                metrics.markKeptAlive();
+                waiter = waiters.pollFirst();
+                if (waiter == null) {
+                    leased--;
+                    channel.idleSince = System.currentTimeMillis();
+                    idle.addLast(channel);
+                    while (idle.size() > props.maxConnectionsPerHost)
+                        Files.close(idle.pollFirst().channel);
+                }
+                updateMetrics();
+            }
+            if (waiter != null && !waiter.complete(channel)) release(channel);
+        }
+
+        private void updateMetrics() {
+            metrics.update(leased, waiters.size(), idle.size(), props.maxConnectionsPerHost);
+        }
+    }  // end class ChannelPool
+}  // end class NioHttpTransport
@@ -0,0 +1,51 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Peak EWMA latency strategy for multi host invoker: picks the host with the lowest expected
+ * latency, estimated as its peak EWMA latency times its invocations in flight (plus one). Hosts
+ * not yet sampled are probed with a single invocation at a time: while it is in flight their cost
+ * is a high penalty (as in Finagle), so traffic doesn't herd onto them. Supports fail over and
+ * penalisation.
+ */
+class PeakEwmaStrategy extends LoadBalancingStrategy {
+
+    //~ Constructors .................................................................................................................................
+
+    PeakEwmaStrategy(List<HttpInvoker> invokers) {
+        super(invokers);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @NotNull @Override HostStats choose(@NotNull List<HostStats> candidates) {
+        return lowest(candidates, PeakEwmaStrategy::cost);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Expected latency of the host, or the penalty if not yet sampled and already probed. */
+    private static double cost(@NotNull HostStats host) {
+        final int outstanding = host.getOutstanding();
+        if (!host.isSampled()) return outstanding == 0 ? 0 : PENALTY + outstanding;
+        return host.getPeakEwma() * (outstanding + 1);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    /** Cost of hosts without latency samples with invocations in flight (higher than any sampled one). */
+    private static final double PENALTY = Long.MAX_VALUE >> 16;
+}  // end class PeakEwmaStrategy
@@ -0,0 +1,275 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.invoker.metric.ConnectionPoolMetrics;
+import tekgenesis.common.util.Files;
+
+import static java.lang.String.format;
+
+/**
+ * Keep-alive {@link HttpTransport transport} bounding concurrent connections per host (see
+ * {@link HttpTransportProps}). Released responses are drained so the underlying socket can be kept
+ * alive and reused by subsequent connections to the same host, failed ones are disconnected. Idle
+ * keep-alive sockets are managed by the JDK (bounded by the 'http.maxConnections' system property),
+ * so only leased and pending connections are recorded on {@link ConnectionPoolMetrics}, not idle
+ * nor reused ones.
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final AtomicLong                          lastEviction = new AtomicLong(System.currentTimeMillis());
+    private final Map<HttpURLConnection, HostPool>    leased       = new ConcurrentHashMap<>();
+    @NotNull private final String                     name;
+    private final ConcurrentHashMap<String, HostPool> pools        = new ConcurrentHashMap<>();
+    private volatile HttpTransportProps               props;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a pooled transport with the given name (used for properties scope and metrics). */
+    public PooledHttpTransport(@NotNull String name) {
+        this.name = name;
+        props     = Context.getEnvironment().get(name, HttpTransportProps.class, value -> {
+                    if (value.isPresent()) props = value.get();
+                });
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public void discard(@NotNull HttpURLConnection connection) {
+        final HostPool pool = leased.remove(connection);
+        if (pool == null) return;
+        connection.disconnect();
+        pool.release(false);
+    }
+
+    @NotNull @Override public HttpURLConnection open(@NotNull URL url)
+        throws IOException
+    {
+        evictIdlePools();
+
+        // Pools evicted since taken from the map reject leases, so a new one is created
+        final String host = host(url);
+        HostPool     pool = pools.computeIfAbsent(host, HostPool::new);
+        while (!pool.acquire())
+            pool = pools.computeIfAbsent(host, HostPool::new);
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            leased.put(connection, pool);
+            return connection;
+        }
+        catch (IOException | RuntimeException e) {
+            pool.release(false);
+            throw e;
+        }
+    }
+
+    @Override public void release(@NotNull HttpURLConnection connection, @Nullable InputStream content) {
+        final HostPool pool = leased.remove(connection);
+        if (pool == null) {
+            Files.close(content);
+            return;
+        }
+
+        final boolean alive = drain(connection, content);
+        if (!alive) connection.disconnect();
+        pool.release(alive);
+    }
+
+    @NotNull @Override public CompletableFuture<Void> send(@NotNull HttpURLConnection connection) {
+        return DefaultHttpTransport.sendBlocking(connection);
+    }
+
+    @Override public String toString() {
+        return name;
+    }
+
+    @Override public boolean isNonBlocking() {
+        return false;
+    }
+
+    /** Amount of connections currently leased. */
+    public int getLeasedCount() {
+        return leased.size();
+    }
+
+    /** Returns the pool statistics of the host (protocol, host and port) of the given url. */
+    @Nullable public ConnectionPoolMetrics getMetrics(@NotNull URL url) {
+        final HostPool pool = pools.get(host(url));
+        return pool == null ? null : pool.metrics;
+    }
+
+    /** Read remaining response content (up to max drain size) and close it. Returns true if fully read. */
+    private boolean drain(@NotNull HttpURLConnection connection, @Nullable InputStream content) {
+        InputStream stream = content;
+        try {
+            if (stream == null) stream = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream()
+                                                                                                           : connection.getErrorStream();
+            if (stream == null) return true;
+
+            final byte[] buffer    = new byte[DRAIN_BUFFER_SIZE];
+            int          remaining = props.maxDrainSize;
+            int          read;
+            while ((read = stream.read(buffer)) != -1) {
+                remaining -= read;
+                if (remaining < 0) return false;
+            }
+            return true;
+        }
+        catch (final IOException e) {
+            return false;
+        }
+        finally {
+            Files.close(stream);
+        }
+    }
+
+    /** Remove host pools unused for longer than the idle timeout (checked at most once per idle timeout). */
+    private void evictIdlePools() {
+        final long now  = System.currentTimeMillis();
+        final long last = lastEviction.get();
+        final int  idle = props.idleTimeout;
+        if (now - last < idle || !lastEviction.compareAndSet(last, now)) return;
+
+        for (final HostPool pool : pools.values())
+            pool.evictIfUnused(now, idle);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static String host(@NotNull URL url) {
+        final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol() + "://" + url.getHost() + ":" + port;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Connections to a single host.
+     */
+    private class HostPool {
+        private final Condition             available;
+        private boolean                     evicted;
+        private final String                host;
+        private long                        lastUsed = System.currentTimeMillis();
+        private int                         leasedCount;
+        private final ReentrantLock         lock     = new ReentrantLock();
+        private final ConnectionPoolMetrics metrics;
+        private int                         pending;
+
+        private HostPool(@NotNull String host) {
+            this.host = host;
+            available = lock.newCondition();
+            metrics   = ConnectionPoolMetrics.getOrCreateInstance(name, host);
+        }
+
+        /**
+         * Lease a connection, waiting up to the acquire timeout if the pool is exhausted. Returns
+         * false if the pool was evicted (and a new one must be used).
+         */
+        private boolean acquire()
+            throws SocketTimeoutException
+        {
+            final HttpTransportProps p = props;
+            lock.lock();
+            try {
+                if (evicted) return false;
+                long nanos = TimeUnit.MILLISECONDS.toNanos(p.acquireTimeout);
+                pending++;
+                try {
+                    while (leasedCount >= p.maxConnectionsPerHost) {
+                        if (nanos <= 0) {
+                            metrics.markAcquireTimeout();
+                            throw new SocketTimeoutException(format("Timeout waiting for connection to '%s'", host));
+                        }
+                        nanos = available.awaitNanos(nanos);
+                    }
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SocketTimeoutException(format("Interrupted waiting for connection to '%s'", host));
+                }
+                finally {
+                    pending--;
+                }
+
+                leasedCount++;
+                lastUsed = System.currentTimeMillis();
+                updateMetrics(p);
+                return true;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /** Release a leased connection, drained to be kept alive or disconnected. */
+        private void release(boolean alive) {
+            final HttpTransportProps p = props;
+            lock.lock();
+            try {
+                leasedCount--;
+                lastUsed = System.currentTimeMillis();
+                if (alive) metrics.markKeptAlive();
+                else metrics.markDiscarded();
+                updateMetrics(p);
+                available.signal();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void updateMetrics(@NotNull HttpTransportProps p) {
+            // Idle sockets are kept by the JDK, out of sight of the pool
+            metrics.update(leasedCount, pending, 0, p.maxConnectionsPerHost);
+        }
+
+        /**
+         * Evict the pool (and its metrics) if it has no leased nor pending connections and was not
+         * used within the idle timeout. Done under the pool lock, so no lease is granted after it.
+         */
+        private void evictIfUnused(long now, int timeout) {
+            lock.lock();
+            try {
+                if (leasedCount > 0 || pending > 0 || now - lastUsed <= timeout) return;
+                evicted = true;
+                ConnectionPoolMetrics.remove(name, host);
+                pools.remove(host, this);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }  // end class HostPool
+}  // end class PooledHttpTransport
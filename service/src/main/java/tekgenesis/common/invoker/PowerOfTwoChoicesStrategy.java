@@ -0,0 +1,55 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Power of two choices strategy for multi host invoker: picks two random hosts and chooses the one
+ * with the lowest load, weighted by its median latency. It avoids the herding of always choosing
+ * the least loaded host when load information is stale. Supports fail over and penalisation.
+ */
+class PowerOfTwoChoicesStrategy extends LoadBalancingStrategy {
+
+    //~ Constructors .................................................................................................................................
+
+    PowerOfTwoChoicesStrategy(List<HttpInvoker> invokers) {
+        super(invokers);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @NotNull @Override HostStats choose(@NotNull List<HostStats> candidates) {
+        final int size = candidates.size();
+        if (size == 1) return candidates.get(0);
+
+        final Random    random = ThreadLocalRandom.current();
+        final int       first  = random.nextInt(size);
+        final int       second = (first + 1 + random.nextInt(size - 1)) % size;
+        final HostStats a      = candidates.get(first);
+        final HostStats b      = candidates.get(second);
+        return cost(b) < cost(a) ? b : a;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static double cost(@NotNull HostStats host) {
+        return (host.getOutstanding() + 1.0) * (host.getPercentile(MEDIAN) + 1.0);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final double MEDIAN = 50;
+}  // end class PowerOfTwoChoicesStrategy
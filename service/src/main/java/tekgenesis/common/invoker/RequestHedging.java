@@ -0,0 +1,83 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.command.CommandProps;
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.metric.RollingHistogram;
+
+/**
+ * Hedging state of a multi host invoker: host latencies (to compute the hedging delay) and the
+ * hedging budget, a token bucket earning a fraction of a hedge per eligible invocation.
+ * Configured by the {@link CommandProps command properties} of the invoker command pool.
+ */
+class RequestHedging {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final ConcurrentHashMap<HttpInvoker, RollingHistogram> latencies = new ConcurrentHashMap<>();
+    private volatile CommandProps                                  props;
+    private final TokenBucket                                      tokens;
+
+    //~ Constructors .................................................................................................................................
+
+    RequestHedging(@NotNull String key) {
+        props  = Context.getEnvironment().get(key, CommandProps.class, value -> {
+                    if (value.isPresent()) props = value.get();
+                });
+        tokens = new TokenBucket(props.hedgingBudgetMaxTokens);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Called when an invocation on given host completes (negative latency if cancelled). */
+    void completed(@NotNull HttpInvoker invoker, long latency, boolean failed) {
+        if (!failed && latency >= 0)
+            latencies.computeIfAbsent(invoker, i -> new RollingHistogram(LATENCY_WINDOW, LATENCY_WINDOW_BUCKETS))
+                     .addValue((int) Math.min(latency, Integer.MAX_VALUE));
+    }
+
+    /** Earn budget for an invocation eligible for hedging. */
+    void deposit() {
+        final CommandProps p = props;
+        tokens.deposit(p.hedgingBudgetPercentage / PERCENT, p.hedgingBudgetMaxTokens);
+    }
+
+    /** Returns true (spending budget) if an invocation can be hedged. */
+    boolean tryAcquire() {
+        return tokens.tryAcquire();
+    }
+
+    /** Returns the delay (in milliseconds) after which an invocation on given host is hedged. */
+    int getDelay(@NotNull HttpInvoker invoker) {
+        final CommandProps p = props;
+        if (p.hedgingDelay > 0) return p.hedgingDelay;
+
+        final RollingHistogram latency    = latencies.get(invoker);
+        final int              percentile = latency == null ? 0 : latency.getPercentile(p.hedgingDelayPercentile);
+        return percentile <= 0 ? p.hedgingMaxDelay : Math.max(p.hedgingMinDelay, Math.min(p.hedgingMaxDelay, percentile));
+    }
+
+    /** Returns true if hedging is enabled. */
+    boolean isEnabled() {
+        return props.hedgingEnabled;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int    LATENCY_WINDOW         = 60000;
+    private static final int    LATENCY_WINDOW_BUCKETS = 6;
+    private static final double PERCENT                = 100.0;
+}  // end class RequestHedging
@@ -0,0 +1,201 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.invoker.exception.InvokerApplicationException;
+import tekgenesis.common.invoker.exception.InvokerConnectionException;
+import tekgenesis.common.invoker.exception.InvokerResponseException;
+import tekgenesis.common.service.Status;
+
+import static tekgenesis.common.Predefined.checkArgument;
+import static tekgenesis.common.service.Status.BAD_GATEWAY;
+import static tekgenesis.common.service.Status.GATEWAY_TIMEOUT;
+import static tekgenesis.common.service.Status.SERVICE_UNAVAILABLE;
+
+/**
+ * Retry policy of {@link HttpInvoker invoker} commands. Failed invocations are retried up to a
+ * maximum amount of attempts, waiting an exponential backoff (with jitter) between them, and only
+ * if the failure is retryable: connection failures and gateway or unavailable statuses by default,
+ * on idempotent methods. Invocations with a payload consumed once sent (a stream or a channel) are
+ * never retried. Retries are capped per host by a token bucket budget, earning a percentage of a
+ * retry per invocation, so retries cannot amplify the load of a failing host. Backoff delays are
+ * scheduled on a timer, without holding any command thread.
+ */
+public class RetryPolicy {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final ConcurrentHashMap<String, TokenBucket> budgets;  // By invoker server url
+    private int                                          budgetMaxTokens;
+    private int                                          budgetPercentage;
+    @NotNull private Predicate<Throwable>                exceptions;
+    private int                                          initialDelay;
+    private double                                       jitter;
+    private int                                          maxAttempts;
+    private int                                          maxDelay;
+    private double                                       multiplier;
+    private boolean                                      nonIdempotent;
+    @NotNull private Predicate<Status>                   statuses;
+
+    //~ Constructors .................................................................................................................................
+
+    private RetryPolicy() {
+        budgets          = new ConcurrentHashMap<>();
+        budgetMaxTokens  = DEFAULT_BUDGET_MAX_TOKENS;
+        budgetPercentage = DEFAULT_BUDGET_PERCENTAGE;
+        exceptions       = RetryPolicy::isConnectionFailure;
+        initialDelay     = DEFAULT_INITIAL_DELAY;
+        jitter           = DEFAULT_JITTER;
+        maxAttempts      = DEFAULT_MAX_ATTEMPTS;
+        maxDelay         = DEFAULT_MAX_DELAY;
+        multiplier       = DEFAULT_MULTIPLIER;
+        nonIdempotent    = false;
+        statuses         = RETRYABLE_STATUSES::contains;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Also retry non idempotent methods (POST and PATCH), which may be executed twice. */
+    public RetryPolicy retryNonIdempotent() {
+        nonIdempotent = true;
+        return this;
+    }
+
+    /**
+     * Retry failures matching given predicate (other than response ones). Defaults to connection
+     * failures.
+     */
+    public RetryPolicy retryOnException(@NotNull Predicate<Throwable> predicate) {
+        exceptions = predicate;
+        return this;
+    }
+
+    /**
+     * Retry responses with a status matching given predicate (application exceptions are never
+     * retried). Defaults to BAD_GATEWAY, SERVICE_UNAVAILABLE and GATEWAY_TIMEOUT.
+     */
+    public RetryPolicy retryOnStatus(@NotNull Predicate<Status> predicate) {
+        statuses = predicate;
+        return this;
+    }
+
+    /**
+     * Exponential backoff: the first retry waits the initial delay (in milliseconds), multiplied
+     * for each subsequent one, up to the maximum delay.
+     */
+    public RetryPolicy withBackoff(int initial, int max, double factor) {
+        checkArgument(initial >= 0 && max >= initial, "Backoff delays must be positive, and maximum not lower than initial.");
+        checkArgument(factor >= 1, "Backoff multiplier must not be lower than 1.");
+        initialDelay = initial;
+        maxDelay     = max;
+        multiplier   = factor;
+        return this;
+    }
+
+    /**
+     * Per host retry budget: each invocation earns the given percentage of a retry, up to the
+     * maximum amount of retries.
+     */
+    public RetryPolicy withBudget(int maxTokens, int percentage) {
+        checkArgument(maxTokens >= 0 && percentage >= 0, "Retry budget must be positive.");
+        budgetMaxTokens  = maxTokens;
+        budgetPercentage = percentage;
+        budgets.clear();
+        return this;
+    }
+
+    /**
+     * Randomize backoff delays by the given factor (between 0 and 1), to avoid synchronized
+     * retries from many clients. Zero means no jitter, one means any delay up to the backoff one.
+     */
+    public RetryPolicy withJitter(double factor) {
+        checkArgument(factor >= 0 && factor <= 1, "Jitter must be between 0 and 1.");
+        jitter = factor;
+        return this;
+    }
+
+    /** Maximum amount of attempts (including the first one). */
+    public RetryPolicy withMaxAttempts(int attempts) {
+        checkArgument(attempts >= 1, "Maximum attempts must be at least 1.");
+        maxAttempts = attempts;
+        return this;
+    }
+
+    /** Earn retry budget for an invocation on given host. */
+    void deposit(@NotNull HttpInvoker host) {
+        getBudget(host).deposit(budgetPercentage / PERCENT, budgetMaxTokens);
+    }
+
+    /** Returns true (spending budget) if an invocation on given host can be retried. */
+    boolean tryAcquire(@NotNull HttpInvoker host) {
+        return getBudget(host).tryAcquire();
+    }
+
+    /** Returns the backoff delay (in milliseconds) before retrying the given failed attempt. */
+    int getDelay(int attempt) {
+        final double backoff = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt - 1));
+        return (int) (backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /** Returns true if given attempt (starting at 1) is not the last one. */
+    boolean hasAttemptsLeft(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /** Returns true if given invocation failure is retryable. */
+    boolean isRetryable(@NotNull Invocation<?> invocation, @NotNull Throwable t) {
+        if (!invocation.isReplayable() || !nonIdempotent && !invocation.isIdempotent()) return false;
+        if (t instanceof InvokerApplicationException) return false;
+        if (t instanceof InvokerResponseException) return statuses.test(((InvokerResponseException) t).getStatus());
+        return exceptions.test(t);
+    }
+
+    /** Budget is shared by the invokers of the same server (not kept per invoker instance). */
+    @NotNull private TokenBucket getBudget(@NotNull HttpInvoker host) {
+        return budgets.computeIfAbsent(host.toString(), h -> new TokenBucket(budgetMaxTokens));
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Create a retry policy with the default configuration: 3 attempts, backoff from 100 to 5000
+     * milliseconds doubling each time with 50% of jitter, and a budget of 20% of retries (up to
+     * 10).
+     */
+    public static RetryPolicy retryPolicy() {
+        return new RetryPolicy();
+    }
+
+    /** Connection failures, except for malformed urls (which will never succeed). */
+    private static boolean isConnectionFailure(@NotNull Throwable t) {
+        return t instanceof InvokerConnectionException && !((InvokerConnectionException) t).isUriSyntaxException();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int    DEFAULT_BUDGET_MAX_TOKENS = 10;
+    private static final int    DEFAULT_BUDGET_PERCENTAGE = 20;
+    private static final int    DEFAULT_INITIAL_DELAY     = 100;
+    private static final double DEFAULT_JITTER            = 0.5;
+    private static final int    DEFAULT_MAX_ATTEMPTS      = 3;
+    private static final int    DEFAULT_MAX_DELAY         = 5000;
+    private static final double DEFAULT_MULTIPLIER        = 2;
+    private static final double PERCENT                   = 100.0;
+
+    private static final EnumSet<Status> RETRYABLE_STATUSES = EnumSet.of(BAD_GATEWAY, SERVICE_UNAVAILABLE, GATEWAY_TIMEOUT);
+}  // end class RetryPolicy
@@ -49,6 +49,22 @@ class RoundRobinStrategy implements MultiHostStrategy {
 
     //~ Methods ......................................................................................................................................
 
+    /** Following invoker not failed recently (or just the following one if all did). */
+    @Override public Option<HttpInvoker> alternative(@NotNull HttpInvoker primary) {
+        final int index = Math.max(0, invokers.indexOf(InvokerEntry.valueOf(primary)));
+        for (int i = 1; i < invokers.size(); i++) {
+            final InvokerEntry entry = invokers.get((index + i) % invokers.size());
+            if (DateTime.current().minutesFrom(entry.lastFailed) > 5) return some(entry.invoker);
+        }
+        return some(invokers.get((index + 1) % invokers.size()).invoker);
+    }
+
+    /** Failed hosts are penalised, as when failing over. */
+    @Override public void completed(@NotNull HttpInvoker invoker, long latency, boolean failed) {
+        final int index = invokers.indexOf(InvokerEntry.valueOf(invoker));
+        if (failed && index != -1) invokers.get(index).failed(DateTime.current());
+    }
+
     @Override public Option<HttpInvoker> next(@NotNull Logger logger, @NotNull final HttpInvoker last, @NotNull Invocation<?> failed) {
         final Seq<InvokerEntry> invokerAllEntries = invokers.filter(e -> !e.invoker.equals(last) && !triedInvokers.contains(e)).toList();
         if (invokerAllEntries.isEmpty()) return logAndReturn(logger, failed, last, null);
@@ -65,6 +81,8 @@ class RoundRobinStrategy implements MultiHostStrategy {
         return some(getCurrent());
     }
 
+    @Override public void started(@NotNull HttpInvoker invoker) {}
+
     private Option<HttpInvoker> logAndReturn(Logger logger, Invocation<?> failed, @NotNull HttpInvoker last, @Nullable HttpInvoker next) {
         final InvokerEntry lastEntry = InvokerEntry.valueOf(last);
         final int          lastIndex = invokers.indexOf(lastEntry);
@@ -21,7 +21,10 @@ public enum Strategy {
 
     MASTER_SLAVE { @Override public MultiHostStrategy create(List<HttpInvoker> invokerList) { return new MasterSlaveStrategy(invokerList); } },
     ROUND_ROBIN { @Override MultiHostStrategy create(List<HttpInvoker> invokerList) { return new RoundRobinStrategy(invokerList); } },
-    RANDOM { @Override MultiHostStrategy create(List<HttpInvoker> invokerList) { return new RandomStrategy(invokerList); } };
+    RANDOM { @Override MultiHostStrategy create(List<HttpInvoker> invokerList) { return new RandomStrategy(invokerList); } },
+    LEAST_OUTSTANDING { @Override MultiHostStrategy create(List<HttpInvoker> invokerList) { return new LeastOutstandingStrategy(invokerList); } },
+    POWER_OF_TWO_CHOICES { @Override MultiHostStrategy create(List<HttpInvoker> invokerList) { return new PowerOfTwoChoicesStrategy(invokerList); } },
+    PEAK_EWMA { @Override MultiHostStrategy create(List<HttpInvoker> invokerList) { return new PeakEwmaStrategy(invokerList); } };
 
     //~ Methods ......................................................................................................................................
 
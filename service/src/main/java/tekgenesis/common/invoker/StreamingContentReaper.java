@@ -0,0 +1,97 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.logging.Logger;
+import tekgenesis.common.service.etl.StreamingContent;
+
+/**
+ * Safety net for {@link StreamingContent streaming results} dropped without being closed (nor
+ * fully read): once the content becomes unreachable its release action is run, so the response
+ * connection (and its host pool permit) is not held forever.
+ */
+class StreamingContentReaper {
+
+    //~ Constructors .................................................................................................................................
+
+    private StreamingContentReaper() {}
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Run given release action once the content is closed, or once it is garbage collected if it
+     * never is. The action runs at most once.
+     */
+    static void releaseOnClose(@NotNull StreamingContent content, @NotNull Runnable release) {
+        final ContentReference reference = new ContentReference(content, release);
+        references.add(reference);
+        content.onClose(reference::release);
+    }
+
+    private static void reap() {
+        while (true) {
+            try {
+                final ContentReference reference = (ContentReference) queue.remove();
+                logger.warning("Releasing response of streaming content garbage collected without being closed");
+                reference.release();
+            }
+            catch (final InterruptedException e) {
+                return;
+            }
+            catch (final RuntimeException e) {
+                logger.error("Failed releasing unclosed streaming content", e);
+            }
+        }
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final Logger logger = Logger.getLogger(StreamingContentReaper.class);
+
+    private static final ReferenceQueue<StreamingContent> queue      = new ReferenceQueue<>();
+    private static final Set<ContentReference>            references = ConcurrentHashMap.newKeySet();
+
+    static {
+        final Thread reaper = new Thread(StreamingContentReaper::reap, "StreamingContentReaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Reference to a streaming content, holding its release action (but not the content).
+     */
+    private static class ContentReference extends PhantomReference<StreamingContent> {
+        @NotNull private final Runnable action;
+        private final AtomicBoolean     released = new AtomicBoolean();
+
+        private ContentReference(@NotNull StreamingContent content, @NotNull Runnable action) {
+            super(content, queue);
+            this.action = action;
+        }
+
+        private void release() {
+            if (!released.compareAndSet(false, true)) return;
+            references.remove(this);
+            clear();
+            action.run();
+        }
+    }
+}  // end class StreamingContentReaper
@@ -0,0 +1,48 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+/**
+ * Token bucket budget: invocations earn a fraction of a token (up to a maximum amount of tokens),
+ * and each extra invocation (eg: a retry or a hedge) spends a whole one. Thread safe.
+ */
+class TokenBucket {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private double tokens;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a full bucket with the given amount of tokens. */
+    TokenBucket(double tokens) {
+        this.tokens = tokens;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Earn given fraction of a token, up to the maximum amount of tokens. */
+    synchronized void deposit(double amount, double max) {
+        tokens = Math.min(max, tokens + amount);
+    }
+
+    /** Returns true (spending a token) if a whole token is available. */
+    synchronized boolean tryAcquire() {
+        if (tokens < 1) return false;
+        tokens--;
+        return true;
+    }
+
+    /** Returns the available tokens. */
+    synchronized double getTokens() {
+        return tokens;
+    }
+}  // end class TokenBucket
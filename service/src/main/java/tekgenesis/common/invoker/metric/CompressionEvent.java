@@ -0,0 +1,37 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker.metric;
+
+import tekgenesis.common.metric.RollingNumberEventType;
+
+/**
+ * Content compression events that can be captured in the {@link tekgenesis.common.metric.RollingNumber}.
+ * Byte events accumulate amounts of bytes instead of occurrences.
+ */
+public enum CompressionEvent implements RollingNumberEventType {
+
+    //~ Enum constants ...............................................................................................................................
+
+    REQUEST_COMPRESSED, REQUEST_UNCOMPRESSED, REQUEST_BYTES, REQUEST_COMPRESSED_BYTES, RESPONSE_DECOMPRESSED, RESPONSE_BYTES,
+    RESPONSE_COMPRESSED_BYTES;
+
+    //~ Methods ......................................................................................................................................
+
+    /** True if event is maximum updated. */
+    @Override public boolean isMaximum() {
+        return false;
+    }
+
+    /** True if event is counter. */
+    @Override public boolean isCounter() {
+        return true;
+    }
+}
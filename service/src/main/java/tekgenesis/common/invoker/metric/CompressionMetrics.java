@@ -0,0 +1,110 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker.metric;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.metric.RollingNumber;
+
+import static tekgenesis.common.invoker.metric.CompressionEvent.*;
+
+/**
+ * Content compression statistics, recorded by {@link tekgenesis.common.invoker.ContentCompression
+ * compression modifiers}: compressed requests and decompressed responses, with their sizes.
+ */
+public class CompressionMetrics {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final RollingNumber<CompressionEvent> counter;
+    private final String                          name;
+
+    //~ Constructors .................................................................................................................................
+
+    CompressionMetrics(@NotNull String name, @NotNull InvokerMetricsProperties props) {
+        counter   = new RollingNumber<>(CompressionEvent.class, props.statisticalWindowTime, props.statisticalWindowBuckets);
+        this.name = name;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Called when a request content was compressed from the given amount of bytes to the other. */
+    public void markRequestCompressed(long bytes, long compressedBytes) {
+        counter.increment(REQUEST_COMPRESSED);
+        counter.add(REQUEST_BYTES, bytes);
+        counter.add(REQUEST_COMPRESSED_BYTES, compressedBytes);
+    }
+
+    /** Called when a request content was sent uncompressed (eg: below the size threshold). */
+    public void markRequestUncompressed() {
+        counter.increment(REQUEST_UNCOMPRESSED);
+    }
+
+    /** Called when a response content was decompressed from the given amount of bytes to the other. */
+    public void markResponseDecompressed(long compressedBytes, long bytes) {
+        counter.increment(RESPONSE_DECOMPRESSED);
+        counter.add(RESPONSE_COMPRESSED_BYTES, compressedBytes);
+        counter.add(RESPONSE_BYTES, bytes);
+    }
+
+    /** Metrics name. */
+    public String getName() {
+        return name;
+    }
+
+    /** Ratio of request bytes to compressed bytes in the statistical window (0 if none compressed). */
+    public double getRequestCompressionRatio() {
+        return ratio(REQUEST_BYTES, REQUEST_COMPRESSED_BYTES);
+    }
+
+    /** Ratio of response bytes to compressed bytes in the statistical window (0 if none decompressed). */
+    public double getResponseCompressionRatio() {
+        return ratio(RESPONSE_BYTES, RESPONSE_COMPRESSED_BYTES);
+    }
+
+    /** Number of events (or bytes, for byte events) in the statistical window. */
+    public long getRollingCount(@NotNull CompressionEvent event) {
+        return counter.getRollingSum(event);
+    }
+
+    private double ratio(@NotNull CompressionEvent bytes, @NotNull CompressionEvent compressed) {
+        final long c = counter.getRollingSum(compressed);
+        return c == 0 ? 0 : counter.getRollingSum(bytes) / (double) c;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** All registered instances of {@link CompressionMetrics}. */
+    public static Collection<CompressionMetrics> getInstances() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /** Get or create the {@link CompressionMetrics} instance with the given name. */
+    public static CompressionMetrics getOrCreateInstance(@NotNull String name) {
+        return metrics.computeIfAbsent(name, k -> new CompressionMetrics(name, properties));
+    }
+
+    /** Remove the {@link CompressionMetrics} instance with the given name. */
+    public static void remove(@NotNull String name) {
+        metrics.remove(name);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final ConcurrentHashMap<String, CompressionMetrics> metrics = new ConcurrentHashMap<>();
+
+    private static final InvokerMetricsProperties properties = Context.getEnvironment().get(InvokerMetricsProperties.class);
+}  // end class CompressionMetrics
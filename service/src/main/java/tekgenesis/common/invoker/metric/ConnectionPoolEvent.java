@@ -0,0 +1,49 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker.metric;
+
+import tekgenesis.common.metric.RollingNumberEventType;
+
+/**
+ * Connection pool events that can be captured in the {@link tekgenesis.common.metric.RollingNumber}.
+ */
+public enum ConnectionPoolEvent implements RollingNumberEventType {
+
+    //~ Enum constants ...............................................................................................................................
+
+    CREATED, REUSED, KEPT_ALIVE, DISCARDED, ACQUIRE_TIMEOUT, LEASED_MAX(false);
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final boolean counter;
+
+    //~ Constructors .................................................................................................................................
+
+    ConnectionPoolEvent() {
+        this(true);
+    }
+
+    ConnectionPoolEvent(boolean counter) {
+        this.counter = counter;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** True if event is maximum updated. */
+    @Override public boolean isMaximum() {
+        return !counter;
+    }
+
+    /** True if event is counter. */
+    @Override public boolean isCounter() {
+        return counter;
+    }
+}
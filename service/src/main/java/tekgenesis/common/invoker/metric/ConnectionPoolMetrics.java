@@ -0,0 +1,152 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker.metric;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.metric.RollingNumber;
+
+/**
+ * Connection pool statistics of a host, recorded by pooled {@link tekgenesis.common.invoker.HttpTransport transports}.
+ */
+public class ConnectionPoolMetrics {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final RollingNumber<ConnectionPoolEvent> counter;
+    private final String                             host;
+    private volatile int                             idle;
+    private volatile int                             leased;
+    private volatile int                             maxConnections;
+    private volatile int                             pending;
+    private final String                             transport;
+
+    //~ Constructors .................................................................................................................................
+
+    ConnectionPoolMetrics(@NotNull String transport, @NotNull String host, @NotNull InvokerMetricsProperties props) {
+        counter        = new RollingNumber<>(ConnectionPoolEvent.class, props.statisticalWindowTime, props.statisticalWindowBuckets);
+        this.transport = transport;
+        this.host      = host;
+        idle           = 0;
+        leased         = 0;
+        pending        = 0;
+        maxConnections = 0;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Called when a connection could not be acquired within the acquire timeout. */
+    public void markAcquireTimeout() {
+        counter.increment(ConnectionPoolEvent.ACQUIRE_TIMEOUT);
+    }
+
+    /** Called when a connection is closed instead of being kept alive. */
+    public void markDiscarded() {
+        counter.increment(ConnectionPoolEvent.DISCARDED);
+    }
+
+    /** Called when a connection is released and kept alive for reuse. */
+    public void markKeptAlive() {
+        counter.increment(ConnectionPoolEvent.KEPT_ALIVE);
+    }
+
+    /**
+     * Called when a connection is leased, reusing an idle one or creating a new one (by transports
+     * managing their own connections).
+     */
+    public void markLeased(boolean reused) {
+        counter.increment(reused ? ConnectionPoolEvent.REUSED : ConnectionPoolEvent.CREATED);
+    }
+
+    /** Update pool gauges. */
+    public void update(int leasedConnections, int pendingLeases, int idleConnections, int max) {
+        leased         = leasedConnections;
+        pending        = pendingLeases;
+        idle           = idleConnections;
+        maxConnections = max;
+        counter.updateRollingMax(ConnectionPoolEvent.LEASED_MAX, leasedConnections);
+    }
+
+    /** Pooled host (protocol, host and port). */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Connections released for reuse and not leased since (zero for transports whose idle
+     * connections are kept by the JDK).
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /** Connections currently in use. */
+    public int getLeased() {
+        return leased;
+    }
+
+    /** Maximum amount of concurrent connections. */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /** Leases waiting for a connection. */
+    public int getPending() {
+        return pending;
+    }
+
+    /** Number of events in the statistical window. */
+    public long getRollingCount(@NotNull ConnectionPoolEvent event) {
+        return counter.getRollingSum(event);
+    }
+
+    /** Maximum amount of leased connections in the statistical window. */
+    public long getRollingMaxLeased() {
+        return counter.getRollingMaxValue(ConnectionPoolEvent.LEASED_MAX);
+    }
+
+    /** Transport owning the pool. */
+    public String getTransport() {
+        return transport;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** All registered instances of {@link ConnectionPoolMetrics}. */
+    public static Collection<ConnectionPoolMetrics> getInstances() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /** Get or create the {@link ConnectionPoolMetrics} instance for a given transport and host. */
+    public static ConnectionPoolMetrics getOrCreateInstance(@NotNull String transport, @NotNull String host) {
+        return metrics.computeIfAbsent(key(transport, host), k -> new ConnectionPoolMetrics(transport, host, properties));
+    }
+
+    /** Remove the {@link ConnectionPoolMetrics} instance for a given transport and host. */
+    public static void remove(@NotNull String transport, @NotNull String host) {
+        metrics.remove(key(transport, host));
+    }
+
+    private static String key(@NotNull String transport, @NotNull String host) {
+        return transport + "/" + host;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final ConcurrentHashMap<String, ConnectionPoolMetrics> metrics = new ConcurrentHashMap<>();
+
+    private static final InvokerMetricsProperties properties = Context.getEnvironment().get(InvokerMetricsProperties.class);
+}  // end class ConnectionPoolMetrics
@@ -21,7 +21,7 @@ public enum InvocationEvent implements RollingNumberEventType {
 
     SUCCESS, FAILURE, TIMEOUT, SHORT_CIRCUITED, THREAD_POOL_REJECTED, SEMAPHORE_REJECTED, BAD_REQUEST, FALLBACK_SUCCESS, FALLBACK_FAILURE,
     FALLBACK_REJECTION, EXCEPTION_THROWN, EMIT, FALLBACK_EMIT, THREAD_EXECUTION, COLLAPSED, RESPONSE_FROM_CACHE, COLLAPSER_REQUEST_BATCHED,
-    COLLAPSER_BATCH, THREAD_MAX_ACTIVE(false), COMMAND_MAX_ACTIVE(false);
+    COLLAPSER_BATCH, HEDGED, HEDGE_WON, RETRY, RETRY_BUDGET_EXHAUSTED, THREAD_MAX_ACTIVE(false), COMMAND_MAX_ACTIVE(false);
 
     //~ Instance Fields ..............................................................................................................................
 
@@ -17,12 +17,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import tekgenesis.common.env.context.Context;
 import tekgenesis.common.invoker.HttpInvoker;
 import tekgenesis.common.logging.Logger;
 import tekgenesis.common.metric.RollingNumber;
-import tekgenesis.common.metric.RollingPercentile;
+import tekgenesis.common.metric.RollingHistogram;
 
 /**
  * Used by {@link HttpInvoker invokers} to record metrics.
@@ -39,9 +40,14 @@ public class InvocationMetrics {
     private volatile HealthCounts healthCountsSnapshot = null;
     private final String          key;
 
-    private final AtomicLong               lastHealthCountsSnapshot = new AtomicLong(System.currentTimeMillis());
-    private final RollingPercentile        percentileExecution;
-    private final RollingPercentile        percentileTotal;
+    private final AtomicLong lastHealthCountsSnapshot = new AtomicLong(System.currentTimeMillis());
+
+    /* Batch histograms are only created once a collapsed batch completes. */
+    @Nullable private volatile RollingHistogram percentileBatchSize = null;
+    @Nullable private volatile RollingHistogram percentileBatchTime = null;
+
+    private final RollingHistogram         percentileExecution;
+    private final RollingHistogram         percentileTotal;
     private final InvokerMetricsProperties props;
 
     //~ Constructors .................................................................................................................................
@@ -51,12 +57,33 @@ public class InvocationMetrics {
         this.key            = key;
         this.group          = group;
         this.props          = props;
-        percentileExecution = new RollingPercentile(props.percentileWindowTime, props.percentileWindowBuckets, props.percentileBucketSize);
-        percentileTotal     = new RollingPercentile(props.percentileWindowTime, props.percentileWindowBuckets, props.percentileBucketSize);
+        percentileExecution = newHistogram();
+        percentileTotal     = newHistogram();
     }
 
     //~ Methods ......................................................................................................................................
 
+    /**
+     * Called when a batch of collapsed invocations completes, with the amount of requests collapsed,
+     * the batch size (distinct requests sent) and the batch execution time.
+     */
+    public void addCollapsedBatch(int requests, int size, long duration) {
+        counter.add(InvocationEvent.COLLAPSED, requests);
+        RollingHistogram batchTime = percentileBatchTime;
+        if (batchTime == null) {
+            synchronized (this) {
+                if (percentileBatchTime == null) {
+                    percentileBatchSize = newHistogram();
+                    percentileBatchTime = newHistogram();
+                }
+                batchTime = percentileBatchTime;
+            }
+        }
+        final RollingHistogram batchSize = percentileBatchSize;
+        if (batchSize != null) batchSize.addValue(size);
+        batchTime.addValue((int) duration);
+    }
+
     /** Execution time of {@link tekgenesis.common.invoker.HttpInvokerImpl#execute}. */
     public void addInvocationExecutionTime(long duration) {
         percentileExecution.addValue((int) duration);
@@ -72,16 +99,87 @@ public class InvocationMetrics {
         counter.increment(InvocationEvent.FAILURE);
     }
 
+    /** Called when an invocation is hedged (sent to another host while waiting for the first). */
+    public void markHedged() {
+        counter.increment(InvocationEvent.HEDGED);
+    }
+
+    /** Called when a hedged invocation answers before the original one. */
+    public void markHedgeWon() {
+        counter.increment(InvocationEvent.HEDGE_WON);
+    }
+
+    /** Called when a failed invocation is retried (once its backoff delay elapses). */
+    public void markRetry() {
+        counter.increment(InvocationEvent.RETRY);
+    }
+
+    /** Called when a failed invocation is not retried because the host retry budget is spent. */
+    public void markRetryBudgetExhausted() {
+        counter.increment(InvocationEvent.RETRY_BUDGET_EXHAUSTED);
+    }
+
+    /** Called when an invocation is not executed because its circuit breaker is open. */
+    public void markShortCircuited() {
+        counter.increment(InvocationEvent.SHORT_CIRCUITED);
+    }
+
+    /** Called when an invocation response is shared from another execution (request cache hit). */
+    public void markResponseFromCache() {
+        counter.increment(InvocationEvent.RESPONSE_FROM_CACHE);
+    }
+
+    /** Called when an invocation is rejected by its semaphore (no permits available). */
+    public void markSemaphoreRejection() {
+        counter.increment(InvocationEvent.SEMAPHORE_REJECTED);
+    }
+
     /** Called when an invocation successfully completes. */
     public void markSuccess() {
         counter.increment(InvocationEvent.SUCCESS);
     }
 
+    /** Called when an invocation is rejected by its thread pool. */
+    public void markThreadPoolRejection() {
+        counter.increment(InvocationEvent.THREAD_POOL_REJECTED);
+    }
+
     /** Called when an invocation times out (fails to complete). */
     public void markTimeout() {
         counter.increment(InvocationEvent.TIMEOUT);
     }
 
+    /** Clears rolling counters and health snapshot (eg: when a circuit breaker closes). */
+    public void resetCounter() {
+        counter.reset();
+        lastHealthCountsSnapshot.set(System.currentTimeMillis());
+        healthCountsSnapshot = null;
+    }
+
+    /** The mean (average) size of collapsed batches. */
+    public int getBatchSizeMean() {
+        final RollingHistogram h = percentileBatchSize;
+        return h == null ? 0 : h.getMean();
+    }
+
+    /** Retrieve the size of collapsed batches at a given percentile. */
+    public int getBatchSizePercentile(double percentile) {
+        final RollingHistogram h = percentileBatchSize;
+        return h == null ? 0 : h.getPercentile(percentile);
+    }
+
+    /** The mean (average) execution time (in milliseconds) of collapsed batches. */
+    public int getBatchTimeMean() {
+        final RollingHistogram h = percentileBatchTime;
+        return h == null ? 0 : h.getMean();
+    }
+
+    /** Retrieve the execution time (in milliseconds) of collapsed batches at a given percentile. */
+    public int getBatchTimePercentile(double percentile) {
+        final RollingHistogram h = percentileBatchTime;
+        return h == null ? 0 : h.getPercentile(percentile);
+    }
+
     /** Group key these metrics represent. */
     public String getCommandGroup() {
         return group;
@@ -201,26 +299,8 @@ public class InvocationMetrics {
         counter.increment(InvocationEvent.FALLBACK_SUCCESS);
     }
 
-    void markResponseFromCache() {
-        counter.increment(InvocationEvent.RESPONSE_FROM_CACHE);
-    }
-
-    void markSemaphoreRejection() {
-        counter.increment(InvocationEvent.SEMAPHORE_REJECTED);
-    }
-
-    void markShortCircuited() {
-        counter.increment(InvocationEvent.SHORT_CIRCUITED);
-    }
-
-    void markThreadPoolRejection() {
-        counter.increment(InvocationEvent.THREAD_POOL_REJECTED);
-    }
-
-    void resetCounter() {
-        counter.reset();
-        lastHealthCountsSnapshot.set(System.currentTimeMillis());
-        healthCountsSnapshot = null;
+    private RollingHistogram newHistogram() {
+        return new RollingHistogram(props.percentileWindowTime, props.percentileWindowBuckets);
     }
 
     //~ Methods ......................................................................................................................................
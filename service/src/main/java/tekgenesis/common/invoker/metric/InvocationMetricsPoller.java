@@ -139,6 +139,8 @@ public class InvocationMetricsPoller {
                     final String jsonString = getCommandJson(metrics);
                     output.handleJsonMetric(jsonString);
                 }
+                for (final ConnectionPoolMetrics pool : ConnectionPoolMetrics.getInstances())
+                    output.handleJsonMetric(getConnectionPoolJson(pool));
             }
             catch (final Exception e) {
                 logger.warning("Failed to output metrics as JSON", e);
@@ -175,7 +177,11 @@ public class InvocationMetricsPoller {
             json.writeNumberField("rollingCountFallbackFailure", metrics.getRollingCount(InvocationEvent.FALLBACK_FAILURE));
             json.writeNumberField("rollingCountFallbackRejection", metrics.getRollingCount(InvocationEvent.FALLBACK_REJECTION));
             json.writeNumberField("rollingCountFallbackSuccess", metrics.getRollingCount(InvocationEvent.FALLBACK_SUCCESS));
+            json.writeNumberField("rollingCountHedged", metrics.getRollingCount(InvocationEvent.HEDGED));
+            json.writeNumberField("rollingCountHedgeWon", metrics.getRollingCount(InvocationEvent.HEDGE_WON));
             json.writeNumberField("rollingCountResponsesFromCache", metrics.getRollingCount(InvocationEvent.RESPONSE_FROM_CACHE));
+            json.writeNumberField("rollingCountRetry", metrics.getRollingCount(InvocationEvent.RETRY));
+            json.writeNumberField("rollingCountRetryBudgetExhausted", metrics.getRollingCount(InvocationEvent.RETRY_BUDGET_EXHAUSTED));
             json.writeNumberField("rollingCountSemaphoreRejected", metrics.getRollingCount(InvocationEvent.SEMAPHORE_REJECTED));
             json.writeNumberField("rollingCountShortCircuited", metrics.getRollingCount(InvocationEvent.SHORT_CIRCUITED));
             json.writeNumberField("rollingCountSuccess", metrics.getRollingCount(InvocationEvent.SUCCESS));
@@ -213,6 +219,25 @@ public class InvocationMetricsPoller {
             json.writeNumberField("100", metrics.getTotalTimePercentile(100));
             json.writeEndObject();
 
+            // Collapsed batches size and latency
+            json.writeNumberField("batchSize_mean", metrics.getBatchSizeMean());
+            json.writeObjectFieldStart("batchSize");
+            json.writeNumberField("25", metrics.getBatchSizePercentile(25));
+            json.writeNumberField("50", metrics.getBatchSizePercentile(50));
+            json.writeNumberField("75", metrics.getBatchSizePercentile(75));
+            json.writeNumberField("90", metrics.getBatchSizePercentile(90));
+            json.writeNumberField("99", metrics.getBatchSizePercentile(99));
+            json.writeNumberField("100", metrics.getBatchSizePercentile(100));
+            json.writeEndObject();
+
+            json.writeNumberField("latencyBatch_mean", metrics.getBatchTimeMean());
+            json.writeObjectFieldStart("latencyBatch");
+            json.writeNumberField("50", metrics.getBatchTimePercentile(50));
+            json.writeNumberField("90", metrics.getBatchTimePercentile(90));
+            json.writeNumberField("99", metrics.getBatchTimePercentile(99));
+            json.writeNumberField("100", metrics.getBatchTimePercentile(100));
+            json.writeEndObject();
+
             // property values for reporting what is actually seen by the command rather than what was set somewhere
             final InvokerMetricsProperties props = metrics.getProperties();
 
@@ -245,6 +270,39 @@ public class InvocationMetricsPoller {
 
             return jsonString.getBuffer().toString();
         }  // end method getCommandJson
+
+        @SuppressWarnings("DuplicateStringLiteralInspection")
+        private String getConnectionPoolJson(@NotNull ConnectionPoolMetrics pool)
+            throws IOException
+        {
+            final StringWriter  jsonString = new StringWriter();
+            final JsonGenerator json       = factory.createGenerator(jsonString);
+
+            json.writeStartObject();
+            json.writeStringField("type", "HttpConnectionPool");
+            json.writeStringField("name", pool.getHost());
+            json.writeStringField("transport", pool.getTransport());
+            json.writeNumberField("currentTime", System.currentTimeMillis());
+
+            json.writeNumberField("currentLeasedCount", pool.getLeased());
+            json.writeNumberField("currentIdleCount", pool.getIdle());
+            json.writeNumberField("currentPendingCount", pool.getPending());
+            json.writeNumberField("currentMaxConnections", pool.getMaxConnections());
+
+            json.writeNumberField("rollingCountCreated", pool.getRollingCount(ConnectionPoolEvent.CREATED));
+            json.writeNumberField("rollingCountReused", pool.getRollingCount(ConnectionPoolEvent.REUSED));
+            json.writeNumberField("rollingCountKeptAlive", pool.getRollingCount(ConnectionPoolEvent.KEPT_ALIVE));
+            json.writeNumberField("rollingCountDiscarded", pool.getRollingCount(ConnectionPoolEvent.DISCARDED));
+            json.writeNumberField("rollingCountAcquireTimeout", pool.getRollingCount(ConnectionPoolEvent.ACQUIRE_TIMEOUT));
+            json.writeNumberField("rollingMaxLeasedCount", pool.getRollingMaxLeased());
+
+            json.writeNumberField("reportingHosts", 1);
+
+            json.writeEndObject();
+            json.close();
+
+            return jsonString.getBuffer().toString();
+        }
     }  // end class MetricsPoller
 
     private class MetricsPollerThreadFactory implements ThreadFactory {
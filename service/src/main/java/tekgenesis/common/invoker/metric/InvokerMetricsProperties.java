@@ -95,7 +95,7 @@ public class InvokerMetricsProperties implements Properties {
 
     /**
      * How many values will be stored in each percentile bucket. Default to 100 values max per
-     * bucket.
+     * bucket. Unused since percentiles are counted in histograms (accounting for every value).
      */
     public Integer percentileBucketSize = 100;
 
@@ -0,0 +1,538 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker.metric;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.command.CommandThreadPoolMetrics;
+import tekgenesis.common.metric.RollingNumberEventType;
+import tekgenesis.common.util.LruCache;
+
+/**
+ * Pull based exporter rendering all {@link InvocationMetrics invocation}, {@link ConnectionPoolMetrics
+ * connection pool}, {@link CompressionMetrics compression} and {@link CommandThreadPoolMetrics
+ * command thread pool} metrics, plus the statistics of registered {@link LruCache caches}, in
+ * OpenMetrics text format. Samples are encoded straight into the given stream (no intermediate
+ * strings are built), so it may be served on each scrape. Rolling window counts are exposed as
+ * gauges, monotonic counts as counters and latencies as summaries. Thread safe.
+ */
+public class OpenMetricsWriter {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final Map<String, LruCache<?, ?>> caches = new ConcurrentSkipListMap<>();
+
+    //~ Methods ......................................................................................................................................
+
+    /** Stop exporting the statistics of the cache registered with the given name. */
+    public OpenMetricsWriter removeCache(@NotNull String name) {
+        caches.remove(name);
+        return this;
+    }
+
+    /** Export the statistics of the given cache, labeled with the given name. */
+    public OpenMetricsWriter withCache(@NotNull String name, @NotNull LruCache<?, ?> cache) {
+        caches.put(name, cache);
+        return this;
+    }
+
+    /** Write all metrics to the given stream, terminated by the EOF marker. Stream is not closed. */
+    public void write(@NotNull OutputStream out)
+        throws IOException
+    {
+        final Encoder e = new Encoder(out);
+        writeInvocations(e);
+        writeConnectionPools(e);
+        writeCompressions(e);
+        writeCommandPools(e);
+        writeCaches(e);
+        e.ascii("# EOF\n");
+        e.flush();
+    }
+
+    private void writeCaches(@NotNull Encoder e)
+        throws IOException
+    {
+        final Iterable<Map.Entry<String, LruCache<?, ?>>> entries = caches.entrySet();
+        final Labels<Map.Entry<String, LruCache<?, ?>>>   labels  = (encoder, entry) -> encoder.label("cache", entry.getKey());
+
+        gauge(e, "cache_size", "Entries in the cache.", entries, labels, entry -> entry.getValue().size());
+        gauge(e, "cache_weight", "Weight of the entries in the cache.", entries, labels, entry -> entry.getValue().getWeight());
+        gauge(e, "cache_max_weight", "Maximum weight of the cache.", entries, labels, entry -> entry.getValue().getMaxWeight());
+        counter(e, "cache_hits", "Lookups returning a cached value.", entries, labels, entry -> entry.getValue().hitCount());
+        counter(e, "cache_misses", "Lookups not finding a cached value.", entries, labels, entry -> entry.getValue().missCount());
+        counter(e, "cache_loads", "Values loaded on a miss.", entries, labels, entry -> entry.getValue().loadedCount());
+        counter(e, "cache_load_failures", "Loads failed with an exception.", entries, labels, entry -> entry.getValue().loadFailureCount());
+        counter(e, "cache_load_time_nanoseconds", "Time spent loading values.", entries, labels, entry -> entry.getValue().totalLoadTime());
+        counter(e, "cache_puts", "Values put on the cache.", entries, labels, entry -> entry.getValue().putCount());
+        counter(e, "cache_evictions", "Values evicted from the cache.", entries, labels, entry -> entry.getValue().evictionCount());
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static <T> void counter(@NotNull Encoder e, @NotNull String name, @NotNull String help, @NotNull Iterable<T> instances,
+                                    @NotNull Labels<T> labels, @NotNull ToLongFunction<T> value)
+        throws IOException
+    {
+        e.family(name, COUNTER, help);
+        for (final T instance : instances) {
+            e.sample(name, TOTAL);
+            labels.write(e, instance);
+            e.value(value.applyAsLong(instance));
+        }
+    }
+
+    /** Write rolling counts of all counter events as a gauge labeled by event. */
+    private static <T, E extends Enum<E> & RollingNumberEventType> void events(@NotNull Encoder e, @NotNull String name,
+                                                                                     @NotNull String help, @NotNull Iterable<T> instances,
+                                                                                     @NotNull Labels<T> labels, @NotNull E[] events,
+                                                                                     @NotNull String[] eventLabels,
+                                                                                     @NotNull RollingCount<T, E> count)
+        throws IOException
+    {
+        e.family(name, GAUGE, help);
+        for (final T instance : instances) {
+            for (final E event : events) {
+                if (!event.isCounter()) continue;
+                e.sample(name, "");
+                labels.write(e, instance);
+                e.label("event", eventLabels[event.ordinal()]);
+                e.value(count.of(instance, event));
+            }
+        }
+    }
+
+    private static <T> void gauge(@NotNull Encoder e, @NotNull String name, @NotNull String help, @NotNull Iterable<T> instances,
+                                  @NotNull Labels<T> labels, @NotNull ToLongFunction<T> value)
+        throws IOException
+    {
+        e.family(name, GAUGE, help);
+        for (final T instance : instances) {
+            e.sample(name, "");
+            labels.write(e, instance);
+            e.value(value.applyAsLong(instance));
+        }
+    }
+
+    private static <T> void gaugeDouble(@NotNull Encoder e, @NotNull String name, @NotNull String help, @NotNull Iterable<T> instances,
+                                        @NotNull Labels<T> labels, @NotNull ToDoubleFunction<T> value)
+        throws IOException
+    {
+        e.family(name, GAUGE, help);
+        for (final T instance : instances) {
+            e.sample(name, "");
+            labels.write(e, instance);
+            e.value(value.applyAsDouble(instance));
+        }
+    }
+
+    /** Lower case enum names, indexed by ordinal, used as label values. */
+    private static String[] names(@NotNull Enum<?>[] values) {
+        final String[] result = new String[values.length];
+        for (final Enum<?> value : values)
+            result[value.ordinal()] = value.name().toLowerCase();
+        return result;
+    }
+
+    private static void summary(@NotNull Encoder e, @NotNull String name, @NotNull String help, @NotNull Iterable<InvocationMetrics> instances,
+                                @NotNull Percentile percentile)
+        throws IOException
+    {
+        e.family(name, SUMMARY, help);
+        for (final InvocationMetrics metrics : instances) {
+            for (int i = 0; i < QUANTILES.length; i++) {
+                e.sample(name, "");
+                INVOCATION_LABELS.write(e, metrics);
+                e.label("quantile", QUANTILE_LABELS[i]);
+                e.value(percentile.of(metrics, QUANTILES[i]));
+            }
+        }
+    }
+
+    private static void writeCommandPools(@NotNull Encoder e)
+        throws IOException
+    {
+        final Iterable<CommandThreadPoolMetrics> pools  = CommandThreadPoolMetrics.getInstances();
+        final Labels<CommandThreadPoolMetrics>   labels = (encoder, pool) -> encoder.label("pool", pool.getKey());
+
+        gauge(e, "command_pool_active_threads", "Threads actively executing commands.", pools, labels, CommandThreadPoolMetrics::getActiveCount);
+        gauge(e, "command_pool_threads", "Threads in the pool.", pools, labels, CommandThreadPoolMetrics::getPoolSize);
+        gauge(e, "command_pool_queue_depth", "Executions waiting on the pool queue.", pools, labels, CommandThreadPoolMetrics::getQueueSize);
+        counter(e, "command_pool_completed", "Executions completed by the pool.", pools, labels, CommandThreadPoolMetrics::getCompletedCount);
+        counter(e, "command_pool_rejections", "Executions rejected by the pool.", pools, labels, CommandThreadPoolMetrics::getRejectedCount);
+    }
+
+    private static void writeCompressions(@NotNull Encoder e)
+        throws IOException
+    {
+        final Iterable<CompressionMetrics> compressions = CompressionMetrics.getInstances();
+        final Labels<CompressionMetrics>   labels       = (encoder, metrics) -> encoder.label("name", metrics.getName());
+
+        events(e,
+            "invoker_compression_events",
+            "Compression events (or bytes) in the rolling window.",
+            compressions,
+            labels,
+            CompressionEvent.values(),
+            COMPRESSION_EVENTS,
+            CompressionMetrics::getRollingCount);
+        gaugeDouble(e,
+            "invoker_compression_request_ratio",
+            "Uncompressed to compressed request bytes ratio in the rolling window.",
+            compressions,
+            labels,
+            CompressionMetrics::getRequestCompressionRatio);
+        gaugeDouble(e,
+            "invoker_compression_response_ratio",
+            "Uncompressed to compressed response bytes ratio in the rolling window.",
+            compressions,
+            labels,
+            CompressionMetrics::getResponseCompressionRatio);
+    }
+
+    private static void writeConnectionPools(@NotNull Encoder e)
+        throws IOException
+    {
+        final Iterable<ConnectionPoolMetrics> pools  = ConnectionPoolMetrics.getInstances();
+        final Labels<ConnectionPoolMetrics>   labels = (encoder, pool) -> encoder.label("transport", pool.getTransport()).label("host", pool.getHost());
+
+        gauge(e, "invoker_connection_pool_leased", "Connections currently leased.", pools, labels, ConnectionPoolMetrics::getLeased);
+        gauge(e, "invoker_connection_pool_idle", "Idle connections kept alive.", pools, labels, ConnectionPoolMetrics::getIdle);
+        gauge(e, "invoker_connection_pool_pending", "Leases waiting for a connection.", pools, labels, ConnectionPoolMetrics::getPending);
+        gauge(e, "invoker_connection_pool_max", "Maximum connections per host.", pools, labels, ConnectionPoolMetrics::getMaxConnections);
+        gauge(e,
+            "invoker_connection_pool_leased_max",
+            "Maximum leased connections in the rolling window.",
+            pools,
+            labels,
+            ConnectionPoolMetrics::getRollingMaxLeased);
+        events(e,
+            "invoker_connection_pool_events",
+            "Connection pool events in the rolling window.",
+            pools,
+            labels,
+            ConnectionPoolEvent.values(),
+            CONNECTION_POOL_EVENTS,
+            ConnectionPoolMetrics::getRollingCount);
+    }
+
+    private static void writeInvocations(@NotNull Encoder e)
+        throws IOException
+    {
+        final Iterable<InvocationMetrics> invocations = InvocationMetrics.getInstances();
+
+        events(e,
+            "invoker_invocation_events",
+            "Invocation events in the rolling window.",
+            invocations,
+            INVOCATION_LABELS,
+            InvocationEvent.values(),
+            INVOCATION_EVENTS,
+            InvocationMetrics::getRollingCount);
+        gauge(e,
+            "invoker_invocation_concurrent_executions",
+            "Invocations currently executing.",
+            invocations,
+            INVOCATION_LABELS,
+            InvocationMetrics::getCurrentConcurrentExecutionCount);
+        gauge(e,
+            "invoker_invocation_concurrent_executions_max",
+            "Maximum concurrent invocations in the rolling window.",
+            invocations,
+            INVOCATION_LABELS,
+            InvocationMetrics::getRollingMaxConcurrentExecutions);
+        gauge(e,
+            "invoker_invocation_error_percentage",
+            "Percentage of failed invocations in the health window.",
+            invocations,
+            INVOCATION_LABELS,
+            metrics -> metrics.getHealthCounts().getErrorPercentage());
+        summary(e,
+            "invoker_invocation_execution_latency_milliseconds",
+            "Invocation execution latency percentiles in the rolling window.",
+            invocations,
+            InvocationMetrics::getExecutionTimePercentile);
+        gauge(e,
+            "invoker_invocation_execution_mean_latency_milliseconds",
+            "Mean invocation execution latency in the rolling window.",
+            invocations,
+            INVOCATION_LABELS,
+            InvocationMetrics::getExecutionTimeMean);
+        summary(e,
+            "invoker_invocation_total_latency_milliseconds",
+            "Invocation total (user thread) latency percentiles in the rolling window.",
+            invocations,
+            InvocationMetrics::getTotalTimePercentile);
+        gauge(e,
+            "invoker_invocation_total_mean_latency_milliseconds",
+            "Mean invocation total (user thread) latency in the rolling window.",
+            invocations,
+            INVOCATION_LABELS,
+            InvocationMetrics::getTotalTimeMean);
+        summary(e,
+            "invoker_invocation_batch_size",
+            "Collapsed batch size percentiles in the rolling window.",
+            invocations,
+            InvocationMetrics::getBatchSizePercentile);
+        summary(e,
+            "invoker_invocation_batch_latency_milliseconds",
+            "Collapsed batch latency percentiles in the rolling window.",
+            invocations,
+            InvocationMetrics::getBatchTimePercentile);
+    }  // end method writeInvocations
+
+    //~ Static Fields ................................................................................................................................
+
+    /** Content type of the exported metrics. */
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final String COUNTER = "counter";
+    private static final String GAUGE   = "gauge";
+    private static final String SUMMARY = "summary";
+    private static final String TOTAL   = "_total";
+
+    private static final String[] COMPRESSION_EVENTS     = names(CompressionEvent.values());
+    private static final String[] CONNECTION_POOL_EVENTS = names(ConnectionPoolEvent.values());
+    private static final String[] INVOCATION_EVENTS      = names(InvocationEvent.values());
+
+    private static final double[] QUANTILES       = { 50, 90, 99, 99.5, 100 };
+    private static final String[] QUANTILE_LABELS = { "0.5", "0.9", "0.99", "0.995", "1.0" };
+
+    private static final Labels<InvocationMetrics> INVOCATION_LABELS = (encoder, metrics) ->
+                                                                           encoder.label("command", metrics.getCommandKey())
+                                                                                  .label("group", metrics.getCommandGroup());
+
+    private static final int BUFFER_SIZE  = 8192;
+    private static final int DIGITS       = 20;
+    private static final int SCALE        = 1000000;
+    private static final int SCALE_DIGITS = 6;
+
+    //~ Inner Interfaces .............................................................................................................................
+
+    /** Writes the labels identifying an instance. */
+    private interface Labels<T> {
+        /** Write labels of given instance. */
+        void write(@NotNull Encoder e, @NotNull T instance)
+            throws IOException;
+    }
+
+    /** Percentile of an invocation metric. */
+    private interface Percentile {
+        /** Returns the given percentile of the metrics. */
+        int of(@NotNull InvocationMetrics metrics, double percentile);
+    }
+
+    /** Rolling count of an event. */
+    private interface RollingCount<T, E> {
+        /** Returns the rolling count of the given event. */
+        long of(@NotNull T instance, @NotNull E event);
+    }
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Buffered encoder of the text format: ascii names, escaped utf-8 label values and numbers
+     * are written straight into a byte buffer, flushed to the underlying stream once full.
+     */
+    private static class Encoder {
+        private final byte[]       buffer;
+        private final byte[]       digits;
+        private boolean            labels;
+        @NotNull private final OutputStream out;
+        private int                position;
+
+        private Encoder(@NotNull OutputStream out) {
+            this.out = out;
+            buffer   = new byte[BUFFER_SIZE];
+            digits   = new byte[DIGITS];
+            position = 0;
+            labels   = false;
+        }
+
+        /** Write family metadata. */
+        private void family(@NotNull String name, @NotNull String type, @NotNull String help)
+            throws IOException
+        {
+            ascii("# TYPE ");
+            ascii(name);
+            write(' ');
+            ascii(type);
+            ascii("\n# HELP ");
+            ascii(name);
+            write(' ');
+            ascii(help);
+            write('\n');
+        }
+
+        private void flush()
+            throws IOException
+        {
+            out.write(buffer, 0, position);
+            position = 0;
+            out.flush();
+        }
+
+        /** Write label with given value (escaped). */
+        private Encoder label(@NotNull String name, @NotNull String value)
+            throws IOException
+        {
+            write(labels ? ',' : '{');
+            labels = true;
+            ascii(name);
+            write('=');
+            write('"');
+            escaped(value);
+            write('"');
+            return this;
+        }
+
+        /** Start a sample of the given metric name and suffix. */
+        private void sample(@NotNull String name, @NotNull String suffix)
+            throws IOException
+        {
+            ascii(name);
+            ascii(suffix);
+            labels = false;
+        }
+
+        /** End sample with given value. */
+        private void value(long value)
+            throws IOException
+        {
+            endLabels();
+            number(value);
+            write('\n');
+        }
+
+        /** End sample with given value. */
+        private void value(double value)
+            throws IOException
+        {
+            endLabels();
+            if (Double.isNaN(value)) ascii("NaN");
+            else if (Double.isInfinite(value)) ascii(value > 0 ? "+Inf" : "-Inf");
+            else if (Math.abs(value) >= Long.MAX_VALUE / SCALE) number(Math.round(value));
+            else {
+                final long scaled = Math.round(Math.abs(value) * SCALE);
+                if (value < 0 && scaled != 0) write('-');
+                number(scaled / SCALE);
+                long fraction = scaled % SCALE;
+                if (fraction != 0) {
+                    write('.');
+                    int length = SCALE_DIGITS;
+                    while (fraction % 10 == 0) {
+                        fraction /= 10;
+                        length--;
+                    }
+                    for (long f = fraction; f > 0; f /= 10)
+                        length--;
+                    for (int i = 0; i < length; i++)
+                        write('0');
+                    number(fraction);
+                }
+            }
+            write('\n');
+        }
+
+        /** Write a string known to be ascii only. */
+        private void ascii(@NotNull String s)
+            throws IOException
+        {
+            for (int i = 0; i < s.length(); i++)
+                write(s.charAt(i));
+        }
+
+        private void endLabels()
+            throws IOException
+        {
+            if (labels) write('}');
+            labels = false;
+            write(' ');
+        }
+
+        /** Write label value as utf-8, escaping backslashes, double quotes and line feeds. */
+        private void escaped(@NotNull String s)
+            throws IOException
+        {
+            final int length = s.length();
+            for (int i = 0; i < length; i++) {
+                final char c = s.charAt(i);
+                if (c == '\\' || c == '"') {
+                    write('\\');
+                    write(c);
+                }
+                else if (c == '\n') {
+                    write('\\');
+                    write('n');
+                }
+                else if (c < 0x80) write(c);
+                else if (c < 0x800) {
+                    write(0xC0 | c >> 6);
+                    write(0x80 | c & 0x3F);
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, s.charAt(++i));
+                    write(0xF0 | cp >> 18);
+                    write(0x80 | cp >> 12 & 0x3F);
+                    write(0x80 | cp >> 6 & 0x3F);
+                    write(0x80 | cp & 0x3F);
+                }
+                else if (Character.isSurrogate(c)) write('?');
+                else {
+                    write(0xE0 | c >> 12);
+                    write(0x80 | c >> 6 & 0x3F);
+                    write(0x80 | c & 0x3F);
+                }
+            }
+        }  // end method escaped
+
+        /** Write decimal digits of the given number. */
+        private void number(long value)
+            throws IOException
+        {
+            // Digits are computed over the negative value to support Long.MIN_VALUE
+            long n = value;
+            if (n < 0) write('-');
+            else n = -n;
+            int i = DIGITS;
+            do {
+                digits[--i] = (byte) ('0' - n % 10);
+                n /= 10;
+            }
+            while (n != 0);
+            final int length = DIGITS - i;
+            if (position + length > buffer.length) flushBuffer();
+            System.arraycopy(digits, i, buffer, position, length);
+            position += length;
+        }
+
+        private void write(int b)
+            throws IOException
+        {
+            if (position == buffer.length) flushBuffer();
+            buffer[position++] = (byte) b;
+        }
+
+        private void flushBuffer()
+            throws IOException
+        {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }  // end class Encoder
+}  // end class OpenMetricsWriter
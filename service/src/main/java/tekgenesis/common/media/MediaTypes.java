@@ -11,8 +11,10 @@
 package tekgenesis.common.media;
 
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import tekgenesis.common.collections.ImmutableList;
 import tekgenesis.common.core.Strings;
@@ -70,7 +72,8 @@ class MediaTypes {
     }  // end method includes
 
     /**
-     * Parse the given String into a single {@link MediaType}.
+     * Parse the given String into a single {@link MediaType}. Parsed media types (whose parameters
+     * are unmodifiable) are interned, so repeated headers are parsed once.
      *
      * @param   mime  the string to parse
      *
@@ -79,6 +82,21 @@ class MediaTypes {
      * @throws  InvalidMediaTypeException  if the string cannot be parsed
      */
     static MediaType parseMediaType(String mime) {
+        final MediaType interned = isEmpty(mime) ? null : parsed.get(mime);
+        if (interned != null) return interned;
+
+        final MediaType result = parse(mime);
+        // Parameters (eg: multipart boundaries) may make distinct media types unbounded
+        if (parsed.size() >= MAX_PARSED) parsed.clear();
+        parsed.put(mime, result);
+        return result;
+    }
+
+    private static InvalidMediaTypeException error(String mime, String message) {
+        return new InvalidMediaTypeException(mime, message);
+    }
+
+    private static MediaType parse(String mime) {
         if (isEmpty(mime)) throw error(mime, "'mime' must not be empty");
 
         final ImmutableList<String> parts = Strings.split(mime, ';');
@@ -111,7 +129,7 @@ class MediaTypes {
         try {
             final Mime m = Mime.fromMimeString(type + "/" + subtype);
             if (m == null) throw error(mime, "undefined Mime for '" + type + "/" + subtype + "'");
-            return parameters != null ? new MediaType(m, parameters) : new MediaType(m);
+            return parameters != null ? new MediaType(m, Collections.unmodifiableMap(parameters)) : new MediaType(m);
         }
         catch (final UnsupportedCharsetException ex) {
             throw error(mime, "unsupported charset '" + ex.getCharsetName() + "'");
@@ -119,9 +137,11 @@ class MediaTypes {
         catch (final IllegalArgumentException ex) {
             throw error(mime, ex.getMessage());
         }
-    }  // end method parseMediaType
+    }  // end method parse
 
-    private static InvalidMediaTypeException error(String mime, String message) {
-        return new InvalidMediaTypeException(mime, message);
-    }
+    //~ Static Fields ................................................................................................................................
+
+    private static final int MAX_PARSED = 256;
+
+    private static final ConcurrentHashMap<String, MediaType> parsed = new ConcurrentHashMap<>();
 }
@@ -11,7 +11,9 @@
 package tekgenesis.common.service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.nio.channels.ReadableByteChannel;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -19,10 +21,13 @@ import org.jetbrains.annotations.Nullable;
 import tekgenesis.common.logging.Logger;
 import tekgenesis.common.media.MediaType;
 import tekgenesis.common.service.etl.MessageConverter;
+import tekgenesis.common.service.etl.MessageConverterResolver;
+import tekgenesis.common.service.etl.StreamingContent;
 import tekgenesis.common.service.etl.StringMessageConverter;
 import tekgenesis.common.service.exception.MessageConversionException;
 
 import static tekgenesis.common.Predefined.cast;
+import static tekgenesis.common.logging.Logger.Level.DEBUG;
 
 /**
  * Interface for reading specified type object from inbound message.
@@ -74,6 +79,11 @@ public class InboundMessageReader<T> {
         }
     }
 
+    /** Returns true if the type is read as {@link StreamingContent streaming content} of the message. */
+    public boolean isStreaming() {
+        return StreamingContent.class.isAssignableFrom(type) || InputStream.class.equals(type) || ReadableByteChannel.class.equals(type);
+    }
+
     /** Set reader default content type. */
     public void setDefaultContentType(@Nullable MediaType contentType) {
         defaultContentType = contentType;
@@ -90,16 +100,21 @@ public class InboundMessageReader<T> {
     }
 
     private void log(@Nullable MediaType contentType, MessageConverter<?> messageConverter) {
-        logger.debug("Reading '" + type.getName() + "' as '" + contentType + "' using '" + messageConverter + "'");
+        if (logger.isLoggable(DEBUG)) logger.debug("Reading '" + type.getName() + "' as '" + contentType + "' using '" + messageConverter + "'");
     }
 
     @Nullable private MediaType getContentType(@NotNull final InboundMessage message) {
         final MediaType contentType = message.getHeaders().getContentType();
-        if (contentType == null) logger.debug("No Content-Type header found, reading message as " + defaultContentType);
+        if (contentType == null && logger.isLoggable(DEBUG)) logger.debug("No Content-Type header found, reading message as " + defaultContentType);
         return contentType != null ? contentType : defaultContentType;
     }
 
     @Nullable private MessageConverter<T> getSuitableConverter(Iterable<MessageConverter<?>> converters, @Nullable MediaType contentType) {
+        if (converters instanceof MessageConverterResolver) {
+            final MessageConverter<T> converter = ((MessageConverterResolver) converters).reader(type, genericType, contentType);
+            if (converter != null) log(contentType, converter);
+            return converter;
+        }
         for (final MessageConverter<?> converter : converters) {
             if (converter.canRead(type, genericType, contentType)) {
                 log(contentType, converter);
@@ -25,4 +25,9 @@ public enum Method {
     public boolean allowsMessageBody() {
         return this == POST || this == PUT || this == PATCH;
     }
+
+    /** Returns true if repeating the request has the same effect as sending it once. */
+    public boolean isIdempotent() {
+        return this != POST && this != PATCH;
+    }
 }
@@ -18,6 +18,7 @@ import org.jetbrains.annotations.Nullable;
 import tekgenesis.common.logging.Logger;
 import tekgenesis.common.media.MediaType;
 import tekgenesis.common.service.etl.MessageConverter;
+import tekgenesis.common.service.etl.MessageConverterResolver;
 
 import static tekgenesis.common.Predefined.cast;
 import static tekgenesis.common.logging.Logger.Level.DEBUG;
@@ -39,15 +40,13 @@ public class OutboundMessageWriter {
     {
         final Class<?>  payloadType = payload.getClass();
         final MediaType contentType = getContentType(message);
-        for (final MessageConverter<?> messageConverter : converters) {
-            if (messageConverter.canWrite(payloadType, payloadType, contentType)) {
-                log(contentType, messageConverter, payload);
-                final MessageConverter<Object> typedConverter = cast(messageConverter);
-                typedConverter.write(payload, contentType, message.getHeaders());
-                // Getting output stream from outbound message will automatically write headers
-                typedConverter.write(payload, contentType, message.getContent());
-                return;
-            }
+        final MessageConverter<Object> converter = getSuitableConverter(converters, payloadType, contentType);
+        if (converter != null) {
+            log(contentType, converter, payload);
+            converter.write(payload, contentType, message.getHeaders());
+            // Getting output stream from outbound message will automatically write headers
+            converter.write(payload, contentType, message.getContent());
+            return;
         }
         String msg = "Could not write message: no suitable MessageConverter found for payload type [" + payloadType.getName() + "]";
         if (contentType != null) msg += " and content type [" + contentType + "]";
@@ -73,6 +72,17 @@ public class OutboundMessageWriter {
         return contentType != null ? contentType : defaultContentType;
     }
 
+    //~ Methods ......................................................................................................................................
+
+    @Nullable private static MessageConverter<Object> getSuitableConverter(@NotNull Iterable<MessageConverter<?>> converters,
+                                                                           @NotNull Class<?> payloadType, @Nullable MediaType contentType) {
+        if (converters instanceof MessageConverterResolver)
+            return ((MessageConverterResolver) converters).writer(payloadType, payloadType, contentType);
+        for (final MessageConverter<?> converter : converters)
+            if (converter.canWrite(payloadType, payloadType, contentType)) return cast(converter);
+        return null;
+    }
+
     //~ Static Fields ................................................................................................................................
 
     private static final Logger logger = Logger.getLogger(OutboundMessageWriter.class);
@@ -14,6 +14,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.jetbrains.annotations.NotNull;
 
 import tekgenesis.common.media.MediaType;
 import tekgenesis.common.service.Headers;
@@ -22,25 +33,54 @@ import static tekgenesis.common.Predefined.notNull;
 import static tekgenesis.common.util.Files.toByteArray;
 
 /**
- * Message converter for reading and writing raw bytes.
+ * Message converter for reading and writing raw bytes. Besides byte arrays, binary payloads may be
+ * given as {@link ByteBuffer}, {@link Path}, {@link InputStream} or {@link ReadableByteChannel}
+ * (eg: a {@link FileChannel}), and are streamed chunk by chunk (or transferred by the file system)
+ * instead of being copied. Streams and channels are closed once written, so they cannot be resent.
+ *
+ * <p>Content may be read as any of those types too: {@link InputStream} and
+ * {@link ReadableByteChannel} return the message content itself (which must be closed or fully
+ * read to release the message), while {@link Path} and {@link FileChannel} spool it to a temporary
+ * file. The file of a {@link FileChannel} is deleted once the channel is closed, while the file of
+ * a {@link Path} is left for the caller to delete.</p>
  */
 public class ByteMessageConverter extends AbstractMessageConverter<Object> {
 
     //~ Methods ......................................................................................................................................
 
-    @Override public byte[] read(Class<?> type, Type genericType, MediaType contentType, InputStream stream) {
+    @Override public boolean canRead(Class<?> type, Type genericType, MediaType contentType) {
+        return isReadable(type) && super.canRead(type, genericType, contentType);
+    }
+
+    @Override public Object read(Class<?> type, Type genericType, MediaType contentType, InputStream stream)
+        throws IOException
+    {
+        if (ByteBuffer.class.equals(type)) return readBuffer(stream);
+        if (InputStream.class.equals(type)) return new StreamingInputStream(stream);
+        if (ReadableByteChannel.class.equals(type)) return new StreamingChannel(new StreamingInputStream(stream));
+        if (Path.class.equals(type)) return spool(stream);
+        if (FileChannel.class.equals(type))
+            return FileChannel.open(spool(stream), StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
         return toByteArray(stream);
     }
 
+    /** Sets the octet stream content type (if none) and the content length (if known). */
     @Override public void write(Object payload, MediaType contentType, Headers headers) {
         super.write(payload, notNull(contentType, MediaType.APPLICATION_OCTET_STREAM), headers);
+        final long length = contentLength(payload);
+        if (length >= 0) headers.setContentLength(length);
     }
 
     @Override public void write(Object content, MediaType contentType, OutputStream stream)
         throws IOException
     {
         try {
-            stream.write((byte[]) content);
+            if (content instanceof byte[]) stream.write((byte[]) content);
+            else if (content instanceof ByteBuffer) write((ByteBuffer) content, stream);
+            else if (content instanceof Path) Files.copy((Path) content, stream);
+            else if (content instanceof FileChannel) transfer((FileChannel) content, stream);
+            else if (content instanceof ReadableByteChannel) copy((ReadableByteChannel) content, stream);
+            else copy((InputStream) content, stream);
         }
         catch (final IOException e) {
             throw new IOException(e);
@@ -48,6 +88,164 @@ public class ByteMessageConverter extends AbstractMessageConverter<Object> {
     }
 
     @Override protected boolean supports(Class<?> clazz) {
-        return byte[].class.equals(clazz);
+        return byte[].class.equals(clazz) || isStreamed(clazz);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /**
+     * Returns true if the given class is a binary payload type other than a byte array, to be
+     * streamed without being buffered.
+     */
+    public static boolean isStreamed(@NotNull Class<?> clazz) {
+        return ByteBuffer.class.isAssignableFrom(clazz) || Path.class.isAssignableFrom(clazz) || InputStream.class.isAssignableFrom(clazz) ||
+               ReadableByteChannel.class.isAssignableFrom(clazz);
+    }
+
+    /**
+     * Returns true if the given payload can be written more than once. Streams and channels are
+     * consumed (and closed) once written, so they cannot be resent.
+     */
+    public static boolean isReplayable(@NotNull Object payload) {
+        return !(payload instanceof InputStream) && !(payload instanceof ReadableByteChannel);
+    }
+
+    /** Returns the length of the given payload, or -1 if unknown (eg: streams). */
+    private static long contentLength(@NotNull Object payload) {
+        try {
+            if (payload instanceof byte[]) return ((byte[]) payload).length;
+            if (payload instanceof ByteBuffer) return ((ByteBuffer) payload).remaining();
+            if (payload instanceof Path) return Files.size((Path) payload);
+            if (payload instanceof FileChannel) return Math.max(0, ((FileChannel) payload).size() - ((FileChannel) payload).position());
+        }
+        catch (final IOException e) {
+            // Unknown length, content will be streamed chunked
+        }
+        return -1;
+    }
+
+    private static void copy(@NotNull InputStream in, @NotNull OutputStream out)
+        throws IOException
+    {
+        try(final InputStream source = in) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int          read;
+            while ((read = source.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+        }
+    }
+
+    private static void copy(@NotNull ReadableByteChannel in, @NotNull OutputStream out)
+        throws IOException
+    {
+        try(final ReadableByteChannel source = in) {
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (source.read(buffer) != -1) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+    }
+
+    private static boolean isReadable(@NotNull Class<?> type) {
+        return byte[].class.equals(type) || ByteBuffer.class.equals(type) || InputStream.class.equals(type) ||
+               ReadableByteChannel.class.equals(type) || Path.class.equals(type) || FileChannel.class.equals(type);
+    }
+
+    /** Read content into a buffer grown as needed (its backing array is not copied once read). */
+    private static ByteBuffer readBuffer(@NotNull InputStream in)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, in.available()));
+        int        read;
+        while ((read = in.read(buffer.array(), buffer.position(), buffer.remaining())) != -1) {
+            buffer.position(buffer.position() + read);
+            if (!buffer.hasRemaining()) {
+                final ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Copy content to a temporary file (to be deleted by the caller, or by a channel over it). */
+    private static Path spool(@NotNull InputStream in)
+        throws IOException
+    {
+        final Path file = Files.createTempFile("content", ".bin");
+        try {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        }
+        catch (final IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /** Transfer the remaining file content, letting the file system move it in chunks. */
+    private static void transfer(@NotNull FileChannel in, @NotNull OutputStream out)
+        throws IOException
+    {
+        try(final FileChannel source = in) {
+            final WritableByteChannel target   = Channels.newChannel(out);
+            long                      position = source.position();
+            final long                size     = source.size();
+            while (position < size)
+                position += source.transferTo(position, size - position, target);
+        }
+    }
+
+    private static void write(@NotNull ByteBuffer content, @NotNull OutputStream out)
+        throws IOException
+    {
+        // Duplicate, so the payload can be written again
+        final ByteBuffer buffer = content.duplicate();
+        if (buffer.hasArray()) out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        else {
+            final WritableByteChannel target = Channels.newChannel(out);
+            while (buffer.hasRemaining())
+                target.write(buffer);
+        }
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int BUFFER_SIZE = 8192;
+
+    //~ Inner Classes ................................................................................................................................
+
+    /** Channel over the message content, released once closed or fully read. */
+    private static class StreamingChannel implements ReadableByteChannel, StreamingContent {
+        @NotNull private final ReadableByteChannel  channel;
+        @NotNull private final StreamingInputStream stream;
+
+        private StreamingChannel(@NotNull StreamingInputStream stream) {
+            this.stream = stream;
+            channel     = Channels.newChannel(stream);
+        }
+
+        @Override public void close()
+            throws IOException
+        {
+            channel.close();
+        }
+
+        @Override public void onClose(@NotNull Runnable action) {
+            stream.onClose(action);
+        }
+
+        @Override public int read(ByteBuffer dst)
+            throws IOException
+        {
+            return channel.read(dst);
+        }
+
+        @Override public boolean isOpen() {
+            return channel.isOpen();
+        }
     }
-}
+}  // end class ByteMessageConverter
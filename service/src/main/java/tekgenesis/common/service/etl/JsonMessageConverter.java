@@ -29,7 +29,8 @@ import static tekgenesis.common.Predefined.cast;
 import static tekgenesis.common.collections.Colls.seq;
 
 /**
- * Message converter for reading and writing Json objects.
+ * Message converter for reading and writing Json objects. Lists read as {@link StreamingSeq} are
+ * decoded on demand from the message content, instead of being fully materialized.
  */
 public class JsonMessageConverter extends AbstractMessageConverter<Object> {
 
@@ -76,12 +77,14 @@ public class JsonMessageConverter extends AbstractMessageConverter<Object> {
     }
 
     @Override protected boolean supports(Class<?> clazz) {
-        return true;
+        return !ByteMessageConverter.isStreamed(clazz);
     }
 
     private Object read(Class<?> responseType, InputStream stream, Class<?> argument)
         throws IOException
     {
+        if (responseType.equals(StreamingSeq.class)) return new JsonStreamingSeq<>(mapper.readerFor(argument).readValues(stream));
+
         final CollectionType list   = TypeFactory.defaultInstance().constructCollectionType(List.class, argument);
         final List<?>        result = mapper.readValue(stream, list);
         return responseType.equals(Seq.class) ? seq(result) : result;
@@ -95,7 +98,7 @@ public class JsonMessageConverter extends AbstractMessageConverter<Object> {
         final Type rawType = genericType.getRawType();
         if (rawType instanceof Class) {
             final Class<?> rawClass = (Class<?>) rawType;
-            return rawClass.equals(Seq.class) || rawClass.equals(List.class);
+            return rawClass.equals(Seq.class) || rawClass.equals(List.class) || rawClass.equals(StreamingSeq.class);
         }
         return false;
     }
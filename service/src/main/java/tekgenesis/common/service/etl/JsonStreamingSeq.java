@@ -0,0 +1,120 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.service.etl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.collections.ImmutableIterator;
+import tekgenesis.common.service.exception.MessageConversionException;
+import tekgenesis.common.util.Files;
+
+/**
+ * {@link StreamingSeq} over a Json array, decoding elements with a {@link MappingIterator}.
+ */
+class JsonStreamingSeq<E> implements StreamingSeq<E> {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final List<Runnable>              actions;
+    private boolean                           closed;
+    @NotNull private final MappingIterator<E> elements;
+    private E                                 head;
+    private boolean                           peeked;
+
+    //~ Constructors .................................................................................................................................
+
+    JsonStreamingSeq(@NotNull MappingIterator<E> elements) {
+        this.elements = elements;
+        actions       = new ArrayList<>();
+        closed        = false;
+        head          = null;
+        peeked        = false;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public void close() {
+        final List<Runnable> pending;
+        synchronized (this) {
+            if (closed) return;
+            closed  = true;
+            head    = null;
+            peeked  = false;
+            pending = new ArrayList<>(actions);
+            actions.clear();
+        }
+        Files.close(elements);
+        for (final Runnable action : pending)
+            action.run();
+    }
+
+    @NotNull @Override public ImmutableIterator<E> iterator() {
+        return new ImmutableIterator<E>() {
+            @Override public boolean hasNext() {
+                return fetch();
+            }
+
+            @Override public E next() {
+                return take();
+            }
+        };
+    }
+
+    @Override public void onClose(@NotNull Runnable action) {
+        synchronized (this) {
+            if (!closed) {
+                actions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    @Override public String toString() {
+        return "JsonStreamingSeq(" + (closed ? "closed" : "open") + ")";
+    }
+
+    /** Decode next element (if not already decoded), closing the sequence once the array ends. */
+    private boolean fetch() {
+        synchronized (this) {
+            if (peeked) return true;
+            if (closed) return false;
+            try {
+                if (elements.hasNextValue()) {
+                    head   = elements.nextValue();
+                    peeked = true;
+                    return true;
+                }
+            }
+            catch (final IOException | RuntimeException e) {
+                close();
+                throw e instanceof RuntimeException ? (RuntimeException) e : new MessageConversionException(e);
+            }
+        }
+        close();
+        return false;
+    }
+
+    private synchronized E take() {
+        if (!fetch()) throw new NoSuchElementException();
+        final E result = head;
+        head   = null;
+        peeked = false;
+        return result;
+    }
+}  // end class JsonStreamingSeq
@@ -0,0 +1,144 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.service.etl;
+
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.common.media.MediaType;
+import tekgenesis.common.media.Mime;
+
+import static tekgenesis.common.Predefined.cast;
+
+/**
+ * Ordered {@link MessageConverter converters} caching the converter resolved for each (type,
+ * generic type, media type), so converters are not scanned on every message. Adding a converter
+ * invalidates resolved ones. Thread safe.
+ */
+public class MessageConverterResolver implements Iterable<MessageConverter<?>> {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final List<MessageConverter<?>>        converters = new CopyOnWriteArrayList<>();
+    private final AtomicInteger                    generation = new AtomicInteger();  // Incremented on invalidation
+    private final ConcurrentHashMap<Key, Resolved> readers    = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, Resolved> writers    = new ConcurrentHashMap<>();
+
+    //~ Methods ......................................................................................................................................
+
+    /** Add given converter, with precedence over the previously added ones. */
+    public MessageConverterResolver add(@NotNull MessageConverter<?> converter) {
+        converters.add(0, converter);
+        invalidate();
+        return this;
+    }
+
+    /** Forget resolved converters (including the ones being resolved). */
+    public void invalidate() {
+        generation.incrementAndGet();
+        readers.clear();
+        writers.clear();
+    }
+
+    @NotNull @Override public Iterator<MessageConverter<?>> iterator() {
+        return converters.iterator();
+    }
+
+    /** Returns the first converter that can read given type and content type, or null if none. */
+    @Nullable public <T> MessageConverter<T> reader(@NotNull Class<?> type, @NotNull Type genericType, @Nullable MediaType contentType) {
+        final Key key = new Key(type, genericType, contentType);
+        return cast(resolve(readers, key, () -> {
+                for (final MessageConverter<?> converter : converters)
+                    if (converter.canRead(type, genericType, contentType)) return converter;
+                return null;
+            }));
+    }
+
+    /** Returns the first converter that can write given type and content type, or null if none. */
+    @Nullable public <T> MessageConverter<T> writer(@NotNull Class<?> type, @NotNull Type genericType, @Nullable MediaType contentType) {
+        final Key key = new Key(type, genericType, contentType);
+        return cast(resolve(writers, key, () -> {
+                for (final MessageConverter<?> converter : converters)
+                    if (converter.canWrite(type, genericType, contentType)) return converter;
+                return null;
+            }));
+    }
+
+    /** Resolve (and cache) the converter for a key, unless invalidated while scanning the converters. */
+    @Nullable private MessageConverter<?> resolve(@NotNull ConcurrentHashMap<Key, Resolved> cache, @NotNull Key key,
+                                                  @NotNull Supplier<MessageConverter<?>> scan) {
+        final Resolved cached = cache.get(key);
+        if (cached != null) return cached.converter;
+
+        final int      scanned  = generation.get();
+        final Resolved resolved = new Resolved(scan.get());
+        // Media type parameters (eg: multipart boundaries) may be unbounded
+        if (cache.size() >= MAX_ENTRIES) cache.clear();
+        cache.put(key, resolved);
+        // Scanned a previous list of converters, so don't keep it (invalidation may have cleared the cache before the put)
+        if (generation.get() != scanned) cache.remove(key, resolved);
+        return resolved.converter;
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int MAX_ENTRIES = 512;
+
+    //~ Inner Classes ................................................................................................................................
+
+    /**
+     * Resolution key. Media types are compared by mime and parameters (media type equality only
+     * considers the parameters of the compared one).
+     */
+    private static class Key {
+        @NotNull private final Type                  genericType;
+        @Nullable private final Mime                 mime;
+        @Nullable private final Map<String, String>  parameters;
+        @NotNull private final Class<?>              type;
+
+        private Key(@NotNull Class<?> type, @NotNull Type genericType, @Nullable MediaType contentType) {
+            this.type        = type;
+            this.genericType = genericType;
+            mime             = contentType == null ? null : contentType.getMime();
+            parameters       = contentType == null ? null : contentType.getParameters();
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return type == other.type && mime == other.mime && genericType.equals(other.genericType) && Objects.equals(parameters, other.parameters);
+        }
+
+        @Override public int hashCode() {
+            return Objects.hash(type, genericType, mime, parameters);
+        }
+    }
+
+    /** Resolved converter (null if none can handle the key). */
+    private static class Resolved {
+        @Nullable private final MessageConverter<?> converter;
+
+        private Resolved(@Nullable MessageConverter<?> converter) {
+            this.converter = converter;
+        }
+    }
+}  // end class MessageConverterResolver
@@ -0,0 +1,31 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.service.etl;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Content read from a message after its conversion (eg: a {@link StreamingSeq} or a streamed
+ * binary payload), so the message must be kept open until the content is closed. Streamed content
+ * is read once, so invocations with such results cannot be cached nor collapsed.
+ *
+ * <p>Note that only the default (blocking) transport streams the message body from the network:
+ * the NIO transport receives the whole body before it is read, and so does the http response
+ * cache for the responses it stores (or serves). Content is still decoded on demand then, but not
+ * in constant memory.</p>
+ */
+public interface StreamingContent {
+
+    //~ Methods ......................................................................................................................................
+
+    /** Run given action once the content is closed (eg: to release the message it is read from). */
+    void onClose(@NotNull Runnable action);
+}  // end interface StreamingContent
@@ -0,0 +1,106 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.service.etl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+import tekgenesis.common.util.Files;
+
+/**
+ * Message content handed as is to the consumer, without copying it. The content is released once
+ * fully read or closed.
+ */
+class StreamingInputStream extends FilterInputStream implements StreamingContent {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final List<Runnable> actions;
+    private boolean              closed;
+
+    //~ Constructors .................................................................................................................................
+
+    StreamingInputStream(@NotNull InputStream in) {
+        super(in);
+        actions = new ArrayList<>();
+        closed  = false;
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public int available()
+        throws IOException
+    {
+        return isClosed() ? 0 : super.available();
+    }
+
+    @Override public void close() {
+        final List<Runnable> pending;
+        synchronized (this) {
+            if (closed) return;
+            closed  = true;
+            pending = new ArrayList<>(actions);
+            actions.clear();
+        }
+        Files.close(in);
+        for (final Runnable action : pending)
+            action.run();
+    }
+
+    @Override public void onClose(@NotNull Runnable action) {
+        synchronized (this) {
+            if (!closed) {
+                actions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    @Override public int read()
+        throws IOException
+    {
+        if (isClosed()) return -1;
+        return released(super.read());
+    }
+
+    @Override public int read(@NotNull byte[] b, int off, int len)
+        throws IOException
+    {
+        if (isClosed()) return -1;
+        try {
+            return released(super.read(b, off, len));
+        }
+        catch (final IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override public String toString() {
+        return "StreamingInputStream(" + (isClosed() ? "closed" : "open") + ")";
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /** Close the stream once the end of the content is reached. */
+    private int released(int read) {
+        if (read == -1) close();
+        return read;
+    }
+}  // end class StreamingInputStream
@@ -0,0 +1,29 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.service.etl;
+
+import java.io.Closeable;
+
+import tekgenesis.common.collections.Seq;
+
+/**
+ * Sequence decoded on demand from a message content, so memory stays constant regardless of the
+ * message size (unless the content is already buffered, see {@link StreamingContent}). Elements are
+ * consumed as they are iterated (a new iterator continues where the previous one left). The content
+ * is released once fully iterated or closed.
+ */
+public interface StreamingSeq<E> extends Seq<E>, StreamingContent, Closeable {
+
+    //~ Methods ......................................................................................................................................
+
+    /** Close the sequence, releasing its content (remaining elements are discarded). */
+    @Override void close();
+}  // end interface StreamingSeq
@@ -0,0 +1,302 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import tekgenesis.common.command.exception.CommandShortCircuitException;
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.invoker.metric.InvocationEvent;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+import static tekgenesis.common.command.CommandProps.IsolationStrategy.SEMAPHORE;
+
+/**
+ * Command circuit breaker tests.
+ */
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class CommandCircuitBreakerTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testDisabledByDefault() {
+        final CommandCircuitBreaker breaker = CommandCircuitBreaker.Factory.getInstance(TestCommand.TEST_COMMAND_KEY,
+                TestCommand.TEST_COMMAND_KEY);
+        for (int i = 0; i < 30; i++)
+            breaker.markFailure(InvocationEvent.FAILURE);
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.isOpen()).isFalse();
+    }
+
+    @Test public void testOpenHalfOpenClose() {
+        final CommandCircuitBreaker breaker = createBreaker();
+        final InvocationMetrics     metrics = InvocationMetrics.getOrCreateInstance(BREAKER_COMMAND_KEY, BREAKER_COMMAND_KEY);
+
+        // Failures recorded before the first health snapshot is taken
+        for (int i = 0; i < 10; i++)
+            breaker.markFailure(InvocationEvent.FAILURE);
+
+        // Circuit must trip, and executions go straight to fallback
+        final FailingCommand shortCircuited = createFailingCommand();
+        assertThat(shortCircuited.execute()).isEqualTo(FALLBACK);
+        assertThat(shortCircuited.executed).isFalse();
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(metrics.getRollingCount(InvocationEvent.SHORT_CIRCUITED)).isGreaterThan(0);
+
+        // Without fallback the short circuit exception is thrown
+        try {
+            new FailingCommand(false).execute();
+            failBecauseExceptionWasNotThrown(CommandShortCircuitException.class);
+        }
+        catch (final CommandShortCircuitException ignored) {}
+
+        // Still short-circuited within the sleep window
+        clock.addAndGet(SLEEP_WINDOW);
+        assertThat(createFailingCommand().execute()).isEqualTo(FALLBACK);
+
+        // After sleep window a single successful trial execution closes the circuit
+        clock.incrementAndGet();
+        final FailingCommand trial = new FailingCommand(true);
+        trial.succeed = true;
+        assertThat(trial.execute()).isEqualTo(HELLO);
+        assertThat(trial.executed).isTrue();
+        assertThat(breaker.isOpen()).isFalse();
+        assertThat(breaker.allowRequest()).isTrue();
+    }
+
+    @Test public void testUnsubscribedTrialReopens()
+        throws InterruptedException
+    {
+        final CommandCircuitBreaker breaker = createBreaker();
+        for (int i = 0; i < 10; i++)
+            breaker.markFailure(InvocationEvent.FAILURE);
+        assertThat(breaker.allowRequest()).isFalse();
+
+        // Trial execution is abandoned before it terminates
+        clock.addAndGet(SLEEP_WINDOW + 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<String> trial   = new BlockingCommand(started, release).queue();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(breaker.allowRequest()).isFalse();
+        trial.cancel(true);
+        release.countDown();
+
+        // Circuit goes back to open, and allows a new trial after another sleep window
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.allowRequest()).isFalse();
+        clock.addAndGet(SLEEP_WINDOW + 1);
+        assertThat(breaker.allowRequest()).isTrue();
+        breaker.markSuccess();
+        assertThat(breaker.isOpen()).isFalse();
+    }
+
+    @Test public void testSemaphoreRejectedTrialReopens() {
+        final CommandCircuitBreaker breaker = createBreaker(SEMAPHORE_COMMAND_KEY);
+        for (int i = 0; i < 10; i++)
+            breaker.markFailure(InvocationEvent.FAILURE);
+        assertThat(breaker.allowRequest()).isFalse();
+
+        // Trial execution is rejected by the semaphore
+        final CommandSemaphore semaphore = CommandSemaphore.Factory.getInstance(SEMAPHORE_COMMAND_KEY);
+        assertThat(semaphore.tryAcquire()).isTrue();
+        clock.addAndGet(SLEEP_WINDOW + 1);
+        final FailingCommand rejected = new SemaphoreCommand();
+        rejected.succeed = true;
+        assertThat(rejected.execute()).isEqualTo(FALLBACK);
+        assertThat(rejected.executed).isFalse();
+        semaphore.release();
+
+        // Circuit goes back to open, and allows a new trial after another sleep window
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.allowRequest()).isFalse();
+        clock.addAndGet(SLEEP_WINDOW + 1);
+        final FailingCommand trial = new SemaphoreCommand();
+        trial.succeed = true;
+        assertThat(trial.execute()).isEqualTo(HELLO);
+        assertThat(breaker.isOpen()).isFalse();
+    }
+
+    @Test public void testLimiterRejectedTrialReopens() {
+        final CommandCircuitBreaker breaker = createBreaker(LIMITED_COMMAND_KEY);
+        for (int i = 0; i < 10; i++)
+            breaker.markFailure(InvocationEvent.FAILURE);
+        assertThat(breaker.allowRequest()).isFalse();
+
+        // Trial execution is rejected by the concurrency limiter
+        final CommandConcurrencyLimiter limiter  = CommandThreadPool.Factory.getInstance(LIMITED_COMMAND_KEY).getLimiter();
+        int                             acquired = 0;
+        while (limiter.tryAcquire())
+            acquired++;
+        clock.addAndGet(SLEEP_WINDOW + 1);
+        final FailingCommand rejected = new LimitedCommand();
+        rejected.succeed = true;
+        assertThat(rejected.execute()).isEqualTo(FALLBACK);
+        assertThat(rejected.executed).isFalse();
+        for (int i = 0; i < acquired; i++)
+            limiter.release(0, false);
+
+        // Circuit goes back to open, and allows a new trial after another sleep window
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.allowRequest()).isFalse();
+        clock.addAndGet(SLEEP_WINDOW + 1);
+        final FailingCommand trial = new LimitedCommand();
+        trial.succeed = true;
+        assertThat(trial.execute()).isEqualTo(HELLO);
+        assertThat(breaker.isOpen()).isFalse();
+    }
+
+    private CommandCircuitBreaker createBreaker() {
+        return createBreaker(BREAKER_COMMAND_KEY);
+    }
+
+    /** Register a breaker for the given command key measuring time with the test clock. */
+    private CommandCircuitBreaker createBreaker(@NotNull String key) {
+        CommandCircuitBreaker.Factory.reset();
+        InvocationMetrics.getOrCreateInstance(key, key).resetCounter();
+        final CommandCircuitBreaker breaker = new CommandCircuitBreaker.DefaultCommandCircuitBreaker(key, key, clock::get);
+        CommandCircuitBreaker.Factory.circuitBreakers.put(key, breaker);
+        return breaker;
+    }
+
+    private FailingCommand createFailingCommand() {
+        return new FailingCommand(true);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String BREAKER_COMMAND_KEY   = "CircuitBreakerTest";
+    private static final String LIMITED_COMMAND_KEY   = "CircuitBreakerLimitedTest";
+    private static final String SEMAPHORE_COMMAND_KEY = "CircuitBreakerSemaphoreTest";
+    private static final int    SLEEP_WINDOW          = 200;
+
+    private static final AtomicLong clock = new AtomicLong(1000);
+
+    @NonNls private static final String HELLO    = "Hello World!";
+    @NonNls private static final String FALLBACK = "fallback";
+
+    @ClassRule public static ExternalResource properties = new ExternalResource() {
+            @Override protected void before()
+                throws Throwable
+            {
+                super.before();
+                final CommandProps props = new CommandProps();
+                props.circuitBreakerEnabled                = true;
+                props.circuitBreakerRequestVolumeThreshold = 5;
+                props.circuitBreakerSleepWindow            = SLEEP_WINDOW;
+                Context.getEnvironment().put(BREAKER_COMMAND_KEY, props);
+
+                final CommandProps semaphoreProps = new CommandProps();
+                semaphoreProps.circuitBreakerEnabled                = true;
+                semaphoreProps.circuitBreakerRequestVolumeThreshold = 5;
+                semaphoreProps.circuitBreakerSleepWindow            = SLEEP_WINDOW;
+                semaphoreProps.isolationStrategy                    = SEMAPHORE;
+                semaphoreProps.semaphoreMaxConcurrentRequests       = 1;
+                Context.getEnvironment().put(SEMAPHORE_COMMAND_KEY, semaphoreProps);
+
+                final CommandProps limitedProps = new CommandProps();
+                limitedProps.circuitBreakerEnabled                = true;
+                limitedProps.circuitBreakerRequestVolumeThreshold = 5;
+                limitedProps.circuitBreakerSleepWindow            = SLEEP_WINDOW;
+                limitedProps.poolLimiterEnabled                   = true;
+                Context.getEnvironment().put(LIMITED_COMMAND_KEY, limitedProps);
+            }
+
+            @Override protected void after() {
+                Context.getEnvironment().delete(BREAKER_COMMAND_KEY, CommandProps.class);
+                Context.getEnvironment().delete(SEMAPHORE_COMMAND_KEY, CommandProps.class);
+                Context.getEnvironment().delete(LIMITED_COMMAND_KEY, CommandProps.class);
+                CommandCircuitBreaker.Factory.reset();
+                CommandSemaphore.Factory.reset();
+                super.after();
+            }
+        };
+
+    //~ Inner Classes ................................................................................................................................
+
+    private static class BlockingCommand extends TestCommand {
+        private final CountDownLatch release;
+        private final CountDownLatch started;
+
+        private BlockingCommand(CountDownLatch started, CountDownLatch release) {
+            super(HELLO);
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override protected String run() {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (final InterruptedException ignored) {}
+            return super.run();
+        }
+
+        @Override protected String getThreadPoolKey() {
+            return BREAKER_COMMAND_KEY;
+        }
+    }
+
+    private static class FailingCommand extends TestCommand {
+        private volatile boolean executed;
+        private volatile boolean succeed;
+
+        private FailingCommand(boolean fallback) {
+            super(HELLO);
+            executed = false;
+            succeed  = false;
+            if (fallback) withFallback(t -> FALLBACK);
+        }
+
+        @Override protected String run() {
+            executed = true;
+            if (succeed) return super.run();
+            throw new IllegalArgumentException("Service Down");
+        }
+
+        @Override protected String getThreadPoolKey() {
+            return BREAKER_COMMAND_KEY;
+        }
+    }
+
+    private static class LimitedCommand extends FailingCommand {
+        private LimitedCommand() {
+            super(true);
+        }
+
+        @Override protected String getThreadPoolKey() {
+            return LIMITED_COMMAND_KEY;
+        }
+    }
+
+    private static class SemaphoreCommand extends FailingCommand {
+        private SemaphoreCommand() {
+            super(true);
+        }
+
+        @Override protected String getThreadPoolKey() {
+            return SEMAPHORE_COMMAND_KEY;
+        }
+    }
+}  // end class CommandCircuitBreakerTest
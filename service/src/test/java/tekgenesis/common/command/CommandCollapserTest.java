@@ -0,0 +1,187 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import tekgenesis.common.collections.Seq;
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.invoker.metric.InvocationEvent;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+/**
+ * Command collapser tests.
+ */
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class CommandCollapserTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testBatchFailure() {
+        final CommandCollapser<Integer, String, Map<Integer, String>> collapser = new CommandCollapser<>(FAILING_COLLAPSER_KEY,
+                ids -> new BatchCommand(ids, true),
+                (response, id) -> response.get(id));
+
+        final Future<String> a = collapser.collapse(1).queue();
+        try {
+            collapser.collapse(2).execute();
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        }
+        catch (final IllegalStateException e) {
+            assertThat(e).hasMessage("Batch failed");
+        }
+        assertThat(a.isDone()).isTrue();
+    }
+
+    @Test public void testCollapseRequests()
+        throws Exception
+    {
+        final List<Seq<Integer>> batches = new CopyOnWriteArrayList<>();
+
+        final CommandCollapser<Integer, String, Map<Integer, String>> collapser = new CommandCollapser<>(COLLAPSER_KEY, ids -> {
+                    batches.add(ids);
+                    return new BatchCommand(ids, false);
+                },
+                (response, id) -> response.get(id));
+
+        final List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            futures.add(collapser.collapse(i % 5).queue());
+
+        for (int i = 0; i < futures.size(); i++)
+            assertThat(futures.get(i).get()).isEqualTo("value-" + i % 5);
+
+        // Identical requests are sent once, all within a single batch
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0).toList()).containsOnly(0, 1, 2, 3, 4);
+
+        final InvocationMetrics metrics = InvocationMetrics.getInstance(COLLAPSER_KEY);
+        assertThat(metrics.getRollingCount(InvocationEvent.COLLAPSED)).isEqualTo(10);
+    }
+
+    @Test public void testMaxRequestsInBatch()
+        throws Exception
+    {
+        final List<Seq<Integer>> batches = new CopyOnWriteArrayList<>();
+
+        final CommandCollapser<Integer, String, Map<Integer, String>> collapser = new CommandCollapser<>(MAX_COLLAPSER_KEY, ids -> {
+                    batches.add(ids);
+                    return new BatchCommand(ids, false);
+                },
+                (response, id) -> response.get(id));
+
+        final List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 7; i++)
+            futures.add(collapser.collapse(i).queue());
+
+        for (int i = 0; i < futures.size(); i++)
+            assertThat(futures.get(i).get()).isEqualTo("value-" + i);
+
+        assertThat(batches).hasSize(3);
+        for (final Seq<Integer> batch : batches)
+            assertThat(batch.size()).isLessThanOrEqualTo(3);
+    }
+
+    @Test public void testMaxRequestsInBatchConcurrently()
+        throws Exception
+    {
+        final List<Seq<Integer>> batches = new CopyOnWriteArrayList<>();
+
+        final CommandCollapser<Integer, String, Map<Integer, String>> collapser = new CommandCollapser<>(MAX_COLLAPSER_KEY, ids -> {
+                    batches.add(ids);
+                    return new BatchCommand(ids, false);
+                },
+                (response, id) -> response.get(id));
+
+        final ExecutorService      executor = Executors.newFixedThreadPool(8);
+        final List<Future<String>> futures  = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                final int id = i;
+                futures.add(executor.submit(() -> collapser.collapse(id).execute()));
+            }
+            for (int i = 0; i < futures.size(); i++)
+                assertThat(futures.get(i).get()).isEqualTo("value-" + i);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        for (final Seq<Integer> batch : batches)
+            assertThat(batch.size()).isLessThanOrEqualTo(3);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String COLLAPSER_KEY         = "CollapserTest";
+    private static final String FAILING_COLLAPSER_KEY = "FailingCollapserTest";
+    private static final String MAX_COLLAPSER_KEY     = "MaxCollapserTest";
+
+    @ClassRule public static ExternalResource properties = new ExternalResource() {
+            @Override protected void before()
+                throws Throwable
+            {
+                super.before();
+                final CommandProps props = new CommandProps();
+                props.collapserTimerDelay = 100;
+                Context.getEnvironment().put(COLLAPSER_KEY, props);
+
+                final CommandProps max = new CommandProps();
+                max.collapserTimerDelay         = 100;
+                max.collapserMaxRequestsInBatch = 3;
+                Context.getEnvironment().put(MAX_COLLAPSER_KEY, max);
+            }
+
+            @Override protected void after() {
+                Context.getEnvironment().delete(COLLAPSER_KEY, CommandProps.class);
+                Context.getEnvironment().delete(MAX_COLLAPSER_KEY, CommandProps.class);
+                super.after();
+            }
+        };
+
+    //~ Inner Classes ................................................................................................................................
+
+    private static class BatchCommand extends AbstractCommand<Map<Integer, String>> {
+        private final boolean      fail;
+        private final Seq<Integer> ids;
+
+        private BatchCommand(Seq<Integer> ids, boolean fail) {
+            this.ids  = ids;
+            this.fail = fail;
+        }
+
+        @Override protected Map<Integer, String> run() {
+            if (fail) throw new IllegalStateException("Batch failed");
+            final Map<Integer, String> result = new HashMap<>();
+            for (final Integer id : ids)
+                result.put(id, "value-" + id);
+            return result;
+        }
+
+        @Override protected String getThreadPoolKey() {
+            return TestCommand.TEST_COMMAND_KEY;
+        }
+    }
+}  // end class CommandCollapserTest
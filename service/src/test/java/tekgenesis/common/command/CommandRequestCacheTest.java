@@ -0,0 +1,109 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NonNls;
+import org.junit.After;
+import org.junit.Test;
+
+import tekgenesis.common.core.Option;
+import tekgenesis.common.invoker.metric.InvocationEvent;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static tekgenesis.common.core.Option.some;
+
+/**
+ * Command request cache tests.
+ */
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class CommandRequestCacheTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @After public void tearDown() {
+        CommandRequestCache.reset();
+        CommandRequestContext.setContextOnCurrentThread(null);
+    }
+
+    @Test public void testInFlightExecutionsShared()
+        throws Exception
+    {
+        final AtomicInteger executions = new AtomicInteger();
+
+        final Future<String> a = new CachedCommand(executions, "a").withExecutionDelay(200).queue();
+        final Future<String> b = new CachedCommand(executions, "a").withExecutionDelay(200).queue();
+        final Future<String> c = new CachedCommand(executions, "c").withExecutionDelay(200).queue();
+
+        assertThat(a.get()).isEqualTo(HELLO);
+        assertThat(b.get()).isEqualTo(HELLO);
+        assertThat(c.get()).isEqualTo(HELLO);
+        assertThat(executions.get()).isEqualTo(2);
+
+        // Once completed, executions are no longer shared
+        assertThat(new CachedCommand(executions, "a").execute()).isEqualTo(HELLO);
+        assertThat(executions.get()).isEqualTo(3);
+
+        final InvocationMetrics metrics = InvocationMetrics.getInstance(CACHE_COMMAND_KEY);
+        assertThat(metrics.getRollingCount(InvocationEvent.RESPONSE_FROM_CACHE)).isGreaterThan(0);
+    }
+
+    @Test public void testRequestContextExecutionsShared() {
+        final AtomicInteger executions = new AtomicInteger();
+
+        try(final CommandRequestContext context = CommandRequestContext.initialize()) {
+            assertThat(CommandRequestContext.getContextForCurrentThread().get()).isSameAs(context);
+            assertThat(new CachedCommand(executions, "x").execute()).isEqualTo(HELLO);
+            assertThat(new CachedCommand(executions, "x").execute()).isEqualTo(HELLO);
+            assertThat(executions.get()).isEqualTo(1);
+        }
+
+        assertThat(CommandRequestContext.getContextForCurrentThread().isPresent()).isFalse();
+        assertThat(new CachedCommand(executions, "x").execute()).isEqualTo(HELLO);
+        assertThat(executions.get()).isEqualTo(2);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String CACHE_COMMAND_KEY = "RequestCacheTest";
+
+    @NonNls private static final String HELLO = "Hello World!";
+
+    //~ Inner Classes ................................................................................................................................
+
+    private static class CachedCommand extends TestCommand {
+        private final String        cacheKey;
+        private final AtomicInteger executions;
+
+        private CachedCommand(AtomicInteger executions, String cacheKey) {
+            super(HELLO);
+            this.executions = executions;
+            this.cacheKey   = cacheKey;
+        }
+
+        @Override protected String run() {
+            executions.incrementAndGet();
+            return super.run();
+        }
+
+        @Override protected Option<String> getCacheKey() {
+            return some(cacheKey);
+        }
+
+        @Override protected String getCommandKey() {
+            return CACHE_COMMAND_KEY;
+        }
+    }
+}  // end class CommandRequestCacheTest
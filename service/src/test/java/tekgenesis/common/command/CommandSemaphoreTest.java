@@ -0,0 +1,152 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jetbrains.annotations.NonNls;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import tekgenesis.common.command.exception.CommandInvocationException;
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.invoker.metric.InvocationEvent;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+import static tekgenesis.common.command.CommandProps.IsolationStrategy.SEMAPHORE;
+
+/**
+ * Command semaphore isolation tests.
+ */
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class CommandSemaphoreTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testExecutesOnCallingThread() {
+        final SemaphoreCommand command = new SemaphoreCommand();
+        assertThat(command.execute()).isEqualTo(HELLO);
+        assertThat(command.thread).isSameAs(Thread.currentThread());
+        assertThat(CommandSemaphore.Factory.getInstance(SEMAPHORE_COMMAND_KEY).getActiveCount()).isZero();
+    }
+
+    @Test public void testRejection()
+        throws InterruptedException
+    {
+        final CountDownLatch running = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // Fill the semaphore from other threads
+        final Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> new SemaphoreCommand(running, release).execute());
+            threads[i].start();
+        }
+        assertThat(running.await(1, SECONDS)).isTrue();
+
+        final CommandSemaphore semaphore = CommandSemaphore.Factory.getInstance(SEMAPHORE_COMMAND_KEY);
+        assertThat(semaphore.getActiveCount()).isEqualTo(2);
+
+        // Without fallback the rejection is thrown
+        final SemaphoreCommand rejected = new SemaphoreCommand();
+        try {
+            rejected.execute();
+            failBecauseExceptionWasNotThrown(CommandInvocationException.class);
+        }
+        catch (final CommandInvocationException e) {
+            assertThat(e.getCause().getCause()).isInstanceOf(RejectedExecutionException.class);
+        }
+        assertThat(rejected.thread).isNull();
+
+        // With fallback the fallback is returned
+        final SemaphoreCommand withFallback = new SemaphoreCommand();
+        withFallback.withFallback(t -> {
+            assertThat(t).isInstanceOf(RejectedExecutionException.class);
+            return FALLBACK;
+        });
+        assertThat(withFallback.execute()).isEqualTo(FALLBACK);
+
+        final InvocationMetrics metrics = InvocationMetrics.getInstance(SEMAPHORE_COMMAND_KEY);
+        assertThat(metrics.getRollingCount(InvocationEvent.SEMAPHORE_REJECTED)).isEqualTo(2);
+
+        // Permits are released once executions complete
+        release.countDown();
+        for (final Thread thread : threads)
+            thread.join();
+        assertThat(semaphore.getActiveCount()).isZero();
+        assertThat(new SemaphoreCommand().execute()).isEqualTo(HELLO);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String SEMAPHORE_COMMAND_KEY = "SemaphoreTest";
+
+    @NonNls private static final String HELLO    = "Hello World!";
+    @NonNls private static final String FALLBACK = "fallback";
+
+    @ClassRule public static ExternalResource properties = new ExternalResource() {
+            @Override protected void before()
+                throws Throwable
+            {
+                super.before();
+                final CommandProps props = new CommandProps();
+                props.isolationStrategy              = SEMAPHORE;
+                props.semaphoreMaxConcurrentRequests = 2;
+                Context.getEnvironment().put(SEMAPHORE_COMMAND_KEY, props);
+            }
+
+            @Override protected void after() {
+                Context.getEnvironment().delete(SEMAPHORE_COMMAND_KEY, CommandProps.class);
+                CommandSemaphore.Factory.reset();
+                super.after();
+            }
+        };
+
+    //~ Inner Classes ................................................................................................................................
+
+    private static class SemaphoreCommand extends TestCommand {
+        private final CountDownLatch release;
+        private final CountDownLatch running;
+        private volatile Thread      thread;
+
+        private SemaphoreCommand() {
+            this(new CountDownLatch(0), new CountDownLatch(0));
+        }
+
+        private SemaphoreCommand(CountDownLatch running, CountDownLatch release) {
+            super(HELLO);
+            this.running = running;
+            this.release = release;
+            thread       = null;
+        }
+
+        @Override protected String run() {
+            thread = Thread.currentThread();
+            running.countDown();
+            try {
+                release.await();
+            }
+            catch (final InterruptedException ignored) {}
+            return super.run();
+        }
+
+        @Override protected String getThreadPoolKey() {
+            return SEMAPHORE_COMMAND_KEY;
+        }
+    }
+}  // end class CommandSemaphoreTest
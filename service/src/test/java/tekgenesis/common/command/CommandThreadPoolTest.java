@@ -20,6 +20,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.ExternalResource;
 
+import tekgenesis.common.command.CommandConcurrencyLimiter.AimdConcurrencyLimiter;
 import tekgenesis.common.command.CommandThreadPool.Factory;
 import tekgenesis.common.command.exception.CommandInvocationException;
 import tekgenesis.common.command.exception.CommandStackCauseException;
@@ -45,6 +46,35 @@ public class CommandThreadPoolTest {
 
     //~ Methods ......................................................................................................................................
 
+    @Test public void testAdaptiveConcurrencyLimit()
+        throws InterruptedException
+    {
+        final CommandProps props = new CommandProps();
+        props.poolLimiterEnabled          = true;
+        props.poolLimiterAdjustInterval   = 50;
+        props.poolLimiterLatencyThreshold = 100;
+
+        final AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(props, 4);
+        for (int i = 0; i < 4; i++)
+            assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(4);
+
+        // Dropped execution decreases limit once interval elapses
+        limiter.release(10, true);
+        Thread.sleep(60);
+        limiter.release(10, false);
+        assertThat(limiter.getLimit()).isEqualTo(3);
+
+        // Healthy and used limit grows back
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        Thread.sleep(60);
+        limiter.release(10, false);
+        assertThat(limiter.getLimit()).isEqualTo(4);
+    }
+
     @Test public void testCustomPropertiesSpecification() {
         final CommandThreadPool pool = Factory.getInstance(THREAD_POOL_COMMAND_KEY);
         assertThat(pool.getExecutor().getCorePoolSize()).isEqualTo(1);
@@ -57,7 +87,8 @@ public class CommandThreadPoolTest {
         throws ExecutionException, InterruptedException
     {
         testCustomPropertiesSpecification();
-        final CommandThreadPool pool = Factory.getInstance(THREAD_POOL_COMMAND_KEY);
+        final CommandThreadPool pool     = Factory.getInstance(THREAD_POOL_COMMAND_KEY);
+        final long              rejected = pool.getRejectedCount();
 
         // Fill the pool
         final Future<String> a = createTestCommand(THREAD_POOL_COMMAND_KEY).withExecutionDelay(200).queue();
@@ -76,6 +107,7 @@ public class CommandThreadPoolTest {
         // Assert pool thread and queue full
         assertThat(pool.getExecutor().getPoolSize()).isEqualTo(1);
         assertThat(pool.getExecutor().getQueue().size()).isEqualTo(1);
+        assertThat(pool.getRejectedCount()).isEqualTo(rejected + 1);
 
         // Wait termination :)
         a.get();
@@ -171,6 +203,33 @@ public class CommandThreadPoolTest {
         }
     }
 
+    @Test public void testResizeOnPropertiesChange() {
+        final CommandProps props = new CommandProps();
+        props.poolTotalThreads = 2;
+        Context.getEnvironment().put(RESIZE_COMMAND_KEY, props);
+
+        try {
+            final CommandThreadPool pool = Factory.getInstance(RESIZE_COMMAND_KEY);
+            assertThat(pool.getExecutor().getCorePoolSize()).isEqualTo(2);
+
+            final CommandProps grow = new CommandProps();
+            grow.poolTotalThreads = 4;
+            Context.getEnvironment().put(RESIZE_COMMAND_KEY, grow);
+            assertThat(pool.getExecutor().getCorePoolSize()).isEqualTo(4);
+            assertThat(pool.getExecutor().getMaximumPoolSize()).isEqualTo(4);
+
+            final CommandProps shrink = new CommandProps();
+            shrink.poolTotalThreads = 1;
+            Context.getEnvironment().put(RESIZE_COMMAND_KEY, shrink);
+            assertThat(pool.getExecutor().getCorePoolSize()).isEqualTo(1);
+            assertThat(pool.getExecutor().getMaximumPoolSize()).isEqualTo(1);
+        }
+        finally {
+            Context.getEnvironment().delete(RESIZE_COMMAND_KEY, CommandProps.class);
+            Factory.threadPools.remove(RESIZE_COMMAND_KEY);
+        }
+    }
+
     @Test public void testShutdown() {
         final CommandThreadPool pool = Factory.getInstance(THREAD_POOL_COMMAND_KEY);
 
@@ -220,6 +279,46 @@ public class CommandThreadPoolTest {
         assertThat(slow.get()).isEqualTo(HELLO);
     }
 
+    @Test public void testVirtualThreadsPool()
+        throws ExecutionException, InterruptedException
+    {
+        final CommandProps props = new CommandProps();
+        props.poolVirtualThreads               = true;
+        props.poolVirtualThreadsMaxConcurrency = 2;
+        Context.getEnvironment().put(VIRTUAL_COMMAND_KEY, props);
+
+        try {
+            final CommandThreadPool pool = Factory.getInstance(VIRTUAL_COMMAND_KEY);
+            assertThat(pool).isInstanceOf(CommandThreadPool.VirtualCommandThreadPool.class);
+
+            // Take all permits
+            final Future<String> a = createTestCommand(VIRTUAL_COMMAND_KEY).withExecutionDelay(200).queue();
+            final Future<String> b = createTestCommand(VIRTUAL_COMMAND_KEY).withExecutionDelay(200).queue();
+
+            try {
+                createTestCommand(VIRTUAL_COMMAND_KEY).execute();
+                failBecauseExceptionWasNotThrown(CommandInvocationException.class);
+            }
+            catch (final CommandInvocationException e) {
+                assertThat(e.getCause().getCause()).isInstanceOf(RejectedExecutionException.class);
+            }
+            assertThat(pool.getRejectedCount()).isEqualTo(1);
+
+            assertThat(a.get()).isEqualTo(HELLO);
+            assertThat(b.get()).isEqualTo(HELLO);
+            assertThat(createTestCommand(VIRTUAL_COMMAND_KEY).execute()).isEqualTo(HELLO);
+
+            // Permits are released right after the result is emitted
+            for (int i = 0; i < 10 && pool.getExecutor().getActiveCount() > 0; i++)
+                Thread.sleep(20);
+            assertThat(pool.getExecutor().getActiveCount()).isEqualTo(0);
+        }
+        finally {
+            Context.getEnvironment().delete(VIRTUAL_COMMAND_KEY, CommandProps.class);
+            Factory.threadPools.remove(VIRTUAL_COMMAND_KEY);
+        }
+    }
+
     private TestCommand createTestCommand(final String commandKey) {
         return new TestCommand(HELLO) {
             @Override protected String getThreadPoolKey() {
@@ -257,8 +356,10 @@ public class CommandThreadPoolTest {
             }
         };
 
+    private static final String RESIZE_COMMAND_KEY      = "ResizeCommand";
     private static final String SHUTDOWN_COMMAND_KEY    = "ShutdownCommand";
     private static final String THREAD_POOL_COMMAND_KEY = "ThreadPoolTest";
+    private static final String VIRTUAL_COMMAND_KEY     = "VirtualCommand";
 
     @NonNls private static final String HELLO = "Hello World!";
 
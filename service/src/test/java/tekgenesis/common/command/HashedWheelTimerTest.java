@@ -0,0 +1,123 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import tekgenesis.common.command.HashedWheelTimer.Timeout;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hashed timing wheel tests.
+ */
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class HashedWheelTimerTest {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private HashedWheelTimer timer = null;
+
+    //~ Methods ......................................................................................................................................
+
+    @Before public void setUp() {
+        timer = new HashedWheelTimer("TimerTest", 5, MILLISECONDS, 64);
+        timer.start();
+    }
+
+    @After public void tearDown() {
+        timer.stop();
+    }
+
+    @Test public void testCancelledTimeoutNeverRuns()
+        throws InterruptedException
+    {
+        final AtomicInteger runs    = new AtomicInteger();
+        final Timeout       timeout = timer.schedule(runs::incrementAndGet, 50, 0, MILLISECONDS);
+        timeout.cancel();
+        assertThat(timeout.isCancelled()).isTrue();
+
+        Thread.sleep(150);
+        assertThat(runs.get()).isZero();
+    }
+
+    @Test public void testManyConcurrentTimeouts()
+        throws InterruptedException
+    {
+        final int            total     = 10_000;
+        final CountDownLatch expired   = new CountDownLatch(total / 2);
+        final AtomicInteger  runs      = new AtomicInteger();
+        final List<Timeout>  cancelled = new ArrayList<>();
+
+        final Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; p++) {
+            producers[p] = new Thread(() -> {
+                    for (int i = 0; i < total / producers.length; i++) {
+                        // Spread deadlines over several wheel rounds
+                        final Timeout timeout = timer.schedule(() -> {
+                                    runs.incrementAndGet();
+                                    expired.countDown();
+                                },
+                                i % 700,
+                                0,
+                                MILLISECONDS);
+                        if (i % 2 == 1) {
+                            synchronized (cancelled) {
+                                cancelled.add(timeout);
+                            }
+                        }
+                    }
+                });
+            producers[p].start();
+        }
+        for (final Thread producer : producers)
+            producer.join();
+
+        cancelled.forEach(Timeout::cancel);
+
+        assertThat(expired.await(5, SECONDS)).isTrue();
+        Thread.sleep(100);
+        // Cancelled timeouts scheduled for the past may have already run, but no more than that
+        assertThat(runs.get()).isBetween(total / 2, total);
+        assertThat(timer.getPendingCount()).isZero();
+    }
+
+    @Test public void testPeriodicTimeout()
+        throws InterruptedException
+    {
+        final CountDownLatch latch   = new CountDownLatch(5);
+        final Timeout        timeout = timer.schedule(latch::countDown, 10, 10, MILLISECONDS);
+
+        assertThat(latch.await(1, SECONDS)).isTrue();
+        timeout.cancel();
+    }
+
+    @Test public void testTimeoutRunsAfterDelay()
+        throws InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long           start = System.nanoTime();
+        timer.schedule(latch::countDown, 50, 0, MILLISECONDS);
+
+        assertThat(latch.await(1, SECONDS)).isTrue();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(MILLISECONDS.toNanos(50));
+    }
+}  // end class HashedWheelTimerTest
@@ -0,0 +1,162 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import tekgenesis.common.env.logging.LogConfig;
+import tekgenesis.common.invoker.metric.CompressionEvent;
+import tekgenesis.common.invoker.metric.CompressionMetrics;
+import tekgenesis.common.service.server.Request;
+import tekgenesis.common.tools.test.server.SgHttpServerRule;
+import tekgenesis.common.util.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static tekgenesis.common.invoker.ContentCompression.compression;
+import static tekgenesis.common.invoker.HttpInvokers.invoker;
+import static tekgenesis.common.media.MediaType.TEXT_PLAIN;
+import static tekgenesis.common.service.HeaderNames.*;
+import static tekgenesis.common.service.Status.OK;
+import static tekgenesis.common.tools.test.server.SgHttpServerRule.httpServerRule;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class ContentCompressionTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testCodecs()
+        throws IOException
+    {
+        assertThat(ContentCodecs.available()).contains(ContentCodec.GZIP, ContentCodec.DEFLATE);
+        assertThat(ContentCodecs.forName("GZIP").get()).isSameAs(ContentCodec.GZIP);
+        assertThat(ContentCodecs.forName("compress").isPresent()).isFalse();
+
+        for (final ContentCodec codec : ContentCodecs.available()) {
+            if (!codec.canEncode()) continue;
+            final byte[] encoded = encode(codec, TEXT);
+            assertThat(encoded.length).isLessThan(TEXT.length());
+            assertThat(read(codec.decode(new ByteArrayInputStream(encoded)))).isEqualTo(TEXT);
+        }
+    }
+
+    @Test public void testRequestCompression() {
+        final ContentCompression compression = compression("RequestCompressionTest");
+        final HttpInvoker        invoker     = invoker(server.getServerAddress()).withCompression(compression);
+
+        server.expectPost("/upload").respondOkWith(ContentCompressionTest::echo);
+        assertThat(invoker.resource("/upload").post(String.class, TEXT)).isEqualTo("gzip:\"" + TEXT + "\"");
+
+        final CompressionMetrics metrics = compression.getMetrics();
+        assertThat(metrics.getRollingCount(CompressionEvent.REQUEST_COMPRESSED)).isEqualTo(1);
+        // Payload is written as a json string
+        assertThat(metrics.getRollingCount(CompressionEvent.REQUEST_BYTES)).isEqualTo(TEXT.length() + 2);
+        assertThat(metrics.getRequestCompressionRatio()).isGreaterThan(10);
+    }
+
+    @Test public void testResponseDecompression()
+        throws IOException
+    {
+        final ContentCompression compression = compression("ResponseCompressionTest").accepting(ContentCodec.GZIP, ContentCodec.DEFLATE);
+        final HttpInvoker        invoker     = invoker(server.getServerAddress()).withCompression(compression);
+
+        server.expectGet("/download")
+              .withHeader(ACCEPT_ENCODING, "gzip, deflate")
+              .respondRaw(OK, encode(ContentCodec.DEFLATE, TEXT))
+              .withContentType(TEXT_PLAIN)
+              .withHeader(CONTENT_ENCODING, "deflate");
+        assertThat(invoker.resource("/download").get(String.class)).isEqualTo(TEXT);
+
+        final CompressionMetrics metrics = compression.getMetrics();
+        assertThat(metrics.getRollingCount(CompressionEvent.RESPONSE_DECOMPRESSED)).isEqualTo(1);
+        assertThat(metrics.getRollingCount(CompressionEvent.RESPONSE_BYTES)).isEqualTo(TEXT.length());
+        assertThat(metrics.getResponseCompressionRatio()).isGreaterThan(10);
+    }
+
+    @Test public void testMultipleCodings()
+        throws IOException
+    {
+        final ContentCompression compression = compression("MultipleCodingsTest").accepting(ContentCodec.GZIP, ContentCodec.DEFLATE);
+        final HttpInvoker        invoker     = invoker(server.getServerAddress()).withCompression(compression);
+
+        // Codings are listed in the order they were applied
+        server.expectGet("/twice")
+              .respondRaw(OK, encode(ContentCodec.DEFLATE, encode(ContentCodec.GZIP, TEXT.getBytes(StandardCharsets.UTF_8))))
+              .withContentType(TEXT_PLAIN)
+              .withHeader(CONTENT_ENCODING, "gzip, deflate");
+        assertThat(invoker.resource("/twice").get(String.class)).isEqualTo(TEXT);
+    }
+
+    @Test public void testThreshold() {
+        final ContentCompression compression = compression("ThresholdCompressionTest").withThreshold(TEXT.length() + 3);
+        final HttpInvoker        invoker     = invoker(server.getServerAddress()).withCompression(compression);
+
+        server.expectPost("/small").respondOkWith(ContentCompressionTest::echo);
+        assertThat(invoker.resource("/small").post(String.class, TEXT)).isEqualTo("identity:\"" + TEXT + "\"");
+        assertThat(compression.getMetrics().getRollingCount(CompressionEvent.REQUEST_UNCOMPRESSED)).isEqualTo(1);
+        assertThat(compression.getMetrics().getRollingCount(CompressionEvent.REQUEST_COMPRESSED)).isZero();
+    }
+
+    private static String read(@NotNull InputStream in) {
+        return new String(Files.toByteArray(in), StandardCharsets.UTF_8);
+    }
+
+    /** Echo request content (decoded), prefixed with its content coding. */
+    private static Object echo(@NotNull Request request) {
+        try {
+            final String      coding  = request.getHeaders().getFirst(CONTENT_ENCODING).orElse("identity");
+            final InputStream content = request.getContent();
+            return coding + ":" + read(ContentCodecs.forName(coding).isPresent() ? ContentCodecs.forName(coding).get().decode(content) : content);
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encode(@NotNull ContentCodec codec, @NotNull String text)
+        throws IOException
+    {
+        return encode(codec, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] encode(@NotNull ContentCodec codec, @NotNull byte[] bytes)
+        throws IOException
+    {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try(final OutputStream out = codec.encode(result)) {
+            out.write(bytes);
+        }
+        return result.toByteArray();
+    }
+
+    private static String repeat(@NotNull String s, int times) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < times; i++)
+            result.append(s);
+        return result.toString();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String TEXT = repeat("All work and no play makes Jack a dull boy. ", 100);
+
+    @ClassRule public static final SgHttpServerRule server = httpServerRule().onStart(sgHttpServerRule -> LogConfig.start()).build();
+}  // end class ContentCompressionTest
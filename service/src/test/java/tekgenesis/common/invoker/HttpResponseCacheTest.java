@@ -0,0 +1,237 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import tekgenesis.common.env.logging.LogConfig;
+import tekgenesis.common.tools.test.server.SgHttpServerRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static tekgenesis.common.invoker.HttpInvokers.invoker;
+import static tekgenesis.common.invoker.HttpResponseCache.responseCache;
+import static tekgenesis.common.service.HeaderNames.*;
+import static tekgenesis.common.service.Method.GET;
+import static tekgenesis.common.service.Status.NOT_MODIFIED;
+import static tekgenesis.common.tools.test.server.SgHttpServerRule.httpServerRule;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class HttpResponseCacheTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testAsyncCachedInvocation()
+        throws Exception
+    {
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withTransport(new NioHttpTransport("CacheTransportTest"))
+                                                                            .withResponseCache(cache);
+
+        server.expectGet("/async").respondOkWith("Cached").withHeader(CACHE_CONTROL, "max-age=60");
+        for (int i = 0; i < 3; i++)
+            assertThat(invoker.resource("/async").invoke(GET, String.class).async().get(5, TimeUnit.SECONDS).get()).isEqualTo("Cached");
+
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test public void testDiskTier()
+        throws Exception
+    {
+        final File        directory = Files.createTempDirectory("response-cache").toFile();
+        final AtomicLong  clock     = new AtomicLong(System.currentTimeMillis());
+        final HttpInvoker invoker   = invoker(server.getServerAddress()).withResponseCache(
+                responseCache(MAX_WEIGHT, clock::get).withDiskTier(directory, MAX_WEIGHT));
+
+        server.expectGet("/disk").respondOkWith("Stored").withHeader(CACHE_CONTROL, "max-age=60");
+        assertThat(invoker.resource("/disk").get(String.class)).isEqualTo("Stored");
+
+        // A new cache over the same directory reads the response back from disk
+        final HttpResponseCache reloaded = responseCache(MAX_WEIGHT, clock::get).withDiskTier(directory, MAX_WEIGHT);
+        assertThat(invoker(server.getServerAddress()).withResponseCache(reloaded).resource("/disk").get(String.class)).isEqualTo("Stored");
+        assertThat(reloaded.getHitCount()).isEqualTo(1);
+        assertThat(reloaded.getWeight()).isPositive();
+
+        // Unsafe methods invalidate both tiers
+        server.expectDelete("/disk").respondOk();
+        invoker(server.getServerAddress()).withResponseCache(reloaded).resource("/disk").delete();
+        reloaded.evictAll();
+        assertThat(reloaded.get(server.getServerAddress() + "/disk", Collections.emptyMap())).isNull();
+    }
+
+    @Test public void testCredentials() {
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withResponseCache(cache);
+
+        // Responses to requests with credentials are not stored unless explicitly public
+        server.expectGet("/credentials").repeated(2).respondOkWith("Mine").withHeader(CACHE_CONTROL, "max-age=60");
+        assertThat(invoker.resource("/credentials").header(AUTHORIZATION, "Bearer a").get(String.class)).isEqualTo("Mine");
+        assertThat(invoker.resource("/credentials").header(AUTHORIZATION, "Bearer a").get(String.class)).isEqualTo("Mine");
+        assertThat(cache.getWeight()).isZero();
+
+        // Public ones are only reused for the same credentials
+        server.expectGet("/shared").repeated(2).respondOkWith("Shared").withHeader(CACHE_CONTROL, "public, max-age=60");
+        assertThat(invoker.resource("/shared").header(AUTHORIZATION, "Bearer a").get(String.class)).isEqualTo("Shared");
+        assertThat(invoker.resource("/shared").header(AUTHORIZATION, "Bearer a").get(String.class)).isEqualTo("Shared");
+        assertThat(invoker.resource("/shared").header(AUTHORIZATION, "Bearer b").get(String.class)).isEqualTo("Shared");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        server.assertNoLeftExpectations();
+    }
+
+    @Test public void testMaxAge() {
+        final AtomicLong        clock   = new AtomicLong(System.currentTimeMillis());
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT, clock::get);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withResponseCache(cache);
+        final AtomicInteger     served  = new AtomicInteger();
+
+        server.expectGet("/fresh").repeated(2).respondOkWith(r -> "Response " + served.incrementAndGet()).withHeader(CACHE_CONTROL, "max-age=10");
+        assertThat(invoker.resource("/fresh").get(String.class)).isEqualTo("Response 1");
+        assertThat(invoker.resource("/fresh").get(String.class)).isEqualTo("Response 1");
+        assertThat(served.get()).isEqualTo(1);
+
+        // Expired response (without validators) is fetched again
+        clock.addAndGet(11000);
+        assertThat(invoker.resource("/fresh").get(String.class)).isEqualTo("Response 2");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test public void testMultipleCacheControlHeaders() {
+        final Map<String, List<String>> headers = new HashMap<>();
+        headers.put(CACHE_CONTROL, Arrays.asList("max-age=60", "private"));
+        assertThat(CachedResponse.create("/multiple", 200, headers, Collections.emptyMap(), new byte[0], 0)).isNull();
+
+        headers.put(CACHE_CONTROL, Arrays.asList("max-age=60", "no-cache"));
+        final CachedResponse response = CachedResponse.create("/multiple", 200, headers, Collections.emptyMap(), new byte[0], 0);
+        assertThat(response).isNotNull();
+        assertThat(response.isFresh(0)).isFalse();
+    }
+
+    @Test public void testMustRevalidate() {
+        final AtomicLong        clock   = new AtomicLong(System.currentTimeMillis());
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT, clock::get);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withResponseCache(cache);
+
+        // Must revalidate responses are served from cache while fresh
+        server.expectGet("/strict").respondOkWith("Strict").withHeader(CACHE_CONTROL, "max-age=10, must-revalidate, stale-while-revalidate=60");
+        assertThat(invoker.resource("/strict").get(String.class)).isEqualTo("Strict");
+        assertThat(invoker.resource("/strict").get(String.class)).isEqualTo("Strict");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        // But never once stale
+        clock.addAndGet(11000);
+        server.expectGet("/strict").respondOkWith("Fetched").withHeader(CACHE_CONTROL, "max-age=10, must-revalidate");
+        assertThat(invoker.resource("/strict").get(String.class)).isEqualTo("Fetched");
+        server.assertNoLeftExpectations();
+    }
+
+    @Test public void testNoStore() {
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withResponseCache(cache);
+
+        server.expectGet("/private").repeated(2).respondOkWith("Private").withHeader(CACHE_CONTROL, "no-store");
+        assertThat(invoker.resource("/private").get(String.class)).isEqualTo("Private");
+        assertThat(invoker.resource("/private").get(String.class)).isEqualTo("Private");
+        assertThat(cache.getHitCount()).isZero();
+        assertThat(cache.getWeight()).isZero();
+        server.assertNoLeftExpectations();
+    }
+
+    @Test public void testPrivate() {
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withResponseCache(cache);
+
+        server.expectGet("/user").repeated(2).respondOkWith("User").withHeader(CACHE_CONTROL, "private, max-age=60");
+        assertThat(invoker.resource("/user").get(String.class)).isEqualTo("User");
+        assertThat(invoker.resource("/user").get(String.class)).isEqualTo("User");
+        assertThat(cache.getHitCount()).isZero();
+        assertThat(cache.getWeight()).isZero();
+        server.assertNoLeftExpectations();
+    }
+
+    @Test public void testRevalidation() {
+        final AtomicLong        clock   = new AtomicLong(System.currentTimeMillis());
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT, clock::get);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withResponseCache(cache);
+
+        server.expectGet("/etag").respondOkWith("Tagged").withHeader(CACHE_CONTROL, "max-age=1").withHeader(ETAG, "\"v1\"");
+        assertThat(invoker.resource("/etag").get(String.class)).isEqualTo("Tagged");
+
+        // Stale response is revalidated with a conditional request, and reused if not modified
+        clock.addAndGet(2000);
+        server.expectGet("/etag").withHeader(IF_NONE_MATCH, "\"v1\"").respond(NOT_MODIFIED).withHeader(CACHE_CONTROL, "max-age=1");
+        assertThat(invoker.resource("/etag").get(String.class)).isEqualTo("Tagged");
+        assertThat(cache.getRevalidationCount()).isEqualTo(1);
+
+        // Revalidated response is fresh again
+        assertThat(invoker.resource("/etag").get(String.class)).isEqualTo("Tagged");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        server.assertNoLeftExpectations();
+    }
+
+    @Test public void testStaleWhileRevalidate()
+        throws Exception
+    {
+        final AtomicLong        clock   = new AtomicLong(System.currentTimeMillis());
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT, clock::get);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withResponseCache(cache);
+
+        server.expectGet("/swr").respondOkWith("Old").withHeader(CACHE_CONTROL, "max-age=1, stale-while-revalidate=60");
+        assertThat(invoker.resource("/swr").get(String.class)).isEqualTo("Old");
+
+        // Stale response is served while it is refreshed in background
+        clock.addAndGet(2000);
+        server.expectGet("/swr").respondOkWith("New").withHeader(CACHE_CONTROL, "max-age=60");
+        assertThat(invoker.resource("/swr").get(String.class)).isEqualTo("Old");
+
+        for (int i = 0; i < 50 && !"New".equals(invoker.resource("/swr").get(String.class)); i++)
+            Thread.sleep(100);
+        assertThat(invoker.resource("/swr").get(String.class)).isEqualTo("New");
+        server.assertNoLeftExpectations();
+    }
+
+    @Test public void testVariants() {
+        final HttpResponseCache cache   = responseCache(MAX_WEIGHT);
+        final HttpInvoker       invoker = invoker(server.getServerAddress()).withResponseCache(cache);
+
+        server.expectGet("/vary").withHeader(ACCEPT_LANGUAGE, "en").respondOkWith("Hello").withHeader(CACHE_CONTROL, "max-age=60")
+              .withHeader(VARY, ACCEPT_LANGUAGE);
+        server.expectGet("/vary").withHeader(ACCEPT_LANGUAGE, "es").respondOkWith("Hola").withHeader(CACHE_CONTROL, "max-age=60")
+              .withHeader(VARY, ACCEPT_LANGUAGE);
+        assertThat(invoker.resource("/vary").header(ACCEPT_LANGUAGE, "en").get(String.class)).isEqualTo("Hello");
+        assertThat(invoker.resource("/vary").header(ACCEPT_LANGUAGE, "es").get(String.class)).isEqualTo("Hola");
+
+        // Both variants are kept for the url
+        assertThat(invoker.resource("/vary").header(ACCEPT_LANGUAGE, "en").get(String.class)).isEqualTo("Hello");
+        assertThat(invoker.resource("/vary").header(ACCEPT_LANGUAGE, "es").get(String.class)).isEqualTo("Hola");
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        server.assertNoLeftExpectations();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final int MAX_WEIGHT = 1024 * 1024;
+
+    @ClassRule public static final SgHttpServerRule server = httpServerRule().onStart(sgHttpServerRule -> LogConfig.start()).build();
+}  // end class HttpResponseCacheTest
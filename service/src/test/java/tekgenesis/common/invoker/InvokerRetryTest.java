@@ -0,0 +1,163 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import tekgenesis.common.env.logging.LogConfig;
+import tekgenesis.common.invoker.exception.InvokerInvocationException;
+import tekgenesis.common.invoker.metric.InvocationEvent;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
+import tekgenesis.common.tools.test.server.SgHttpServerRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static tekgenesis.common.invoker.HttpInvokers.invoker;
+import static tekgenesis.common.invoker.RetryPolicy.retryPolicy;
+import static tekgenesis.common.service.Method.GET;
+import static tekgenesis.common.service.Method.PUT;
+import static tekgenesis.common.service.Status.SERVICE_UNAVAILABLE;
+import static tekgenesis.common.tools.test.server.SgHttpServerRule.httpServerRule;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class InvokerRetryTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testAsyncRetry()
+        throws Exception
+    {
+        final HttpInvoker invoker = invoker(server.getServerAddress()).withTransport(new NioHttpTransport("RetryTransportTest"))
+                                                                      .withRetryPolicy(fastPolicy());
+
+        server.expectGet("/async").respond(SERVICE_UNAVAILABLE);
+        server.expectGet("/async").respondOkWith("Retried");
+
+        final long retries = rollingCount(InvocationEvent.RETRY);
+        assertThat(invoker.resource("/async").invoke(GET, String.class).async().get(5, TimeUnit.SECONDS).get()).isEqualTo("Retried");
+        assertThat(rollingCount(InvocationEvent.RETRY)).isEqualTo(retries + 1);
+    }
+
+    @Test public void testBackoff() {
+        final RetryPolicy policy = retryPolicy().withBackoff(100, 500, 2).withJitter(0);
+        assertThat(policy.getDelay(1)).isEqualTo(100);
+        assertThat(policy.getDelay(2)).isEqualTo(200);
+        assertThat(policy.getDelay(3)).isEqualTo(400);
+        assertThat(policy.getDelay(4)).isEqualTo(500);
+
+        policy.withJitter(0.5);
+        for (int i = 0; i < 100; i++)
+            assertThat(policy.getDelay(2)).isBetween(100, 200);
+    }
+
+    @Test public void testBudgetExhausted() {
+        final RetryPolicy policy  = fastPolicy().withBudget(1, 0);
+        final HttpInvoker invoker = invoker(server.getServerAddress()).withRetryPolicy(policy);
+
+        server.expectGet("/budget").respond(SERVICE_UNAVAILABLE);
+        server.expectGet("/budget").respondOkWith("Retried");
+        assertThat(invoker.resource("/budget").get(String.class)).isEqualTo("Retried");
+
+        // Budget was spent by the previous retry, even for another invoker of the same server
+        final long exhausted = rollingCount(InvocationEvent.RETRY_BUDGET_EXHAUSTED);
+        server.expectGet("/budget").respond(SERVICE_UNAVAILABLE);
+        assertUnavailable(invoker(server.getServerAddress()).withRetryPolicy(policy), "/budget");
+        assertThat(rollingCount(InvocationEvent.RETRY_BUDGET_EXHAUSTED)).isEqualTo(exhausted + 1);
+    }
+
+    @Test public void testFallbackAfterRetries() {
+        final HttpInvoker invoker = invoker(server.getServerAddress()).withRetryPolicy(fastPolicy().withMaxAttempts(2));
+
+        server.expectGet("/fallback").respond(SERVICE_UNAVAILABLE);
+        server.expectGet("/fallback").respond(SERVICE_UNAVAILABLE);
+        assertThat(invoker.resource("/fallback").invoke(GET, String.class).onErrorFallback(t -> "Fallback").get()).isEqualTo("Fallback");
+    }
+
+    @Test public void testMaxAttempts() {
+        final HttpInvoker invoker = invoker(server.getServerAddress()).withRetryPolicy(fastPolicy().withMaxAttempts(3));
+
+        final long retries = rollingCount(InvocationEvent.RETRY);
+        for (int i = 0; i < 3; i++)
+            server.expectGet("/attempts").respond(SERVICE_UNAVAILABLE);
+        assertUnavailable(invoker, "/attempts");
+        assertThat(rollingCount(InvocationEvent.RETRY)).isEqualTo(retries + 2);
+    }
+
+    @Test public void testMultiHostRetry() {
+        final HttpInvoker multiHost = invoker(Strategy.MASTER_SLAVE, "http://unknown-host:8080", server.getServerAddress()).withRetryPolicy(
+                fastPolicy());
+
+        server.expectGet("/multi").respondOkWith("Retried");
+        assertThat(multiHost.resource("/multi").get(String.class)).isEqualTo("Retried");
+    }
+
+    @Test public void testNonRetryable() {
+        final HttpInvoker invoker = invoker(server.getServerAddress()).withRetryPolicy(fastPolicy());
+
+        // Non idempotent methods are not retried
+        final long retries = rollingCount(InvocationEvent.RETRY);
+        server.expectPost("/post").respond(SERVICE_UNAVAILABLE);
+        try {
+            invoker.resource("/post").post(String.class, "Payload");
+            failBecauseExceptionWasNotThrown(InvokerInvocationException.class);
+        }
+        catch (final InvokerInvocationException e) {
+            assertThat(e.getStatus()).isEqualTo(SERVICE_UNAVAILABLE);
+        }
+
+        // Streamed payloads are consumed once sent, so they are not retried either
+        server.expectPut("/stream").respond(SERVICE_UNAVAILABLE);
+        try {
+            invoker.resource("/stream").invoke(PUT, new ByteArrayInputStream("Payload".getBytes(UTF_8))).execute();
+            failBecauseExceptionWasNotThrown(InvokerInvocationException.class);
+        }
+        catch (final InvokerInvocationException e) {
+            assertThat(e.getStatus()).isEqualTo(SERVICE_UNAVAILABLE);
+        }
+
+        // Statuses not matching the policy are not retried
+        invoker.withRetryPolicy(fastPolicy().retryOnStatus(status -> false));
+        server.expectGet("/status").respond(SERVICE_UNAVAILABLE);
+        assertUnavailable(invoker, "/status");
+        assertThat(rollingCount(InvocationEvent.RETRY)).isEqualTo(retries);
+    }
+
+    private void assertUnavailable(@NotNull HttpInvoker invoker, @NotNull String path) {
+        try {
+            invoker.resource(path).get(String.class);
+            failBecauseExceptionWasNotThrown(InvokerInvocationException.class);
+        }
+        catch (final InvokerInvocationException e) {
+            assertThat(e.getStatus()).isEqualTo(SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private RetryPolicy fastPolicy() {
+        return retryPolicy().withBackoff(10, 50, 2);
+    }
+
+    private long rollingCount(@NotNull InvocationEvent event) {
+        final InvocationMetrics metrics = InvocationMetrics.getInstance(server.getServerAddress().replaceFirst("http://", "").replace(':', '_'));
+        return metrics == null ? 0 : metrics.getRollingCount(event);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    @ClassRule public static final SgHttpServerRule server = httpServerRule().onStart(sgHttpServerRule -> LogConfig.start()).build();
+}  // end class InvokerRetryTest
@@ -0,0 +1,185 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import tekgenesis.common.command.CommandProps;
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.env.logging.LogConfig;
+import tekgenesis.common.invoker.metric.InvocationEvent;
+import tekgenesis.common.invoker.metric.InvocationMetrics;
+import tekgenesis.common.tools.test.server.SgHttpServerRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static tekgenesis.common.invoker.HttpInvokers.invoker;
+import static tekgenesis.common.service.Method.GET;
+import static tekgenesis.common.tools.test.server.SgHttpServerRule.httpServerRule;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class MultiHostHttpInvokerHedgingTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testAsyncHedgedInvocation()
+        throws Exception
+    {
+        final HttpInvoker multiHost = hedgingInvoker().withTransport(new NioHttpTransport("HedgingTransportTest"));
+
+        slow.expectGet("/async").respondOkWith("Slow").delay(500);
+        fast.expectGet("/async").respondOkWith("Fast");
+
+        final long hedged = rollingCount(InvocationEvent.HEDGED);
+        assertThat(multiHost.resource("/async").invoke(GET, String.class).async().get(5, TimeUnit.SECONDS).get()).isEqualTo("Fast");
+        assertThat(rollingCount(InvocationEvent.HEDGED)).isEqualTo(hedged + 1);
+    }
+
+    @Test public void testHedgedInvocation() {
+        final HttpInvoker multiHost = hedgingInvoker();
+
+        slow.expectGet("/hedged").respondOkWith("Slow").delay(500);
+        fast.expectGet("/hedged").respondOkWith("Fast");
+
+        final long hedged = rollingCount(InvocationEvent.HEDGED);
+        final long won    = rollingCount(InvocationEvent.HEDGE_WON);
+        assertThat(multiHost.resource("/hedged").get(String.class)).isEqualTo("Fast");
+        assertThat(rollingCount(InvocationEvent.HEDGED)).isEqualTo(hedged + 1);
+        assertThat(rollingCount(InvocationEvent.HEDGE_WON)).isEqualTo(won + 1);
+    }
+
+    @Test public void testHedgeShortCircuited() {
+        final HttpInvoker multiHost = hedgingInvoker();
+
+        final CommandProps open = new CommandProps();
+        open.circuitBreakerEnabled   = true;
+        open.circuitBreakerForceOpen = true;
+        Context.getEnvironment().put(commandKey(fast), open);
+        try {
+            slow.expectGet("/open").respondOkWith("Slow").delay(300);
+
+            // Hedge goes through the alternative host circuit breaker, so it is short-circuited
+            final long shortCircuited = rollingCount(fast, InvocationEvent.SHORT_CIRCUITED);
+            assertThat(multiHost.resource("/open").get(String.class)).isEqualTo("Slow");
+            assertThat(rollingCount(fast, InvocationEvent.SHORT_CIRCUITED)).isEqualTo(shortCircuited + 1);
+        }
+        finally {
+            Context.getEnvironment().put(commandKey(fast), new CommandProps());
+        }
+    }
+
+    @Test public void testHedgeWonCancelsPrimary()
+        throws InterruptedException
+    {
+        final HttpInvoker multiHost = hedgingInvoker();
+
+        slow.expectGet("/cancelled").respondOkWith("Slow").delay(300);
+        fast.expectGet("/cancelled").respondOkWith("Fast");
+
+        final long success = rollingCount(slow, InvocationEvent.SUCCESS);
+        final long failure = rollingCount(slow, InvocationEvent.FAILURE);
+        assertThat(multiHost.resource("/cancelled").get(String.class)).isEqualTo("Fast");
+
+        // Once the primary answers, it is not reported on its host as it was cancelled
+        Thread.sleep(500);
+        assertThat(rollingCount(slow, InvocationEvent.SUCCESS)).isEqualTo(success);
+        assertThat(rollingCount(slow, InvocationEvent.FAILURE)).isEqualTo(failure);
+    }
+
+    @Test public void testNonIdempotentNotHedged() {
+        final HttpInvoker multiHost = hedgingInvoker();
+
+        slow.expectPost("/post").respondOkWith("Slow").delay(200);
+
+        final long hedged = rollingCount(InvocationEvent.HEDGED);
+        assertThat(multiHost.resource("/post").post(String.class, "Payload")).isEqualTo("Slow");
+        assertThat(rollingCount(InvocationEvent.HEDGED)).isEqualTo(hedged);
+    }
+
+    @Test public void testPrimaryAnswersInTime() {
+        // Slow server may still be answering a previous hedged invocation, so wait longer
+        final HttpInvoker multiHost = hedgingInvoker(LAZY_HEDGING_POOL);
+
+        slow.expectGet("/fast").respondOkWith("Primary");
+
+        final long hedged = rollingCount(InvocationEvent.HEDGED);
+        assertThat(multiHost.resource("/fast").get(String.class)).isEqualTo("Primary");
+        assertThat(rollingCount(InvocationEvent.HEDGED)).isEqualTo(hedged);
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    /** Master slave invoker, so slow server is always the primary one. */
+    private static HttpInvoker hedgingInvoker() {
+        return hedgingInvoker(HEDGING_POOL);
+    }
+
+    private static HttpInvoker hedgingInvoker(@NotNull String pool) {
+        return invoker(Strategy.MASTER_SLAVE, slow.getServerAddress(), fast.getServerAddress()).withCommandPool(pool);
+    }
+
+    /** Command key (circuit breaker and metrics) of given server. */
+    private static String commandKey(@NotNull SgHttpServerRule server) {
+        return server.getServerAddress().replaceFirst("http://", "").replace(':', '_');
+    }
+
+    private static long rollingCount(@NotNull InvocationEvent event) {
+        return rollingCount(slow, event);
+    }
+
+    private static long rollingCount(@NotNull SgHttpServerRule server, @NotNull InvocationEvent event) {
+        final InvocationMetrics metrics = InvocationMetrics.getInstance(commandKey(server));
+        return metrics == null ? 0 : metrics.getRollingCount(event);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String HEDGING_POOL      = "HedgingTest";
+    private static final String LAZY_HEDGING_POOL = "LazyHedgingTest";
+    private static final int    SLOW_PORT         = 8225;
+
+    @ClassRule public static final SgHttpServerRule fast = httpServerRule().onStart(sgHttpServerRule -> LogConfig.start()).build();
+    @ClassRule public static final SgHttpServerRule slow = httpServerRule().withPort(SLOW_PORT).build();
+
+    @ClassRule public static ExternalResource properties = new ExternalResource() {
+            @Override protected void before()
+                throws Throwable
+            {
+                super.before();
+                final CommandProps props = new CommandProps();
+                props.hedgingEnabled = true;
+                props.hedgingDelay   = 50;
+                Context.getEnvironment().put(HEDGING_POOL, props);
+
+                final CommandProps lazy = new CommandProps();
+                lazy.hedgingEnabled = true;
+                lazy.hedgingDelay   = 2000;
+                Context.getEnvironment().put(LAZY_HEDGING_POOL, lazy);
+
+                // Record primary host outcomes
+                final CommandProps primary = new CommandProps();
+                primary.circuitBreakerEnabled = true;
+                Context.getEnvironment().put(commandKey(slow), primary);
+            }
+
+            @Override protected void after() {
+                Context.getEnvironment().delete(HEDGING_POOL, CommandProps.class);
+                Context.getEnvironment().delete(LAZY_HEDGING_POOL, CommandProps.class);
+                Context.getEnvironment().delete(commandKey(slow), CommandProps.class);
+                super.after();
+            }
+        };
+}  // end class MultiHostHttpInvokerHedgingTest
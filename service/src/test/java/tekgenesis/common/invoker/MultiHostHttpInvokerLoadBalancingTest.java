@@ -0,0 +1,179 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import tekgenesis.common.env.logging.LogConfig;
+import tekgenesis.common.invoker.exception.NoInvokerAvailable;
+import tekgenesis.common.invoker.metric.InvocationKeyGenerator.CamelCaseKeyGenerator;
+import tekgenesis.common.logging.Logger;
+import tekgenesis.common.service.Headers;
+import tekgenesis.common.tools.test.server.SgHttpServerRule;
+
+import static java.util.Arrays.asList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+import static tekgenesis.common.collections.MultiMap.createMultiMap;
+import static tekgenesis.common.invoker.HttpInvokers.invoker;
+import static tekgenesis.common.invoker.Invocation.invocation;
+import static tekgenesis.common.service.Method.HEAD;
+import static tekgenesis.common.service.Status.OK;
+import static tekgenesis.common.tools.test.server.SgHttpServerRule.httpServerRule;
+
+@SuppressWarnings({ "JavaDoc", "DuplicateStringLiteralInspection", "MagicNumber" })
+public class MultiHostHttpInvokerLoadBalancingTest {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    private final HttpInvoker alpha         = invoker("http://alpha:8080");
+    private final HttpInvoker beta          = invoker("http://beta:8080");
+    private final HttpInvoker gamma         = invoker("http://gamma:8080");
+    private final String      otherServer   = "http://other-unknown-host:8080";
+    private final String      unknownServer = "http://unknown-host:8080";
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testFailedHostPenalised() {
+        final LoadBalancingStrategy strategy = new LeastOutstandingStrategy(asList(alpha, beta));
+        strategy.started(beta);
+        strategy.started(alpha);
+        strategy.completed(alpha, 10, true);
+
+        // Busier but healthy host is preferred
+        for (int i = 0; i < 10; i++)
+            assertThat(strategy.pick().get()).isSameAs(beta);
+
+        // Host recovers once an invocation succeeds
+        strategy.started(alpha);
+        strategy.completed(alpha, 10, false);
+        assertThat(strategy.pick().get()).isSameAs(alpha);
+    }
+
+    @Test public void testFailOver() {
+        server.expectHead().repeated(2);
+        final MultiHostHttpInvoker multiHost = (MultiHostHttpInvoker) invoker(Strategy.LEAST_OUTSTANDING, unknownServer, workingServer);
+
+        for (int i = 0; i < 2; i++) {
+            final HttpInvokerResult<?> result = multiHost.resource("/head").invoke(HEAD).execute();
+            assertThat(result.getStatus()).isEqualTo(OK);
+        }
+
+        // Unknown host was penalised, and no invocation is left in flight
+        final LoadBalancingStrategy strategy = (LoadBalancingStrategy) multiHost.getStrategy();
+        final HttpInvoker           working  = strategy.pick().get();
+        final HostStats             stats    = strategy.getStats(working);
+        assertThat(working.toString()).isEqualTo(workingServer);
+        assertThat(stats).isNotNull();
+        assertThat(stats.getOutstanding()).isZero();
+        assertThat(stats.isHealthy()).isTrue();
+    }
+
+    @Test public void testLeastOutstanding() {
+        final LoadBalancingStrategy strategy = new LeastOutstandingStrategy(asList(alpha, beta, gamma));
+        strategy.started(alpha);
+        strategy.started(alpha);
+        strategy.started(gamma);
+
+        for (int i = 0; i < 10; i++)
+            assertThat(strategy.pick().get()).isSameAs(beta);
+
+        strategy.started(beta);
+        strategy.started(beta);
+        for (int i = 0; i < 10; i++)
+            assertThat(strategy.pick().get()).isSameAs(gamma);
+    }
+
+    @Test public void testNext() {
+        final Logger                logger     = Logger.getLogger(MultiHostHttpInvokerLoadBalancingTest.class);
+        final LoadBalancingStrategy strategy   = new PeakEwmaStrategy(asList(alpha, beta, gamma));
+        final Invocation<?>         invocation = invocation("/path", HEAD, new Headers(), new ArrayList<>(), createMultiMap(), null, null,
+                new CamelCaseKeyGenerator());
+
+        final HttpInvoker second = strategy.next(logger, alpha, invocation).get();
+        assertThat(second).isNotSameAs(alpha);
+        final HttpInvoker third = strategy.next(logger, second, invocation).get();
+        assertThat(third).isNotSameAs(alpha).isNotSameAs(second);
+        assertThat(strategy.next(logger, third, invocation).isPresent()).isFalse();
+    }
+
+    @Test public void testNoneWorking() {
+        final HttpInvoker multiHost = invoker(Strategy.POWER_OF_TWO_CHOICES, unknownServer, otherServer);
+        try {
+            multiHost.resource("/head").invoke(HEAD).execute();
+            failBecauseExceptionWasNotThrown(NoInvokerAvailable.class);
+        }
+        catch (final NoInvokerAvailable e) {
+            assertThat(e.getMessage()).contains("No invoker available");
+        }
+    }
+
+    @Test public void testPeakEwma() {
+        final LoadBalancingStrategy strategy = new PeakEwmaStrategy(asList(alpha, beta));
+        sample(strategy, alpha, 500);
+        sample(strategy, beta, 10);
+
+        for (int i = 0; i < 10; i++)
+            assertThat(strategy.pick().get()).isSameAs(beta);
+
+        // Latency peaks are followed immediately
+        sample(strategy, beta, 1000);
+        assertThat(strategy.pick().get()).isSameAs(alpha);
+    }
+
+    @Test public void testPeakEwmaUnsampledHostProbed() {
+        final LoadBalancingStrategy strategy = new PeakEwmaStrategy(asList(alpha, beta));
+        sample(strategy, alpha, 100);
+
+        // Host without samples is probed, but not herded onto while the probe is in flight
+        assertThat(strategy.pick().get()).isSameAs(beta);
+        strategy.started(beta);
+        for (int i = 0; i < 10; i++)
+            assertThat(strategy.pick().get()).isSameAs(alpha);
+
+        strategy.completed(beta, 10, false);
+        assertThat(strategy.pick().get()).isSameAs(beta);
+    }
+
+    @Test public void testPowerOfTwoChoices() {
+        final LoadBalancingStrategy strategy = new PowerOfTwoChoicesStrategy(asList(alpha, beta));
+        strategy.started(alpha);
+
+        // With two hosts both are always compared
+        for (int i = 0; i < 10; i++)
+            assertThat(strategy.pick().get()).isSameAs(beta);
+
+        final List<HttpInvoker>     three = asList(alpha, beta, gamma);
+        final LoadBalancingStrategy other = new PowerOfTwoChoicesStrategy(three);
+        other.started(alpha);
+        other.started(alpha);
+        // Most loaded host is never chosen
+        for (int i = 0; i < 20; i++)
+            assertThat(other.pick().get()).isNotSameAs(alpha);
+    }
+
+    private void sample(LoadBalancingStrategy strategy, HttpInvoker invoker, long latency) {
+        strategy.started(invoker);
+        strategy.completed(invoker, latency, false);
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    @ClassRule public static final SgHttpServerRule server = httpServerRule().onStart(sgHttpServerRule -> LogConfig.start()).build();
+
+    private static final String workingServer = server.getServerAddress();
+}  // end class MultiHostHttpInvokerLoadBalancingTest
@@ -0,0 +1,195 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import tekgenesis.common.env.logging.LogConfig;
+import tekgenesis.common.invoker.exception.InvokerConnectionException;
+import tekgenesis.common.invoker.metric.ConnectionPoolEvent;
+import tekgenesis.common.invoker.metric.ConnectionPoolMetrics;
+import tekgenesis.common.tools.test.server.SgHttpServerRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+import static tekgenesis.common.invoker.Person.createPerson;
+import static tekgenesis.common.service.Method.GET;
+import static tekgenesis.common.service.Method.POST;
+import static tekgenesis.common.service.Status.CREATED;
+import static tekgenesis.common.tools.test.server.SgHttpServerRule.httpServerRule;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class NioHttpTransportTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testAsyncInvocations()
+        throws Exception
+    {
+        final NioHttpTransport transport = new NioHttpTransport("NioTransportTest");
+        final HttpInvoker      invoker   = HttpInvokers.invoker(server.getServerAddress()).withTransport(transport);
+
+        final int repetitions = 5;
+        server.expectGet("/nio").repeated(repetitions).respondOkWith("Hello World!");
+
+        // Chain invocations without blocking between them
+        final List<String>              results = new ArrayList<>();
+        CompletableFuture<List<String>> chain   = CompletableFuture.completedFuture(results);
+        for (int i = 0; i < repetitions; i++)
+            chain = chain.thenCompose(list ->
+                        invoker.resource("/nio").invoke(GET, String.class).async().thenApply(result -> {
+                            list.add(result.get());
+                            return list;
+                        }));
+        assertThat(chain.get(5, TimeUnit.SECONDS)).hasSize(repetitions).containsOnly("Hello World!");
+
+        // Blocking invocations work the same over the non-blocking transport, reusing channels
+        server.expectGet("/nio").respondOkWith("Hello World!");
+        assertThat(invoker.resource("/nio").get(String.class)).isEqualTo("Hello World!");
+
+        final ConnectionPoolMetrics metrics = transport.getMetrics(new URL(server.getServerAddress()));
+        assertThat(metrics).isNotNull();
+        assertThat(metrics.getRollingCount(ConnectionPoolEvent.KEPT_ALIVE)).isEqualTo(repetitions + 1);
+        assertThat(metrics.getRollingCount(ConnectionPoolEvent.CREATED)).isEqualTo(1);
+        assertThat(metrics.getRollingCount(ConnectionPoolEvent.REUSED)).isEqualTo(repetitions);
+        assertThat(metrics.getLeased()).isZero();
+    }
+
+    @Test public void testAsyncInvocationWithPayload()
+        throws Exception
+    {
+        final HttpInvoker invoker = HttpInvokers.invoker(server.getServerAddress()).withTransport(new NioHttpTransport("NioPayloadTest"));
+
+        final Person person = createPerson();
+        server.expectPost(person).respond(CREATED, person);
+        final HttpInvokerResult<Person> result = invoker.resource("/post").invoke(POST, Person.class, person).async().get(5, TimeUnit.SECONDS);
+        assertThat(result.get().name).isEqualTo(person.name);
+        assertThat(result.getStatus()).isEqualTo(CREATED);
+    }
+
+    @Test public void testAsyncFallback()
+        throws Exception
+    {
+        final HttpInvoker invoker = HttpInvokers.invoker("http://localhost:1").withTransport(new NioHttpTransport("NioFallbackTest"));
+
+        final CompletableFuture<HttpInvokerResult<String>> future = invoker.resource("/down")
+                                                                           .invoke(GET, String.class)
+                                                                           .onErrorFallback(t -> "Fallback")
+                                                                           .async();
+        assertThat(future.get(5, TimeUnit.SECONDS).get()).isEqualTo("Fallback");
+    }
+
+    @Test public void testFailedExchangeReleasedOnce()
+        throws Exception
+    {
+        final NioHttpTransport transport = new NioHttpTransport("NioTimeoutTest");
+        final HttpInvoker      invoker   = HttpInvokers.invoker(server.getServerAddress()).withTransport(transport).withReadTimeout(100);
+
+        server.expectGet("/slow").respondOkWith("Hello World!").delay(500);
+        try {
+            invoker.resource("/slow").get(String.class);
+            failBecauseExceptionWasNotThrown(InvokerConnectionException.class);
+        }
+        catch (final InvokerConnectionException e) {
+            assertThat(e.isConnectTimeoutException()).isTrue();
+        }
+
+        final ConnectionPoolMetrics metrics = transport.getMetrics(new URL(server.getServerAddress()));
+        assertThat(metrics).isNotNull();
+        assertThat(metrics.getLeased()).isZero();
+        assertThat(metrics.getRollingCount(ConnectionPoolEvent.DISCARDED)).isEqualTo(1);
+    }
+
+    @Test public void testStaleChannelNotResentForPost()
+        throws Exception
+    {
+        // Server answering the first request of each connection, and closing it on the next one
+        final AtomicInteger posts = new AtomicInteger();
+        try(final ServerSocket socket = new ServerSocket(0)) {
+            final Thread acceptor = new Thread(() -> {
+                        try {
+                            while (!socket.isClosed()) {
+                                try(final Socket s = socket.accept()) {
+                                    final InputStream  in  = s.getInputStream();
+                                    final OutputStream out = s.getOutputStream();
+                                    if (readRequest(in).startsWith("POST")) posts.incrementAndGet();
+                                    out.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(StandardCharsets.ISO_8859_1));
+                                    out.flush();
+                                    if (readRequest(in).startsWith("POST")) posts.incrementAndGet();
+                                }
+                            }
+                        }
+                        catch (final IOException ignored) {}
+                    });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            final NioHttpTransport transport = new NioHttpTransport("NioStaleTest");
+            final URL              url       = new URL("http://localhost:" + socket.getLocalPort() + "/stale");
+
+            final HttpURLConnection get = transport.open(url);
+            assertThat(get.getResponseCode()).isEqualTo(200);
+            transport.release(get, null);
+
+            // The request may have reached the server on the stale channel, so it is not resent
+            final HttpURLConnection post = transport.open(url);
+            post.setRequestMethod("POST");
+            post.setDoOutput(true);
+            post.getOutputStream().write("data".getBytes(StandardCharsets.ISO_8859_1));
+            try {
+                post.getResponseCode();
+                failBecauseExceptionWasNotThrown(IOException.class);
+            }
+            catch (final IOException ignored) {}
+            transport.discard(post);
+            assertThat(posts.get()).isEqualTo(1);
+        }
+    }
+
+    /** Read request head and content, returning the request line (or empty at end of stream). */
+    private static String readRequest(@NotNull InputStream in)
+        throws IOException
+    {
+        final StringBuilder head = new StringBuilder();
+        int                 c;
+        while (head.indexOf("\r\n\r\n") == -1 && (c = in.read()) != -1)
+            head.append((char) c);
+        final Matcher       length    = Pattern.compile("Content-Length: (\\d+)", Pattern.CASE_INSENSITIVE).matcher(head);
+        int                 remaining = length.find() ? Integer.parseInt(length.group(1)) : 0;
+        while (remaining > 0 && in.read() != -1)
+            remaining--;
+        return head.toString();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    @ClassRule public static final SgHttpServerRule server = httpServerRule().onStart(sgHttpServerRule -> LogConfig.start()).build();
+}  // end class NioHttpTransportTest
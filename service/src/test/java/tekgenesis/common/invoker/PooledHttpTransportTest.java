@@ -0,0 +1,235 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import tekgenesis.common.env.context.Context;
+import tekgenesis.common.env.logging.LogConfig;
+import tekgenesis.common.invoker.exception.InvokerConnectionException;
+import tekgenesis.common.invoker.metric.ConnectionPoolEvent;
+import tekgenesis.common.invoker.metric.ConnectionPoolMetrics;
+import tekgenesis.common.service.Method;
+import tekgenesis.common.service.Status;
+import tekgenesis.common.service.etl.StreamingSeq;
+import tekgenesis.common.service.server.Request;
+import tekgenesis.common.tools.test.server.SgHttpServerRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static tekgenesis.common.collections.Colls.listOf;
+import static tekgenesis.common.invoker.Person.createPerson;
+import static tekgenesis.common.tools.test.server.SgHttpServerRule.httpServerRule;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class PooledHttpTransportTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testBinaryContent()
+        throws Exception
+    {
+        final PooledHttpTransport transport = new PooledHttpTransport(BINARY_TRANSPORT);
+        final HttpInvoker         invoker   = HttpInvokers.invoker(server.getServerAddress()).withTransport(transport);
+
+        final byte[] bytes = BINARY.getBytes(UTF_8);
+        final Path   file  = Files.createTempFile("binary", ".bin");
+        Files.write(file, bytes);
+        try {
+            // Known lengths are streamed with a fixed length, others chunked (both without buffering)
+            server.expectPost("/upload").repeated(5).respondOkWith(PooledHttpTransportTest::echo);
+            assertThat(upload(invoker, ByteBuffer.wrap(bytes))).isEqualTo(BINARY);
+            assertThat(upload(invoker, file)).isEqualTo(BINARY);
+            assertThat(upload(invoker, FileChannel.open(file))).isEqualTo(BINARY);
+            assertThat(upload(invoker, new ByteArrayInputStream(bytes))).isEqualTo(BINARY);
+            assertThat(upload(invoker, Channels.newChannel(new ByteArrayInputStream(bytes)))).isEqualTo(BINARY);
+
+            server.expectGet("/download").repeated(4).respondRaw(Status.OK, bytes);
+            assertThat(Files.readAllBytes(invoker.resource("/download").get(Path.class))).isEqualTo(bytes);
+            assertThat(invoker.resource("/download").get(ByteBuffer.class)).isEqualTo(ByteBuffer.wrap(bytes));
+
+            // Content streams hold the connection until closed or fully read
+            final InputStream stream = invoker.resource("/download").get(InputStream.class);
+            assertThat(transport.getLeasedCount()).isEqualTo(1);
+            assertThat(tekgenesis.common.util.Files.toByteArray(stream)).isEqualTo(bytes);
+            assertThat(transport.getLeasedCount()).isZero();
+
+            final ReadableByteChannel channel = invoker.resource("/download").get(ReadableByteChannel.class);
+            assertThat(transport.getLeasedCount()).isEqualTo(1);
+            channel.close();
+            assertThat(transport.getLeasedCount()).isZero();
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test public void testConnectionsKeptAlive()
+        throws Exception
+    {
+        final PooledHttpTransport transport = new PooledHttpTransport(POOL_TRANSPORT);
+        final HttpInvoker         invoker   = HttpInvokers.invoker(server.getServerAddress()).withTransport(transport);
+
+        final int repetitions = 5;
+        server.expectGet("/pooled").repeated(repetitions).respondOkWith("Hello World!");
+        for (int i = 0; i < repetitions; i++)
+            assertThat(invoker.resource("/pooled").get(String.class)).isEqualTo("Hello World!");
+
+        final ConnectionPoolMetrics metrics = transport.getMetrics(new URL(server.getServerAddress()));
+        assertThat(metrics).isNotNull();
+        assertThat(metrics.getRollingCount(ConnectionPoolEvent.KEPT_ALIVE)).isEqualTo(repetitions);
+        assertThat(metrics.getLeased()).isZero();
+        assertThat(transport.getLeasedCount()).isZero();
+    }
+
+    @Test public void testMaxConnectionsPerHost()
+        throws Exception
+    {
+        final PooledHttpTransport transport = new PooledHttpTransport(BOUNDED_TRANSPORT);
+        final HttpInvoker         invoker   = HttpInvokers.invoker(server.getServerAddress()).withTransport(transport);
+
+        // Exhaust the host pool
+        final HttpURLConnection connection = transport.open(new URL(server.getServerAddress() + "/bounded"));
+        try {
+            invoker.resource("/bounded").get(String.class);
+            failBecauseExceptionWasNotThrown(InvokerConnectionException.class);
+        }
+        catch (final InvokerConnectionException e) {
+            assertThat(e.isConnectTimeoutException()).isTrue();
+        }
+
+        final ConnectionPoolMetrics metrics = transport.getMetrics(new URL(server.getServerAddress()));
+        assertThat(metrics).isNotNull();
+        assertThat(metrics.getRollingCount(ConnectionPoolEvent.ACQUIRE_TIMEOUT)).isEqualTo(1);
+        assertThat(metrics.getLeased()).isEqualTo(1);
+
+        // Once discarded the connection is available again
+        transport.discard(connection);
+        server.expectGet("/bounded").respondOkWith("Hello World!");
+        assertThat(invoker.resource("/bounded").get(String.class)).isEqualTo("Hello World!");
+        assertThat(metrics.getRollingCount(ConnectionPoolEvent.DISCARDED)).isEqualTo(1);
+        assertThat(transport.getLeasedCount()).isZero();
+    }
+
+    @Test public void testStreamingContent()
+        throws Exception
+    {
+        final PooledHttpTransport transport = new PooledHttpTransport(STREAMING_TRANSPORT);
+        final HttpInvoker         invoker   = HttpInvokers.invoker(server.getServerAddress()).withTransport(transport);
+
+        final List<Person> persons = listOf(createPerson(), createPerson(), createPerson());
+        server.expectGet("/stream").repeated(2).respondOkWith(persons);
+
+        // Connection is held until streamed content is fully read
+        final StreamingSeq<Person> streamed = invoker.resource("/stream").get(new GenericType<StreamingSeq<Person>>() {});
+        assertThat(transport.getLeasedCount()).isEqualTo(1);
+        final List<String> names = new ArrayList<>();
+        for (final Person person : streamed)
+            names.add(person.name);
+        assertThat(names).containsExactly(persons.get(0).name, persons.get(1).name, persons.get(2).name);
+        assertThat(transport.getLeasedCount()).isZero();
+
+        // Or until closed
+        final StreamingSeq<Person> closed = invoker.resource("/stream").get(new GenericType<StreamingSeq<Person>>() {});
+        assertThat(closed.iterator().next().name).isEqualTo(persons.get(0).name);
+        closed.close();
+        assertThat(transport.getLeasedCount()).isZero();
+
+        // Streamed results are read once, so they cannot be shared
+        try {
+            invoker.resource("/stream").invoke(Method.GET, new GenericType<StreamingSeq<Person>>() {}).withRequestCache();
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        }
+        catch (final IllegalStateException e) {
+            assertThat(e).hasMessageContaining("cached");
+        }
+    }
+
+    @Test public void testUnclosedContentReleased()
+        throws Exception
+    {
+        final PooledHttpTransport transport = new PooledHttpTransport(UNCLOSED_TRANSPORT);
+        final HttpInvoker         invoker   = HttpInvokers.invoker(server.getServerAddress()).withTransport(transport);
+
+        server.expectGet("/unclosed").respondRaw(Status.OK, BINARY.getBytes(UTF_8));
+
+        // Stream is dropped without being closed nor read
+        assertThat(invoker.resource("/unclosed").get(InputStream.class)).isNotNull();
+        assertThat(transport.getLeasedCount()).isEqualTo(1);
+
+        for (int i = 0; i < 50 && transport.getLeasedCount() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertThat(transport.getLeasedCount()).isZero();
+    }
+
+    private static Object echo(Request request) {
+        try {
+            return new String(tekgenesis.common.util.Files.toByteArray(request.getContent()), UTF_8);
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String upload(HttpInvoker invoker, Object payload) {
+        return invoker.resource("/upload").invoke(Method.POST, String.class, payload).execute().get();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final String BINARY              = "Binary content ñ";
+    private static final String BINARY_TRANSPORT    = "BinaryTransportTest";
+    private static final String BOUNDED_TRANSPORT   = "BoundedTransportTest";
+    private static final String POOL_TRANSPORT      = "PooledTransportTest";
+    private static final String STREAMING_TRANSPORT = "StreamingTransportTest";
+    private static final String UNCLOSED_TRANSPORT  = "UnclosedTransportTest";
+
+    @ClassRule public static final SgHttpServerRule server = httpServerRule().onStart(sgHttpServerRule -> LogConfig.start()).build();
+
+    @ClassRule public static ExternalResource properties = new ExternalResource() {
+            @Override protected void before()
+                throws Throwable
+            {
+                super.before();
+                final HttpTransportProps props = new HttpTransportProps();
+                props.maxConnectionsPerHost = 1;
+                props.acquireTimeout        = 100;
+                Context.getEnvironment().put(BOUNDED_TRANSPORT, props);
+            }
+
+            @Override protected void after() {
+                Context.getEnvironment().delete(BOUNDED_TRANSPORT, HttpTransportProps.class);
+                super.after();
+            }
+        };
+}  // end class PooledHttpTransportTest
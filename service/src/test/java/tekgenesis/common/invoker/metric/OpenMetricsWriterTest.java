@@ -0,0 +1,125 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.invoker.metric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import tekgenesis.common.env.logging.LogConfig;
+import tekgenesis.common.tools.test.server.SgHttpServerRule;
+import tekgenesis.common.util.LruCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static tekgenesis.common.service.HeaderNames.CONTENT_TYPE;
+import static tekgenesis.common.tools.test.server.SgHttpServerRule.httpServerRule;
+
+@SuppressWarnings({ "JavaDoc", "MagicNumber", "DuplicateStringLiteralInspection" })
+public class OpenMetricsWriterTest {
+
+    //~ Methods ......................................................................................................................................
+
+    @Test public void testFormat()
+        throws IOException
+    {
+        final InvocationMetrics invocation = InvocationMetrics.getOrCreateInstance("OpenMetricsTest", "Tests");
+        invocation.markSuccess();
+        invocation.markSuccess();
+        invocation.markFailure();
+
+        final CompressionMetrics compression = CompressionMetrics.getOrCreateInstance("OpenMetricsTest");
+        compression.markRequestCompressed(1000, 400);
+        compression.markResponseDecompressed(3, 1000);
+
+        final LruCache<String, String> cache = LruCache.createLruCache(10);
+        cache.put("a", "1");
+        cache.get("a");
+        cache.get("b");
+
+        final OpenMetricsWriter writer = new OpenMetricsWriter().withCache("users \"ñ\"\\\n", cache);
+        final String            text   = write(writer);
+
+        assertThat(text).endsWith("\n# EOF\n");
+        for (final String line : text.split("\n"))
+            assertThat(line).matches("# (TYPE|HELP|EOF).*|[a-z_]+(\\{[^}]*})? -?[0-9.]+");
+
+        assertThat(text).contains("# TYPE invoker_invocation_events gauge\n")
+            .contains("invoker_invocation_events{command=\"OpenMetricsTest\",group=\"Tests\",event=\"success\"} 2\n")
+            .contains("invoker_invocation_events{command=\"OpenMetricsTest\",group=\"Tests\",event=\"failure\"} 1\n")
+            .doesNotContain("event=\"command_max_active\"")
+            .contains("# TYPE invoker_invocation_execution_latency_milliseconds summary\n")
+            .contains("invoker_invocation_execution_latency_milliseconds{command=\"OpenMetricsTest\",group=\"Tests\",quantile=\"0.99\"} ")
+            .contains("invoker_compression_request_ratio{name=\"OpenMetricsTest\"} 2.5\n")
+            .contains("invoker_compression_response_ratio{name=\"OpenMetricsTest\"} 333.333333\n")
+            .contains("# TYPE command_pool_rejections counter\n")
+            .contains("# TYPE cache_hits counter\n")
+            .contains("cache_hits_total{cache=\"users \\\"ñ\\\"\\\\\\n\"} 1\n")
+            .contains("cache_misses_total{cache=\"users \\\"ñ\\\"\\\\\\n\"} 1\n")
+            .contains("cache_size{cache=\"users \\\"ñ\\\"\\\\\\n\"} 1\n")
+            .contains("cache_max_weight{cache=\"users \\\"ñ\\\"\\\\\\n\"} 10\n");
+
+        // Removed caches are no longer exported
+        assertThat(write(writer.removeCache("users \"ñ\"\\\n"))).doesNotContain("cache_size{");
+    }
+
+    @Test public void testScrape()
+        throws IOException
+    {
+        InvocationMetrics.getOrCreateInstance("OpenMetricsScrape", "Tests").markSuccess();
+
+        final OpenMetricsWriter writer = new OpenMetricsWriter();
+        server.expectGet("/metrics")
+            .respondOk()
+            .withHeader(CONTENT_TYPE, OpenMetricsWriter.CONTENT_TYPE)
+            .withStreamedContent((request, out) -> writer.write(out));
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL(server.getServerAddress() + "/metrics").openConnection();
+        try(final InputStream in = connection.getInputStream()) {
+            assertThat(connection.getContentType()).startsWith("application/openmetrics-text");
+            final String text = new String(readAll(in), StandardCharsets.UTF_8);
+            assertThat(text).contains("invoker_invocation_events{command=\"OpenMetricsScrape\",group=\"Tests\",event=\"success\"} 1\n")
+                .endsWith("# EOF\n");
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private String write(OpenMetricsWriter writer)
+        throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in)
+        throws IOException
+    {
+        final ByteArrayOutputStream out    = new ByteArrayOutputStream();
+        final byte[]                buffer = new byte[1024];
+        int                         n;
+        while ((n = in.read(buffer)) != -1)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    @ClassRule public static final SgHttpServerRule server = httpServerRule().onStart(sgHttpServerRule -> LogConfig.start()).build();
+}  // end class OpenMetricsWriterTest
@@ -14,6 +14,12 @@ import java.io.*;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -36,6 +42,7 @@ import tekgenesis.common.core.DateOnly;
 import tekgenesis.common.core.DateTime;
 import tekgenesis.common.invoker.GenericType;
 import tekgenesis.common.media.MediaType;
+import tekgenesis.common.service.Headers;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -64,6 +71,76 @@ public class MessageConverterTest {
         testBasicObjectConverter(DateTime.class, DateTime.current(), 24);
     }
 
+    @Test public void testBinaryConverter()
+        throws IOException
+    {
+        final ByteMessageConverter converter = new ByteMessageConverter();
+        final byte[]               bytes     = hello_world.getBytes(Constants.UTF8);
+
+        // Binary payloads are not handled by the json converter
+        assertThat(new JsonMessageConverter().canWrite(InputStream.class, InputStream.class, null)).isFalse();
+        assertThat(converter.canWrite(FileInputStream.class, FileInputStream.class, null)).isTrue();
+        assertThat(converter.canRead(FileInputStream.class, FileInputStream.class, null)).isFalse();
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        final Headers headers = new Headers();
+        converter.write(direct, null, headers);
+        assertThat(headers.getContentLength()).isEqualTo(bytes.length);
+        assertThat(headers.getContentType()).isEqualTo(APPLICATION_OCTET_STREAM);
+
+        final ByteArrayOutputStream buffers = new ByteArrayOutputStream();
+        testWrite(converter, APPLICATION_OCTET_STREAM, ByteBuffer.class, ByteBuffer.class, buffers, direct);
+        testWrite(converter, APPLICATION_OCTET_STREAM, ByteBuffer.class, ByteBuffer.class, buffers, ByteBuffer.wrap(bytes, 1, 3).slice());
+        // Buffers are left untouched
+        assertThat(direct.remaining()).isEqualTo(bytes.length);
+        assertThat(buffers.toByteArray()).hasSize(bytes.length + 3).startsWith(bytes).endsWith(bytes[1], bytes[2], bytes[3]);
+
+        final Path file = (Path) testRead(converter, null, Path.class, Path.class, new ByteArrayInputStream(bytes));
+        try {
+            assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+
+            final Headers length = new Headers();
+            converter.write(file, null, length);
+            assertThat(length.getContentLength()).isEqualTo(bytes.length);
+            final Headers unknown = new Headers();
+            converter.write(new ByteArrayInputStream(bytes), null, unknown);
+            assertThat(unknown.getContentLength()).isEqualTo(-1);
+
+            final ByteArrayOutputStream files = new ByteArrayOutputStream();
+            testWrite(converter, null, Path.class, Path.class, files, file);
+            testWrite(converter, null, FileChannel.class, FileChannel.class, files, FileChannel.open(file));
+            testWrite(converter, null, InputStream.class, InputStream.class, files, new ByteArrayInputStream(bytes));
+            testWrite(converter, null, ReadableByteChannel.class, ReadableByteChannel.class, files, Channels.newChannel(new ByteArrayInputStream(bytes)));
+            assertThat(files.size()).isEqualTo(bytes.length * 4);
+        }
+        finally {
+            Files.delete(file);
+        }
+
+        final ByteBuffer buffer = (ByteBuffer) testRead(converter, null, ByteBuffer.class, ByteBuffer.class, new ByteArrayInputStream(bytes));
+        assertThat(buffer).isEqualTo(ByteBuffer.wrap(bytes));
+
+        // Spooled file channels are deleted once closed
+        try(final FileChannel channel = (FileChannel) testRead(converter, null, FileChannel.class, FileChannel.class, new ByteArrayInputStream(bytes))) {
+            assertThat(channel.size()).isEqualTo(bytes.length);
+        }
+
+        // Streams are the content itself, releasing it once fully read or closed
+        final boolean[]   released = { false };
+        final InputStream stream   = (InputStream) testRead(converter, null, InputStream.class, InputStream.class, new ByteArrayInputStream(bytes));
+        ((StreamingContent) stream).onClose(() -> released[0] = true);
+        assertThat(tekgenesis.common.util.Files.toByteArray(stream)).isEqualTo(bytes);
+        assertThat(released[0]).isTrue();
+
+        released[0] = false;
+        final ReadableByteChannel channel = (ReadableByteChannel) testRead(converter, null, ReadableByteChannel.class, ReadableByteChannel.class,
+                new ByteArrayInputStream(bytes));
+        ((StreamingContent) channel).onClose(() -> released[0] = true);
+        channel.close();
+        assertThat(released[0]).isTrue();
+    }
+
     @Test public void testByteConverter()
         throws IOException
     {
@@ -82,6 +159,47 @@ public class MessageConverterTest {
         assertThat(read).isEqualTo(write);
     }
 
+    @Test public void testConverterResolution() {
+        final int[]                    checks   = { 0 };
+        final StringMessageConverter   string   = new StringMessageConverter() {
+                @Override public boolean canRead(Class<?> type, Type genericType, MediaType contentType) {
+                    checks[0]++;
+                    return super.canRead(type, genericType, contentType);
+                }
+            };
+        final MessageConverterResolver resolver = new MessageConverterResolver().add(new JsonMessageConverter()).add(string);
+
+        final MediaType json = MediaType.fromString("application/json; charset=UTF-8");
+        assertThat(MediaType.fromString("application/json; charset=UTF-8")).isSameAs(json);
+
+        // Converters are scanned once per (type, generic type, media type)
+        for (int i = 0; i < 3; i++) {
+            assertThat(resolver.<Object>reader(String.class, String.class, TEXT_PLAIN)).isSameAs(string);
+            assertThat(resolver.<Object>reader(JsonExample.class, JsonExample.class, json)).isInstanceOf(JsonMessageConverter.class);
+        }
+        assertThat(checks[0]).isEqualTo(2);
+        assertThat(resolver.<Object>writer(JsonExample.class, JsonExample.class, json)).isInstanceOf(JsonMessageConverter.class);
+
+        // Adding a converter invalidates resolved ones
+        final ByteMessageConverter bytes = new ByteMessageConverter();
+        resolver.add(bytes);
+        assertThat(resolver.<Object>reader(String.class, String.class, TEXT_PLAIN)).isSameAs(string);
+        assertThat(checks[0]).isEqualTo(3);
+        assertThat(resolver).startsWith(bytes, string);
+
+        // A resolution scanning the converters before one is added is not kept
+        final MessageConverterResolver racing = new MessageConverterResolver();
+        final StringMessageConverter   late   = new StringMessageConverter();
+        racing.add(new StringMessageConverter() {
+                @Override public boolean canRead(Class<?> type, Type genericType, MediaType contentType) {
+                    if (checks[0]++ == 3) racing.add(late);
+                    return false;
+                }
+            });
+        assertThat(racing.<Object>reader(String.class, String.class, TEXT_PLAIN)).isNull();
+        assertThat(racing.<Object>reader(String.class, String.class, TEXT_PLAIN)).isSameAs(late);
+    }
+
     @Test public void testFormConverter()
         throws IOException
     {
@@ -162,6 +280,36 @@ public class MessageConverterTest {
         assertThat(read).containsExactlyElementsOf(write);
     }
 
+    @Test public void testJsonStreamingSeqConverter()
+        throws IOException
+    {
+        final JsonMessageConverter converter = new JsonMessageConverter();
+
+        final List<JsonExample>     write  = createJsonListExample();
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        testWrite(converter, APPLICATION_JSON, List.class, List.class, stream, write);
+
+        final GenericType<StreamingSeq<JsonExample>> genericType = new GenericType<StreamingSeq<JsonExample>>() {};
+        final boolean[]                              closed      = { false };
+        final InputStream                            input       = new ByteArrayInputStream(stream.toByteArray()) {
+                @Override public void close() {
+                    closed[0] = true;
+                }
+            };
+        final StreamingSeq<JsonExample> read = cast(testRead(converter, APPLICATION_JSON, genericType.getRaw(), genericType.getType(), input));
+
+        final boolean[] released = { false };
+        read.onClose(() -> released[0] = true);
+
+        // Peeking doesn't consume elements, and content is released once fully iterated
+        assertThat(read.isEmpty()).isFalse();
+        assertThat(released[0]).isFalse();
+        assertThat(read).containsExactlyElementsOf(write);
+        assertThat(closed[0]).isTrue();
+        assertThat(released[0]).isTrue();
+        assertThat(read).isEmpty();
+    }
+
     @Test public void testStringConverter()
         throws IOException
     {
@@ -0,0 +1,189 @@
+
+// ...............................................................................................................................
+//
+// (C) Copyright  2011/2017 TekGenesis.  All Rights Reserved
+// THIS IS UNPUBLISHED PROPRIETARY SOURCE CODE OF TekGenesis.
+// The copyright notice above does not evidence any actual or intended
+// publication of such source code.
+//
+// ...............................................................................................................................
+
+package tekgenesis.common.tools.test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import tekgenesis.cluster.ClusterManager;
+import tekgenesis.cluster.MessageHandler;
+import tekgenesis.cluster.RpcDispatcher;
+import tekgenesis.common.collections.ImmutableList;
+
+import static tekgenesis.common.Predefined.cast;
+import static tekgenesis.common.collections.Colls.toList;
+
+/**
+ * In process {@link ClusterManager} for tests. Started managers with the same cluster name are
+ * members of the same cluster, the first one started being the master. Messages are serialized
+ * and delivered synchronously to the handlers of all the started members (the sender included).
+ * Remote method calls are not supported.
+ */
+public class InProcessClusterManager implements ClusterManager<String> {
+
+    //~ Instance Fields ..............................................................................................................................
+
+    @NotNull private final String                  clusterName;
+    private final Map<Short, MessageHandler<?>>    handlers;
+    @NotNull private final String                  memberName;
+    private final Map<Integer, List<Serializable>> sent;
+
+    //~ Constructors .................................................................................................................................
+
+    /** Create a member with the given name of the named cluster. */
+    public InProcessClusterManager(@NotNull String clusterName, @NotNull String memberName) {
+        this.clusterName = clusterName;
+        this.memberName  = memberName;
+        handlers         = new ConcurrentHashMap<>();
+        sent             = new ConcurrentHashMap<>();
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    @Override public <K> K callRemoteMethod(Class<?> clazz, String to, String methodName, Object[] args, @Nullable Class<?>[] types,
+                                            Object options) {
+        throw new UnsupportedOperationException("Remote method calls not supported in process");
+    }
+
+    @Override public <K> K callRemoteMethods(Class<?> clazz, List<String> tos, String methodName, Object[] args, @Nullable Class<?>[] types,
+                                             Object options) {
+        throw new UnsupportedOperationException("Remote method calls not supported in process");
+    }
+
+    @Override public void deRegisterMessageHandler(int scope) {
+        handlers.remove((short) scope);
+    }
+
+    @Override public void registerMessageHandler(MessageHandler<?> handler) {
+        handlers.put(handler.getScope(), handler);
+    }
+
+    @Override public void registerRpcDispatcher(Class<?> type, RpcDispatcher dispatcher) {}
+
+    @Override public void sendMessage(int indexScope, Serializable object)
+        throws Exception
+    {
+        sent.computeIfAbsent(indexScope, s -> new CopyOnWriteArrayList<>()).add(object);
+        final byte[] bytes = serialize(object);
+        for (final InProcessClusterManager member : members())
+            member.receive((short) indexScope, bytes);
+    }
+
+    @Override public void start() {
+        clusters.computeIfAbsent(clusterName, n -> new CopyOnWriteArrayList<>()).addIfAbsent(this);
+    }
+
+    @Override public void stop() {
+        members().remove(this);
+    }
+
+    @Override public String toString() {
+        return clusterName + "/" + memberName;
+    }
+
+    @Override public boolean isAlive(@NotNull String nodeName) {
+        return members().stream().anyMatch(m -> m.memberName.equals(nodeName));
+    }
+
+    @Override public String getClusterName() {
+        return clusterName;
+    }
+
+    @Override public String getCurrentMember() {
+        return memberName;
+    }
+
+    @Override public String getCurrentMemberId() {
+        return memberName;
+    }
+
+    @Override public String getMaster() {
+        final List<InProcessClusterManager> members = members();
+        return members.isEmpty() ? memberName : members.get(0).memberName;
+    }
+
+    @Override public String getMember() {
+        return memberName;
+    }
+
+    @Override public String getMemberName() {
+        return memberName;
+    }
+
+    @Override public String getMemberName(String address) {
+        return address;
+    }
+
+    @Override public ImmutableList<String> getMembersAddresses() {
+        final List<String> result = new ArrayList<>();
+        for (final InProcessClusterManager member : members())
+            result.add(member.memberName);
+        return toList(result);
+    }
+
+    @Override public String getMemberUUID() {
+        return memberName;
+    }
+
+    @Override public boolean isMaster() {
+        return getMaster().equals(memberName);
+    }
+
+    /** Returns the messages sent by this member on the given scope. */
+    public List<Serializable> getMessages(int scope) {
+        return sent.getOrDefault(scope, Collections.emptyList());
+    }
+
+    @Nullable @Override public InetAddress getPhysicalAddress(String address) {
+        return null;
+    }
+
+    private List<InProcessClusterManager> members() {
+        return clusters.getOrDefault(clusterName, new CopyOnWriteArrayList<>());
+    }
+
+    private void receive(short scope, @NotNull byte[] bytes)
+        throws IOException, ClassNotFoundException
+    {
+        final MessageHandler<Serializable> handler = cast(handlers.get(scope));
+        if (handler != null) handler.handle(deserialize(bytes));
+    }
+
+    //~ Methods ......................................................................................................................................
+
+    private static Serializable deserialize(@NotNull byte[] bytes)
+        throws IOException, ClassNotFoundException
+    {
+        try(final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Serializable) in.readObject();
+        }
+    }
+
+    private static byte[] serialize(@NotNull Serializable object)
+        throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    //~ Static Fields ................................................................................................................................
+
+    private static final Map<String, CopyOnWriteArrayList<InProcessClusterManager>> clusters = new ConcurrentHashMap<>();
+}  // end class InProcessClusterManager
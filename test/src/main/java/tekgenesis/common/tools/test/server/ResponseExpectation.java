@@ -10,6 +10,8 @@
 
 package tekgenesis.common.tools.test.server;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
@@ -41,7 +43,8 @@ public class ResponseExpectation extends BaseExpectation<ResponseExpectation> {
     private final List<Cookie>                cookies;
     private Option<Integer>                   delay;
 
-    private final Status status;
+    private final Status                status;
+    private Option<StreamedContentWriter> stream;
 
     //~ Constructors .................................................................................................................................
 
@@ -49,6 +52,7 @@ public class ResponseExpectation extends BaseExpectation<ResponseExpectation> {
         this.status = status;
         content     = Option.empty();
         bytes       = Option.empty();
+        stream      = Option.empty();
         delay       = Option.empty();
         cookies     = new ArrayList<>();
     }
@@ -96,6 +100,12 @@ public class ResponseExpectation extends BaseExpectation<ResponseExpectation> {
         return this;
     }
 
+    /** Set response content, written by given writer straight to the response stream. */
+    public ResponseExpectation withStreamedContent(@NotNull final StreamedContentWriter writer) {
+        stream = some(writer);
+        return this;
+    }
+
     Option<Function<Request, Object>> getContentFn() {
         return content;
     }
@@ -116,6 +126,10 @@ public class ResponseExpectation extends BaseExpectation<ResponseExpectation> {
         return status;
     }
 
+    Option<StreamedContentWriter> getStreamedContentFn() {
+        return stream;
+    }
+
     private <T> Function<Request, T> constant(final T constant) {
         return value -> constant;
     }
@@ -123,4 +137,13 @@ public class ResponseExpectation extends BaseExpectation<ResponseExpectation> {
     //~ Static Fields ................................................................................................................................
 
     public static final ResponseExpectation DEFAULT_RESPONSE = new ResponseExpectation(OK).withContentType(TEXT_PLAIN);
+
+    //~ Inner Interfaces .............................................................................................................................
+
+    /** Writes response content for a request straight to the response stream. */
+    public interface StreamedContentWriter {
+        /** Write content for given request. */
+        void write(@NotNull Request request, @NotNull OutputStream out)
+            throws IOException;
+    }
 }  // end class ResponseExpectation
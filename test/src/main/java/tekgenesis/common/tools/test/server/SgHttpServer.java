@@ -34,6 +34,7 @@ import tekgenesis.common.service.cookie.MutableCookie;
 import tekgenesis.common.service.etl.*;
 import tekgenesis.common.service.server.Request;
 import tekgenesis.common.service.server.Response;
+import tekgenesis.common.tools.test.server.ResponseExpectation.StreamedContentWriter;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -248,7 +249,8 @@ class SgHttpServer {
 
             writeHeaders(expectation.getHeaders(), expectation.getCookies(), response);
 
-            if (expectation.getRawContentFn().isPresent()) {
+            if (expectation.getStreamedContentFn().isPresent()) writeStreamedContent(request, response, expectation.getStreamedContentFn().get());
+            else if (expectation.getRawContentFn().isPresent()) {
                 final byte[] content = expectation.getRawContentFn().get().apply(request);
                 writeRawContent(response, content);
             }
@@ -341,6 +343,15 @@ class SgHttpServer {
             }
         }
 
+        private void writeStreamedContent(Request request, Response response, StreamedContentWriter writer) {
+            try {
+                writer.write(request, response.getContent());
+            }
+            catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         private <T> MessageConverter<T> getSuitableConverter(List<MessageConverter<?>> cs, MediaType contentType, Class<?> responseType,
                                                              Class<?> genericType) {
             for (final MessageConverter<?> converter : cs) {